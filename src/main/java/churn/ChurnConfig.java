@@ -0,0 +1,117 @@
+package churn;
+
+import java.util.HashMap;
+
+/**
+ * This class describes a churn simulation: how nodes arrive and leave, how often the nodes run the chord maintenance
+ * protocol and how many lookups are made. All times are simulated seconds.
+ *
+ * The session time distribution is given as a specification string:
+ *
+ *     exp[:mean]                 - exponential session times, default mean 3600 seconds
+ *     pareto[:mean[:shape]]      - pareto (heavy tailed) session times, default shape 1.5
+ *     weibull[:mean[:shape]]     - weibull session times, default shape 0.5
+ */
+public class ChurnConfig {
+
+    // length of the simulation in seconds
+    public double duration = 3600;
+
+    // statistics are only collected after the warmup, so the perfect initial ring does not hide the effect of churn
+    public double warmup = 0;
+
+    // specification of the session time distribution
+    public String sessionTime = "exp:3600";
+
+    // node arrivals per second. -1 means the rate that keeps the number of nodes stable (nodes / mean session time)
+    public double arrivalRate = -1;
+
+    // lookups per second, over the whole network
+    public double lookupRate = 10;
+
+    // seconds between two runs of stabilize() on a node
+    public double stabilizeInterval = 30;
+
+    // seconds between two runs of fix_fingers() on a node
+    public double fixFingersInterval = 60;
+
+    // number of entries in the successor list of each node
+    public int successorListSize = 4;
+
+    // seed of the random generator, so the same config always produces the same simulation
+    public long seed;
+
+
+    /**
+     * creates a churn config from the command line options:
+     *     --churn-duration &lt;seconds&gt;    length of the simulation (default 3600)
+     *     --churn-warmup &lt;seconds&gt;      statistics are collected after the warmup (default 0)
+     *     --session-time &lt;spec&gt;         session time distribution (default exp:3600)
+     *     --arrival-rate &lt;per second&gt;   node arrivals per second (default nodes / mean session time)
+     *     --lookup-rate &lt;per second&gt;    lookups per second (default 10)
+     *     --stabilize &lt;seconds&gt;         stabilization interval (default 30)
+     *     --fix-fingers &lt;seconds&gt;       finger refresh interval (default 60)
+     *     --successors &lt;count&gt;          successor list size (default 4)
+     *     --seed &lt;seed&gt;                 seed of the simulation (default 0)
+     *
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the churn config
+     */
+    public static ChurnConfig fromOptions(HashMap<String, String> options){
+        ChurnConfig config = new ChurnConfig();
+        config.duration = Double.parseDouble(options.getOrDefault("churn-duration", String.valueOf(config.duration)));
+        config.warmup = Double.parseDouble(options.getOrDefault("churn-warmup", String.valueOf(config.warmup)));
+        config.sessionTime = options.getOrDefault("session-time", config.sessionTime);
+        config.arrivalRate = Double.parseDouble(options.getOrDefault("arrival-rate", "-1"));
+        config.lookupRate = Double.parseDouble(options.getOrDefault("lookup-rate", String.valueOf(config.lookupRate)));
+        config.stabilizeInterval = Double.parseDouble(options.getOrDefault("stabilize",
+                String.valueOf(config.stabilizeInterval)));
+        config.fixFingersInterval = Double.parseDouble(options.getOrDefault("fix-fingers",
+                String.valueOf(config.fixFingersInterval)));
+        config.successorListSize = Integer.parseInt(options.getOrDefault("successors",
+                String.valueOf(config.successorListSize)));
+        config.seed = Long.parseLong(options.getOrDefault("seed", "0"));
+        if(config.stabilizeInterval <= 0 || config.fixFingersInterval <= 0 || config.successorListSize < 1){
+            throw new IllegalArgumentException("maintenance intervals must be positive and the successor list "
+                    + "must have at least one entry");
+        }
+        return config;
+    }
+
+
+    /**
+     * creates the session time distribution from the specification
+     * @return the session time distribution
+     */
+    public SessionTimeDistribution createSessionTimes(){
+        String[] parts = sessionTime.split(":");
+        double mean = parts.length > 1 ? Double.parseDouble(parts[1]) : 3600;
+        switch (parts[0]) {
+            case "exp":
+                return new ExponentialSessionTime(mean);
+            case "pareto":
+                return new ParetoSessionTime(mean, parts.length > 2 ? Double.parseDouble(parts[2]) : 1.5);
+            case "weibull":
+                return new WeibullSessionTime(mean, parts.length > 2 ? Double.parseDouble(parts[2]) : 0.5);
+            default:
+                throw new IllegalArgumentException("unknown session time distribution: " + sessionTime);
+        }
+    }
+
+
+    /**
+     * @param nodeCount number of nodes in the initial network
+     * @return node arrivals per second
+     */
+    public double getArrivalRate(int nodeCount){
+        return arrivalRate >= 0 ? arrivalRate : nodeCount / createSessionTimes().getMean();
+    }
+
+
+    public String toString(){
+        return "duration=" + duration + " warmup=" + warmup + " session=" + sessionTime
+                + " arrivals/s=" + (arrivalRate >= 0 ? String.valueOf(arrivalRate) : "stable")
+                + " lookups/s=" + lookupRate + " stabilize=" + stabilizeInterval + " fix_fingers=" + fixFingersInterval
+                + " successors=" + successorListSize + " seed=" + seed;
+    }
+}
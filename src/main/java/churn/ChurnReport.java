@@ -0,0 +1,127 @@
+package churn;
+
+/**
+ * This class holds the statistics of a churn simulation. Only events after the warmup are counted.
+ *
+ * A lookup succeeds if it ends at the node that owns the key in the current ring. Extra hops are the hops of a
+ * successful lookup minus the hops the same lookup takes on a fully stabilized ring with the same nodes. A stale
+ * finger is a finger that a lookup tried to follow to a node that has left.
+ */
+public class ChurnReport {
+
+    // simulated seconds that were measured, and the integral of the number of live nodes over them
+    public double seconds;
+    public double nodeSeconds;
+
+    public long joins;
+    public long failedJoins;
+    public long departures;
+
+    public long lookups;
+    public long successfulLookups;
+    // lookups that ended at a node that does not own the key
+    public long wrongOwnerLookups;
+    // lookups that could not be routed (no live successor, or too many hops)
+    public long unroutedLookups;
+
+    // hops of all lookups, and extra hops of the successful lookups
+    public long hops;
+    public long extraHops;
+
+    // fingers considered by lookups, and the ones that pointed to a departed node
+    public long fingerProbes;
+    public long staleFingerProbes;
+    // requests to departed nodes, each waits for a timeout
+    public long timeouts;
+
+    // finger entries that differ from the entries of a stabilized ring, sampled over time
+    public long sampledFingers;
+    public long sampledStaleFingers;
+    // successor pointers that were sampled and the ones that were correct
+    public long sampledSuccessors;
+    public long sampledCorrectSuccessors;
+
+    // maintenance messages: stabilize() and check_predecessor(), fix_fingers() and joins
+    public long stabilizeMessages;
+    public long fixFingersMessages;
+    public long joinMessages;
+
+
+    /**
+     * @return share of the lookups that reached the owner of the key
+     */
+    public double getSuccessRate(){
+        return lookups > 0 ? (double) successfulLookups / lookups : 0;
+    }
+
+
+    /**
+     * @return share of the fingers considered by lookups that pointed to a departed node
+     */
+    public double getStaleFingerRate(){
+        return fingerProbes > 0 ? (double) staleFingerProbes / fingerProbes : 0;
+    }
+
+
+    /**
+     * @return share of the sampled finger entries that differ from a stabilized ring
+     */
+    public double getSampledStaleFingerRate(){
+        return sampledFingers > 0 ? (double) sampledStaleFingers / sampledFingers : 0;
+    }
+
+
+    public double getAverageHops(){
+        return lookups > 0 ? (double) hops / lookups : 0;
+    }
+
+
+    /**
+     * @return extra hops per successful lookup, compared with a stabilized ring
+     */
+    public double getAverageExtraHops(){
+        return successfulLookups > 0 ? (double) extraHops / successfulLookups : 0;
+    }
+
+
+    /**
+     * @return average number of live nodes
+     */
+    public double getAverageNodes(){
+        return seconds > 0 ? nodeSeconds / seconds : 0;
+    }
+
+
+    public long getMaintenanceMessages(){
+        return stabilizeMessages + fixFingersMessages + joinMessages;
+    }
+
+
+    /**
+     * @return maintenance messages sent per node per second
+     */
+    public double getMaintenanceMessagesPerNodePerSecond(){
+        return nodeSeconds > 0 ? getMaintenanceMessages() / nodeSeconds : 0;
+    }
+
+
+    public String toString(){
+        return "churn simulation: " + String.format("%.0f", seconds) + " s measured, "
+                + String.format("%.1f", getAverageNodes()) + " nodes on average, "
+                + joins + " joins (" + failedJoins + " failed), " + departures + " departures"
+                + "\nlookups = " + lookups
+                + "\nsuccess rate = " + String.format("%.4f", getSuccessRate())
+                + " (wrong owner " + wrongOwnerLookups + ", not routed " + unroutedLookups + ")"
+                + "\naverage hop count = " + String.format("%.3f", getAverageHops())
+                + "\naverage extra hops = " + String.format("%.3f", getAverageExtraHops())
+                + "\nstale finger rate = " + String.format("%.4f", getStaleFingerRate())
+                + " (" + staleFingerProbes + " of " + fingerProbes + " fingers, " + timeouts + " timeouts)"
+                + "\nsampled stale finger entries = " + String.format("%.4f", getSampledStaleFingerRate())
+                + ", correct successors = " + String.format("%.4f",
+                        sampledSuccessors > 0 ? (double) sampledCorrectSuccessors / sampledSuccessors : 0)
+                + "\nmaintenance messages per node per second = "
+                + String.format("%.4f", getMaintenanceMessagesPerNodePerSecond())
+                + " (stabilize " + stabilizeMessages + ", fix fingers " + fixFingersMessages
+                + ", joins " + joinMessages + ")";
+    }
+}
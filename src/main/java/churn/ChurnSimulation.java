@@ -0,0 +1,797 @@
+package churn;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeMap;
+
+import crypto.ConsistentHashing;
+import logging.Log;
+import workload.KeyDistribution;
+import workload.KeyStream;
+
+/**
+ * This class simulates the chord protocol while nodes join and leave the ring. It is a discrete event simulation in
+ * simulated seconds:
+ *
+ *     - nodes arrive as a Poisson process, and each node leaves after a session time drawn from the session time
+ *       distribution. Nodes leave without notice (they fail), as most peers do
+ *     - every node runs stabilize() and fix_fingers() periodically, as described in the chord paper. stabilize() also
+ *       refreshes the successor list and checks the predecessor
+ *     - lookups arrive as a Poisson process, start at a random live node and are routed iteratively with the
+ *       (possibly stale) fingers and successor lists of the nodes
+ *
+ * Nodes are identified by slots. The slot of a node is never reused, so the fingers of other nodes can keep pointing
+ * to a node after it has left, like a stale address. Sending a request to a departed node costs a timeout.
+ *
+ * Nodes of the initial ring can share an index. The ring is therefore ordered by (index, slot), and an index of the
+ * ring is placed before the nodes with that index, so the node with the lowest slot of a run of nodes with the same
+ * index owns the range of the run and the others own nothing. This is the order ChordProtocol links the nodes in, as
+ * slot i is the node with handle i. New nodes take an index no live node has.
+ *
+ * Messages are counted as in iterative routing: every request to a live node is two messages (request and reply),
+ * and every request to a departed node is one message.
+ */
+public class ChurnSimulation {
+
+    private static final int JOIN = 0;
+    private static final int DEPART = 1;
+    private static final int STABILIZE = 2;
+    private static final int FIX_FINGERS = 3;
+    private static final int LOOKUP = 4;
+    private static final int SAMPLE = 5;
+
+    public ChurnConfig config;
+    public ChurnReport report;
+
+    // length of the identifiers, and number of identifiers in the ring (2^m)
+    private final int m;
+    private final long ringSize;
+
+    // hash function of new node names, and the number of the next new node ('Node n')
+    private final ConsistentHashing hash;
+    private int nextNodeNumber;
+
+    // indexes of the keys that are looked up, by key number, and the distribution of the requested keys
+    private final KeyStream keyStream;
+    private final KeyDistribution keys;
+
+    private final SessionTimeDistribution sessionTimes;
+    private final Random random;
+
+    // state of the nodes, by slot
+    private int slotCount;
+    private int[] ids;
+    private boolean[] alive;
+    private int[][] successors;
+    private int[] predecessors;
+    private int[][] fingers;
+
+    // live nodes by their position in the ring, (index << 32 | slot). See key()
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    // live slots, so a random live node can be chosen in constant time. position[slot] is the position in liveSlots
+    private int[] liveSlots;
+    private int[] position;
+    private int liveCount;
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long eventSequence;
+    private double now;
+
+    // statistics of the last call to route()
+    private final Route route = new Route();
+
+
+    /**
+     * creates the churn simulation from a built chord ring. Node i of the arrays gets slot i.
+     *
+     * @param config the churn config
+     * @param m length of the identifiers
+     * @param nodeIds index of each node in the ring
+     * @param nodeFingers finger table of each node, as node numbers (positions in nodeIds)
+     * @param keyStream the keys, which give the index of a key by number
+     * @param keys distribution of the requested keys
+     * @param hash hash function used for the names of new nodes
+     * @param nextNodeNumber number of the first new node
+     */
+    public ChurnSimulation(ChurnConfig config, int m, int[] nodeIds, int[][] nodeFingers, KeyStream keyStream,
+                           KeyDistribution keys, ConsistentHashing hash, int nextNodeNumber){
+        this.config = config;
+        this.report = new ChurnReport();
+        this.m = m;
+        this.ringSize = 1L << m;
+        this.keyStream = keyStream;
+        this.keys = keys;
+        this.hash = hash;
+        this.nextNodeNumber = nextNodeNumber;
+        this.sessionTimes = config.createSessionTimes();
+        this.random = new Random(config.seed);
+
+        int capacity = Math.max(16, nodeIds.length * 2);
+        this.ids = new int[capacity];
+        this.alive = new boolean[capacity];
+        this.successors = new int[capacity][];
+        this.predecessors = new int[capacity];
+        this.fingers = new int[capacity][];
+        this.liveSlots = new int[capacity];
+        this.position = new int[capacity];
+
+        for(int i = 0; i < nodeIds.length; i++){
+            int slot = newSlot(nodeIds[i]);
+            fingers[slot] = Arrays.copyOf(nodeFingers[i], m);
+            addLive(slot);
+        }
+        // the initial ring is stabilized: successor lists and predecessors are correct
+        for(int slot = 0; slot < slotCount; slot++){
+            fillSuccessorList(slot);
+            Map.Entry<Long, Integer> predecessor = ring.lowerEntry(key(slot));
+            predecessors[slot] = (predecessor != null ? predecessor : ring.lastEntry()).getValue();
+        }
+    }
+
+
+    /**
+     * runs the simulation for the configured duration
+     * @return the statistics of the simulation
+     */
+    public ChurnReport run(){
+        Log.info("\tSimulating churn: " + config);
+        for(int i = 0; i < liveCount; i++){
+            scheduleNode(liveSlots[i], random.nextDouble());
+        }
+        double arrivalRate = config.getArrivalRate(liveCount);
+        if(arrivalRate > 0){
+            schedule(exponential(arrivalRate), JOIN, -1);
+        }
+        if(config.lookupRate > 0){
+            schedule(exponential(config.lookupRate), LOOKUP, -1);
+        }
+        schedule(config.fixFingersInterval, SAMPLE, -1);
+
+        while(!events.isEmpty() && events.peek().time <= config.duration){
+            Event event = events.poll();
+            advance(event.time);
+            switch (event.type) {
+                case JOIN:
+                    join();
+                    schedule(now + exponential(arrivalRate), JOIN, -1);
+                    break;
+                case DEPART:
+                    if(alive[event.slot]){
+                        depart(event.slot);
+                    }
+                    break;
+                case STABILIZE:
+                    if(alive[event.slot]){
+                        stabilize(event.slot);
+                        schedule(now + config.stabilizeInterval, STABILIZE, event.slot);
+                    }
+                    break;
+                case FIX_FINGERS:
+                    if(alive[event.slot]){
+                        fixFingers(event.slot, false);
+                        schedule(now + config.fixFingersInterval, FIX_FINGERS, event.slot);
+                    }
+                    break;
+                case LOOKUP:
+                    lookUp(keyStream.index(keys.sample(random)));
+                    schedule(now + exponential(config.lookupRate), LOOKUP, -1);
+                    break;
+                case SAMPLE:
+                    sampleRoutingState();
+                    schedule(now + config.fixFingersInterval, SAMPLE, -1);
+                    break;
+            }
+        }
+        advance(config.duration);
+        return report;
+    }
+
+
+    /**
+     * moves the simulated time forward and adds the elapsed live node time to the report
+     */
+    private void advance(double time){
+        double from = Math.max(now, config.warmup);
+        if(time > from){
+            report.seconds += time - from;
+            report.nodeSeconds += (time - from) * liveCount;
+        }
+        now = time;
+    }
+
+
+    private boolean measuring(){
+        return now >= config.warmup;
+    }
+
+
+    /**
+     * a new node joins: it asks a random live node for its successor, copies the successor list of the successor and
+     * builds its finger table
+     */
+    private void join(){
+        if(liveCount >= ringSize){
+            return;
+        }
+        int id;
+        do {
+            id = hash.hash("Node " + nextNodeNumber++);
+        } while(idTaken(id));
+
+        int successor;
+        long messages = 0;
+        if(liveCount == 0){
+            successor = -1;
+        }
+        else {
+            successor = route(randomLiveNode(), id);
+            messages += route.messages;
+            if(successor < 0){
+                if(measuring()){
+                    report.failedJoins++;
+                    report.joinMessages += messages;
+                }
+                return;
+            }
+        }
+
+        int slot = newSlot(id);
+        successors[slot] = new int[config.successorListSize];
+        Arrays.fill(successors[slot], -1);
+        fingers[slot] = new int[m];
+        Arrays.fill(fingers[slot], -1);
+        predecessors[slot] = -1;
+        if(successor < 0){
+            successors[slot][0] = slot;
+        }
+        else {
+            copySuccessorList(slot, successor);
+        }
+        addLive(slot);
+
+        if(measuring()){
+            report.joins++;
+            report.joinMessages += messages + fixFingers(slot, true);
+        }
+        else {
+            fixFingers(slot, true);
+        }
+        scheduleNode(slot, 0);
+    }
+
+
+    /**
+     * a node leaves the network without notice
+     */
+    private void depart(int slot){
+        alive[slot] = false;
+        ring.remove(key(slot));
+        int last = liveSlots[--liveCount];
+        liveSlots[position[slot]] = last;
+        position[last] = position[slot];
+        if(measuring()){
+            report.departures++;
+        }
+    }
+
+
+    /**
+     * stabilize() of the chord paper: the node asks its successor for its predecessor, adopts it as successor if it
+     * lies between them, notifies the successor and copies its successor list. It also checks that its predecessor
+     * is alive
+     */
+    private void stabilize(int slot){
+        long messages = 0;
+        int successor = -1;
+        for(int candidate : successors[slot]){
+            if(candidate < 0){
+                continue;
+            }
+            if(alive[candidate]){
+                successor = candidate;
+                break;
+            }
+            messages++;
+        }
+        if(successor < 0){
+            // every successor has left: the node joins the ring again through a random node
+            int bootstrap = randomLiveNode();
+            successor = route(bootstrap, (int) ((ids[slot] + 1L) % ringSize));
+            messages += route.messages;
+            if(successor < 0){
+                countStabilize(messages);
+                return;
+            }
+        }
+
+        // get the predecessor of the successor. A node that is alone in the ring is its own successor, and adopts
+        // the first node that has notified it
+        if(successor != slot){
+            messages += 2;
+        }
+        int candidate = predecessors[successor];
+        if(candidate >= 0 && alive[candidate] && inOpen(key(candidate), key(slot), key(successor))){
+            successor = candidate;
+            messages += 2;
+        }
+        if(successor != slot){
+            // notify the successor, the successor list is returned with the reply
+            messages += 2;
+            notify(successor, slot);
+            copySuccessorList(slot, successor);
+        }
+
+        // check the predecessor
+        int predecessor = predecessors[slot];
+        if(predecessor >= 0){
+            if(alive[predecessor]){
+                messages += 2;
+            }
+            else {
+                messages++;
+                predecessors[slot] = -1;
+            }
+        }
+        countStabilize(messages);
+    }
+
+
+    private void countStabilize(long messages){
+        if(measuring()){
+            report.stabilizeMessages += messages;
+        }
+    }
+
+
+    /**
+     * notify() of the chord paper: the node learns that candidate might be its predecessor
+     */
+    private void notify(int slot, int candidate){
+        int predecessor = predecessors[slot];
+        if(predecessor < 0 || !alive[predecessor] || inOpen(key(candidate), key(predecessor), key(slot))){
+            predecessors[slot] = candidate;
+        }
+    }
+
+
+    /**
+     * refreshes the finger table of a node. A finger whose start lies before the previous finger reuses it, as the
+     * chord paper suggests, every other finger is looked up
+     * @param joining true if the node is joining (the messages are counted by join())
+     * @return number of messages sent
+     */
+    private long fixFingers(int slot, boolean joining){
+        long messages = 0;
+        int[] table = fingers[slot];
+        for(int i = 0; i < m; i++){
+            int start = (int) ((ids[slot] + (1L << i)) % ringSize);
+            int previous = i > 0 ? table[i - 1] : -1;
+            if(previous >= 0 && alive[previous] && inHalfOpen(point(start), key(slot), key(previous))){
+                table[i] = previous;
+                continue;
+            }
+            int finger = route(slot, start);
+            messages += route.messages;
+            if(finger >= 0){
+                table[i] = finger;
+            }
+        }
+        if(!joining && measuring()){
+            report.fixFingersMessages += messages;
+        }
+        return messages;
+    }
+
+
+    /**
+     * looks up a key from a random live node and checks that it reaches the owner of the key
+     */
+    private void lookUp(int keyIndex){
+        if(liveCount == 0){
+            return;
+        }
+        int start = randomLiveNode();
+        int owner = route(start, keyIndex);
+        if(!measuring()){
+            return;
+        }
+        report.lookups++;
+        report.hops += route.hops;
+        report.fingerProbes += route.fingerProbes;
+        report.staleFingerProbes += route.staleFingers;
+        report.timeouts += route.timeouts;
+        if(owner < 0){
+            report.unroutedLookups++;
+        }
+        else if(owner != ownerOf(keyIndex)){
+            report.wrongOwnerLookups++;
+        }
+        else {
+            report.successfulLookups++;
+            report.extraHops += route.hops - stabilizedHops(ids[start], keyIndex);
+        }
+    }
+
+
+    /**
+     * routes a request for an index from a node, using the fingers and successor lists of the nodes. The statistics
+     * of the routing are left in route
+     * @param start slot of the node the request starts from
+     * @param index the index
+     * @return slot of the node that is found to own the index, or -1 if the request could not be routed
+     */
+    private int route(int start, int index){
+        route.reset();
+        int maxHops = 4 * m + config.successorListSize;
+        int current = start;
+        while(true){
+            // a node whose predecessor is known checks its range, as a node with the same index as its predecessor
+            // owns nothing. Otherwise it only knows that it owns its own index
+            int predecessor = predecessors[current];
+            boolean owner = predecessor >= 0 && alive[predecessor]
+                    ? inHalfOpen(point(index), key(predecessor), key(current)) : ids[current] == index;
+            if(owner){
+                return current;
+            }
+
+            int successor = -1;
+            for(int candidate : successors[current]){
+                if(candidate < 0){
+                    continue;
+                }
+                if(alive[candidate]){
+                    successor = candidate;
+                    break;
+                }
+                route.timeouts++;
+                route.messages++;
+            }
+            if(successor < 0){
+                return -1;
+            }
+            if(successor == current || inHalfOpen(point(index), key(current), key(successor))){
+                return successor;
+            }
+
+            int next = closestPrecedingNode(current, index);
+            if(next < 0){
+                next = successor;
+            }
+            if(route.hops >= maxHops){
+                return -1;
+            }
+            route.hops++;
+            route.messages += 2;
+            current = next;
+        }
+    }
+
+
+    /**
+     * finds the live node in the finger table or successor list of a node that most closely precedes an index.
+     * Fingers to departed nodes are counted as stale
+     * @return the slot of the node, or -1 if no known node precedes the index
+     */
+    private int closestPrecedingNode(int slot, int index){
+        long current = key(slot);
+        long target = point(index);
+        int best = -1;
+        int[] table = fingers[slot];
+        for(int i = m - 1; i >= 0; i--){
+            int finger = table[i];
+            if(finger < 0 || finger == slot || !inOpen(key(finger), current, target)){
+                continue;
+            }
+            route.fingerProbes++;
+            if(alive[finger]){
+                best = finger;
+                break;
+            }
+            route.staleFingers++;
+            route.timeouts++;
+            route.messages++;
+        }
+        for(int candidate : successors[slot]){
+            if(candidate >= 0 && candidate != slot && alive[candidate] && inOpen(key(candidate), current, target)
+                    && (best < 0 || distance(ids[candidate], index) < distance(ids[best], index))){
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * counts the hops of a lookup on a stabilized ring with the current nodes, routed the same way as route()
+     * @param startId index of the node the lookup starts from
+     * @param index the index that is looked up
+     * @return number of hops
+     */
+    private int stabilizedHops(int startId, int index){
+        int hops = 0;
+        int current = startId;
+        while(true){
+            if(current == index || inHalfOpen(index, predecessorId(current), current)){
+                return hops;
+            }
+            int successor = successorId((int) ((current + 1L) % ringSize));
+            if(inHalfOpen(index, current, successor)){
+                return hops;
+            }
+            int next = successor;
+            for(int i = m - 1; i >= 0; i--){
+                int finger = successorId((int) ((current + (1L << i)) % ringSize));
+                if(inOpen(finger, current, index)){
+                    next = finger;
+                    break;
+                }
+            }
+            int candidate = current;
+            for(int i = 0; i < config.successorListSize; i++){
+                candidate = successorId((int) ((candidate + 1L) % ringSize));
+                if(inOpen(candidate, current, index) && distance(candidate, index) < distance(next, index)){
+                    next = candidate;
+                }
+            }
+            hops++;
+            current = next;
+        }
+    }
+
+
+    /**
+     * compares the routing state of the live nodes with a stabilized ring
+     */
+    private void sampleRoutingState(){
+        if(!measuring()){
+            return;
+        }
+        for(int i = 0; i < liveCount; i++){
+            int slot = liveSlots[i];
+            int[] table = fingers[slot];
+            for(int f = 0; f < m; f++){
+                int expected = ownerOf((int) ((ids[slot] + (1L << f)) % ringSize));
+                report.sampledFingers++;
+                if(table[f] != expected){
+                    report.sampledStaleFingers++;
+                }
+            }
+            report.sampledSuccessors++;
+            if(successors[slot][0] == ownerOf((int) ((ids[slot] + 1L) % ringSize))){
+                report.sampledCorrectSuccessors++;
+            }
+        }
+    }
+
+
+    /**
+     * sets the successor list of a node from the ring (only used for the initial, stabilized ring)
+     */
+    private void fillSuccessorList(int slot){
+        int[] list = new int[config.successorListSize];
+        Arrays.fill(list, -1);
+        long key = key(slot);
+        for(int i = 0; i < list.length && i < liveCount - 1; i++){
+            Map.Entry<Long, Integer> next = ring.higherEntry(key);
+            if(next == null){
+                next = ring.firstEntry();
+            }
+            list[i] = next.getValue();
+            key = next.getKey();
+        }
+        if(liveCount == 1){
+            list[0] = slot;
+        }
+        successors[slot] = list;
+    }
+
+
+    /**
+     * sets the successor list of a node to its successor followed by the successor list of the successor
+     */
+    private void copySuccessorList(int slot, int successor){
+        int[] list = successors[slot];
+        int[] next = successors[successor];
+        list[0] = successor;
+        for(int i = 1; i < list.length; i++){
+            int entry = next[i - 1];
+            list[i] = entry != slot ? entry : -1;
+        }
+    }
+
+
+    /**
+     * schedules the departure and the periodic maintenance of a node
+     * @param phase share of the maintenance intervals before the first run, so the nodes do not run in lockstep
+     */
+    private void scheduleNode(int slot, double phase){
+        schedule(now + sessionTimes.sample(random), DEPART, slot);
+        schedule(now + phase * config.stabilizeInterval, STABILIZE, slot);
+        schedule(now + (phase > 0 ? phase : 1) * config.fixFingersInterval, FIX_FINGERS, slot);
+    }
+
+
+    private void schedule(double time, int type, int slot){
+        events.add(new Event(time, type, slot, eventSequence++));
+    }
+
+
+    private double exponential(double rate){
+        return -Math.log(1 - random.nextDouble()) / rate;
+    }
+
+
+    private int newSlot(int id){
+        if(slotCount == ids.length){
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            alive = Arrays.copyOf(alive, capacity);
+            successors = Arrays.copyOf(successors, capacity);
+            predecessors = Arrays.copyOf(predecessors, capacity);
+            fingers = Arrays.copyOf(fingers, capacity);
+            liveSlots = Arrays.copyOf(liveSlots, capacity);
+            position = Arrays.copyOf(position, capacity);
+        }
+        int slot = slotCount++;
+        ids[slot] = id;
+        return slot;
+    }
+
+
+    private void addLive(int slot){
+        alive[slot] = true;
+        ring.put(key(slot), slot);
+        position[slot] = liveCount;
+        liveSlots[liveCount++] = slot;
+    }
+
+
+    private int randomLiveNode(){
+        return liveSlots[random.nextInt(liveCount)];
+    }
+
+
+    /**
+     * @return the slot of the live node that owns an index (the first live node at or after the index)
+     */
+    private int ownerOf(int index){
+        Map.Entry<Long, Integer> owner = ring.ceilingEntry(point(index));
+        return (owner != null ? owner : ring.firstEntry()).getValue();
+    }
+
+
+    private int successorId(int index){
+        Long key = ring.ceilingKey(point(index));
+        return (int) ((key != null ? key : ring.firstKey()) >> 32);
+    }
+
+
+    private int predecessorId(int id){
+        Long key = ring.lowerKey(point(id));
+        return (int) ((key != null ? key : ring.lastKey()) >> 32);
+    }
+
+
+    /**
+     * @return true if a live node has an index
+     */
+    private boolean idTaken(int id){
+        Long key = ring.ceilingKey(point(id));
+        return key != null && (int) (key >> 32) == id;
+    }
+
+
+    /**
+     * @return the position of a node in the ring: its index, then its slot for nodes with the same index
+     */
+    private long key(int slot){
+        return ((long) ids[slot] << 32) | slot;
+    }
+
+
+    /**
+     * @return the position of an index in the ring, before the nodes with that index
+     */
+    private static long point(int index){
+        return (long) index << 32;
+    }
+
+
+    /**
+     * @return distance from an index to another, clockwise
+     */
+    private long distance(int from, int to){
+        return ((long) to - from + ringSize) % ringSize;
+    }
+
+
+    /**
+     * @return true if x lies in the ring interval (from, to). If from equals to, the interval is the whole ring
+     *         except from
+     */
+    private boolean inOpen(int x, int from, int to){
+        if(from < to){
+            return from < x && x < to;
+        }
+        return x > from || x < to || (from == to && x != from);
+    }
+
+
+    /**
+     * @return true if x lies in the ring interval (from, to]. If from equals to, the interval is the whole ring
+     */
+    private boolean inHalfOpen(int x, int from, int to){
+        if(from < to){
+            return from < x && x <= to;
+        }
+        return x > from || x <= to;
+    }
+
+
+    /**
+     * inOpen() for positions in the ring (see key())
+     */
+    private static boolean inOpen(long x, long from, long to){
+        if(from < to){
+            return from < x && x < to;
+        }
+        return x > from || x < to || (from == to && x != from);
+    }
+
+
+    /**
+     * inHalfOpen() for positions in the ring (see key())
+     */
+    private static boolean inHalfOpen(long x, long from, long to){
+        if(from < to){
+            return from < x && x <= to;
+        }
+        return x > from || x <= to;
+    }
+
+
+    /**
+     * statistics of one routed request
+     */
+    private static final class Route {
+        int hops;
+        int timeouts;
+        int fingerProbes;
+        int staleFingers;
+        long messages;
+
+        void reset(){
+            hops = 0;
+            timeouts = 0;
+            fingerProbes = 0;
+            staleFingers = 0;
+            messages = 0;
+        }
+    }
+
+
+    /**
+     * an event of the simulation. Events with the same time are handled in the order they were scheduled
+     */
+    private static final class Event implements Comparable<Event> {
+        final double time;
+        final int type;
+        final int slot;
+        final long sequence;
+
+        Event(double time, int type, int slot, long sequence){
+            this.time = time;
+            this.type = type;
+            this.slot = slot;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Event other){
+            int order = Double.compare(time, other.time);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package churn;
+
+import java.util.Random;
+
+/**
+ * Exponentially distributed session times. Departures are memoryless, so together with Poisson arrivals the number of
+ * nodes in the network follows a birth-death process.
+ */
+public class ExponentialSessionTime implements SessionTimeDistribution {
+
+    // mean session time in seconds
+    public double mean;
+
+    public ExponentialSessionTime(double mean){
+        if(mean <= 0){
+            throw new IllegalArgumentException("the mean session time must be positive");
+        }
+        this.mean = mean;
+    }
+
+    public double sample(Random random){
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    public double getMean(){
+        return mean;
+    }
+
+    public String toString(){
+        return "exp:" + mean;
+    }
+}
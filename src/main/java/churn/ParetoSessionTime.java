@@ -0,0 +1,40 @@
+package churn;
+
+import java.util.Random;
+
+/**
+ * Pareto distributed session times. Measured peer-to-peer session times are heavy tailed: most nodes leave soon after
+ * joining, while a few stay for a very long time. The shape must be larger than 1 for the mean to exist.
+ */
+public class ParetoSessionTime implements SessionTimeDistribution {
+
+    // mean session time in seconds
+    public double mean;
+
+    // shape (tail index) of the distribution, smaller values give heavier tails
+    public double shape;
+
+    // smallest possible session time, derived from the mean and the shape
+    private double scale;
+
+    public ParetoSessionTime(double mean, double shape){
+        if(mean <= 0 || shape <= 1){
+            throw new IllegalArgumentException("pareto session times need a positive mean and a shape above 1");
+        }
+        this.mean = mean;
+        this.shape = shape;
+        this.scale = mean * (shape - 1) / shape;
+    }
+
+    public double sample(Random random){
+        return scale / Math.pow(1 - random.nextDouble(), 1 / shape);
+    }
+
+    public double getMean(){
+        return mean;
+    }
+
+    public String toString(){
+        return "pareto:" + mean + ":" + shape;
+    }
+}
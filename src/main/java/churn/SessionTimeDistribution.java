@@ -0,0 +1,22 @@
+package churn;
+
+import java.util.Random;
+
+/**
+ * A session time distribution decides how long a node stays in the network after it has joined.
+ */
+public interface SessionTimeDistribution {
+
+    /**
+     * draws the next session time
+     * @param random the random generator of the churn simulation. All randomness should come from it, so that a
+     *               simulation is reproducible from its seed
+     * @return session time in seconds
+     */
+    double sample(Random random);
+
+    /**
+     * @return the mean session time in seconds
+     */
+    double getMean();
+}
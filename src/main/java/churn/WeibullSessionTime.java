@@ -0,0 +1,63 @@
+package churn;
+
+import java.util.Random;
+
+/**
+ * Weibull distributed session times. A shape below 1 gives a decreasing departure rate (nodes that have stayed long
+ * tend to stay longer), a shape of 1 is the exponential distribution.
+ */
+public class WeibullSessionTime implements SessionTimeDistribution {
+
+    // mean session time in seconds
+    public double mean;
+
+    // shape of the distribution
+    public double shape;
+
+    // scale of the distribution, derived from the mean and the shape
+    private double scale;
+
+    public WeibullSessionTime(double mean, double shape){
+        if(mean <= 0 || shape <= 0){
+            throw new IllegalArgumentException("weibull session times need a positive mean and shape");
+        }
+        this.mean = mean;
+        this.shape = shape;
+        this.scale = mean / gamma(1 + 1 / shape);
+    }
+
+    public double sample(Random random){
+        return scale * Math.pow(-Math.log(1 - random.nextDouble()), 1 / shape);
+    }
+
+    public double getMean(){
+        return mean;
+    }
+
+
+    /**
+     * the gamma function, calculated with the Lanczos approximation
+     * @param x argument, must be positive
+     * @return gamma(x)
+     */
+    static double gamma(double x){
+        if(x < 0.5){
+            // reflection formula
+            return Math.PI / (Math.sin(Math.PI * x) * gamma(1 - x));
+        }
+        double[] coefficients = {0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313,
+                -176.61502916214059, 12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6,
+                1.5056327351493116e-7};
+        x -= 1;
+        double sum = coefficients[0];
+        for(int i = 1; i < coefficients.length; i++){
+            sum += coefficients[i] / (x + i);
+        }
+        double t = x + coefficients.length - 1.5;
+        return Math.sqrt(2 * Math.PI) * Math.pow(t, x + 0.5) * Math.exp(-t) * sum;
+    }
+
+    public String toString(){
+        return "weibull:" + mean + ":" + shape;
+    }
+}
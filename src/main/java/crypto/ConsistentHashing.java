@@ -1,6 +1,5 @@
 package crypto;
 
-import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -20,6 +19,18 @@ public class ConsistentHashing {
     // length of the identifier
     public int m;
 
+    // optional cache of digests, shared between hash functions with different m values
+    public HashCache cache;
+
+    // MessageDigest objects are not thread safe, so each thread gets its own
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     /**
      *
      * @param m the length of the hash value in bits
@@ -28,6 +39,16 @@ public class ConsistentHashing {
         this.m=m;
     }
 
+    /**
+     *
+     * @param m the length of the hash value in bits
+     * @param cache cache of digests that is used instead of calculating the digest of every name again
+     */
+    public ConsistentHashing(int m, HashCache cache){
+        this.m=m;
+        this.cache=cache;
+    }
+
     /*
 
 
@@ -42,27 +63,41 @@ public class ConsistentHashing {
      */
     public int hash(String data){
 
+        long digest = (cache != null) ? cache.digest(data) : digest64(data);
+        return index(digest);
+    }
 
-        MessageDigest md = null;
-        try {
-            md = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        }
-        // digest() method is called to calculate message digest
-        // of an input digest() return array of byte
-        byte[] messageDigest = md.digest(data.getBytes());
-
-        // Convert byte array into signum representation
-        BigInteger res = new BigInteger(1, messageDigest);
 
+    /**
+     * Calculates the index of a digest in the ring
+     * @param digest the digest of the data, as returned by digest64()
+     * @return hash value (the integer value from 0 to 2^m that indicates the placement of data in the ring).
+     */
+    public int index(long digest){
+        // consistent hashing function - hash mod 2^m. The digest is a big endian number, so hash mod 2^m is given by
+        // its lowest m bits. (for m >= 32 the int value is the lowest 32 bits, as BigInteger.intValue() would return)
+        if(m >= 32){
+            return (int) digest;
+        }
+        return (int) (digest & ((1L << m) - 1));
+    }
 
-        // consistent hashing function - hash mod 2^m
-        BigInteger length = BigInteger.valueOf((long) Math.pow(2, m));
-        res = res.mod(length);
 
-        return res.intValue();
+    /**
+     * Calculates the lowest 64 bits of the MD5 digest of the data
+     * @param data the data can be any String object
+     * @return the last 8 bytes of the digest as a big endian number
+     */
+    public static long digest64(String data){
+        // digest() method is called to calculate message digest
+        // of an input digest() return array of byte
+        byte[] messageDigest = MD5.get().digest(data.getBytes());
 
+        long digest = 0;
+        for(int i = messageDigest.length - 8; i < messageDigest.length; i++){
+            digest = (digest << 8) | (messageDigest[i] & 0xff);
+        }
+        return digest;
     }
 
 
@@ -0,0 +1,74 @@
+package crypto;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class caches the MD5 digests of names (eg:- "Node 1", "key 1"). Only the lowest 64 bits of the digest are
+ * stored, as the consistent hash function only uses the lowest m bits. The cached values do not depend on m, so one
+ * cache can be shared by simulations with different m values, also when they run concurrently.
+ *
+ * The cache keeps every name it is given, so the simulator only hashes the key names with the cache when cacheKeys is
+ * set. Otherwise the cache holds the node names, and does not grow with the number of keys.
+ */
+public class HashCache {
+
+    // lowest 64 bits of the MD5 digest of each name
+    private final ConcurrentHashMap<String, Long> digests;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // true if the digests of key names are cached as well as the digests of node names
+    public final boolean cacheKeys;
+
+    public HashCache(){
+        this(false);
+    }
+
+    /**
+     * @param cacheKeys true to cache the digests of key names too
+     */
+    public HashCache(boolean cacheKeys){
+        this.digests = new ConcurrentHashMap<>();
+        this.cacheKeys = cacheKeys;
+    }
+
+    /**
+     * returns the lowest 64 bits of the MD5 digest of the name, calculating it if it is not cached
+     * @param name the name to hash
+     * @return lowest 64 bits of the digest
+     */
+    public long digest(String name){
+        Long digest = digests.get(name);
+        if(digest != null){
+            hits.increment();
+            return digest;
+        }
+        misses.increment();
+        long value = ConsistentHashing.digest64(name);
+        digests.putIfAbsent(name, value);
+        return value;
+    }
+
+    /**
+     * @return number of cached names
+     */
+    public int size(){
+        return digests.size();
+    }
+
+    /**
+     * @return number of digests returned from the cache
+     */
+    public long getHits(){
+        return hits.sum();
+    }
+
+    /**
+     * @return number of digests that had to be calculated
+     */
+    public long getMisses(){
+        return misses.sum();
+    }
+}
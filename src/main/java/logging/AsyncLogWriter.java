@@ -0,0 +1,104 @@
+package logging;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class writes log lines on a background thread. Lines are put in a bounded ring buffer, and a single writer
+ * thread takes them out and prints them. Adding a line never waits for I/O and never blocks: if the buffer is full
+ * the line is dropped and counted, so a slow console cannot slow down the simulation.
+ */
+public class AsyncLogWriter {
+
+    private final AtomicReferenceArray<String> buffer;
+    private final int capacity;
+
+    // sequence number of the next line to be claimed by a producer, and of the next line the writer prints
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final LongAdder dropped = new LongAdder();
+    private final PrintStream out;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+
+    public AsyncLogWriter(PrintStream out, int capacity){
+        this.out = out;
+        this.capacity = capacity;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.writer = new Thread(this::drain, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+
+    /**
+     * adds a line to the buffer
+     * @param line the line
+     * @return true if the line was added, false if the buffer was full and the line was dropped
+     */
+    public boolean write(String line){
+        long sequence;
+        do {
+            sequence = tail.get();
+            if(sequence - head >= capacity){
+                dropped.increment();
+                return false;
+            }
+        } while(!tail.compareAndSet(sequence, sequence + 1));
+        buffer.lazySet((int) (sequence % capacity), line);
+        return true;
+    }
+
+
+    /**
+     * the loop of the writer thread: prints lines in the order they were claimed
+     */
+    private void drain(){
+        while(running || head < tail.get()){
+            int slot = (int) (head % capacity);
+            String line = buffer.get(slot);
+            if(line == null){
+                if(head < tail.get()){
+                    // a producer has claimed the slot but not filled it yet
+                    Thread.yield();
+                }
+                else {
+                    out.flush();
+                    LockSupport.parkNanos(1000000);
+                }
+                continue;
+            }
+            buffer.set(slot, null);
+            head = head + 1;
+            out.println(line);
+        }
+        out.flush();
+    }
+
+
+    /**
+     * @return number of lines dropped because the buffer was full
+     */
+    public long getDropped(){
+        return dropped.sum();
+    }
+
+
+    /**
+     * prints the remaining lines and stops the writer thread
+     */
+    public void close(){
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package logging;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class is the logging layer of the simulator. Messages are written through an AsyncLogWriter, so logging never
+ * waits for the console or a file.
+ *
+ * Callers check enabled() before building a message, so disabled and sampled out messages cost only the check:
+ *
+ *     if (Log.enabled(LogEvent.FINGER_BUILD)) Log.log(LogEvent.FINGER_BUILD, "Added entry " + i);
+ *
+ * enabled() applies both the level and the sampling rate of the event type. With a sampling rate n only every nth
+ * event of the type is enabled.
+ */
+public class Log {
+
+    // number of lines the ring buffer holds before lines are dropped
+    public static final int BUFFER_CAPACITY = 1 << 16;
+
+    // topology dumps are off by default for networks with more nodes than this
+    public static final int DEFAULT_TOPOLOGY_MAX_NODES = 1000;
+
+    private static LogLevel level = LogLevel.INFO;
+
+    // sampling rate of each event type (1 means every event)
+    private static final int[] sampleRates = new int[LogEvent.values().length];
+
+    // number of times enabled() has been called for each event type that passed the level check
+    private static final AtomicLongArray sampleCounters = new AtomicLongArray(LogEvent.values().length);
+
+    // largest network whose topology is dumped. -1 means always, 0 means never
+    private static int topologyMaxNodes = DEFAULT_TOPOLOGY_MAX_NODES;
+
+    private static volatile AsyncLogWriter writer;
+
+    static {
+        java.util.Arrays.fill(sampleRates, 1);
+    }
+
+
+    /**
+     * configures the logging from the command line options:
+     *     --log-level &lt;level&gt;              error, warn, info (default), debug or trace
+     *     --log-sample &lt;event=n,...&gt;       write only every nth event of the type (eg:- finger_build=100)
+     *     --log-topology &lt;always|never|n&gt;  dump the topology always, never or for networks of at most n nodes
+     *     --log-file &lt;file&gt;               write to a file instead of the console
+     *
+     * @param options options parsed by Simulator.parseOptions()
+     */
+    public static synchronized void configure(HashMap<String, String> options){
+        if(options.containsKey("log-level")){
+            level = LogLevel.valueOf(options.get("log-level").toUpperCase());
+        }
+        if(options.containsKey("log-sample")){
+            for(String sample : options.get("log-sample").split(",")){
+                String[] parts = sample.split("=");
+                setSampleRate(LogEvent.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+            }
+        }
+        if(options.containsKey("log-topology")){
+            String topology = options.get("log-topology");
+            topologyMaxNodes = topology.equals("always") ? -1 : topology.equals("never") ? 0
+                    : Integer.parseInt(topology);
+        }
+        if(options.containsKey("log-file")){
+            try {
+                setOutput(new PrintStream(options.get("log-file"), "UTF-8"));
+            } catch (FileNotFoundException | java.io.UnsupportedEncodingException e) {
+                throw new IllegalArgumentException("could not open log file " + options.get("log-file"), e);
+            }
+        }
+    }
+
+
+    public static void setLevel(LogLevel newLevel){
+        level = newLevel;
+    }
+
+
+    public static LogLevel getLevel(){
+        return level;
+    }
+
+
+    /**
+     * sets the sampling rate of an event type
+     * @param event the event type
+     * @param rate write every rate-th event, 1 writes every event
+     */
+    public static void setSampleRate(LogEvent event, int rate){
+        if(rate < 1){
+            throw new IllegalArgumentException("sampling rate must be at least 1");
+        }
+        sampleRates[event.ordinal()] = rate;
+    }
+
+
+    /**
+     * sets where the log is written. The previous writer is flushed and closed.
+     * @param out the stream the log is written to
+     */
+    public static synchronized void setOutput(PrintStream out){
+        if(writer != null){
+            writer.close();
+        }
+        writer = new AsyncLogWriter(out, BUFFER_CAPACITY);
+    }
+
+
+    /**
+     * checks if an event should be logged. This applies the level and the sampling rate of the event type, so it
+     * should be called once per event, right before logging it.
+     * @param event the event type
+     * @return true if the event should be logged
+     */
+    public static boolean enabled(LogEvent event){
+        if(!level.includes(event.level)){
+            return false;
+        }
+        int rate = sampleRates[event.ordinal()];
+        return rate == 1 || sampleCounters.getAndIncrement(event.ordinal()) % rate == 0;
+    }
+
+
+    /**
+     * checks if the topology of a network should be dumped
+     * @param nodeCount number of nodes in the network
+     * @return true if topology dumps are enabled for networks of this size
+     */
+    public static boolean topologyEnabled(int nodeCount){
+        if(topologyMaxNodes >= 0 && nodeCount > topologyMaxNodes){
+            return false;
+        }
+        return enabled(LogEvent.TOPOLOGY);
+    }
+
+
+    /**
+     * logs a message. The caller should have checked enabled() for the event.
+     * @param event the event type
+     * @param message the message
+     */
+    public static void log(LogEvent event, String message){
+        getWriter().write(message);
+    }
+
+
+    /**
+     * logs a progress message if progress messages are enabled
+     * @param message the message
+     */
+    public static void info(String message){
+        if(enabled(LogEvent.PROGRESS)){
+            log(LogEvent.PROGRESS, message);
+        }
+    }
+
+
+    /**
+     * @return number of lines dropped because the writer could not keep up
+     */
+    public static long getDropped(){
+        return writer != null ? writer.getDropped() : 0;
+    }
+
+
+    /**
+     * writes the remaining lines. Should be called before the program exits.
+     */
+    public static synchronized void close(){
+        if(writer != null){
+            long dropped = writer.getDropped();
+            writer.close();
+            if(dropped > 0){
+                System.err.println(dropped + " log lines were dropped because the log writer could not keep up");
+            }
+            writer = null;
+        }
+    }
+
+
+    private static AsyncLogWriter getWriter(){
+        AsyncLogWriter current = writer;
+        if(current == null){
+            synchronized (Log.class){
+                if(writer == null){
+                    writer = new AsyncLogWriter(System.out, BUFFER_CAPACITY);
+                }
+                current = writer;
+            }
+        }
+        return current;
+    }
+}
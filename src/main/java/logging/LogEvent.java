@@ -0,0 +1,32 @@
+package logging;
+
+/**
+ * Types of events logged by the simulator. Each event type has a level, and can be sampled separately so that only
+ * every nth event of the type is written.
+ */
+public enum LogEvent {
+    // progress of the simulation (building, printing, looking up)
+    PROGRESS(LogLevel.INFO),
+    // summaries and results of the simulation (eg:- average hop count)
+    SUMMARY(LogLevel.INFO),
+    // dumps of the ring and network topology
+    TOPOLOGY(LogLevel.INFO),
+    // a lookup returned a wrong node
+    LOOKUP_FAILURE(LogLevel.WARN),
+    // full hop path of a lookup chosen by the lookup tracer
+    LOOKUP_TRACE(LogLevel.INFO),
+    // lookups started and completed
+    LOOKUP(LogLevel.DEBUG),
+    // the response of each lookup
+    LOOKUP_RESULT(LogLevel.DEBUG),
+    // finger table built for a node
+    NODE_BUILD(LogLevel.DEBUG),
+    // finger table entry added
+    FINGER_BUILD(LogLevel.TRACE);
+
+    public final LogLevel level;
+
+    LogEvent(LogLevel level){
+        this.level = level;
+    }
+}
@@ -0,0 +1,20 @@
+package logging;
+
+/**
+ * Levels of log messages, from the most to the least important. A message is written if its level is at or above the
+ * configured level (eg:- with level INFO, messages with level ERROR, WARN and INFO are written).
+ */
+public enum LogLevel {
+    ERROR,
+    WARN,
+    INFO,
+    DEBUG,
+    TRACE;
+
+    /**
+     * @return true if messages of the given level are written when this level is configured
+     */
+    public boolean includes(LogLevel level){
+        return level.ordinal() <= this.ordinal();
+    }
+}
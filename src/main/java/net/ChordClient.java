@@ -0,0 +1,172 @@
+package net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedHashSet;
+
+import p2p.NetworkInterface;
+import protocol.ChordProtocol;
+import protocol.LookUpResponse;
+import protocol.LookupTransport;
+
+/**
+ * This class sends requests to the nodes served by ChordServers. Lookups are iterative: the client asks the start node
+ * for the next node, then asks that node, and so on, exactly as ChordProtocol.lookUp() follows the finger tables. So
+ * the networked lookups visit the same nodes and return the same responses as the lookups in the heap.
+ *
+ * The client keeps one blocking connection to the server of each group, opened when it is first needed. A client is
+ * used by one thread at a time; threads that look up keys concurrently use their own client.
+ */
+public class ChordClient implements LookupTransport, Closeable {
+
+    // the protocol whose nodes are served. Its network is used to resolve the names of nodes in lookup responses,
+    // and lookups start from its start node
+    public ChordProtocol protocol;
+
+    // port of the server of each group
+    private final int[] ports;
+    private final SocketChannel[] channels;
+
+    private final ByteBuffer request = ByteBuffer.allocateDirect(WireFormat.REQUEST_SIZE);
+    private final ByteBuffer response = ByteBuffer.allocateDirect(WireFormat.RESPONSE_SIZE);
+    private int nextRequestId;
+
+    // status, node handle and ring index of the last response
+    private byte status;
+    private int node;
+    private int index;
+
+    // number of requests sent
+    private long requests;
+
+
+    /**
+     * @param protocol the protocol whose nodes are served. It only needs to be built when the first lookup is made
+     * @param ports port of the server of each group, the nodes of group g have handles h with h % ports.length == g
+     */
+    public ChordClient(ChordProtocol protocol, int[] ports){
+        this.protocol = protocol;
+        this.ports = ports;
+        this.channels = new SocketChannel[ports.length];
+    }
+
+
+    /**
+     * looks up a key over the network
+     * @param keyIndex index of the key
+     * @return names of the nodes whose finger tables have been checked and the node that owns the key
+     */
+    public LookUpResponse lookUp(int keyIndex){
+        NetworkInterface network = protocol.getNetwork();
+        LinkedHashSet<String> peersLookedUp = new LinkedHashSet<>();
+        int current = protocol.startNode.getHandle();
+        while(true){
+            send(WireFormat.FIND_SUCCESSOR, current, keyIndex, 0);
+            if(status == WireFormat.FOUND || status == WireFormat.NOT_FOUND){
+                break;
+            }
+            peersLookedUp.add(network.getNodeByHandle(current).getName());
+            if(status == WireFormat.STOP){
+                break;
+            }
+            current = node;
+        }
+        LookUpResponse response = new LookUpResponse(peersLookedUp, index, network.getNodeByHandle(current).getName());
+        response.key_stored = (status == WireFormat.FOUND);
+        return response;
+    }
+
+
+    /**
+     * asks a node if it stores a key
+     * @param handle handle of the node
+     * @param keyIndex index of the key
+     * @return true if the node stores the key
+     */
+    public boolean getKey(int handle, int keyIndex){
+        send(WireFormat.GET_KEY, handle, keyIndex, 0);
+        return status == WireFormat.FOUND;
+    }
+
+
+    /**
+     * tells a node that another node might be its predecessor (notify() of the chord paper)
+     * @param handle handle of the node
+     * @param candidateHandle handle of the candidate
+     * @param candidateIndex ring index of the candidate
+     * @return handle of the predecessor of the node after the request
+     */
+    public int notify(int handle, int candidateHandle, int candidateIndex){
+        send(WireFormat.NOTIFY, handle, candidateHandle, candidateIndex);
+        return node;
+    }
+
+
+    /**
+     * @return number of requests sent
+     */
+    public long getRequests(){
+        return requests;
+    }
+
+
+    /**
+     * sends a request to the server of a node and waits for the response
+     */
+    private void send(byte type, int handle, int argument1, int argument2){
+        int requestId = nextRequestId++;
+        try {
+            SocketChannel channel = channel(handle % ports.length);
+            request.clear();
+            WireFormat.putRequest(request, type, requestId, handle, argument1, argument2);
+            request.flip();
+            while(request.hasRemaining()){
+                channel.write(request);
+            }
+            response.clear();
+            while(response.hasRemaining()){
+                if(channel.read(response) < 0){
+                    throw new IOException("connection closed by the server of node " + handle);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        requests++;
+        response.flip();
+        response.get();
+        int responseId = response.getInt();
+        status = response.get();
+        node = response.getInt();
+        index = response.getInt();
+        if(responseId != requestId || status == WireFormat.ERROR){
+            throw new IllegalStateException("request " + requestId + " to node " + handle + " failed");
+        }
+    }
+
+
+    private SocketChannel channel(int group) throws IOException {
+        SocketChannel channel = channels[group];
+        if(channel == null){
+            channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", ports[group]));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channels[group] = channel;
+        }
+        return channel;
+    }
+
+
+    public void close() throws IOException {
+        for(int group = 0; group < channels.length; group++){
+            if(channels[group] != null){
+                channels[group].close();
+                channels[group] = null;
+            }
+        }
+    }
+}
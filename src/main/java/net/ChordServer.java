@@ -0,0 +1,311 @@
+package net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+import logging.Log;
+import p2p.NodeInterface;
+import protocol.ChordProtocol;
+
+/**
+ * This class exposes a group of nodes as a non-blocking NIO server on a loopback port. The nodes of group g are the
+ * nodes whose handle h satisfies h % groupCount == g. One thread runs the selector and handles every request of the
+ * group; requests are answered from the finger tables and data of the nodes (see WireFormat for the messages).
+ *
+ * The server keeps the predecessor of each of its nodes, which starts as the predecessor in the built ring and is
+ * changed by notify requests. It decides which keys a node owns with that predecessor. The predecessors are only read
+ * and written by the server thread, so notify requests do not change the ring of the protocol that other servers and
+ * lookups in the heap read.
+ *
+ * Clients may send several requests without waiting for the responses. The responses are sent in the order of the
+ * requests.
+ */
+public class ChordServer implements Runnable, Closeable {
+
+    // number of requests a connection can have in its buffers
+    private static final int PIPELINE_DEPTH = 256;
+
+    public ChordProtocol protocol;
+
+    // the group this server serves, and the number of groups
+    public int group;
+    public int groupCount;
+
+    // handle and ring index of the predecessor of each node of the group, at position handle / groupCount
+    private final int[] predecessorHandles;
+    private final int[] predecessorIndexes;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+    private Thread thread;
+
+
+    /**
+     * creates the server and binds it to a loopback port
+     * @param protocol the chord protocol, with the overlay network and finger tables built
+     * @param group the group of nodes this server serves
+     * @param groupCount number of groups
+     * @param port the port, 0 to choose a free port
+     */
+    public ChordServer(ChordProtocol protocol, int group, int groupCount, int port) throws IOException {
+        this.protocol = protocol;
+        this.group = group;
+        this.groupCount = groupCount;
+        int nodes = (protocol.network.getHandleLimit() + groupCount - 1) / groupCount;
+        this.predecessorHandles = new int[nodes];
+        this.predecessorIndexes = new int[nodes];
+        Arrays.fill(predecessorHandles, -1);
+        for(NodeInterface node : protocol.network.getTopology().values()){
+            int successor = node.getSuccessor().getHandle();
+            if(successor % groupCount == group){
+                predecessorHandles[successor / groupCount] = node.getHandle();
+                predecessorIndexes[successor / groupCount] = node.getId();
+            }
+        }
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort(){
+        return serverChannel.socket().getLocalPort();
+    }
+
+
+    /**
+     * starts the server thread
+     * @return this server
+     */
+    public ChordServer start(){
+        thread = new Thread(this, "chord-server-" + group);
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+
+    public void run(){
+        try {
+            while(running){
+                selector.select();
+                Set<SelectionKey> selected = selector.selectedKeys();
+                Iterator<SelectionKey> keys = selected.iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()){
+                        continue;
+                    }
+                    try {
+                        if(key.isAcceptable()){
+                            accept();
+                        }
+                        else {
+                            if(key.isReadable()){
+                                read(key);
+                            }
+                            if(key.isValid() && key.isWritable()){
+                                write(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // the client has gone away
+                        closeConnection(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if(running){
+                Log.info("Chord server " + group + " stopped: " + e);
+            }
+        }
+    }
+
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while((channel = serverChannel.accept()) != null){
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(selector, SelectionKey.OP_READ, new Connection());
+        }
+    }
+
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if(channel.read(connection.in) < 0){
+            closeConnection(key);
+            return;
+        }
+        handleRequests(connection);
+        write(key);
+    }
+
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        connection.out.flip();
+        channel.write(connection.out);
+        connection.out.compact();
+
+        // requests that waited for room in the output buffer can be handled now
+        if(connection.in.position() >= WireFormat.REQUEST_SIZE && handleRequests(connection) > 0){
+            connection.out.flip();
+            channel.write(connection.out);
+            connection.out.compact();
+        }
+        // stop reading while the input buffer is full, until the client has read some responses
+        int interest = connection.in.hasRemaining() ? SelectionKey.OP_READ : 0;
+        if(connection.out.position() > 0){
+            interest |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(interest);
+    }
+
+
+    /**
+     * handles the complete requests in the input buffer of a connection, as long as the responses fit in the output
+     * buffer
+     * @return number of requests handled
+     */
+    private int handleRequests(Connection connection){
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        in.flip();
+        int handled = 0;
+        while(in.remaining() >= WireFormat.REQUEST_SIZE && out.remaining() >= WireFormat.RESPONSE_SIZE){
+            byte type = in.get();
+            int requestId = in.getInt();
+            int handle = in.getInt();
+            int argument1 = in.getInt();
+            int argument2 = in.getInt();
+            handle(out, type, requestId, handle, argument1, argument2);
+            handled++;
+        }
+        in.compact();
+        return handled;
+    }
+
+
+    /**
+     * answers one request
+     */
+    private void handle(ByteBuffer out, byte type, int requestId, int handle, int argument1, int argument2){
+        NodeInterface node = (handle >= 0 && handle % groupCount == group)
+                ? protocol.network.getNodeByHandle(handle) : null;
+        if(node == null){
+            WireFormat.putResponse(out, type, requestId, WireFormat.ERROR, handle, -1);
+            return;
+        }
+
+        switch (type) {
+            case WireFormat.FIND_SUCCESSOR: {
+                // the same step as one iteration of ChordProtocol.lookUp()
+                if(protocol.owns(node, predecessorIndexes[handle / groupCount], argument1)){
+                    byte status = protocol.storesKey(node, argument1) ? WireFormat.FOUND : WireFormat.NOT_FOUND;
+                    WireFormat.putResponse(out, type, requestId, status, handle, node.getId());
+                    return;
+                }
+                NodeInterface next = protocol.nextHop(node, argument1);
+                if(next.equals(node)){
+                    WireFormat.putResponse(out, type, requestId, WireFormat.STOP, handle, node.getId());
+                }
+                else {
+                    WireFormat.putResponse(out, type, requestId, WireFormat.NEXT, next.getHandle(), next.getId());
+                }
+                return;
+            }
+            case WireFormat.NOTIFY: {
+                // the node adopts the candidate if it has no predecessor, or if the candidate lies between the
+                // predecessor and the node
+                int position = handle / groupCount;
+                int predecessorIndex = predecessorIndexes[position];
+                if(predecessorHandles[position] < 0 || between(argument2, predecessorIndex, node.getId())){
+                    predecessorHandles[position] = argument1;
+                    predecessorIndexes[position] = argument2;
+                }
+                WireFormat.putResponse(out, type, requestId, WireFormat.OK, predecessorHandles[position],
+                        predecessorIndexes[position]);
+                return;
+            }
+            case WireFormat.GET_KEY: {
+                byte status = protocol.storesKey(node, argument1) ? WireFormat.FOUND : WireFormat.NOT_FOUND;
+                WireFormat.putResponse(out, type, requestId, status, handle, node.getId());
+                return;
+            }
+            default:
+                WireFormat.putResponse(out, type, requestId, WireFormat.ERROR, handle, -1);
+        }
+    }
+
+
+    /**
+     * @return true if an index lies in the ring interval (from, to). If from equals to, the interval is the whole ring
+     *         except from
+     */
+    private boolean between(int index, int from, int to){
+        int distance = protocol.ringDistance(from, index);
+        int range = protocol.ringDistance(from, to);
+        return distance > 0 && (range == 0 || distance < range);
+    }
+
+
+    private void closeConnection(SelectionKey key){
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+
+    /**
+     * stops the server and closes its connections
+     */
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        if(thread != null){
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for(SelectionKey key : selector.keys()){
+            key.channel().close();
+        }
+        selector.close();
+        serverChannel.close();
+    }
+
+
+    /**
+     * buffers of one client connection
+     */
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocateDirect(PIPELINE_DEPTH * WireFormat.REQUEST_SIZE);
+        final ByteBuffer out = ByteBuffer.allocateDirect(PIPELINE_DEPTH * WireFormat.RESPONSE_SIZE);
+    }
+}
@@ -0,0 +1,332 @@
+package net;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logging.Log;
+import p2p.Network;
+import p2p.NodeInterface;
+import protocol.ChordProtocol;
+import protocol.ChordProtocolSimulator;
+import protocol.LatencyHistogram;
+import protocol.LookUpResponse;
+import protocol.Simulator;
+
+/**
+ * This class starts the nodes of a chord network as servers on loopback ports, in one or several local JVMs, and
+ * measures lookups over the sockets.
+ *
+ * Every JVM builds the same ring (the ring only depends on the node count, m and the key count), and serves the groups
+ * of nodes assigned to it: group g is served by JVM g % jvms on port basePort + g. The first JVM starts the others,
+ * checks that every key is found over the network exactly as in the heap, has every node notify its successor as
+ * stabilize() does, and then runs the benchmark.
+ *
+ * Usage: java net.NetworkLauncher &lt;node count&gt; &lt;m&gt; [options]
+ *     --keys &lt;count&gt;        number of keys (default as in the simulator)
+ *     --groups &lt;count&gt;      number of servers, each serves every groups-th node (default number of processors)
+ *     --jvms &lt;count&gt;        number of JVMs the servers are spread over (default 1)
+ *     --port &lt;port&gt;         port of group 0 (default: any free port with one JVM, 47000 with several)
+ *     --clients &lt;count&gt;     client threads of the benchmark, each waits for a lookup before the next (default 4)
+ *     --warmup &lt;seconds&gt;    warmup of the benchmark (default 2)
+ *     --duration &lt;seconds&gt;  measured time of the benchmark (default 10)
+ */
+public class NetworkLauncher {
+
+    public int nodeCount;
+    public int m;
+    public int keyCount;
+    public int groups;
+    public int jvms;
+    public int basePort;
+    public int clients;
+    public double warmup;
+    public double duration;
+
+    public ChordProtocolSimulator simulator;
+    public ChordProtocol protocol;
+
+    private final List<ChordServer> servers = new ArrayList<>();
+    private final List<Process> children = new ArrayList<>();
+
+
+    public NetworkLauncher(int nodeCount, int m, HashMap<String, String> options){
+        this.nodeCount = nodeCount;
+        this.m = m;
+        this.keyCount = Integer.parseInt(options.getOrDefault("keys",
+                String.valueOf(Simulator.defaultKeyCount(nodeCount, m))));
+        this.groups = Integer.parseInt(options.getOrDefault("groups",
+                String.valueOf(Math.min(nodeCount, Runtime.getRuntime().availableProcessors()))));
+        this.jvms = Integer.parseInt(options.getOrDefault("jvms", "1"));
+        this.basePort = Integer.parseInt(options.getOrDefault("port", jvms > 1 ? "47000" : "0"));
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "4"));
+        this.warmup = Double.parseDouble(options.getOrDefault("warmup", "2"));
+        this.duration = Double.parseDouble(options.getOrDefault("duration", "10"));
+        if(jvms > 1 && basePort == 0){
+            throw new IllegalArgumentException("servers in several JVMs need a fixed --port");
+        }
+    }
+
+
+    /**
+     * builds the ring that every JVM serves
+     */
+    public void build(){
+        Network network = Network.createNetwork("test network", nodeCount);
+        simulator = ChordProtocolSimulator.getInstance(network, m, keyCount);
+        simulator.buildProtocol();
+        protocol = (ChordProtocol) simulator.protocol;
+    }
+
+
+    /**
+     * starts the servers of the groups assigned to a JVM
+     * @param jvmIndex index of the JVM
+     */
+    public void startServers(int jvmIndex) throws IOException {
+        servers.addAll(startServers(protocol, groups, jvms, jvmIndex, basePort));
+    }
+
+
+    /**
+     * starts the servers of the groups assigned to a JVM
+     * @param protocol the protocol whose nodes are served
+     * @param groups number of groups
+     * @param jvms number of JVMs
+     * @param jvmIndex index of this JVM
+     * @param basePort port of group 0, or 0 to use free ports
+     * @return the servers, by group (null for the groups of other JVMs)
+     */
+    public static List<ChordServer> startServers(ChordProtocol protocol, int groups, int jvms, int jvmIndex,
+                                                 int basePort) throws IOException {
+        List<ChordServer> servers = new ArrayList<>();
+        for(int group = 0; group < groups; group++){
+            servers.add(group % jvms == jvmIndex
+                    ? new ChordServer(protocol, group, groups, basePort > 0 ? basePort + group : 0).start() : null);
+        }
+        return servers;
+    }
+
+
+    /**
+     * @return the port of each group
+     */
+    public int[] ports(){
+        if(basePort == 0){
+            return ports(servers);
+        }
+        int[] ports = new int[groups];
+        for(int group = 0; group < groups; group++){
+            ports[group] = basePort + group;
+        }
+        return ports;
+    }
+
+
+    /**
+     * @param servers the servers of every group, all in this JVM
+     * @return the port of each group
+     */
+    public static int[] ports(List<ChordServer> servers){
+        int[] ports = new int[servers.size()];
+        for(int group = 0; group < ports.length; group++){
+            ports[group] = servers.get(group).getPort();
+        }
+        return ports;
+    }
+
+
+    /**
+     * starts the other JVMs and waits until their servers are listening
+     * @param args the arguments of this JVM, passed on to the others
+     */
+    public void startChildren(String[] args) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for(int jvmIndex = 1; jvmIndex < jvms; jvmIndex++){
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(NetworkLauncher.class.getName());
+            for(String arg : args){
+                command.add(arg);
+            }
+            command.add("--serve");
+            command.add(String.valueOf(jvmIndex));
+            Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+            children.add(child);
+
+            BufferedReader output = new BufferedReader(new InputStreamReader(child.getInputStream(), "UTF-8"));
+            String line;
+            while((line = output.readLine()) != null && !line.equals("ready")){
+                Log.info("\t[jvm " + jvmIndex + "] " + line);
+            }
+            if(line == null){
+                throw new IOException("JVM " + jvmIndex + " exited before its servers were started");
+            }
+        }
+    }
+
+
+    /**
+     * looks up every key over the network and in the heap, and counts the lookups whose responses differ
+     * @return number of lookups with different responses
+     */
+    public int verify() throws IOException {
+        int different = 0;
+        try (ChordClient client = new ChordClient(protocol, ports())) {
+            for(int key = 1; key <= keyCount; key++){
+                int keyIndex = simulator.keyIndex(key);
+                LookUpResponse remote = client.lookUp(keyIndex);
+                LookUpResponse local = protocol.lookUp(keyIndex);
+                if(!remote.toString().equals(local.toString())){
+                    different++;
+                }
+            }
+        }
+        return different;
+    }
+
+
+    /**
+     * sends a notify request from every node to its successor, as one round of stabilize() of the chord paper. The
+     * ring is stable, so every successor should already have the node as its predecessor
+     * @return number of successors whose predecessor is not the node after the request
+     */
+    public int notifySuccessors() throws IOException {
+        int different = 0;
+        try (ChordClient client = new ChordClient(protocol, ports())) {
+            for(NodeInterface node : protocol.getNetwork().getTopology().values()){
+                int predecessor = client.notify(node.getSuccessor().getHandle(), node.getHandle(), node.getId());
+                if(predecessor != node.getHandle()){
+                    different++;
+                }
+            }
+        }
+        return different;
+    }
+
+
+    /**
+     * runs the benchmark: each client thread looks up random keys, one at a time, during the warmup and the measured
+     * time. The latency of every measured lookup is recorded
+     */
+    public void benchmark() throws InterruptedException {
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicLong requests = new AtomicLong();
+        int[] ports = ports();
+        // the keys are hashed before the clock starts, so the lookups are measured without hashing
+        int[] keyIndexes = simulator.keys.indexes();
+        long start = System.nanoTime();
+        long measureFrom = start + (long) (warmup * 1e9);
+        long end = measureFrom + (long) (duration * 1e9);
+
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < clients; t++){
+            int seed = t;
+            Thread thread = new Thread(() -> {
+                LatencyHistogram histogram = new LatencyHistogram();
+                Random random = new Random(seed);
+                long measuredRequests = 0;
+                try (ChordClient client = new ChordClient(protocol, ports)) {
+                    while(true){
+                        int keyIndex = keyIndexes[random.nextInt(keyCount) + 1];
+                        long before = client.getRequests();
+                        long sent = System.nanoTime();
+                        if(sent >= end){
+                            break;
+                        }
+                        client.lookUp(keyIndex);
+                        long received = System.nanoTime();
+                        if(sent >= measureFrom){
+                            histogram.record(received - sent);
+                            measuredRequests += client.getRequests() - before;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+                synchronized (latencies){
+                    latencies.add(histogram);
+                }
+                requests.addAndGet(measuredRequests);
+            }, "chord-client-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+
+        long lookups = latencies.getCount();
+        double requestsPerLookup = lookups > 0 ? (double) requests.get() / lookups : 0;
+        Log.info("Benchmark: " + nodeCount + " nodes, m " + m + ", " + groups + " servers in " + jvms + " JVMs, "
+                + clients + " clients, " + duration + " s");
+        Log.info(String.format("\t%.0f lookups/s, %.0f requests/s, %.2f requests and %.0f bytes per lookup",
+                lookups / duration, requests.get() / duration, requestsPerLookup,
+                requestsPerLookup * (WireFormat.REQUEST_SIZE + WireFormat.RESPONSE_SIZE)));
+        Log.info("\tlookup latency: mean " + String.format("%.1f us, ", latencies.getMean() / 1000) + latencies);
+    }
+
+
+    /**
+     * stops the servers and the other JVMs
+     */
+    public void stop() throws IOException {
+        for(ChordServer server : servers){
+            if(server != null){
+                server.close();
+            }
+        }
+        for(Process child : children){
+            child.destroy();
+        }
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        HashMap<String, String> options = Simulator.parseOptions(args, 2);
+        try {
+            Log.configure(options);
+            NetworkLauncher launcher = new NetworkLauncher(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                    options);
+            if(options.containsKey("serve")){
+                // a JVM started by the first JVM: serve the assigned groups until the first JVM stops this one
+                launcher.build();
+                launcher.startServers(Integer.parseInt(options.get("serve")));
+                System.out.println("ready");
+                System.out.flush();
+                while(System.in.read() >= 0){
+                    // wait until the input is closed
+                }
+                launcher.stop();
+                return;
+            }
+
+            Log.info("Building the ring...");
+            launcher.build();
+            launcher.startServers(0);
+            try {
+                launcher.startChildren(args);
+                Log.info("Servers started on ports " + java.util.Arrays.toString(launcher.ports()));
+                int different = launcher.verify();
+                Log.info("Looked up " + launcher.keyCount + " keys over the network, " + different
+                        + " responses differ from the lookups in the heap");
+                different = launcher.notifySuccessors();
+                Log.info("Notified the successor of every node over the network, " + different
+                        + " successors have another predecessor");
+                launcher.benchmark();
+            } finally {
+                launcher.stop();
+            }
+        } finally {
+            Log.close();
+        }
+    }
+}
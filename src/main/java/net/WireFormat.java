@@ -0,0 +1,61 @@
+package net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class describes the binary wire format of the networked mode. Every message has a fixed size, so a message is
+ * complete as soon as enough bytes have arrived and no length prefix is needed. All numbers are big-endian.
+ *
+ * Request (17 bytes):
+ *     type       1 byte    FIND_SUCCESSOR, NOTIFY or GET_KEY
+ *     request id 4 bytes   chosen by the client, returned in the response
+ *     node       4 bytes   handle of the node the request is for
+ *     argument   4 bytes   the key index, or the handle of the candidate predecessor (NOTIFY)
+ *     argument   4 bytes   the ring index of the candidate predecessor (NOTIFY), otherwise 0
+ *
+ * Response (14 bytes):
+ *     type       1 byte    type of the request
+ *     request id 4 bytes   id of the request
+ *     status     1 byte    see the status constants
+ *     node       4 bytes   handle of the next node (NEXT), of the predecessor of the node (NOTIFY), otherwise of the
+ *                          node the request was for
+ *     index      4 bytes   ring index of that node
+ */
+public final class WireFormat {
+
+    public static final int REQUEST_SIZE = 17;
+    public static final int RESPONSE_SIZE = 14;
+
+    // request types. NOTIFY is notify() of the chord paper: the candidate might be the predecessor of the node
+    public static final byte FIND_SUCCESSOR = 1;
+    public static final byte NOTIFY = 2;
+    public static final byte GET_KEY = 3;
+
+    // the node owns and stores the key (FIND_SUCCESSOR), the node stores the key (GET_KEY)
+    public static final byte FOUND = 0;
+    // the node does not own the key and the lookup should continue at the returned node (FIND_SUCCESSOR)
+    public static final byte NEXT = 1;
+    // the node does not own the key and the finger table has no better node, so the lookup ends here (FIND_SUCCESSOR)
+    public static final byte STOP = 2;
+    // the node owns the key but does not store it (FIND_SUCCESSOR), the node does not store the key (GET_KEY)
+    public static final byte NOT_FOUND = 3;
+    // the notify request was handled, the response gives the predecessor of the node after the request (NOTIFY)
+    public static final byte OK = 4;
+    // the node is not served by this server, or the request type is unknown
+    public static final byte ERROR = 5;
+
+
+    private WireFormat(){
+    }
+
+
+    public static void putRequest(ByteBuffer buffer, byte type, int requestId, int node, int argument1,
+                                  int argument2){
+        buffer.put(type).putInt(requestId).putInt(node).putInt(argument1).putInt(argument2);
+    }
+
+
+    public static void putResponse(ByteBuffer buffer, byte type, int requestId, byte status, int node, int index){
+        buffer.put(type).putInt(requestId).put(status).putInt(node).putInt(index);
+    }
+}
@@ -0,0 +1,149 @@
+package p2p;
+
+/**
+ * A blocked Bloom filter over int items. The bits are split into blocks of 512 bits (one cache line), and an item
+ * sets all its bits in one block, so a probe reads a single cache line. The filter is sized from the number of items
+ * it should hold and the target false positive rate; it answers "might contain" for every item added, and "does not
+ * contain" for most other items.
+ *
+ * The filter also counts the probes made by the protocol: probes, probes that answered "does not contain", and false
+ * positives, which the caller reports when the real data did not contain an item the filter let through. The counters
+ * are not synchronized, so they are approximate when several threads look up keys.
+ */
+public class BloomFilter {
+
+    // longs in a block of 512 bits
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    private static final int MAX_HASHES = 16;
+
+    private final long[] bits;
+    private final int blockCount;
+    private final int hashCount;
+
+    // number of items the filter is sized for, and the false positive rate it has with that many items
+    public final int capacity;
+    public final double falsePositiveRate;
+    private int size;
+
+    public long probes;
+    public long negatives;
+    public long falsePositives;
+
+
+    /**
+     * @param capacity number of items the filter is sized for
+     * @param falsePositiveRate target false positive rate with that many items (between 0 and 1)
+     */
+    public BloomFilter(int capacity, double falsePositiveRate){
+        if(falsePositiveRate <= 0 || falsePositiveRate >= 1){
+            throw new IllegalArgumentException("the false positive rate must be between 0 and 1");
+        }
+        this.capacity = Math.max(1, capacity);
+        this.falsePositiveRate = falsePositiveRate;
+        // optimal number of bits and hashes: m = -n ln(p) / ln(2)^2, k = m/n ln(2)
+        double bitCount = -this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.blockCount = (int) Math.max(1, Math.ceil(bitCount / BLOCK_BITS));
+        this.hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitCount / this.capacity * Math.log(2))));
+        this.bits = new long[blockCount * BLOCK_LONGS];
+    }
+
+
+    public void add(int item){
+        long hash = mix(item);
+        int block = block(hash);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 16) | 1;
+        for(int i = 0; i < hashCount; i++){
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            bits[block + (bit >>> 6)] |= 1L << bit;
+        }
+        size++;
+    }
+
+
+    /**
+     * probes the filter and counts the probe
+     * @param item the item
+     * @return false if the item has not been added, true if it might have been
+     */
+    public boolean mightContain(int item){
+        probes++;
+        if(!test(item)){
+            negatives++;
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * probes the filter without counting the probe
+     * @param item the item
+     * @return false if the item has not been added, true if it might have been
+     */
+    public boolean test(int item){
+        long hash = mix(item);
+        int block = block(hash);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 16) | 1;
+        for(int i = 0; i < hashCount; i++){
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            if((bits[block + (bit >>> 6)] & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * @return index of the first long of the block of a hash
+     */
+    private int block(long hash){
+        return (int) (((hash >>> 32) * blockCount) >>> 32) * BLOCK_LONGS;
+    }
+
+
+    private static long mix(int item){
+        // the finalizer of MurmurHash3 (64 bit)
+        long hash = item * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+
+    /**
+     * adds the probe counters of another filter to this one, when a filter replaces another
+     */
+    public void addCounters(BloomFilter other){
+        probes += other.probes;
+        negatives += other.negatives;
+        falsePositives += other.falsePositives;
+    }
+
+
+    /**
+     * @return number of items added
+     */
+    public int size(){
+        return size;
+    }
+
+
+    public int getHashCount(){
+        return hashCount;
+    }
+
+
+    /**
+     * @return number of bytes of the bits
+     */
+    public long getAllocatedBytes(){
+        return bits.length * 8L;
+    }
+}
@@ -0,0 +1,197 @@
+package p2p;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * This network class holds a topology that lookups can read while nodes join and leave. Readers never block: the
+ * nodes are kept in a concurrent map by name and in an array by handle that is read without locks, and the index
+ * by id is an immutable snapshot. Writers (addNode(), removeNode(), indexNodeIds()) are serialized by a lock.
+ *
+ * As in Network, a handle is never reused, so a handle that a reader holds never names another node. Handles are
+ * dense until the first node is removed; after that getNodeByHandle() returns null for the handles of removed nodes,
+ * and getHandleLimit() gives the number of handles handed out.
+ */
+public class ConcurrentNetwork implements NetworkInterface{
+
+    // it indicates the name of the network
+    public String networkName;
+
+    // the nodes by name
+    private final ConcurrentHashMap<String, NodeInterface> network;
+
+    // nodes by handle. A larger array is published when it is full
+    private volatile AtomicReferenceArray<NodeInterface> nodesByHandle;
+    private volatile int handleLimit;
+
+    // index used to resolve nodes by ring id, null until indexNodeIds() is called
+    private volatile IdIndex idIndex;
+
+    private final Object writeLock = new Object();
+
+    public ConcurrentNetwork(String name){
+        this.networkName = name;
+        this.network = new ConcurrentHashMap<>();
+        this.nodesByHandle = new AtomicReferenceArray<>(16);
+    }
+
+
+    /**
+     * @return a snapshot of the nodes in the order of their handles
+     */
+    public LinkedHashMap<String, NodeInterface> getTopology(){
+        LinkedHashMap<String, NodeInterface> topology = new LinkedHashMap<>();
+        AtomicReferenceArray<NodeInterface> nodes = this.nodesByHandle;
+        int limit = Math.min(this.handleLimit, nodes.length());
+        for(int handle = 0; handle < limit; handle++){
+            NodeInterface node = nodes.get(handle);
+            if(node != null){
+                topology.put(node.getName(), node);
+            }
+        }
+        return topology;
+    }
+
+
+    public NodeInterface getNode(String name){
+        return this.network.get(name);
+    }
+
+
+    public NodeInterface getNodeByHandle(int handle){
+        AtomicReferenceArray<NodeInterface> nodes = this.nodesByHandle;
+        if(handle < 0 || handle >= nodes.length()){
+            return null;
+        }
+        return nodes.get(handle);
+    }
+
+
+    /**
+     * @return number of handles handed out, including the handles of removed nodes
+     */
+    public int getHandleLimit(){
+        return this.handleLimit;
+    }
+
+
+    /**
+     * @return true if the node is in the network
+     */
+    public boolean contains(NodeInterface node){
+        return getNodeByHandle(node.getHandle()) == node;
+    }
+
+
+    public NodeInterface getNodeById(int id){
+        IdIndex index = this.idIndex;
+        if(index == null){
+            return null;
+        }
+        int position = Arrays.binarySearch(index.ids, id);
+        return position >= 0 ? index.nodes[position] : null;
+    }
+
+
+    public void indexNodeIds(){
+        synchronized (writeLock) {
+            NodeInterface[] nodes = this.network.values().toArray(new NodeInterface[0]);
+            Arrays.sort(nodes, (a, b) -> Integer.compare(a.getId(), b.getId()));
+            int[] ids = new int[nodes.length];
+            for(int i=0; i<nodes.length; i++){
+                ids[i] = nodes[i].getId();
+            }
+            this.idIndex = new IdIndex(ids, nodes);
+        }
+    }
+
+
+    public void addNode(String name, NodeInterface node){
+        synchronized (writeLock) {
+            NodeInterface previous = this.network.get(name);
+            int handle;
+            if(previous != null){
+                // the node replaces the previous node with the same name and takes over its handle
+                handle = previous.getHandle();
+            }
+            else {
+                handle = this.handleLimit;
+                if(handle == this.nodesByHandle.length()){
+                    AtomicReferenceArray<NodeInterface> larger = new AtomicReferenceArray<>(handle * 2);
+                    for(int i=0; i<handle; i++){
+                        larger.set(i, this.nodesByHandle.get(i));
+                    }
+                    this.nodesByHandle = larger;
+                }
+            }
+            // the node is complete before readers can find it
+            node.setHandle(handle);
+            this.nodesByHandle.set(handle, node);
+            this.network.put(name, node);
+            this.handleLimit = Math.max(this.handleLimit, handle + 1);
+            this.idIndex = null;
+        }
+    }
+
+
+    public void removeNode(String name){
+        synchronized (writeLock) {
+            NodeInterface removed = this.network.remove(name);
+            if(removed == null){
+                return;
+            }
+            this.nodesByHandle.compareAndSet(removed.getHandle(), removed, null);
+            this.idIndex = null;
+        }
+    }
+
+
+    public void printTopology(){
+        System.out.println("..............Printing network topology..............");
+        for(Map.Entry<String, NodeInterface> nodeEntry: getTopology().entrySet()){
+            nodeEntry.getValue().print();
+        }
+        System.out.println("......................................................");
+    }
+
+
+    /**
+     * This method creates a concurrent network of concurrent nodes ('Node 1' ... 'Node n')
+     * @param networkName - name of the network
+     * @param nodeCount - number of nodes in the network
+     * @return the network object
+     */
+    public static ConcurrentNetwork createNetwork(String networkName, int nodeCount){
+        ConcurrentNetwork network = new ConcurrentNetwork(networkName);
+        for(int i=1; i<nodeCount+1; i++){
+            String nodeName = "Node "+i;
+            network.addNode(nodeName, new ConcurrentNode(nodeName));
+        }
+        return network;
+    }
+
+
+
+    public int getSize(){
+        return this.network.size();
+    }
+
+
+    /**
+     * ids sorted in ascending order and the node with each id
+     */
+    private static final class IdIndex {
+        final int[] ids;
+        final NodeInterface[] nodes;
+
+        IdIndex(int[] ids, NodeInterface[] nodes){
+            this.ids = ids;
+            this.nodes = nodes;
+        }
+    }
+
+}
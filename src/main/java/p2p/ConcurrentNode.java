@@ -0,0 +1,197 @@
+package p2p;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class is a node whose state can be read by lookups while other threads change the membership of the network.
+ * Readers never block:
+ *     - the routing table is published through an atomic reference. A routing table must not be changed after it is
+ *       set: a writer builds a new table (copy-on-write) and swaps it in, so a lookup reads either the old or the new
+ *       table as a whole
+ *     - the successor is a volatile reference, and replaceSuccessor() swaps it in one write
+ *     - the neighbors are an immutable map in the order they were added, and a writer swaps in a changed copy under
+ *       the lock of the node. As in Node, a removed successor is replaced by the earliest remaining neighbor
+ *     - the data is a concurrent set, so it can be read while keys are added or removed
+ *
+ * The node does not keep a Bloom filter over the data (it is not a FilteredNode), as the filters are not thread-safe.
+ * ConcurrentBenchmark rejects --bloom for this reason.
+ */
+public class ConcurrentNode implements NodeInterface{
+
+    // name of the node
+    public final String name;
+
+    // id of the node, eg:- the chord node index
+    private volatile int id;
+
+    // handle given by the network when the node is added
+    private volatile int handle;
+
+    // the neighbors in the order they were added, replaced as a whole (copy-on-write)
+    private volatile Map<String, NodeInterface> neighbors;
+
+    // the successor, read on every hop of a lookup
+    private volatile NodeInterface successor;
+
+    // the routing table (eg:- an immutable chord finger table), swapped as a whole
+    private final AtomicReference<Object> routingTable;
+
+    // key indexes stored by the node
+    public final Set<Object> data;
+
+
+    public ConcurrentNode(String name) {
+        this.id = -1;
+        this.handle = -1;
+        this.name = name;
+        this.data = ConcurrentHashMap.newKeySet();
+        this.neighbors = Collections.emptyMap();
+        this.routingTable = new AtomicReference<>();
+    }
+
+
+    public String getName() {
+        return this.name;
+    }
+
+
+    public void setId(int id){
+        this.id = id;
+    }
+
+    public int getId(){
+        return this.id;
+    }
+
+
+    public void setHandle(int handle){
+        this.handle = handle;
+    }
+
+    public int getHandle(){
+        return this.handle;
+    }
+
+
+    public Object getData() {
+        return this.data;
+    }
+
+
+    public void addData(Object data) {
+        this.data.add(data);
+    }
+
+    public void removeData(Object data){
+        this.data.remove(data);
+    }
+
+
+    public Collection<NodeInterface> getNeighbors(){
+        return this.neighbors.values();
+    }
+
+
+    public NodeInterface getNeighbor(String name){
+        return this.neighbors.get(name);
+    }
+
+
+    public synchronized void addNeighbor(String name, NodeInterface node){
+        LinkedHashMap<String, NodeInterface> copy = new LinkedHashMap<>(this.neighbors);
+        copy.put(name, node);
+        this.neighbors = Collections.unmodifiableMap(copy);
+        if(this.successor == null){
+            this.successor = node;
+        }
+    }
+
+
+    public synchronized void removeNeighbor(String name){
+        LinkedHashMap<String, NodeInterface> copy = new LinkedHashMap<>(this.neighbors);
+        NodeInterface removed = copy.remove(name);
+        if(removed == null){
+            return;
+        }
+        this.neighbors = Collections.unmodifiableMap(copy);
+        if(removed == this.successor){
+            this.successor = copy.isEmpty() ? null : copy.values().iterator().next();
+        }
+    }
+
+
+    /**
+     * makes a node the successor in one write, and removes the old successor from the neighbors. A lookup sees either
+     * the old or the new successor, never none
+     * @param node the new successor
+     */
+    public synchronized void replaceSuccessor(NodeInterface node){
+        NodeInterface previous = this.successor;
+        LinkedHashMap<String, NodeInterface> copy = new LinkedHashMap<>(this.neighbors);
+        copy.put(node.getName(), node);
+        if(previous != null && previous != node){
+            copy.remove(previous.getName(), previous);
+        }
+        this.neighbors = Collections.unmodifiableMap(copy);
+        this.successor = node;
+    }
+
+
+    /**
+     * publishes a routing table. The table must not be changed after it is set
+     */
+    public void setRoutingTable(Object obj){
+        this.routingTable.set(obj);
+    }
+
+    public Object getRoutingTable(){
+        return this.routingTable.get();
+    }
+
+
+    /**
+     * publishes a routing table only if the current table is the expected one, so a writer does not overwrite a table
+     * that another writer has swapped in since it was read
+     * @return true if the table was swapped
+     */
+    public boolean compareAndSetRoutingTable(Object expected, Object table){
+        return this.routingTable.compareAndSet(expected, table);
+    }
+
+
+    public NodeInterface getSuccessor(){
+        return this.successor;
+    }
+
+
+    public void print(){
+        System.out.println(this.toString());
+    }
+
+
+    /**
+     * @return the information of the node that print() prints: name, id, neighbors, routing table and data
+     */
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("Node : ").append(this.getName());
+        sb.append("\tIndex: ").append(this.getId());
+        sb.append("\tNeighbors: ");
+        for(NodeInterface node : this.getNeighbors()){
+            sb.append(node.getName()).append("\t");
+        }
+        Object table = getRoutingTable();
+        if(table != null){
+            sb.append(table.toString());
+        }
+        sb.append("\nData : ").append(this.data.toString());
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,37 @@
+package p2p;
+
+/**
+ * A node that can keep a Bloom filter over its data. The filter is not thread-safe, so only nodes that are changed by
+ * one thread at a time (Node) implement this interface, and ConcurrentNode does not.
+ */
+public interface FilteredNode extends NodeInterface {
+
+
+
+    /**
+     * This method keeps a Bloom filter over the data of the node, so a protocol can skip looking in the data for most
+     * items that are not stored. The filter is built from the data stored so far, and kept up to date
+     * as data is added and removed. It grows when more items are added than it was sized for.
+     *
+     * @param expectedSize number of data items the filter is sized for
+     * @param falsePositiveRate target false positive rate of the filter
+     */
+    void enableDataFilter(int expectedSize, double falsePositiveRate);
+
+
+
+    /**
+     * @return the Bloom filter over the hash codes of the data, or null if it is not enabled
+     */
+    BloomFilter getDataFilter();
+
+
+
+    /**
+     * @param node a node
+     * @return the Bloom filter of the node, or null if the node keeps no filter
+     */
+    static BloomFilter filterOf(NodeInterface node){
+        return node instanceof FilteredNode ? ((FilteredNode) node).getDataFilter() : null;
+    }
+}
@@ -0,0 +1,182 @@
+package p2p;
+
+import java.util.Arrays;
+
+/**
+ * A Merkle tree over the keys of a node in one range of the ring. The range is split into 2^depth leaves of equal
+ * width. The hash of a leaf is the xor of the hashes of its keys, so a key is added or removed without reading the
+ * other keys of the leaf, and the hash of an inner node is a hash of the hashes of its two children. Adding or
+ * removing a key updates the leaf and its ancestors, depth + 1 hashes.
+ *
+ * Two nodes that hold the same range build trees of the same shape, so the keys they disagree on are found by
+ * comparing the hashes from the root down, and only the leaves whose hashes differ have to be sent. The keys of each
+ * leaf are kept with the tree, so the keys of a leaf are found without scanning the data of the node.
+ *
+ * The nodes of the tree are numbered as in a binary heap: the root is 1, the children of node i are 2i and 2i + 1,
+ * and the leaves are getLeafCount() ... 2 * getLeafCount() - 1.
+ */
+public class MerkleTree {
+
+    // first index of the range, the number of indexes in the range, and the number of indexes in the ring
+    public final int start;
+    public final long width;
+    public final long ringSize;
+    public final int depth;
+
+    private final long[] hashes;
+    private final int[][] leafKeys;
+    private final int[] leafSizes;
+    private int size;
+
+
+    /**
+     * @param start first index of the range
+     * @param width number of indexes in the range
+     * @param ringSize number of indexes in the ring (2^m)
+     * @param depth depth of the tree, the range is split into 2^depth leaves
+     */
+    public MerkleTree(int start, long width, long ringSize, int depth){
+        if(depth < 0 || depth > 24){
+            throw new IllegalArgumentException("the depth of a Merkle tree must be between 0 and 24");
+        }
+        this.start = start;
+        this.width = width;
+        this.ringSize = ringSize;
+        this.depth = depth;
+        int leaves = 1 << depth;
+        this.hashes = new long[2 * leaves];
+        this.leafKeys = new int[leaves][];
+        this.leafSizes = new int[leaves];
+    }
+
+
+    /**
+     * adds a key to the tree. The key must be in the range and not in the tree
+     */
+    public void add(int keyIndex){
+        int leaf = leaf(keyIndex);
+        int[] keys = leafKeys[leaf];
+        if(keys == null){
+            keys = leafKeys[leaf] = new int[4];
+        }
+        else if(leafSizes[leaf] == keys.length){
+            keys = leafKeys[leaf] = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[leafSizes[leaf]++] = keyIndex;
+        size++;
+        update(leaf, keyIndex);
+    }
+
+
+    /**
+     * removes a key from the tree
+     * @return true if the key was in the tree
+     */
+    public boolean remove(int keyIndex){
+        int leaf = leaf(keyIndex);
+        int[] keys = leafKeys[leaf];
+        for(int i = 0; i < leafSizes[leaf]; i++){
+            if(keys[i] == keyIndex){
+                keys[i] = keys[--leafSizes[leaf]];
+                size--;
+                update(leaf, keyIndex);
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * removes all keys
+     */
+    public void clear(){
+        Arrays.fill(hashes, 0);
+        Arrays.fill(leafKeys, null);
+        Arrays.fill(leafSizes, 0);
+        size = 0;
+    }
+
+
+    /**
+     * @return the leaf of a key index of the range
+     */
+    public int leaf(int keyIndex){
+        if(width == 0){
+            return 0;
+        }
+        long offset = ((long) keyIndex - start + ringSize) % ringSize;
+        return (int) ((offset << depth) / width);
+    }
+
+
+    /**
+     * @return the hash of a node of the tree (1 is the root)
+     */
+    public long getHash(int node){
+        return hashes[node];
+    }
+
+
+    /**
+     * @return a copy of the keys of a leaf (0 ... getLeafCount() - 1)
+     */
+    public int[] getLeafKeys(int leaf){
+        return leafKeys[leaf] == null ? new int[0] : Arrays.copyOf(leafKeys[leaf], leafSizes[leaf]);
+    }
+
+
+    public int getLeafSize(int leaf){
+        return leafSizes[leaf];
+    }
+
+
+    public int getLeafCount(){
+        return leafKeys.length;
+    }
+
+
+    /**
+     * @return number of keys in the tree
+     */
+    public int size(){
+        return size;
+    }
+
+
+    /**
+     * @return approximate heap size of the tree in bytes
+     */
+    public long getAllocatedBytes(){
+        long bytes = 16 + 8L * hashes.length + 16 + 4L * leafKeys.length + 16 + 4L * leafSizes.length + 48;
+        for(int[] keys : leafKeys){
+            if(keys != null){
+                bytes += 16 + 4L * keys.length;
+            }
+        }
+        return bytes;
+    }
+
+
+    /**
+     * xors the hash of a key into its leaf, and recomputes the hashes of the ancestors of the leaf. The key is offset
+     * before it is mixed, since mix(0) is 0 and key index 0 would not change the leaf
+     */
+    private void update(int leaf, int keyIndex){
+        int node = leaf + getLeafCount();
+        hashes[node] ^= mix(keyIndex + 0x9E3779B97F4A7C15L);
+        for(node >>>= 1; node > 0; node >>>= 1){
+            hashes[node] = mix(hashes[2 * node] * 31 + hashes[2 * node + 1]);
+        }
+    }
+
+
+    /**
+     * mixes the bits of a value (the finalizer of SplitMix64)
+     */
+    private static long mix(long value){
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
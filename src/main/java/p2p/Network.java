@@ -15,9 +15,18 @@ public class Network implements NetworkInterface{
     // it is the actual object that holds the network (set of peers)
     public LinkedHashMap<String, NodeInterface> network;
 
+    // nodes indexed by their handle. the handle of a node is its position in this list. A handle is never given to
+    // another node, so the position of a removed node holds null
+    public ArrayList<NodeInterface> nodesByHandle;
+
+    // index used to resolve nodes by ring id: ids sorted in ascending order and the node with each id
+    private int[] sortedIds;
+    private NodeInterface[] nodesBySortedId;
+
     public Network(String name){
         this.networkName = name;
         this.network = new LinkedHashMap<String, NodeInterface>();
+        this.nodesByHandle = new ArrayList<NodeInterface>();
     }
 
 
@@ -31,13 +40,60 @@ public class Network implements NetworkInterface{
     }
 
 
+    public NodeInterface getNodeByHandle(int handle){
+        if(handle < 0 || handle >= this.nodesByHandle.size()){
+            return null;
+        }
+        return this.nodesByHandle.get(handle);
+    }
+
+
+    public NodeInterface getNodeById(int id){
+        if(this.sortedIds == null){
+            return null;
+        }
+        int position = Arrays.binarySearch(this.sortedIds, id);
+        return position >= 0 ? this.nodesBySortedId[position] : null;
+    }
+
+
+    public void indexNodeIds(){
+        NodeInterface[] nodes = this.network.values().toArray(new NodeInterface[0]);
+        int size = nodes.length;
+        Arrays.sort(nodes, (a, b) -> Integer.compare(a.getId(), b.getId()));
+        int[] ids = new int[size];
+        for(int i=0; i<size; i++){
+            ids[i] = nodes[i].getId();
+        }
+        this.sortedIds = ids;
+        this.nodesBySortedId = nodes;
+    }
+
+
     public void addNode(String name, NodeInterface node){
-        this.network.put(name, node);
+        NodeInterface previous = this.network.put(name, node);
+        if(previous != null){
+            // the node replaces the previous node with the same name and takes over its handle
+            node.setHandle(previous.getHandle());
+            this.nodesByHandle.set(previous.getHandle(), node);
+        }
+        else {
+            node.setHandle(this.nodesByHandle.size());
+            this.nodesByHandle.add(node);
+        }
+        this.sortedIds = null;
     }
 
 
     public void removeNode(String name){
-        this.network.remove(name);
+        NodeInterface removed = this.network.remove(name);
+        if(removed == null){
+            return;
+        }
+        // the handle is not given to another node, so arrays indexed by handle (eg:- the predecessors of the chord
+        // protocol) never point to the wrong node
+        this.nodesByHandle.set(removed.getHandle(), null);
+        this.sortedIds = null;
     }
 
 
@@ -73,4 +129,9 @@ public class Network implements NetworkInterface{
         return this.network.size();
     }
 
+
+    public int getHandleLimit(){
+        return this.nodesByHandle.size();
+    }
+
 }
@@ -20,6 +20,29 @@ public interface NetworkInterface {
      */
     NodeInterface getNode(String name);
 
+    /**
+     * returns the node object which has the given handle. This is an array access and can be used on the routing
+     * path. A handle is never reused or renumbered, so handles are dense (0 ... size-1) until a node is removed, and
+     * the handle of a removed node has no node.
+     * @param handle handle of the node object
+     * @return node object, or null if no node has the handle
+     */
+    NodeInterface getNodeByHandle(int handle);
+
+    /**
+     * returns the node object which has the given ring id (the id set by the protocol, eg:- chord node index).
+     * The ids are resolved through the index built by indexNodeIds().
+     * @param id ring id of the node object
+     * @return node object, or null if no node has the id
+     */
+    NodeInterface getNodeById(int id);
+
+    /**
+     * builds the index used by getNodeById(). It should be called after the protocol has set the ids of the nodes,
+     * and again whenever ids change. Adding or removing nodes clears the index.
+     */
+    void indexNodeIds();
+
     /**
      * adds new node to the network object
      * @param name name of the node object
@@ -44,5 +67,12 @@ public interface NetworkInterface {
      */
     int getSize();
 
+    /**
+     * returns the number of handles given out, including the handles of removed nodes. It is the size of arrays
+     * indexed by handle
+     * @return number of handles
+     */
+    int getHandleLimit();
+
 
 }
@@ -1,11 +1,8 @@
 package p2p;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Map;
 
 /*
 
@@ -15,7 +12,7 @@ import java.util.Map;
  * This class simulates the nodes in the network. Each node has a name, id, neighbors (set of other nodes), routing
  * table and data.
  */
-public class Node implements NodeInterface{
+public class Node implements FilteredNode{
 
     // name of the node
     public String name;
@@ -23,7 +20,14 @@ public class Node implements NodeInterface{
     // id of the node. example: chord uses node indexes. this can represent node index.
     public int id;
 
-    public HashMap<String, NodeInterface> neighbors;
+    // integer handle given by the network when the node is added, never given to another node
+    public int handle;
+
+    // the neighbors in the order they were added
+    public LinkedHashMap<String, NodeInterface> neighbors;
+
+    // the first neighbor added to the node. kept as a direct reference so routing does not iterate the neighbor map
+    public NodeInterface successor;
 
     // this routing table can be used to implement different routing tables used in the protocol
     // for example finger table used by chord protocol can be populated in the routing table
@@ -32,12 +36,18 @@ public class Node implements NodeInterface{
     // this data can store set of objects. For example, key indexes used in the chord protocol can be stored here
     public LinkedHashSet<Object> data;
 
+    // Bloom filter over the hash codes of the data, null unless it is enabled. Removed items stay in the filter until
+    // it is rebuilt, which happens when more than half of its items have been removed
+    public BloomFilter dataFilter;
+    private int removedSinceBuild;
+
 
     public Node(String name) {
         this.id = -1;
+        this.handle = -1;
         this.name = name;
         this.data = new LinkedHashSet<>();
-        this.neighbors= new HashMap<String, NodeInterface>();
+        this.neighbors= new LinkedHashMap<String, NodeInterface>();
     }
 
 
@@ -56,17 +66,58 @@ public class Node implements NodeInterface{
     }
 
 
+    public void setHandle(int handle){
+        this.handle = handle;
+    }
+
+    public int getHandle(){
+        return this.handle;
+    }
+
+
     public Object getData() {
         return this.data;
     }
 
 
     public void addData(Object data) {
-        this.data.add(data);
+        if(this.data.add(data) && dataFilter != null){
+            if(dataFilter.size() >= dataFilter.capacity){
+                // the filter is full, a filter twice as large keeps the false positive rate
+                rebuildDataFilter(dataFilter.capacity * 2);
+            }
+            else {
+                dataFilter.add(data.hashCode());
+            }
+        }
     }
 
     public void removeData(Object data){
-        this.data.remove(data);
+        if(this.data.remove(data) && dataFilter != null && ++removedSinceBuild > dataFilter.size() / 2){
+            rebuildDataFilter(dataFilter.capacity);
+        }
+    }
+
+
+    public void enableDataFilter(int expectedSize, double falsePositiveRate){
+        dataFilter = new BloomFilter(Math.max(expectedSize, data.size()), falsePositiveRate);
+        rebuildDataFilter(dataFilter.capacity);
+    }
+
+
+    public BloomFilter getDataFilter(){
+        return dataFilter;
+    }
+
+
+    private void rebuildDataFilter(int capacity){
+        BloomFilter filter = new BloomFilter(capacity, dataFilter.falsePositiveRate);
+        for(Object item : data){
+            filter.add(item.hashCode());
+        }
+        filter.addCounters(dataFilter);
+        dataFilter = filter;
+        removedSinceBuild = 0;
     }
 
 
@@ -82,11 +133,18 @@ public class Node implements NodeInterface{
 
     public void addNeighbor(String name, NodeInterface node){
         this.neighbors.put(name, node);
+        if(this.successor == null){
+            this.successor = node;
+        }
     }
 
 
     public void removeNeighbor(String name){
-        this.neighbors.remove(name);
+        NodeInterface removed = this.neighbors.remove(name);
+        if(removed != null && removed == this.successor){
+            // the neighbor that was added first of the remaining neighbors becomes the successor
+            this.successor = this.neighbors.isEmpty() ? null : this.neighbors.values().iterator().next();
+        }
     }
 
 
@@ -100,43 +158,36 @@ public class Node implements NodeInterface{
 
 
     public NodeInterface getSuccessor(){
-        return this.neighbors.entrySet().iterator().next().getValue();
+        return this.successor;
     }
 
 
     public void print(){
-        System.out.print("Node : "+ this.getName());
-        System.out.print("\tIndex: "+this.getId());
+        System.out.println(this.toString());
+    }
+
+
+    /**
+     * @return the information of the node that print() prints: name, id, neighbors, routing table and data
+     */
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("Node : ").append(this.getName());
+        sb.append("\tIndex: ").append(this.getId());
         Collection<NodeInterface> neightbors = this.getNeighbors();
-        System.out.print("\tNeighbors: ");
+        sb.append("\tNeighbors: ");
         for(NodeInterface node : neightbors){
-            System.out.print(node.getName()+"\t");
+            sb.append(node.getName()).append("\t");
         }
-        // Note: This introduces backward dependency on the protocols. The protocol should implement a routing table
-        // in a way that overrides the toString() method. so that the contents of the routing table can be printed
-        // here
+        // The protocol implements the routing table in a way that overrides the toString() method, so that the
+        // contents of the routing table can be printed here
         if(routingTable!=null){
-            if (routingTable instanceof List) {
-                List<Map<String, Object>> entries = (List<Map<String, Object>>) routingTable;
-                StringBuilder sb = new StringBuilder();
-                sb.append("\n\tFingerTable:\n");
-                for (Map<String, Object> entry : entries) {
-                    sb.append("\t\tInterval: [").append(entry.get("interval_start"))
-                    .append(", ").append(entry.get("interval_end"))
-                    .append("), Successor: ").append(entry.get("successor_node"))
-                    .append("\n");
-                }
-                System.out.print(sb.toString());
-            } else {
-                System.out.print("\tFail: " + this.routingTable.toString());
-            }
+            sb.append(this.routingTable.toString());
         }
-        System.out.println();
         if(data!=null){
-            System.out.println("Data : "+this.data.toString());
+            sb.append("\nData : ").append(this.data.toString());
         }
-
-
+        return sb.toString();
     }
 
 }
@@ -25,6 +25,21 @@ public interface NodeInterface {
      */
     void setId(int id);
 
+
+    /**
+     * @return the integer handle of the node. The network gives each node the next handle (0, 1, ...) when it is
+     * added, so protocols can keep per-node state in arrays instead of maps keyed by name. A handle is never reused or
+     * given to another node, so the handles are dense (0 ... size-1) until a node is removed.
+     */
+    int getHandle();
+
+
+    /**
+     * sets the handle of the node. This is called by the network when the node is added.
+     * @param handle node handle
+     */
+    void setHandle(int handle);
+
     //
 
     /**
@@ -74,7 +89,8 @@ public interface NodeInterface {
 
     /**
      * It returns the successor of the node. The successor is the first neighbor that's added to it. Neighbors are
-     * ordered based on the order in which they have connected with this node.
+     * ordered based on the order in which they have connected with this node. The successor is kept as a direct
+     * reference, so this call is cheap enough to use on the routing path.
      *
      * @return nighbor node object
      */
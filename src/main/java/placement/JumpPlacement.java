@@ -0,0 +1,42 @@
+package placement;
+
+import p2p.NodeInterface;
+
+/**
+ * Jump consistent hash placement (Lamping and Veach): a key is placed in one of n buckets, and when a bucket is added
+ * at the end, only the keys that the new bucket takes move. It keeps no state but the number of buckets. The bucket of
+ * a node is its position in the array, so buckets can only be added and removed at the end: when a node leaves, the
+ * last node takes over its position and the keys of both nodes move.
+ */
+public class JumpPlacement implements PlacementStrategy {
+
+    private int buckets;
+
+
+    public String getName(){
+        return "jump";
+    }
+
+
+    public void setNodes(NodeInterface[] nodes){
+        this.buckets = nodes.length;
+    }
+
+
+    public int place(int keyIndex){
+        long key = PlacementStrategy.mix(keyIndex);
+        long bucket = -1;
+        long next = 0;
+        while(next < buckets){
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+
+    public long getAllocatedBytes(){
+        return 0;
+    }
+}
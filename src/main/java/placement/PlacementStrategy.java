@@ -0,0 +1,65 @@
+package placement;
+
+import crypto.ConsistentHashing;
+import p2p.NodeInterface;
+
+/**
+ * A placement strategy decides which node stores a key. The strategy is given the nodes in an array, and places a key
+ * by its index on one of them. setNodes() is called again when nodes join or leave, so the keys that move can be
+ * counted.
+ *
+ * Only the successor placement stores a key on the node that a chord lookup of the key ends at. The other strategies
+ * place keys for a storage tier where the client computes the node of a key directly.
+ */
+public interface PlacementStrategy {
+
+    /**
+     * @return name of the strategy
+     */
+    String getName();
+
+    /**
+     * sets the nodes keys are placed on
+     * @param nodes the nodes. A key is placed by its position in the array
+     */
+    void setNodes(NodeInterface[] nodes);
+
+    /**
+     * @param keyIndex index of the key
+     * @return position in the array of nodes of the node that stores the key
+     */
+    int place(int keyIndex);
+
+    /**
+     * @return estimated number of bytes the strategy keeps in the heap for the nodes
+     */
+    long getAllocatedBytes();
+
+    /**
+     * creates a strategy by name
+     * @param name successor, rendezvous or jump
+     * @param m length of the indexes, used by the successor placement to hash the node names
+     * @return the strategy
+     */
+    static PlacementStrategy forName(String name, int m){
+        switch(name){
+            case "successor":
+                return new SuccessorPlacement(new ConsistentHashing(m));
+            case "rendezvous":
+                return new RendezvousPlacement();
+            case "jump":
+                return new JumpPlacement();
+            default:
+                throw new IllegalArgumentException("unknown placement strategy: " + name);
+        }
+    }
+
+    /**
+     * mixes the bits of a value (the finalizer of SplitMix64), so that close key indexes give unrelated hashes
+     */
+    static long mix(long value){
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
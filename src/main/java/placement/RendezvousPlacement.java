@@ -0,0 +1,50 @@
+package placement;
+
+import crypto.ConsistentHashing;
+import p2p.NodeInterface;
+
+/**
+ * Rendezvous (highest random weight) placement: every node gives a key a weight, hashed from the key and the node,
+ * and the node with the highest weight stores the key. When a node joins it only takes the keys it weighs highest,
+ * and when it leaves only its keys move, each to the node with the next highest weight. The keys are spread evenly
+ * without virtual nodes, but placing a key looks at every node.
+ */
+public class RendezvousPlacement implements PlacementStrategy {
+
+    // seed of every node, hashed from its name
+    private long[] seeds;
+
+
+    public String getName(){
+        return "rendezvous";
+    }
+
+
+    public void setNodes(NodeInterface[] nodes){
+        long[] seeds = new long[nodes.length];
+        for(int position = 0; position < nodes.length; position++){
+            seeds[position] = ConsistentHashing.digest64(nodes[position].getName());
+        }
+        this.seeds = seeds;
+    }
+
+
+    public int place(int keyIndex){
+        long key = PlacementStrategy.mix(keyIndex);
+        int best = 0;
+        long bestWeight = Long.MIN_VALUE;
+        for(int position = 0; position < seeds.length; position++){
+            long weight = PlacementStrategy.mix(key ^ seeds[position]);
+            if(weight > bestWeight){
+                best = position;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+
+    public long getAllocatedBytes(){
+        return 16 + 8L * seeds.length;
+    }
+}
@@ -0,0 +1,66 @@
+package placement;
+
+import java.util.Arrays;
+
+import crypto.ConsistentHashing;
+import p2p.NodeInterface;
+
+/**
+ * Successor placement, as in chord: a node has the index of its name on the ring, and a key is stored on the first
+ * node at or after the index of the key, or on the first node of the ring if the key is after the last node. If two
+ * nodes have the same index, the node that comes first in the array stores the keys, as in
+ * ChordProtocolSimulator.findPeer().
+ */
+public class SuccessorPlacement implements PlacementStrategy {
+
+    private final ConsistentHashing hash;
+
+    // index and position of the nodes in ring order, packed as index << 32 | position
+    private long[] ring;
+
+
+    /**
+     * @param hash hash function of the node names
+     */
+    public SuccessorPlacement(ConsistentHashing hash){
+        this.hash = hash;
+    }
+
+
+    public String getName(){
+        return "successor";
+    }
+
+
+    public void setNodes(NodeInterface[] nodes){
+        long[] ring = new long[nodes.length];
+        for(int position = 0; position < nodes.length; position++){
+            ring[position] = ((long) hash.hash(nodes[position].getName()) << 32) | position;
+        }
+        Arrays.sort(ring);
+        this.ring = ring;
+    }
+
+
+    public int place(int keyIndex){
+        // first node whose index is at or after the key index, by binary search
+        long key = (long) keyIndex << 32;
+        int low = 0;
+        int high = ring.length;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(ring[middle] < key){
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return (int) ring[low == ring.length ? 0 : low];
+    }
+
+
+    public long getAllocatedBytes(){
+        return 16 + 8L * ring.length;
+    }
+}
@@ -0,0 +1,222 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import logging.Log;
+import p2p.NetworkInterface;
+import p2p.NodeInterface;
+import workload.Workload;
+
+/**
+ * This class measures adaptive routing tables in the style of Accordion. Every node keeps its static finger table,
+ * and a bounded table of extra fingers learned from the lookups it forwards (see LearnedFingers). When a lookup ends,
+ * the nodes of its path learn the owner of the key, as if the owner was sent back along the path with the reply.
+ *
+ * At every hop a node that knows the owner of the key sends the lookup straight to it. Otherwise it sends it to the
+ * closest node before the key it knows of, from its static fingers and its learned fingers. A learned finger is only
+ * taken if it is after the static next hop and not after the key, so the lookup never passes the owner and takes at
+ * most the hops of the static table. Under a skewed workload the hot keys are learned by the nodes, so their lookups
+ * take one or two hops.
+ *
+ * The keys requested by the workload are looked up from random nodes with the static tables and with the learned
+ * fingers of each eviction policy, and the hops are compared.
+ *
+ * Options:
+ *     --adaptive-fingers [budget]  learned fingers per node (default 16)
+ *     --eviction &lt;policies&gt;       comma separated eviction policies to compare, lru and lfu (default lru,lfu)
+ */
+public class AdaptiveFingers {
+
+    public int budget;
+    public String[] policies;
+
+    private ChordProtocol protocol;
+    private NetworkInterface network;
+
+    // nodes of the path of the last lookup, as handles
+    private int[] path = new int[64];
+    private int pathLength;
+
+    // lookups whose last hop was a learned finger to the owner
+    private long ownerHits;
+
+
+    /**
+     * creates the adaptive fingers measurement from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the measurement
+     */
+    public static AdaptiveFingers fromOptions(HashMap<String, String> options){
+        AdaptiveFingers adaptive = new AdaptiveFingers();
+        String budget = options.getOrDefault("adaptive-fingers", "true");
+        adaptive.budget = Integer.parseInt(budget.equals("true") ? "16" : budget);
+        adaptive.policies = options.getOrDefault("eviction", "lru,lfu").split(",");
+        for(String policy : adaptive.policies){
+            if(!policy.equals("lru") && !policy.equals("lfu")){
+                throw new IllegalArgumentException("unknown eviction policy: " + policy);
+            }
+        }
+        return adaptive;
+    }
+
+
+    /**
+     * looks up the keys requested by the workload from random nodes with the static finger tables and with the learned
+     * fingers of each policy. The protocol of the simulator must be built
+     * @param simulator the simulator
+     * @return the report
+     */
+    public String run(ChordProtocolSimulator simulator) throws IOException {
+        protocol = (ChordProtocol) simulator.protocol;
+        network = protocol.getNetwork();
+        int size = network.getSize();
+
+        LearnedFingers[][] tables = new LearnedFingers[policies.length][size];
+        HopHistogram staticHops = new HopHistogram();
+        HopHistogram[] adaptiveHops = new HopHistogram[policies.length];
+        long[] hits = new long[policies.length];
+        for(int p = 0; p < policies.length; p++){
+            adaptiveHops[p] = new HopHistogram();
+        }
+
+        // the same keys are looked up from the same random nodes with every table
+        Log.info("Looking up keys with static and learned fingers...");
+        Random random = new Random(simulator.workloadConfig.seed);
+        Workload workload = Workload.create(simulator.workloadConfig);
+        long clock = 0;
+        while(workload.hasNext()){
+            int keyIndex = simulator.keyIndex(workload.nextInt());
+            NodeInterface start = network.getNodeByHandle(random.nextInt(size));
+            clock++;
+
+            staticHops.record(lookUp(start, keyIndex, null, clock, false));
+            for(int p = 0; p < policies.length; p++){
+                ownerHits = 0;
+                adaptiveHops[p].record(lookUp(start, keyIndex, tables[p], clock, policies[p].equals("lfu")));
+                hits[p] += ownerHits;
+            }
+        }
+        workload.close();
+
+        long staticBytes = 0;
+        for(NodeInterface node : network.getTopology().values()){
+            staticBytes += ((Fingers) node.getRoutingTable()).getAllocatedBytes();
+        }
+        long learnedBytes = new LearnedFingers(budget, false, protocol.ringSize).getAllocatedBytes();
+        long lookups = staticHops.getLookups();
+
+        StringBuilder header = new StringBuilder(String.format("%-36s %10s", "", "static"));
+        StringBuilder average = new StringBuilder(String.format("%-36s %10.2f", "average hops",
+                staticHops.getAverage()));
+        StringBuilder percentile = new StringBuilder(String.format("%-36s %10d", "99th percentile hops",
+                staticHops.getPercentile(99)));
+        StringBuilder max = new StringBuilder(String.format("%-36s %10d", "max hops", staticHops.getMax()));
+        StringBuilder saved = new StringBuilder(String.format("%-36s %10s", "hops saved", "-"));
+        StringBuilder hitRate = new StringBuilder(String.format("%-36s %10s", "lookups ending on a learned finger",
+                "-"));
+        StringBuilder learned = new StringBuilder(String.format("%-36s %10s", "learned fingers per node", "-"));
+        for(int p = 0; p < policies.length; p++){
+            long entries = 0;
+            for(LearnedFingers table : tables[p]){
+                entries += (table == null) ? 0 : table.size();
+            }
+            double savedHops = 1 - adaptiveHops[p].getAverage() / Math.max(staticHops.getAverage(), 1e-9);
+            header.append(String.format(" %10s", policies[p]));
+            average.append(String.format(" %10.2f", adaptiveHops[p].getAverage()));
+            percentile.append(String.format(" %10d", adaptiveHops[p].getPercentile(99)));
+            max.append(String.format(" %10d", adaptiveHops[p].getMax()));
+            saved.append(String.format(" %9.1f%%", 100 * savedHops));
+            hitRate.append(String.format(" %9.1f%%", lookups > 0 ? 100.0 * hits[p] / lookups : 0));
+            learned.append(String.format(" %10.1f", (double) entries / size));
+        }
+
+        String report = String.format("adaptive fingers: %d nodes, m = %d, budget %d learned fingers per node, "
+                        + "%d lookups (%s) from random nodes, log2 N = %.2f",
+                        size, simulator.m, budget, lookups, simulator.workloadConfig.distribution,
+                        Math.log(size) / Math.log(2))
+                + "\n" + header + "\n" + average + "\n" + percentile + "\n" + max + "\n" + saved
+                + "\n" + hitRate + "\n" + learned
+                + String.format("\nrouting table bytes per node: static %.0f, learned %d (fixed by the budget)",
+                        (double) staticBytes / size, learnedBytes);
+        for(String line : report.split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/adaptive_" + simulator.nodeCount + "_nodes_m" + simulator.m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(report);
+        }
+        return report;
+    }
+
+
+    /**
+     * routes a lookup from a node to the owner of a key index, and lets the nodes of the path learn the owner
+     * @param start the node the lookup starts from
+     * @param keyIndex index of the key
+     * @param tables learned fingers of the nodes by handle, created when a node learns its first finger, or null to
+     *               route with the static finger tables only
+     * @param clock the time of the lookup
+     * @param leastFrequentlyUsed eviction policy of new tables
+     * @return number of hops
+     */
+    private int lookUp(NodeInterface start, int keyIndex, LearnedFingers[] tables, long clock,
+                       boolean leastFrequentlyUsed){
+        NodeInterface currentNode = start;
+        pathLength = 0;
+        while(!protocol.owns(currentNode, keyIndex)){
+            addToPath(currentNode.getHandle());
+            NodeInterface nextNode = protocol.nextHop(currentNode, keyIndex);
+            LearnedFingers table = (tables == null) ? null : tables[currentNode.getHandle()];
+            if(table != null){
+                int slot = table.owner(keyIndex);
+                if(slot >= 0){
+                    ownerHits++;
+                }
+                else {
+                    // a learned finger before the key that is further than the static next hop
+                    slot = table.closestPreceding(currentNode.getId(), keyIndex);
+                    int staticDistance = protocol.ringDistance(currentNode.getId(), nextNode.getId());
+                    if(slot >= 0 && protocol.ringDistance(currentNode.getId(), table.getId(slot)) <= staticDistance){
+                        slot = -1;
+                    }
+                }
+                if(slot >= 0){
+                    table.use(slot, clock);
+                    nextNode = network.getNodeByHandle(table.getHandle(slot));
+                }
+            }
+            if(nextNode.equals(currentNode)){
+                break;
+            }
+            currentNode = nextNode;
+        }
+
+        // the nodes of the path learn the owner
+        if(tables != null){
+            int owner = currentNode.getHandle();
+            int predecessor = protocol.predecessorIndexes[owner];
+            for(int i = 0; i < pathLength; i++){
+                if(tables[path[i]] == null){
+                    tables[path[i]] = new LearnedFingers(budget, leastFrequentlyUsed, protocol.ringSize);
+                }
+                tables[path[i]].learn(owner, currentNode.getId(), predecessor, clock);
+            }
+        }
+        return pathLength;
+    }
+
+
+    private void addToPath(int handle){
+        if(pathLength == path.length){
+            path = Arrays.copyOf(path, path.length * 2);
+        }
+        path[pathLength++] = handle;
+    }
+}
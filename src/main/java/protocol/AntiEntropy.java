@@ -0,0 +1,376 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Random;
+
+import logging.Log;
+import p2p.MerkleTree;
+import p2p.NodeInterface;
+
+/**
+ * This class simulates replicas of the keys drifting apart and being repaired by anti-entropy. Every key is stored on
+ * its owner and on the next replicas - 1 successors of the owner. Every node keeps a Merkle tree (see p2p.MerkleTree)
+ * for each range it holds: its own range and the ranges of its replicas - 1 predecessors. The trees are updated when
+ * a key is stored on the node, so they are never rebuilt.
+ *
+ * The simulation runs in rounds. In every round:
+ *     - new keys are written to random indexes, and each replica misses a write with the drift probability, as when
+ *       a message is lost or a node is briefly down
+ *     - nodes crash and come back with the same id but without any keys
+ *     - for every range, each replica reconciles with the replica before it (the owner with its successor, the
+ *       successor with the next successor, ...). The two replicas compare the hashes of their trees from the root,
+ *       only descend into the subtrees whose hashes differ, and send each other the keys of the leaves that differ.
+ *       Each replica stores the keys it was missing
+ *
+ * The keys and bytes exchanged by the trees are compared with a comparison of the full sets, where both replicas send
+ * all their keys of the range. A hash is 8 bytes and a key index 4 bytes. A key that only the last replica of a range
+ * has reaches the owner in the next round, so the replicas can still differ after a round.
+ *
+ * Options:
+ *     --anti-entropy [replicas]  replicas of every key, including the owner (default 3)
+ *     --repair-rounds &lt;n&gt;       rounds of writes, crashes and repair (default 5)
+ *     --writes &lt;n&gt;              keys written per round (default 1% of the keys)
+ *     --drift &lt;probability&gt;     probability that a replica misses a write (default 0.05)
+ *     --crashes &lt;n&gt;             nodes that lose their keys per round (default 1)
+ *     --leaf-keys &lt;n&gt;           expected keys per leaf of the trees (default 16)
+ */
+public class AntiEntropy {
+
+    private static final int HASH_BYTES = 8;
+    private static final int KEY_BYTES = 4;
+
+    public int replicas;
+    public int rounds;
+    public int writes;
+    public double drift;
+    public int crashes;
+    public int leafKeys;
+
+    // nodes in the order of their ids (nodes with the same id in topology order), and their ids
+    private NodeInterface[] ring;
+    private int[] ids;
+
+    // trees[rank][j] is the tree the node at rank keeps of the range of the node j ranks before it
+    private MerkleTree[][] trees;
+
+    // counters of the current round
+    private long hashes;
+    private long treeKeys;
+    private long fullKeys;
+    private long repaired;
+
+
+    /**
+     * creates the anti-entropy simulation from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the simulation
+     */
+    public static AntiEntropy fromOptions(HashMap<String, String> options){
+        AntiEntropy antiEntropy = new AntiEntropy();
+        String replicas = options.getOrDefault("anti-entropy", "true");
+        antiEntropy.replicas = Integer.parseInt(replicas.equals("true") ? "3" : replicas);
+        antiEntropy.rounds = Integer.parseInt(options.getOrDefault("repair-rounds", "5"));
+        antiEntropy.writes = Integer.parseInt(options.getOrDefault("writes", "-1"));
+        antiEntropy.drift = Double.parseDouble(options.getOrDefault("drift", "0.05"));
+        antiEntropy.crashes = Integer.parseInt(options.getOrDefault("crashes", "1"));
+        antiEntropy.leafKeys = Integer.parseInt(options.getOrDefault("leaf-keys", "16"));
+        if(antiEntropy.replicas < 2 || antiEntropy.leafKeys < 1){
+            throw new IllegalArgumentException("anti-entropy needs at least 2 replicas and 1 key per leaf");
+        }
+        if(antiEntropy.drift < 0 || antiEntropy.drift > 1){
+            throw new IllegalArgumentException("the drift must be between 0 and 1");
+        }
+        return antiEntropy;
+    }
+
+
+    /**
+     * replicates the keys of the simulator, runs the rounds of writes, crashes and repair, and reports the keys and
+     * bytes exchanged. The protocol of the simulator must be built, so the keys are stored on their owners
+     * @param simulator the simulator
+     * @return the report
+     */
+    public String run(ChordProtocolSimulator simulator) throws IOException {
+        ChordProtocol protocol = (ChordProtocol) simulator.protocol;
+        ring = protocol.getNetwork().getTopology().values().toArray(new NodeInterface[0]);
+        Arrays.sort(ring, (a, b) -> a.getId() != b.getId() ? Integer.compare(a.getId(), b.getId())
+                : Integer.compare(a.getHandle(), b.getHandle()));
+        int size = ring.length;
+        ids = new int[size];
+        for(int rank = 0; rank < size; rank++){
+            ids[rank] = ring[rank].getId();
+        }
+        int replicaCount = Math.min(replicas, size);
+        long ringSize = protocol.ringSize;
+        int writeCount = writes >= 0 ? writes : Math.max(1, simulator.keyCount / 100);
+
+        // the trees of every range have the same shape on all its replicas, with about leafKeys keys per leaf
+        Log.info("Replicating keys on " + replicaCount + " nodes...");
+        trees = new MerkleTree[size][replicaCount];
+        long leaves = 0;
+        for(int rank = 0; rank < size; rank++){
+            int start = (int) ((ids[(rank + size - 1) % size] + 1L) % ringSize);
+            long width = size == 1 ? ringSize : (ids[rank] - ids[(rank + size - 1) % size] + ringSize) % ringSize;
+            double expectedKeys = (double) width / ringSize * simulator.keyCount;
+            int depth = 0;
+            while(depth < 20 && (1L << depth) * leafKeys < expectedKeys && (2L << depth) <= width){
+                depth++;
+            }
+            leaves += 1L << depth;
+            for(int j = 0; j < replicaCount; j++){
+                trees[(rank + j) % size][j] = new MerkleTree(start, width, ringSize, depth);
+            }
+        }
+        // the keys of the owners are read before any replica is stored
+        Object[][] ownKeys = new Object[size][];
+        for(int rank = 0; rank < size; rank++){
+            ownKeys[rank] = ((Collection<?>) ring[rank].getData()).toArray();
+        }
+        for(int rank = 0; rank < size; rank++){
+            for(Object key : ownKeys[rank]){
+                int keyIndex = (Integer) key;
+                trees[rank][0].add(keyIndex);
+                for(int j = 1; j < replicaCount; j++){
+                    store(rank, j, keyIndex);
+                }
+            }
+        }
+
+        StringBuilder report = new StringBuilder(String.format("anti-entropy: %d nodes, m = %d, %d keys, %d replicas, "
+                        + "%d writes per round, drift %.3f, %d crashes per round, %.1f leaves per range",
+                size, simulator.m, simulator.keyCount, replicaCount, writeCount, drift, crashes,
+                (double) leaves / size));
+        report.append(String.format("\n%5s %8s %8s %8s %9s %10s %12s %10s %12s %9s %10s %8s", "round", "missed",
+                "crashed", "differ", "hashes", "tree keys", "tree bytes", "full keys", "full bytes", "bytes %",
+                "repaired", "differ"));
+
+        Random random = new Random(simulator.workloadConfig.seed);
+        long totalTreeBytes = 0;
+        long totalFullBytes = 0;
+        long totalTreeKeys = 0;
+        long totalFullKeys = 0;
+        for(int round = 1; round <= rounds; round++){
+            Log.info("Repair round " + round + "...");
+
+            // writes that miss some of their replicas
+            long missed = 0;
+            for(int write = 0; write < writeCount; write++){
+                int keyIndex = random.nextInt(protocol.ringSize);
+                int owner = ownerRank(keyIndex);
+                for(int j = 0; j < replicaCount; j++){
+                    if(random.nextDouble() < drift){
+                        missed++;
+                    }
+                    else {
+                        store(owner, j, keyIndex);
+                    }
+                }
+            }
+
+            // crashed nodes come back without keys
+            long crashed = 0;
+            for(int crash = 0; crash < crashes; crash++){
+                int rank = random.nextInt(size);
+                Collection<?> data = (Collection<?>) ring[rank].getData();
+                crashed += data.size();
+                data.clear();
+                for(MerkleTree tree : trees[rank]){
+                    tree.clear();
+                }
+            }
+
+            int differingBefore = differingPairs(replicaCount);
+            hashes = 0;
+            treeKeys = 0;
+            fullKeys = 0;
+            repaired = 0;
+            for(int rank = 0; rank < size; rank++){
+                for(int j = 1; j < replicaCount; j++){
+                    int holder = (rank + j) % size;
+                    int previous = (rank + j - 1) % size;
+                    fullKeys += trees[previous][j - 1].size() + trees[holder][j].size();
+                    reconcile(ring[previous], trees[previous][j - 1], ring[holder], trees[holder][j], 1);
+                }
+            }
+
+            long treeBytes = hashes * HASH_BYTES + treeKeys * KEY_BYTES;
+            long fullBytes = fullKeys * KEY_BYTES;
+            totalTreeBytes += treeBytes;
+            totalFullBytes += fullBytes;
+            totalTreeKeys += treeKeys;
+            totalFullKeys += fullKeys;
+            report.append(String.format("\n%5d %8d %8d %8d %9d %10d %12d %10d %12d %8.2f%% %10d %8d", round, missed,
+                    crashed, differingBefore, hashes, treeKeys, treeBytes, fullKeys, fullBytes,
+                    fullBytes > 0 ? 100.0 * treeBytes / fullBytes : 0, repaired, differingPairs(replicaCount)));
+        }
+
+        long treeMemory = 0;
+        for(MerkleTree[] nodeTrees : trees){
+            for(MerkleTree tree : nodeTrees){
+                treeMemory += tree.getAllocatedBytes();
+            }
+        }
+        report.append(String.format("\ntotal: trees %d keys and %d bytes, full sets %d keys and %d bytes (%.2f%% of "
+                        + "the bytes)", totalTreeKeys, totalTreeBytes, totalFullKeys, totalFullBytes,
+                totalFullBytes > 0 ? 100.0 * totalTreeBytes / totalFullBytes : 0));
+        report.append(String.format("\ntree memory per node: %.0f bytes", (double) treeMemory / size));
+        report.append(String.format("\nchecks: %d nodes whose trees differ from their data, %d replica pairs with the "
+                + "same root hash but different keys", inconsistentNodes(), collisions(replicaCount)));
+        report.append("\ndiffer: replica pairs whose trees differ, before and after the repair; missed: replica "
+                + "writes lost by the drift; crashed: keys lost by crashed nodes");
+
+        String result = report.toString();
+        for(String line : result.split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/antientropy_" + simulator.nodeCount + "_nodes_m" + simulator.m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(result);
+        }
+        return result;
+    }
+
+
+    /**
+     * compares a node of the trees of two replicas of a range, and if the hashes differ compares its children. At a
+     * leaf whose hashes differ both replicas send their keys of the leaf, and store the keys they were missing
+     */
+    private void reconcile(NodeInterface a, MerkleTree treeA, NodeInterface b, MerkleTree treeB, int node){
+        // both replicas send their hash of the node
+        hashes += 2;
+        if(treeA.getHash(node) == treeB.getHash(node)){
+            return;
+        }
+        if(node >= treeA.getLeafCount()){
+            int leaf = node - treeA.getLeafCount();
+            int[] keysA = treeA.getLeafKeys(leaf);
+            int[] keysB = treeB.getLeafKeys(leaf);
+            treeKeys += keysA.length + keysB.length;
+            for(int keyIndex : keysA){
+                repaired += copy(b, treeB, keyIndex) ? 1 : 0;
+            }
+            for(int keyIndex : keysB){
+                repaired += copy(a, treeA, keyIndex) ? 1 : 0;
+            }
+            return;
+        }
+        reconcile(a, treeA, b, treeB, 2 * node);
+        reconcile(a, treeA, b, treeB, 2 * node + 1);
+    }
+
+
+    /**
+     * stores a key on the j-th replica of the range of the node at an owner rank
+     */
+    private void store(int owner, int j, int keyIndex){
+        int holder = (owner + j) % ring.length;
+        copy(ring[holder], trees[holder][j], keyIndex);
+    }
+
+
+    /**
+     * stores a key on a node and in its tree of the range of the key
+     * @return true if the node did not have the key
+     */
+    private static boolean copy(NodeInterface node, MerkleTree tree, int keyIndex){
+        if(((Collection<?>) node.getData()).contains(keyIndex)){
+            return false;
+        }
+        node.addData(keyIndex);
+        tree.add(keyIndex);
+        return true;
+    }
+
+
+    /**
+     * @return rank of the owner of a key index: the first node at or after the index, as in ChordProtocol.findPeer()
+     */
+    private int ownerRank(int keyIndex){
+        int low = 0;
+        int high = ids.length;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(ids[middle] < keyIndex){
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low == ids.length ? 0 : low;
+    }
+
+
+    /**
+     * @return number of replica pairs (a replica and the replica before it) whose root hashes differ
+     */
+    private int differingPairs(int replicaCount){
+        int differing = 0;
+        for(int rank = 0; rank < ring.length; rank++){
+            for(int j = 1; j < replicaCount; j++){
+                MerkleTree treeA = trees[(rank + j - 1) % ring.length][j - 1];
+                MerkleTree treeB = trees[(rank + j) % ring.length][j];
+                if(treeA.getHash(1) != treeB.getHash(1)){
+                    differing++;
+                }
+            }
+        }
+        return differing;
+    }
+
+
+    /**
+     * @return number of nodes whose trees do not hold the same number of keys as their data
+     */
+    private int inconsistentNodes(){
+        int inconsistent = 0;
+        for(int rank = 0; rank < ring.length; rank++){
+            long treeSize = 0;
+            for(MerkleTree tree : trees[rank]){
+                treeSize += tree.size();
+            }
+            if(treeSize != ((Collection<?>) ring[rank].getData()).size()){
+                inconsistent++;
+            }
+        }
+        return inconsistent;
+    }
+
+
+    /**
+     * @return number of replica pairs with the same root hash whose keys differ
+     */
+    private int collisions(int replicaCount){
+        int collisions = 0;
+        for(int rank = 0; rank < ring.length; rank++){
+            for(int j = 1; j < replicaCount; j++){
+                MerkleTree treeA = trees[(rank + j - 1) % ring.length][j - 1];
+                MerkleTree treeB = trees[(rank + j) % ring.length][j];
+                if(treeA.getHash(1) == treeB.getHash(1) && !Arrays.equals(sortedKeys(treeA), sortedKeys(treeB))){
+                    collisions++;
+                }
+            }
+        }
+        return collisions;
+    }
+
+
+    private static int[] sortedKeys(MerkleTree tree){
+        int[] keys = new int[tree.size()];
+        int count = 0;
+        for(int leaf = 0; leaf < tree.getLeafCount(); leaf++){
+            int[] leafKeys = tree.getLeafKeys(leaf);
+            System.arraycopy(leafKeys, 0, keys, count, leafKeys.length);
+            count += leafKeys.length;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+}
@@ -0,0 +1,312 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import logging.Log;
+import workload.KeyDistribution;
+import workload.WorkloadConfig;
+
+/**
+ * This class runs the lookup benchmark: after the protocol is built, client threads look up keys for a warmup period
+ * and then for a measured period, and the sustained lookups per second, the latency percentiles and the bytes
+ * allocated per lookup are reported.
+ *
+ * The clients run either
+ *     - open loop (--rate): requests are sent on a fixed schedule, whether or not the previous lookups have finished.
+ *       The latency of a lookup is measured from the time it should have been sent, so a stall delays every request
+ *       scheduled during the stall and shows up in the percentiles
+ *     - closed loop (default): each thread sends the next request when the previous lookup has finished. With
+ *       --interval the latencies are corrected for coordinated omission: a lookup that takes longer than the interval
+ *       also records the requests that would have been sent at that interval while waiting. Without it the latencies
+ *       are the service times, uncorrected
+ *
+ * Options:
+ *     --warmup &lt;seconds&gt;    lookups before the measurement (default 5)
+ *     --duration &lt;seconds&gt;  measured time (default 10)
+ *     --rate &lt;lookups/s&gt;    open loop with this total request rate
+ *     --interval &lt;us&gt;       closed loop: interval at which each client is expected to send requests, to correct
+ *                           the latencies for coordinated omission (default 0, uncorrected)
+ *     --threads &lt;count&gt;     client threads (default 1)
+ *     --buffer              looks up with ChordProtocol.lookUp(int, int[]) into a buffer of each client, which does
+ *                           not allocate, instead of creating a LookUpResponse per lookup
+ *
+ * The keys follow the distribution of the workload (--distribution, --seed). The sequential and trace workloads
+ * cycle through the keys in order.
+ */
+public class BenchmarkRunner {
+
+    public double warmup;
+    public double duration;
+    // requests per second of the open loop, 0 for closed loop
+    public double rate;
+    // interval in nanoseconds at which each closed loop client is expected to send requests, 0 for no correction
+    public long expectedInterval;
+    public int threads;
+    // true to look up into a buffer instead of creating responses
+    public boolean buffer;
+
+
+    /**
+     * creates a benchmark runner from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the benchmark runner
+     */
+    public static BenchmarkRunner fromOptions(HashMap<String, String> options){
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.warmup = Double.parseDouble(options.getOrDefault("warmup", "5"));
+        runner.duration = Double.parseDouble(options.getOrDefault("duration", "10"));
+        runner.rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        runner.expectedInterval = (long) (Double.parseDouble(options.getOrDefault("interval", "0")) * 1000);
+        runner.threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+        runner.buffer = options.containsKey("buffer");
+        if(runner.duration <= 0 || runner.threads < 1 || runner.rate < 0 || runner.expectedInterval < 0){
+            throw new IllegalArgumentException("the benchmark needs a positive duration and thread count, and a rate and "
+                    + "interval that are not negative");
+        }
+        if(runner.rate > 0 && runner.expectedInterval > 0){
+            throw new IllegalArgumentException("--interval corrects the closed loop, the open loop has its --rate");
+        }
+        return runner;
+    }
+
+
+    /**
+     * runs the benchmark on a built protocol, logs the results and writes them to
+     * output/benchmark_&lt;nodes&gt;_nodes_m&lt;m&gt;.txt
+     * @param simulator the simulator, with the protocol built
+     * @return the results, as text
+     */
+    public String run(ChordProtocolSimulator simulator) throws InterruptedException {
+        Protocol protocol = simulator.protocol;
+        if(simulator.keyCount < 1){
+            throw new IllegalArgumentException("the benchmark needs at least one key to look up");
+        }
+        if(threads > 1 && protocol instanceof ChordProtocol && ((ChordProtocol) protocol).transport != null){
+            throw new IllegalArgumentException("lookups over a transport can only be benchmarked with one thread");
+        }
+        if(buffer && !(protocol instanceof ChordProtocol)){
+            throw new IllegalArgumentException("only the chord protocol can look up into a buffer");
+        }
+        WorkloadConfig workload = simulator.workloadConfig;
+        Log.info("Benchmark: " + loop() + ", "
+                + threads + " threads, " + warmup + " s warmup, " + duration + " s measured, " + workload);
+
+        // the keys are hashed before the clock starts, so the lookups are measured without hashing
+        int[] keyIndexes = simulator.keys.indexes();
+
+        long start = System.nanoTime();
+        long measureFrom = start + (long) (warmup * 1e9);
+        long end = measureFrom + (long) (duration * 1e9);
+
+        List<Client> clients = new ArrayList<>();
+        for(int t = 0; t < threads; t++){
+            Client client = new Client(simulator, keyIndexes, t, start, measureFrom, end);
+            clients.add(client);
+            client.thread.start();
+        }
+        LatencyHistogram latencies = new LatencyHistogram();
+        LatencyHistogram serviceTimes = new LatencyHistogram();
+        long lookups = 0;
+        long hops = 0;
+        long allocated = 0;
+        long lastCompletion = end;
+        for(Client client : clients){
+            client.thread.join();
+            if(client.failure != null){
+                throw new IllegalStateException("benchmark client failed", client.failure);
+            }
+            latencies.add(client.latencies);
+            serviceTimes.add(client.serviceTimes);
+            lookups += client.lookups;
+            hops += client.hops;
+            allocated += client.allocated;
+            lastCompletion = Math.max(lastCompletion, client.lastCompletion);
+        }
+
+        // lookups that were sent in the measured time but finished after it still count, over the longer time
+        double seconds = (lastCompletion - measureFrom) / 1e9;
+        String result = String.format("nodes = %d, m = %d, keys = %d, %s, threads = %d%s", simulator.nodeCount,
+                simulator.m, simulator.keyCount, loop(),
+                threads, buffer ? ", lookups into a buffer" : "")
+                + String.format("\nlookups per second = %.0f (%d lookups in %.2f s)", lookups / seconds, lookups,
+                seconds)
+                + String.format("\naverage hop count = %.3f", lookups > 0 ? (double) hops / lookups : 0)
+                + String.format("\nlatency = mean %.1f us, ", latencies.getMean() / 1000) + latencies
+                + String.format("\nservice time = mean %.1f us, ", serviceTimes.getMean() / 1000) + serviceTimes
+                + String.format("\nallocated bytes per lookup = %.1f", lookups > 0 ? (double) allocated / lookups : 0);
+        for(String line : result.split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/benchmark_" + simulator.nodeCount + "_nodes_m" + simulator.m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(result);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+
+    /**
+     * @return how the clients send their requests, eg:- "closed loop, corrected for 20.0 us intervals"
+     */
+    private String loop(){
+        if(rate > 0){
+            return "open loop at " + rate + " lookups/s";
+        }
+        if(expectedInterval > 0){
+            return String.format("closed loop, corrected for %.1f us intervals", expectedInterval / 1000.0);
+        }
+        return "closed loop, uncorrected";
+    }
+
+
+    /**
+     * a client thread. Latencies include the time a request waited for its turn (open loop) or are corrected for
+     * coordinated omission (closed loop with an interval); service times are the time the lookups took
+     */
+    private final class Client implements Runnable {
+        final Thread thread;
+        final ChordProtocolSimulator simulator;
+        // index of each key by number
+        final int[] keyIndexes;
+        final int index;
+        final long start;
+        final long measureFrom;
+        final long end;
+
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final LatencyHistogram serviceTimes = new LatencyHistogram();
+        long lookups;
+        long hops;
+        long allocated;
+        long lastCompletion;
+        Throwable failure;
+
+        private final KeyDistribution keys;
+        private final Random random;
+        private int nextSequentialKey;
+        // result buffer of the lookups, null if the lookups create responses
+        private final int[] result;
+
+        Client(ChordProtocolSimulator simulator, int[] keyIndexes, int index, long start, long measureFrom, long end){
+            this.simulator = simulator;
+            this.keyIndexes = keyIndexes;
+            this.index = index;
+            this.start = start;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.keys = simulator.workloadConfig.createDistribution();
+            this.random = new Random(simulator.workloadConfig.seed + index);
+            this.nextSequentialKey = index;
+            this.result = buffer ? ChordProtocol.lookupBuffer(simulator.m) : null;
+            this.thread = new Thread(this, "benchmark-client-" + index);
+        }
+
+        public void run(){
+            try {
+                if(rate > 0){
+                    runOpenLoop();
+                }
+                else {
+                    runClosedLoop();
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+
+        private void runOpenLoop(){
+            // each thread sends every threads-th request of the schedule
+            double interval = threads * 1e9 / rate;
+            long allocationStart = -1;
+            for(long i = 0; ; i++){
+                long intended = start + (long) ((i + (double) index / threads) * interval);
+                if(intended >= end){
+                    break;
+                }
+                waitUntil(intended);
+                if(allocationStart < 0 && intended >= measureFrom){
+                    allocationStart = SweepRunner.allocatedBytes();
+                }
+                long sent = System.nanoTime();
+                int hopCount = lookUp();
+                long done = System.nanoTime();
+                if(intended >= measureFrom){
+                    latencies.record(done - intended);
+                    serviceTimes.record(done - sent);
+                    lookups++;
+                    hops += hopCount;
+                    lastCompletion = done;
+                }
+            }
+            if(allocationStart >= 0){
+                allocated = SweepRunner.allocatedBytes() - allocationStart;
+            }
+        }
+
+        private void runClosedLoop(){
+            long allocationStart = -1;
+            while(true){
+                long sent = System.nanoTime();
+                if(sent >= end){
+                    break;
+                }
+                if(sent >= measureFrom && allocationStart < 0){
+                    allocationStart = SweepRunner.allocatedBytes();
+                }
+                int hopCount = lookUp();
+                long done = System.nanoTime();
+                if(allocationStart < 0){
+                    continue;
+                }
+                latencies.recordCorrected(done - sent, expectedInterval);
+                serviceTimes.record(done - sent);
+                lookups++;
+                hops += hopCount;
+                lastCompletion = done;
+            }
+            if(allocationStart >= 0){
+                allocated = SweepRunner.allocatedBytes() - allocationStart;
+            }
+        }
+
+        /**
+         * looks up the next key
+         * @return hop count of the lookup
+         */
+        private int lookUp(){
+            int keyNumber;
+            if(keys != null){
+                keyNumber = keys.sample(random);
+            }
+            else {
+                keyNumber = nextSequentialKey % simulator.keyCount + 1;
+                nextSequentialKey += threads;
+            }
+            if(result != null){
+                return ((ChordProtocol) simulator.protocol).lookUp(keyIndexes[keyNumber], result);
+            }
+            return simulator.protocol.lookUp(keyIndexes[keyNumber]).peers_looked_up.size();
+        }
+
+        private void waitUntil(long time){
+            long remaining;
+            while((remaining = time - System.nanoTime()) > 0){
+                // park for long waits, spin for the last 50 microseconds as parking is not that precise
+                if(remaining > 50000){
+                    LockSupport.parkNanos(remaining - 50000);
+                }
+            }
+        }
+    }
+}
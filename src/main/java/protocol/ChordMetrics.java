@@ -0,0 +1,320 @@
+package protocol;
+
+import java.lang.management.ManagementFactory;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import crypto.HashCache;
+import p2p.NetworkInterface;
+
+/**
+ * This class collects the metrics of the chord protocol and exposes them as a JMX MBean. The counters updated by
+ * lookups are LongAdders (striped counters), so lookups running on many threads do not contend on one counter. This
+ * includes the load of each node, which is counted in an array of LongAdders indexed by node handle: lookups that
+ * start at the same hot node add to different cells of its counter. A LongAdder only allocates its cells once it is
+ * contended, so a node that is only visited by one thread at a time costs one small object.
+ *
+ * The MBean is registered as "protocol:type=ChordMetrics,name=&lt;name&gt;".
+ */
+public class ChordMetrics implements ChordMetricsMBean {
+
+    // hop counts of at least this value are counted in the last bucket of the histogram
+    public static final int MAX_TRACKED_HOPS = 64;
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    // build durations in nanoseconds
+    private volatile long assignKeysNanos;
+    private volatile long buildOverlayNanos;
+    private volatile long buildFingerTableNanos;
+
+    private volatile long keyCount;
+    private NetworkInterface network;
+    private HashCache hashCache;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hops = new LongAdder();
+    private final LongAdder[] hopCounts;
+
+    // number of lookup requests handled by each node, by node handle
+    private volatile LongAdder[] nodeLoad;
+
+    private long lastRateTime;
+    private long lastRateLookups;
+    private double lastRate;
+
+    private int topK = 10;
+    private ObjectName objectName;
+
+
+    public ChordMetrics(){
+        this.hopCounts = new LongAdder[MAX_TRACKED_HOPS + 1];
+        for(int i = 0; i < hopCounts.length; i++){
+            hopCounts[i] = new LongAdder();
+        }
+        this.nodeLoad = new LongAdder[0];
+        this.lastRateTime = System.nanoTime();
+    }
+
+
+    /**
+     * registers the metrics in the platform MBean server
+     * @param name name of the MBean, a number is added to make it unique
+     * @return this metrics object
+     */
+    public synchronized ChordMetrics register(String name){
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            objectName = new ObjectName("protocol:type=ChordMetrics,name=" + ObjectName.quote(name + " #"
+                    + instances.incrementAndGet()));
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("could not register the chord metrics MBean", e);
+        }
+        return this;
+    }
+
+
+    /**
+     * removes the metrics from the platform MBean server
+     */
+    public synchronized void unregister(){
+        if(objectName != null){
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            objectName = null;
+        }
+    }
+
+
+    /**
+     * sets the network whose nodes are counted. The node load counters are sized to the network
+     */
+    public void setNetwork(NetworkInterface network){
+        this.network = network;
+        this.nodeLoad = newNodeLoad(network.getHandleLimit());
+    }
+
+
+    public void setHashCache(HashCache hashCache){
+        this.hashCache = hashCache;
+    }
+
+
+    public void setKeyCount(long keyCount){
+        this.keyCount = keyCount;
+    }
+
+
+    public void recordAssignKeys(long nanos){
+        this.assignKeysNanos = nanos;
+    }
+
+
+    public void recordBuildOverlay(long nanos){
+        this.buildOverlayNanos = nanos;
+    }
+
+
+    public void recordBuildFingerTable(long nanos){
+        this.buildFingerTableNanos = nanos;
+    }
+
+
+    /**
+     * records that a node handled a lookup request
+     * @param handle handle of the node
+     */
+    public void recordVisit(int handle){
+        LongAdder[] load = nodeLoad;
+        if(handle < load.length){
+            load[handle].increment();
+        }
+    }
+
+
+    /**
+     * records a completed lookup
+     * @param hopCount number of hops of the lookup
+     */
+    public void recordLookup(int hopCount){
+        lookups.increment();
+        hops.add(hopCount);
+        hopCounts[Math.min(hopCount, MAX_TRACKED_HOPS)].increment();
+    }
+
+
+    public long getAssignKeysMillis(){
+        return assignKeysNanos / 1000000;
+    }
+
+
+    public long getBuildOverlayMillis(){
+        return buildOverlayNanos / 1000000;
+    }
+
+
+    public long getBuildFingerTableMillis(){
+        return buildFingerTableNanos / 1000000;
+    }
+
+
+    public int getNodeCount(){
+        return network != null ? network.getSize() : 0;
+    }
+
+
+    public long getKeyCount(){
+        return keyCount;
+    }
+
+
+    public long getLookupCount(){
+        return lookups.sum();
+    }
+
+
+    public synchronized double getLookupsPerSecond(){
+        long now = System.nanoTime();
+        long count = lookups.sum();
+        // a new rate is calculated when at least 100 ms have passed, so frequent reads do not give noisy values
+        if(now - lastRateTime >= 100000000L){
+            lastRate = (count - lastRateLookups) * 1e9 / (now - lastRateTime);
+            lastRateTime = now;
+            lastRateLookups = count;
+        }
+        return lastRate;
+    }
+
+
+    public double getAverageHops(){
+        long count = lookups.sum();
+        return count > 0 ? (double) hops.sum() / count : 0;
+    }
+
+
+    public int getHopsP50(){
+        return hopPercentile(50);
+    }
+
+
+    public int getHopsP90(){
+        return hopPercentile(90);
+    }
+
+
+    public int getHopsP99(){
+        return hopPercentile(99);
+    }
+
+
+    public int getHopsMax(){
+        for(int h = MAX_TRACKED_HOPS; h >= 0; h--){
+            if(hopCounts[h].sum() > 0){
+                return h;
+            }
+        }
+        return 0;
+    }
+
+
+    private int hopPercentile(double percentile){
+        long[] counts = new long[MAX_TRACKED_HOPS + 1];
+        long total = 0;
+        for(int h = 0; h <= MAX_TRACKED_HOPS; h++){
+            counts[h] = hopCounts[h].sum();
+            total += counts[h];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for(int h = 0; h <= MAX_TRACKED_HOPS; h++){
+            seen += counts[h];
+            if(seen >= rank){
+                return h;
+            }
+        }
+        return MAX_TRACKED_HOPS;
+    }
+
+
+    public double getHashCacheHitRatio(){
+        if(hashCache == null){
+            return -1;
+        }
+        long hits = hashCache.getHits();
+        long total = hits + hashCache.getMisses();
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+
+    public String[] getTopNodeLoad(){
+        LongAdder[] load = nodeLoad;
+        int k = topK;
+        // keep the k most loaded nodes in a min-heap of (load, handle)
+        PriorityQueue<long[]> top = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        for(int handle = 0; handle < load.length; handle++){
+            long value = load[handle].sum();
+            if(value == 0){
+                continue;
+            }
+            if(top.size() < k){
+                top.add(new long[]{value, handle});
+            }
+            else if(value > top.peek()[0]){
+                top.poll();
+                top.add(new long[]{value, handle});
+            }
+        }
+        String[] result = new String[top.size()];
+        for(int i = result.length - 1; i >= 0; i--){
+            long[] entry = top.poll();
+            String name = (network != null && network.getNodeByHandle((int) entry[1]) != null)
+                    ? network.getNodeByHandle((int) entry[1]).getName() : "handle " + entry[1];
+            result[i] = name + " = " + entry[0];
+        }
+        return result;
+    }
+
+
+    private static LongAdder[] newNodeLoad(int handles){
+        LongAdder[] load = new LongAdder[handles];
+        for(int handle = 0; handle < handles; handle++){
+            load[handle] = new LongAdder();
+        }
+        return load;
+    }
+
+
+    public void setTopK(int topK){
+        this.topK = Math.max(1, topK);
+    }
+
+
+    public int getTopK(){
+        return topK;
+    }
+
+
+    public synchronized void resetLookupStatistics(){
+        lookups.reset();
+        hops.reset();
+        for(LongAdder count : hopCounts){
+            count.reset();
+        }
+        nodeLoad = newNodeLoad(nodeLoad.length);
+        lastRateTime = System.nanoTime();
+        lastRateLookups = 0;
+        lastRate = 0;
+    }
+}
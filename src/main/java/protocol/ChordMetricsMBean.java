@@ -0,0 +1,91 @@
+package protocol;
+
+/**
+ * The JMX interface of the chord protocol metrics. Every getter is an attribute that can be read with JMX tools
+ * (eg:- jconsole) while the simulation runs.
+ */
+public interface ChordMetricsMBean {
+
+    /**
+     * @return time spent generating and assigning keys to nodes, in milliseconds
+     */
+    long getAssignKeysMillis();
+
+    /**
+     * @return time spent building the overlay network, in milliseconds
+     */
+    long getBuildOverlayMillis();
+
+    /**
+     * @return time spent building the finger tables, in milliseconds
+     */
+    long getBuildFingerTableMillis();
+
+    /**
+     * @return number of nodes in the network
+     */
+    int getNodeCount();
+
+    /**
+     * @return number of keys assigned to the nodes
+     */
+    long getKeyCount();
+
+    /**
+     * @return number of lookups performed
+     */
+    long getLookupCount();
+
+    /**
+     * @return lookups per second since the previous time this attribute was read (or since the metrics were created)
+     */
+    double getLookupsPerSecond();
+
+    /**
+     * @return average hop count of the lookups
+     */
+    double getAverageHops();
+
+    /**
+     * @return median hop count of the lookups
+     */
+    int getHopsP50();
+
+    /**
+     * @return 90th percentile of the hop counts
+     */
+    int getHopsP90();
+
+    /**
+     * @return 99th percentile of the hop counts
+     */
+    int getHopsP99();
+
+    /**
+     * @return largest hop count
+     */
+    int getHopsMax();
+
+    /**
+     * @return share of node and key digests served from the hash cache, or -1 if no cache is used
+     */
+    double getHashCacheHitRatio();
+
+    /**
+     * @return the nodes that have handled the most lookup requests (as the owner or on the way), with their counts
+     */
+    String[] getTopNodeLoad();
+
+    /**
+     * sets the number of nodes returned by getTopNodeLoad()
+     * @param topK number of nodes
+     */
+    void setTopK(int topK);
+
+    int getTopK();
+
+    /**
+     * resets the lookup counters (lookups, hops and node load). Build durations are kept.
+     */
+    void resetLookupStatistics();
+}
@@ -2,8 +2,21 @@ package protocol;
 
 
 import java.util.*;
+import java.util.function.IntConsumer;
 
 import crypto.ConsistentHashing;
+import crypto.HashCache;
+import logging.Log;
+import logging.LogEvent;
+import tracing.FingerTableBuildEvent;
+import tracing.LookupEvent;
+import tracing.LookupHopEvent;
+import tracing.LookupTracer;
+import store.SlabValueStore;
+import store.ValueStore;
+import store.ValueStoreFactory;
+import p2p.BloomFilter;
+import p2p.FilteredNode;
 import p2p.NetworkInterface;
 import p2p.NodeInterface;
 
@@ -24,9 +37,51 @@ public class ChordProtocol implements Protocol{
     // key indexes. tuples of (<key name>, <key index>)
     public HashMap<String, Integer> keyIndexes;
 
+    // number of indexes in the ring, 2^m
+    public int ringSize;
+
+    // node that every lookup starts from ('Node 1'), resolved once when the overlay network is built
+    public NodeInterface startNode;
+
+    // chooses the lookups whose full hop path is recorded. tracing is off by default
+    public LookupTracer tracer = new LookupTracer(0);
+
+    // index of the predecessor of each node in the ring, by node handle. Used to check which node owns an index
+    public int[] predecessorIndexes;
+
+    // the first node of the ring: the node with the lowest index, the first in the topology if several have it. It
+    // owns the whole ring if every node has the same index, see owns()
+    public NodeInterface firstNode;
+
+    // performs the lookups somewhere else, eg:- over sockets (see net.ChordClient). null means lookups run here
+    public LookupTransport transport;
+
+    // true if buildFingerTable() builds CompactFingerTables
+    public boolean compactFingerTables;
+
+    // value stores of the nodes by node handle, created when the first value is stored on a node
+    public ValueStore[] stores;
+
+    // creates the value stores of the nodes. By default the values are kept in slabs in the heap
+    public ValueStoreFactory storeFactory = node -> new SlabValueStore(false);
+
+    // lookup metrics exposed over JMX. null (the default) means no metrics are collected
+    public ChordMetrics metrics;
+
+    // the next hop of a lookup is the successor rather than a finger table entry, see nextHopEntry()
+    public static final int SUCCESSOR_HOP = -1;
+
+    // positions in the buffer of lookUp(int, int[])
+    public static final int LOOKUP_OWNER_ID = 0;
+    public static final int LOOKUP_OWNER_HANDLE = 1;
+    public static final int LOOKUP_HOPS = 2;
+    public static final int LOOKUP_PATH_LENGTH = 3;
+    public static final int LOOKUP_PATH = 4;
+
 
     public ChordProtocol(int m){
         this.m = m;
+        this.ringSize = (int) Math.pow(2, m);
         setHashFunction();
         this.keyIndexes = new HashMap<String, Integer>();
     }
@@ -40,14 +95,52 @@ public class ChordProtocol implements Protocol{
         this.ch = new ConsistentHashing(this.m);
     }
 
+
+    /**
+     * sets a cache of digests that the hash function uses, so that node names are not hashed again by every
+     * simulation that shares the cache
+     * @param cache the shared cache
+     */
+    public void setHashCache(HashCache cache){
+        this.ch = new ConsistentHashing(this.m, cache);
+    }
+
   
 
+    /**
+     * sets the lookup tracer, which records the full hop path of every nth lookup
+     * @param tracer the lookup tracer
+     */
+    public void setTracer(LookupTracer tracer){
+        this.tracer = tracer;
+    }
+
+
+
+    /**
+     * creates the lookup metrics of the protocol and registers them as a JMX MBean
+     * @param name name of the MBean
+     * @return the metrics
+     */
+    public ChordMetrics enableMetrics(String name){
+        this.metrics = new ChordMetrics().register(name);
+        if (network != null) {
+            metrics.setNetwork(network);
+        }
+        return metrics;
+    }
+
+
+
     /**
      * sets the network
      * @param network the network object
      */
     public void setNetwork(NetworkInterface network){
         this.network = network;
+        if (metrics != null) {
+            metrics.setNetwork(network);
+        }
     }
 
 
@@ -83,7 +176,7 @@ public class ChordProtocol implements Protocol{
      *           3)     add neighbor to the peer (uses Peer.addNeighbor() method)
      */
     public void buildOverlayNetwork(){
-        System.out.println("\tBuilding the overlay network...");
+        Log.info("\tBuilding the overlay network...");
         
         // Retrieve all nodes in the network
         LinkedHashMap<String, NodeInterface> topology = network.getTopology();
@@ -99,8 +192,10 @@ public class ChordProtocol implements Protocol{
         // Sort nodes by their indexes to arrange them in ring order
         nodesWithIndexes.sort(Map.Entry.comparingByValue());
 
-        // Assign neighbors to form ring
+        // Assign neighbors to form ring. Handles are not reused after a node is removed, so the predecessors are
+        // indexed up to the handle limit rather than the number of nodes
         int numNodes = nodesWithIndexes.size();
+        predecessorIndexes = new int[network.getHandleLimit()];
         for (int i = 0; i < numNodes; i++) {
             // Current node and its successor (next node in the ring)
             String currentNodeName = nodesWithIndexes.get(i).getKey();
@@ -112,10 +207,46 @@ public class ChordProtocol implements Protocol{
 
             // Add the next node as neighbor to the current node
             currentNode.addNeighbor(nextNodeName, nextNode);
+            predecessorIndexes[nextNode.getHandle()] = currentNode.getId();
+        }
+        firstNode = numNodes > 0 ? topology.get(nodesWithIndexes.get(0).getKey()) : null;
+
+        finishOverlayNetwork();
+    }
+
+
+    /**
+     * This method links the nodes at the positions from ... to-1 of the ring to their successors, as
+     * buildOverlayNetwork() does. The links of different positions are independent, so the ring can be linked in
+     * parallel ranges. predecessorIndexes must have one entry per handle, and finishOverlayNetwork() must be called
+     * once every range is linked.
+     *
+     * @param ring the nodes sorted by their index, nodes with the same index in the order of the topology
+     * @param from first position
+     * @param to position after the last position
+     */
+    public void linkRing(NodeInterface[] ring, int from, int to) {
+        if (from == 0 && to > 0) {
+            firstNode = ring[0];
+        }
+        for (int p = from; p < to; p++) {
+            NodeInterface currentNode = ring[p];
+            NodeInterface nextNode = ring[(p + 1) % ring.length];
+            currentNode.addNeighbor(nextNode.getName(), nextNode);
+            predecessorIndexes[nextNode.getHandle()] = currentNode.getId();
         }
     }
 
 
+    /**
+     * indexes the nodes by their ring index, and resolves the node lookups start from
+     */
+    public void finishOverlayNetwork() {
+        network.indexNodeIds();
+        startNode = network.getNode("Node 1");
+    }
+
+
     /**
      * This method builds the finger table. The finger table is the routing table used in the chord protocol to perform
      * lookup operations. The finger table stores m-entries. Each ith entry points to the ith finger of the node.
@@ -128,7 +259,11 @@ public class ChordProtocol implements Protocol{
      *     3) node - first node in the ring that is responsible for indexes in the interval
      */
     public void buildFingerTable() {
-        System.out.println("\tBuilding the finger tables...");
+        Log.info("\tBuilding the finger tables...");
+        if (compactFingerTables) {
+            buildFingerTablesBySearch(true);
+            return;
+        }
         // Retrieve all nodes
         LinkedHashMap<String, NodeInterface> nodes = network.getTopology();
 
@@ -137,21 +272,23 @@ public class ChordProtocol implements Protocol{
         for (NodeInterface node : nodes.values()) {
             int nodeIndex = node.getId();
 
-            System.out.println("\t\tBuilding the finger table for node " + node.getName() + " with index " +nodeIndex);
+            if (Log.enabled(LogEvent.NODE_BUILD))
+                Log.log(LogEvent.NODE_BUILD, "\t\tBuilding the finger table for node " + node.getName() + " with index " +nodeIndex);
+
+            FingerTableBuildEvent buildEvent = new FingerTableBuildEvent();
+            buildEvent.begin();
 
             // Initialize finger table
-            List<Map<String, Object>> fingerTable = new ArrayList<>();
+            FingerTable fingerTable = new FingerTable(m);
 
             
             // Create m amount of entries
             for (int i = 1; i <= m; i++) {
-                Map<String, Object> entry = new HashMap<>();
-
                 // Calculate start
-                int start = (int) (nodeIndex + Math.pow(2, (i-1))) % (int) Math.pow(2, m);
+                int start = (int) (nodeIndex + Math.pow(2, (i-1))) % ringSize;
 
                 // Calculate end of interval
-                int end = (int) (nodeIndex + Math.pow(2, (i))) % (int) Math.pow(2, m);
+                int end = (int) (nodeIndex + Math.pow(2, (i))) % ringSize;
                 end = (i == m) ? end : end-1; // Last entry should be the first value, so do not subtract 1
 
 
@@ -171,49 +308,164 @@ public class ChordProtocol implements Protocol{
                 //          This allows us to now directly check if a node's (adjusted) index is bigger than an intervals (adjusted) start
 
                 NodeInterface successorNode = node;                 // Add 2^(m) to start if it is placed before the node's index in the overlay network:
-                int adjusted_start = (start <= nodeIndex) ? start + (int) Math.pow(2, m) : start;
+                int adjusted_start = (start <= nodeIndex) ? start + ringSize : start;
                 int adjusted_index;
 
                 do { 
                     successorNode = successorNode.getSuccessor();   // Retreive the next successor in the ring toplogy
                     adjusted_index = successorNode.getId();         // Get the index of the successor
                     if (adjusted_index <= nodeIndex) 
-                        adjusted_index += (int) Math.pow(2, m);     // If the successor is placed before the node's index, add 2^(m) to allow it to be compared with start
+                        adjusted_index += ringSize;                 // If the successor is placed before the node's index, add 2^(m) to allow it to be compared with start
 
                 } while (adjusted_index < adjusted_start );         // Go to next successor if this one is not within the interval                                 
 
 
-                // Save the values to the entry
-                entry.put("start", start);
-                entry.put("interval_start", start);
-                entry.put("interval_end", end);
-                entry.put("successor_node", successorNode.getName());
-
                 // Save the entry to the fingerTable
-                fingerTable.add(entry);
+                fingerTable.setEntry(i-1, start, end, successorNode);
 
-                System.out.println("\t\t\tAdded entry " + i + ":\tStart - " + start + "\tEnd - " + end + "\tSuccessor Node '" + successorNode.getName() + "' with index " + successorNode.getId());
+                if (Log.enabled(LogEvent.FINGER_BUILD))
+                    Log.log(LogEvent.FINGER_BUILD, "\t\t\tAdded entry " + i + ":\tStart - " + start + "\tEnd - " + end + "\tSuccessor Node '" + successorNode.getName() + "' with index " + successorNode.getId());
             }
 
             // Save the finger table to the node
             node.setRoutingTable(fingerTable);
+
+            if (buildEvent.shouldCommit()) {
+                buildEvent.nodeId = nodeIndex;
+                buildEvent.nodeHandle = node.getHandle();
+                buildEvent.entries = fingerTable.size();
+                buildEvent.distinctSuccessors = fingerTable.getDistinctSuccessors();
+                buildEvent.commit();
+            }
         }
     }
 
 
+    /**
+     * This method builds the finger tables by binary search over the nodes sorted by their index, instead of walking
+     * the ring from every node: the successor of an entry is the first node at or after the start of its interval. The
+     * successors are the same as buildFingerTable() finds (also when a node has the same index as its successor), in
+     * O(n m log n) time instead of O(n^2). The indexes are compared as unsigned numbers, so the tables can also be built
+     * for m = 32, where indexes do not fit in a positive int. Only the node indexes are used, not the overlay network.
+     *
+     * @param compact true to build CompactFingerTables, false to build FingerTables
+     */
+    public void buildFingerTablesBySearch(boolean compact) {
+        // the nodes in ring order. The sort is stable, so nodes with the same index are in the order of the overlay
+        NodeInterface[] ring = network.getTopology().values().toArray(new NodeInterface[0]);
+        Arrays.sort(ring, (a, b) -> Long.compare(Integer.toUnsignedLong(a.getId()), Integer.toUnsignedLong(b.getId())));
+        int count = ring.length;
+        long[] ids = new long[count];
+        for (int p = 0; p < count; p++) {
+            ids[p] = Integer.toUnsignedLong(ring[p].getId());
+        }
+        buildFingerTables(ring, ids, compact, 0, count);
+    }
+
+
+    /**
+     * This method builds the finger tables of the nodes at the positions from ... to-1 of the ring, as
+     * buildFingerTablesBySearch() does. The tables of different positions are independent, so the tables can be
+     * built in parallel ranges.
+     *
+     * @param ring the nodes sorted by their index, nodes with the same index in the order of the overlay
+     * @param ids the index of the node at each position, as an unsigned number
+     * @param compact true to build CompactFingerTables, false to build FingerTables
+     * @param from first position
+     * @param to position after the last position
+     */
+    public void buildFingerTables(NodeInterface[] ring, long[] ids, boolean compact, int from, int to) {
+        int count = ring.length;
+        long ringLength = 1L << m;
+
+        NodeInterface[] successor = new NodeInterface[m];
+        for (int p = from; p < to; p++) {
+            NodeInterface node = ring[p];
+            long nodeIndex = ids[p];
+            FingerTableBuildEvent buildEvent = new FingerTableBuildEvent();
+            buildEvent.begin();
+
+            // the ring walk of buildFingerTable() counts a next node with the same index as a full round away, so
+            // that node is the successor of every entry
+            boolean sameIndexNext = p + 1 < count && ids[p + 1] == nodeIndex;
+            for (int i = 0; i < m; i++) {
+                long start = (nodeIndex + (1L << i)) % ringLength;
+                int q;
+                if (sameIndexNext) {
+                    q = p + 1;
+                } else if (start > nodeIndex) {
+                    // the first node after this one at or after the start, or the first node of the ring
+                    q = lowerBound(ids, p + 1, count, start);
+                    q = (q == count) ? 0 : q;
+                } else {
+                    // the interval starts after 0: the first node at or after the start, at the latest this node
+                    q = lowerBound(ids, 0, p + 1, start);
+                }
+                successor[i] = ring[q];
+            }
+
+            Fingers fingers;
+            if (compact) {
+                fingers = CompactFingerTable.of(node.getId(), ringSize, successor);
+            } else {
+                FingerTable fingerTable = new FingerTable(m);
+                for (int i = 0; i < m; i++) {
+                    int start = (int) ((nodeIndex + (1L << i)) % ringLength);
+                    int end = (int) ((nodeIndex + (1L << (i + 1))) % ringLength);
+                    fingerTable.setEntry(i, start, (i == m - 1) ? end : end - 1, successor[i]);
+                }
+                fingers = fingerTable;
+            }
+            node.setRoutingTable(fingers);
+
+            if (buildEvent.shouldCommit()) {
+                buildEvent.nodeId = node.getId();
+                buildEvent.nodeHandle = node.getHandle();
+                buildEvent.entries = fingers.size();
+                buildEvent.distinctSuccessors = fingers.getDistinctSuccessors();
+                buildEvent.commit();
+            }
+        }
+    }
+
+
+    /**
+     * @return the first position from (inclusive) to (exclusive) whose value is at least the key, or to if none is
+     */
+    static int lowerBound(long[] values, int from, int to, long key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
     /**
      * This method performs the lookup operation.
      * Given the key index, it starts with one of the node in the network and
      * follows through the finger table.
      * The correct successors would be identified and the request would be checked
      * in their finger tables successively.
-     * Finally the request will reach the node that contains the data item.
+     * Finally the request will reach the node that owns the key index, which
+     * contains the data item if it is stored. The routing only uses the ring
+     * indexes, so lookups of keys that are not stored end at their owner too.
      *
      * @param keyIndex index of the key
-     * @return names of nodes that have been searched and the final node that
-     *         contains the key
+     * @return names of nodes that have been searched, the node that owns the
+     *         key and if the key is stored there
      */
     public LookUpResponse lookUp(int keyIndex) {
+        if (transport != null) {
+            return transport.lookUp(keyIndex);
+        }
+
         /*
          * implement this logic
          * 
@@ -227,71 +479,579 @@ public class ChordProtocol implements Protocol{
          * function
          */
 
+        LookupEvent event = new LookupEvent();
+        event.begin();
+
         // Create a set to track which nodes' finger tables are examined during the
         // lookup.
         LinkedHashSet<String> peersLookedUp = new LinkedHashSet<>();
 
         // Start the lookup from a predefined node ('Node 1') to maintain consistency
         // across all lookups.
-        NodeInterface startNode = network.getTopology().get("Node 1");
         NodeInterface currentNode = startNode;
 
-        while (true) {
-            // Check if the current node contains the key.
-            Set<Integer> nodeData = (Set<Integer>) currentNode.getData();
+        // The full hop path is recorded if the tracer has chosen this lookup
+        LookupTracer.Path path = tracer.sample(keyIndex, startNode.getId());
 
-            int currentNodeIndex = currentNode.getId();
-            // String nodeNameAndIndex = currentNode.getName() + " (index " + currentNodeIndex + ")";
-            // System.out.println("\tCheck if " + nodeNameAndIndex + " has the key " + keyIndex);
+        while (true) {
+            if (metrics != null) {
+                metrics.recordVisit(currentNode.getHandle());
+            }
 
-            if (nodeData.contains(keyIndex)) {
-                // If the key is found, return the response with details of the current node.
-                return new LookUpResponse(peersLookedUp, currentNodeIndex, currentNode.getName());
+            // The lookup ends at the node that owns the key index, whether or not the key is stored there.
+            if (owns(currentNode, keyIndex)) {
+                break;
             }
 
             peersLookedUp.add(currentNode.getName()); // Log the current node as visited.
 
-            // If the key isn't found, use the node's finger table to determine the next
-            // node to visit.
-            List<Map<String, Object>> fingerTable = (List<Map<String, Object>>) currentNode.getRoutingTable();
-            NodeInterface nextNode = currentNode;
-
-            // System.out.println("\tKey not found for " + nodeNameAndIndex + ", trying to find the successor:");
-
-            // Identify the most appropriate successor node from the finger table.
-            for (Map<String, Object> entry : fingerTable) {
-                int start = (int) entry.get("start");
-                int end = (int) entry.get("interval_end");
-
-                // Calculate adjusted interval and key index to handle wrapping of values
-                //      e.g. when m=10, there is 1024 possible indexes. Then we want the key 1000 to match for inverval [900, 100] (as this wraps around 0)
-                //          by adjusting the values we then get that the key 1000 should match for the interval [900, 1124]
-                int adjusted_start = (start < currentNodeIndex) ? start + (int) Math.pow(2, m) : start;
-                int adjusted_end = (end <= currentNodeIndex) ? end + (int) Math.pow(2, m) : end;
-                int adjusted_keyIndex = (keyIndex < currentNodeIndex) ? keyIndex + (int) Math.pow(2, m) : keyIndex;
-
-                // System.out.println("\t\tIs the key index " + keyIndex + " (" + adjusted_keyIndex + ") in the interval [" + start + ", " + end + "] ([" + adjusted_start + ", " + adjusted_end + "])?");
-
-                // Check if the key index falls within the interval of the current finger table entry.
-                if (adjusted_keyIndex >= adjusted_start && adjusted_keyIndex <= adjusted_end) {
-                    String successorNodeName = (String) entry.get("successor_node");
-                    nextNode = network.getNode(successorNodeName);
-                    // System.out.println("\t\t\tYes! moving to " + successorNodeName + " (index" + nextNode.getId() + ")");
-                    break;
-                }
-            }
+            // If the node does not own the key, move to its successor or to the closest preceding finger.
+            int entry = nextHopEntry(currentNode, keyIndex);
+            NodeInterface nextNode = hopTarget(currentNode, entry);
 
             // Prevent infinite loops by stopping if the same node is reached again.
             if (nextNode.equals(currentNode)) {
                 break;
             }
 
+            LookupHopEvent hopEvent = new LookupHopEvent();
+            if (hopEvent.isEnabled()) {
+                hopEvent.keyIndex = keyIndex;
+                hopEvent.hop = peersLookedUp.size();
+                hopEvent.fromNodeId = currentNode.getId();
+                hopEvent.toNodeId = nextNode.getId();
+                // the finger table entry that was used (1 ... m), or 0 if the lookup moved to the successor
+                hopEvent.finger = entry + 1;
+                hopEvent.commit();
+            }
+            if (path != null) {
+                path.addHop(entry + 1, nextNode.getId());
+            }
+
             // Proceed to the next node as determined by the finger table.
             currentNode = nextNode;
         }
 
-        // Return the response detailing the final node reached if the key was not found.
-        return new LookUpResponse(peersLookedUp, currentNode.getId(), currentNode.getName());
+        if (path != null) {
+            path.finish();
+        }
+        if (event.shouldCommit()) {
+            event.keyIndex = keyIndex;
+            event.startNodeId = startNode.getId();
+            event.ownerNodeId = currentNode.getId();
+            event.hops = peersLookedUp.size();
+            event.commit();
+        }
+        if (metrics != null) {
+            metrics.recordLookup(peersLookedUp.size());
+        }
+
+        // Return the response detailing the node that owns the key, and if the key is stored there.
+        LookUpResponse response = new LookUpResponse(peersLookedUp, currentNode.getId(), currentNode.getName());
+        response.key_stored = storesKey(currentNode, keyIndex);
+        return response;
+    }
+
+
+    /**
+     * This method performs the lookup of lookUp(), but writes the result into a buffer of the caller instead of
+     * creating a LookUpResponse, so a lookup does not allocate. The buffer holds
+     *     [LOOKUP_OWNER_ID]      index of the node that owns the key
+     *     [LOOKUP_OWNER_HANDLE]  handle of the node that owns the key
+     *     [LOOKUP_HOPS]          hop count (the number of nodes looked up)
+     *     [LOOKUP_PATH_LENGTH]   number of nodes written to the path
+     *     [LOOKUP_PATH ...]      handles of the nodes looked up, in order, as far as the buffer has room
+     * Whether the key is stored is not looked up, as the data of a node holds boxed key indexes; toResponse() does it.
+     * No flight recorder events or traces are recorded for these lookups.
+     *
+     * @param keyIndex index of the key
+     * @param result buffer of at least LOOKUP_PATH entries, see lookupBuffer()
+     * @return hop count
+     */
+    public int lookUp(int keyIndex, int[] result) {
+        if (transport != null) {
+            return toBuffer(transport.lookUp(keyIndex), result);
+        }
+        NodeInterface currentNode = startNode;
+        int hops = 0;
+        while (true) {
+            if (metrics != null) {
+                metrics.recordVisit(currentNode.getHandle());
+            }
+            if (owns(currentNode, keyIndex)) {
+                break;
+            }
+            if (LOOKUP_PATH + hops < result.length) {
+                result[LOOKUP_PATH + hops] = currentNode.getHandle();
+            }
+            hops++;
+            NodeInterface nextNode = nextHop(currentNode, keyIndex);
+            if (nextNode == currentNode) {
+                break;
+            }
+            currentNode = nextNode;
+        }
+        if (metrics != null) {
+            metrics.recordLookup(hops);
+        }
+        result[LOOKUP_OWNER_ID] = currentNode.getId();
+        result[LOOKUP_OWNER_HANDLE] = currentNode.getHandle();
+        result[LOOKUP_HOPS] = hops;
+        result[LOOKUP_PATH_LENGTH] = Math.min(hops, result.length - LOOKUP_PATH);
+        return hops;
+    }
+
+
+    /**
+     * @param pathCapacity number of path entries. m is enough unless many nodes share indexes (small m), as a lookup
+     *                     passes the nodes with the same index one by one; the hop count is right in any case
+     * @return a buffer for lookUp(int, int[])
+     */
+    public static int[] lookupBuffer(int pathCapacity) {
+        return new int[LOOKUP_PATH + pathCapacity];
+    }
+
+
+    /**
+     * builds the LookUpResponse of a lookup that was written to a buffer by lookUp(int, int[]), and looks up whether
+     * the key is stored at the owner. The path of the response has the nodes that fit in the buffer
+     *
+     * @param keyIndex index of the key that was looked up
+     * @param result the buffer
+     * @return the response
+     */
+    public LookUpResponse toResponse(int keyIndex, int[] result) {
+        LinkedHashSet<String> peersLookedUp = new LinkedHashSet<>();
+        for (int i = 0; i < result[LOOKUP_PATH_LENGTH]; i++) {
+            peersLookedUp.add(network.getNodeByHandle(result[LOOKUP_PATH + i]).getName());
+        }
+        NodeInterface owner = network.getNodeByHandle(result[LOOKUP_OWNER_HANDLE]);
+        LookUpResponse response = new LookUpResponse(peersLookedUp, owner.getId(), owner.getName());
+        response.key_stored = storesKey(owner, keyIndex);
+        return response;
+    }
+
+
+    /**
+     * writes a response into a lookup buffer
+     * @return hop count
+     */
+    private int toBuffer(LookUpResponse response, int[] result) {
+        NodeInterface owner = network.getNode(response.node_name);
+        int hops = response.peers_looked_up.size();
+        int length = 0;
+        for (String peer : response.peers_looked_up) {
+            if (LOOKUP_PATH + length < result.length) {
+                result[LOOKUP_PATH + length++] = network.getNode(peer).getHandle();
+            }
+        }
+        result[LOOKUP_OWNER_ID] = response.node_index;
+        result[LOOKUP_OWNER_HANDLE] = owner.getHandle();
+        result[LOOKUP_HOPS] = hops;
+        result[LOOKUP_PATH_LENGTH] = length;
+        return hops;
+    }
+
+
+    /**
+     * This method performs a range lookup. It returns the key indexes in the range [from, to] in ring order. If from
+     * is larger than to, the range wraps around 0 (eg:- [1000, 10] with m=10 covers 1000 ... 1023 and 0 ... 10).
+     *
+     * @param from first index of the range
+     * @param to last index of the range
+     * @return the keys in the range, the routing path and the nodes touched
+     */
+    public RangeLookUpResponse rangeLookUp(int from, int to) {
+        return rangeLookUp(from, to, 0, null);
+    }
+
+
+    /**
+     * This method performs a range lookup with a limit on the number of keys returned.
+     *
+     * @param from first index of the range
+     * @param to last index of the range
+     * @param limit maximum number of keys returned, 0 means no limit
+     * @return the keys in the range, the routing path and the nodes touched
+     */
+    public RangeLookUpResponse rangeLookUp(int from, int to, int limit) {
+        return rangeLookUp(from, to, limit, null);
+    }
+
+
+    /**
+     * This method performs a range lookup and streams the keys to a consumer. The range lookup does not look up every
+     * key, it uses the keys being ordered on the ring:
+     *     1) route to the node that owns the index from, using the finger tables
+     *     2) pass the keys of the node that are in the range to the consumer, in ring order
+     *     3) move to the successor, until the node that owns the index to has been scanned or the limit is reached
+     *
+     * @param from first index of the range
+     * @param to last index of the range
+     * @param limit maximum number of keys returned, 0 means no limit
+     * @param consumer receives the keys in ring order. If it is null, the keys are added to the response instead
+     * @return the routing path and the nodes touched (and the keys if no consumer is given)
+     */
+    public RangeLookUpResponse rangeLookUp(int from, int to, int limit, IntConsumer consumer) {
+        LinkedHashSet<String> peersLookedUp = new LinkedHashSet<>();
+        RangeLookUpResponse response = new RangeLookUpResponse(peersLookedUp);
+        IntConsumer keyConsumer = (consumer != null) ? consumer : response.keys::add;
+
+        // 1) route to the owner of from
+        NodeInterface currentNode = routeToOwner(startNode, from, peersLookedUp);
+
+        // 2) and 3) walk the successors. distances are measured clockwise from the start of the range
+        int span = ringDistance(from, to);
+        int found = 0;
+        NodeInterface firstNode = currentNode;
+        // the owner of from also holds the keys just before from. If the range goes all the way around the ring,
+        // those keys come last, so they are taken when the walk is back at the first node (the tail)
+        int firstNodeDistance = ringDistance(from, firstNode.getId());
+        boolean tail = false;
+        while (true) {
+            response.nodes_touched.add(currentNode.getName());
+
+            // collect the keys of the node that are in the range, ordered by their distance from the start
+            Set<Integer> nodeData = (Set<Integer>) currentNode.getData();
+            long[] matches = new long[nodeData.size()];
+            int matchCount = 0;
+            for (int key : nodeData) {
+                int distance = ringDistance(from, key);
+                boolean inVisit = (currentNode != firstNode) || (tail == (distance > firstNodeDistance));
+                if (distance <= span && inVisit) {
+                    matches[matchCount++] = ((long) distance << 32) | (key & 0xffffffffL);
+                }
+            }
+            Arrays.sort(matches, 0, matchCount);
+            for (int i = 0; i < matchCount; i++) {
+                if (limit > 0 && found == limit) {
+                    response.limit_reached = true;
+                    return response;
+                }
+                keyConsumer.accept((int) matches[i]);
+                found++;
+            }
+
+            // stop at the node that owns the end of the range
+            if (tail || ringDistance(from, currentNode.getId()) >= span) {
+                break;
+            }
+            currentNode = currentNode.getSuccessor();
+            response.successor_hops++;
+            tail = (currentNode == firstNode);
+        }
+        return response;
+    }
+
+
+    /**
+     * This method checks if a node stores a key. If the node keeps a Bloom filter over its data, the filter is probed
+     * first and the data only when the filter answers that the key might be stored; a key the filter let through but
+     * the data does not contain is counted as a false positive of the filter.
+     *
+     * @param node the node
+     * @param keyIndex index of the key
+     * @return true if the key is in the data of the node
+     */
+    public boolean storesKey(NodeInterface node, int keyIndex) {
+        BloomFilter filter = FilteredNode.filterOf(node);
+        if (filter == null) {
+            return ((Set<?>) node.getData()).contains(keyIndex);
+        }
+        if (!filter.mightContain(keyIndex)) {
+            return false;
+        }
+        boolean stored = ((Set<?>) node.getData()).contains(keyIndex);
+        if (!stored) {
+            filter.falsePositives++;
+        }
+        return stored;
+    }
+
+
+    /**
+     * This method routes from a node to the node that owns an index, using the finger tables. Unlike lookUp() it
+     * stops at the owner whether or not a key with the index is stored, so it also finds the owner of new keys.
+     *
+     * @param from the node the routing starts from
+     * @param index index in the ring
+     * @param path receives the names of the nodes passed on the way (not the owner), may be null
+     * @return the node that owns the index
+     */
+    public NodeInterface routeToOwner(NodeInterface from, int index, LinkedHashSet<String> path) {
+        NodeInterface currentNode = from;
+        while (!owns(currentNode, index)) {
+            if (path != null) {
+                path.add(currentNode.getName());
+            }
+            NodeInterface nextNode = nextHop(currentNode, index);
+            if (nextNode.equals(currentNode)) {
+                break;
+            }
+            currentNode = nextNode;
+        }
+        return currentNode;
+    }
+
+
+    /**
+     * sets the factory of the value stores of the nodes. Must be called before the first value is stored
+     * @param factory the factory
+     */
+    public void setStoreFactory(ValueStoreFactory factory) {
+        this.storeFactory = factory;
+    }
+
+
+    /**
+     * returns the value store of a node, and creates it if the node has none yet
+     * @param node the node
+     * @return the value store of the node
+     */
+    public ValueStore getStore(NodeInterface node) {
+        int handle = node.getHandle();
+        if (stores == null || handle >= stores.length) {
+            stores = Arrays.copyOf(stores != null ? stores : new ValueStore[0], network.getHandleLimit());
+        }
+        if (stores[handle] == null) {
+            stores[handle] = storeFactory.create(node);
+        }
+        return stores[handle];
+    }
+
+
+    /**
+     * This method stores a value. The key is hashed to an index, and the value is stored in the value store of the
+     * node that owns the index.
+     *
+     * @param key name of the key
+     * @param value the value
+     * @return true if the key had a value before
+     */
+    public boolean put(String key, byte[] value) {
+        long digest = ConsistentHashing.digest64(key);
+        return getStore(routeToOwner(startNode, ch.index(digest), null)).put(digest, value);
+    }
+
+
+    /**
+     * This method returns the value of a key from the node that owns the key.
+     *
+     * @param key name of the key
+     * @return the value, or null if the key has no value
+     */
+    public byte[] get(String key) {
+        long digest = ConsistentHashing.digest64(key);
+        return getStore(routeToOwner(startNode, ch.index(digest), null)).get(digest);
+    }
+
+
+    /**
+     * This method removes the value of a key from the node that owns the key.
+     *
+     * @param key name of the key
+     * @return true if the key had a value
+     */
+    public boolean delete(String key) {
+        long digest = ConsistentHashing.digest64(key);
+        return getStore(routeToOwner(startNode, ch.index(digest), null)).delete(digest);
+    }
+
+
+    /**
+     * This method stores a batch of values. The keys are sorted by their index, so the batch is routed once to the
+     * owner of the first key and then from owner to owner around the ring, instead of routing every key from the
+     * start node.
+     *
+     * @param keys names of the keys
+     * @param values the values, values[i] is the value of keys[i]
+     */
+    public void putAll(String[] keys, byte[][] values) {
+        long[] digests = new long[keys.length];
+        int[] order = batchOrder(keys, digests);
+        NodeInterface owner = startNode;
+        for (int i : order) {
+            owner = routeToOwner(owner, ch.index(digests[i]), null);
+            getStore(owner).put(digests[i], values[i]);
+        }
+    }
+
+
+    /**
+     * This method returns the values of a batch of keys, routed like putAll().
+     *
+     * @param keys names of the keys
+     * @return the values, null for the keys without a value
+     */
+    public byte[][] getAll(String[] keys) {
+        long[] digests = new long[keys.length];
+        int[] order = batchOrder(keys, digests);
+        byte[][] values = new byte[keys.length][];
+        NodeInterface owner = startNode;
+        for (int i : order) {
+            owner = routeToOwner(owner, ch.index(digests[i]), null);
+            values[i] = getStore(owner).get(digests[i]);
+        }
+        return values;
+    }
+
+
+    /**
+     * This method removes the values of a batch of keys, routed like putAll().
+     *
+     * @param keys names of the keys
+     * @return number of keys that had a value
+     */
+    public int deleteAll(String[] keys) {
+        long[] digests = new long[keys.length];
+        int[] order = batchOrder(keys, digests);
+        int deleted = 0;
+        NodeInterface owner = startNode;
+        for (int i : order) {
+            owner = routeToOwner(owner, ch.index(digests[i]), null);
+            if (getStore(owner).delete(digests[i])) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+
+    /**
+     * hashes the keys of a batch and orders them by their distance from the start node, so a batch visits the owners
+     * in ring order
+     * @param keys names of the keys
+     * @param digests receives the digest of each key
+     * @return positions of the keys in the batch, in ring order
+     */
+    private int[] batchOrder(String[] keys, long[] digests) {
+        long[] packed = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            digests[i] = ConsistentHashing.digest64(keys[i]);
+            packed[i] = ((long) ringDistance(startNode.getId(), ch.index(digests[i])) << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) packed[i];
+        }
+        return order;
+    }
+
+
+    /**
+     * This method checks if a node owns an index: the index is after the index of the predecessor of the node and
+     * at or before the index of the node.
+     *
+     * Several nodes can get the same index. They follow each other in the ring, and the first of them owns the range
+     * of the index: a node with the same index as its predecessor owns nothing. The exception is the first node of
+     * the ring, whose predecessor only has the same index if every node has it; it then owns the whole ring, so
+     * exactly one node owns every index and a lookup always ends.
+     *
+     * @param node the node
+     * @param index index in the ring
+     * @return true if the node is responsible for the index
+     */
+    public boolean owns(NodeInterface node, int index) {
+        return owns(node, predecessorIndexes[node.getHandle()], index);
+    }
+
+
+    /**
+     * This method checks if a node owns an index when its predecessor has the given index, eg:- a predecessor that a
+     * ChordServer has learned from notify requests.
+     *
+     * @param node the node
+     * @param predecessorIndex index of the predecessor of the node
+     * @param index index in the ring
+     * @return true if the node is responsible for the index
+     */
+    public boolean owns(NodeInterface node, int predecessorIndex, int index) {
+        int nodeIndex = node.getId();
+        if (predecessorIndex == nodeIndex && node != firstNode) {
+            // the node has the same index as its predecessor, which owns the index
+            return false;
+        }
+        if (predecessorIndex < nodeIndex) {
+            return index > predecessorIndex && index <= nodeIndex;
+        }
+        // the range of the node wraps around 0 (or the node is the only node in the ring)
+        return index > predecessorIndex || index <= nodeIndex;
+    }
+
+
+    /**
+     * @return the clockwise distance from one index to another in the ring
+     */
+    public int ringDistance(int from, int to) {
+        int distance = to - from;
+        return distance < 0 ? distance + ringSize : distance;
+    }
+
+
+    /**
+     * This method chooses the next node a lookup for the key index moves to from the current node, which does not own
+     * the key index. If the key index is between the node and its successor, the successor owns it. Otherwise the
+     * lookup moves to the closest preceding finger: the successor of the highest entry of the finger table whose
+     * interval starts at or before the key index. That node is at most the owner, and at least halfway from the
+     * current node to the key index, so a lookup takes O(log N) hops.
+     *
+     * @param currentNode the node the lookup is at
+     * @param keyIndex index of the key
+     * @return the next node
+     */
+    public NodeInterface nextHop(NodeInterface currentNode, int keyIndex) {
+        return hopTarget(currentNode, nextHopEntry(currentNode, keyIndex));
+    }
+
+
+    /**
+     * This method chooses the next hop as nextHop() does, and returns how the hop is made instead of the node, so a
+     * lookup that reports the finger it used does not find the entry twice.
+     *
+     * @param currentNode the node the lookup is at
+     * @param keyIndex index of the key
+     * @return SUCCESSOR_HOP if the lookup moves to the successor, otherwise the position of the finger table entry
+     *         whose successor it moves to (0 ... m-1)
+     */
+    public int nextHopEntry(NodeInterface currentNode, int keyIndex) {
+        int distance = ringDistance(currentNode.getId(), keyIndex);
+        if (distance > 0 && distance <= ringDistance(currentNode.getId(), currentNode.getSuccessor().getId())) {
+            return SUCCESSOR_HOP;
+        }
+        return fingerEntry(currentNode, keyIndex);
+    }
+
+
+    /**
+     * @param currentNode the node the lookup is at
+     * @param entry a hop chosen by nextHopEntry()
+     * @return the node the hop moves to
+     */
+    public NodeInterface hopTarget(NodeInterface currentNode, int entry) {
+        if (entry == SUCCESSOR_HOP) {
+            return currentNode.getSuccessor();
+        }
+        return ((Fingers) currentNode.getRoutingTable()).getSuccessor(entry);
+    }
+
+
+    /**
+     * This method finds the closest preceding finger table entry of the current node for the key index, from the top
+     * entry down. The interval of entry i starts 2^i after the node, so it is the entry given by the highest bit of
+     * the distance from the node to the key index. A key index equal to the index of the node is a full round away,
+     * in the interval of the top entry.
+     *
+     * @param currentNode the node the lookup is at
+     * @param keyIndex index of the key
+     * @return position of the entry whose interval contains the key index (0 ... m-1)
+     */
+    public int fingerEntry(NodeInterface currentNode, int keyIndex) {
+        int distance = ringDistance(currentNode.getId(), keyIndex);
+        if (distance == 0) {
+            return ((Fingers) currentNode.getRoutingTable()).size() - 1;
+        }
+        return 31 - Integer.numberOfLeadingZeros(distance);
     }
 
     public void setNetwork(Object network) {
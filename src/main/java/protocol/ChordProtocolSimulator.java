@@ -6,13 +6,29 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
 
+import churn.ChurnConfig;
+import churn.ChurnReport;
+import churn.ChurnSimulation;
 import crypto.ConsistentHashing;
+import crypto.HashCache;
+import logging.Log;
+import logging.LogEvent;
+import tracing.KeyAssignmentEvent;
+import p2p.BloomFilter;
+import p2p.FilteredNode;
 import p2p.Network;
 import p2p.NetworkInterface;
 import p2p.NodeInterface;
+import placement.PlacementStrategy;
+import placement.SuccessorPlacement;
 import protocol.ChordProtocol;
 import protocol.LookUpResponse;
 import protocol.Protocol;
+import workload.KeyDistribution;
+import workload.KeyStream;
+import workload.UniformDistribution;
+import workload.Workload;
+import workload.WorkloadConfig;
 
 /**
  * This class simulates the chord protocol.
@@ -29,9 +45,13 @@ public class ChordProtocolSimulator {
     // number of keys used in the chord protocol
     public int keyCount;
 
-    // each key is indexed using consistent hashing. eg:- the tuple (key 1, 123) represents a key with a name
-    //'key 1' and the index value of 123. Each key is assumed to have a unique name.
-    public LinkedHashMap<String, Integer> keyIndexes;
+    // each key is indexed using consistent hashing. eg:- the pair (1, 123) represents a key with a name 'key 1' and the
+    // index value of 123. The names and indexes are calculated from the key numbers when they are needed, so the keys
+    // take no heap. Created by generateKeys()
+    public KeyStream keys;
+
+    // the workload that decides which keys are looked up. By default each key is looked up once, in order
+    public WorkloadConfig workloadConfig;
 
     // protocol denotes the protocol object that is used for simulation.
     public Protocol protocol;
@@ -42,10 +62,33 @@ public class ChordProtocolSimulator {
     // deontes the object of the consistent hashing that is used in hash calculation
     public ConsistentHashing consistentHash;
 
+    // number of keys assigned per key assignment flight recorder event
+    public static final int KEY_ASSIGNMENT_BATCH = 1024;
+
+    // indexes of the nodes sorted in ascending order, and the name of the node with each index. They are calculated
+    // once when keys are assigned, instead of hashing every node again for every key
+    int[] sortedNodeIndexes;
+    private HashMap<Integer, String> nodeNamesByIndex;
+
+    // cache of digests shared with other simulations, null if none is used
+    private HashCache hashCache;
+
+    // build and lookup metrics exposed over JMX, null if they are not enabled
+    public ChordMetrics metrics;
+
+    // target false positive rate of the Bloom filters over the keys of the nodes, 0 if the nodes have no filters
+    public double dataFilterRate;
+
+    // number of threads of the parallel build (see ParallelBuild), 0 to build on one thread
+    public int buildThreads;
+
+    // places the keys on the nodes in assignKeys(). null means successor placement, the placement of chord. Lookups
+    // through the ring only find the keys placed by the successor placement
+    public PlacementStrategy placement;
+
 
 
     public ChordProtocolSimulator(Protocol protocol, Network network, int m, int nodeCount, int keyCount){
-        this.keyIndexes = new LinkedHashMap<>();
         this.protocol = protocol;
         this.network = network;
         this.consistentHash = new ConsistentHashing(m);
@@ -53,6 +96,7 @@ public class ChordProtocolSimulator {
         this.nodeCount = nodeCount;
         this.keyCount  = keyCount;
         this.chordProtocol = new ChordProtocol(m);
+        this.workloadConfig = WorkloadConfig.sequential(keyCount);
     }
 
     /*
@@ -82,27 +126,101 @@ public class ChordProtocolSimulator {
 
 
 
+    /**
+     * sets the workload used for the lookups. The key count of the workload is the number of keys generated.
+     * @param workloadConfig the workload config
+     */
+    public void setWorkload(WorkloadConfig workloadConfig){
+        this.workloadConfig = workloadConfig;
+        this.keyCount = workloadConfig.keyCount;
+    }
+
+
+
+    /**
+     * sets a cache of digests used by the hash functions of the simulator and the protocol. Simulations that share
+     * the cache do not hash the same node and key names again.
+     * @param cache the shared cache
+     */
+    public void setHashCache(HashCache cache){
+        this.hashCache = cache;
+        if(metrics != null){
+            metrics.setHashCache(cache);
+        }
+        this.consistentHash = new ConsistentHashing(m, cache);
+        if(protocol instanceof ChordProtocol){
+            ((ChordProtocol) protocol).setHashCache(cache);
+        }
+    }
+
+
+
+    /**
+     * enables the build and lookup metrics and registers them as a JMX MBean. Must be called before buildProtocol().
+     * @param name name of the MBean
+     * @return the metrics
+     */
+    public ChordMetrics enableMetrics(String name){
+        if(!(protocol instanceof ChordProtocol)){
+            throw new IllegalStateException("metrics are only collected by the chord protocol");
+        }
+        metrics = ((ChordProtocol) protocol).enableMetrics(name);
+        metrics.setHashCache(hashCache);
+        return metrics;
+    }
+
+
+
+    /**
+     * makes every node keep a Bloom filter over its keys, which lookups probe before the keys. Must be called before
+     * buildProtocol().
+     * @param falsePositiveRate target false positive rate of the filters
+     */
+    public void enableDataFilters(double falsePositiveRate){
+        this.dataFilterRate = falsePositiveRate;
+    }
+
+
+
     /**
      * This method assign indexes of keys to nodes in the network.
      *
-     *     First keys are generated randomly. Each key is assigned a key name and it's store in the keyIndexes. Then key
+     *     First keys are generated. Each key has a key name and an index, which are streamed from the keys. Then key
      *     indexes are added to the node.
      *
      *     For each key index:
-     *         1) find the node that should be responsible for the key (the index of the node should be greater than the
-     *         index of key and the key index should be close to node index in the consistent hash ring)
+     *         1) find the node that should be responsible for the key with the placement strategy. By default (the
+     *         successor placement) the index of the node should be greater than the index of key and the key index
+     *         should be close to node index in the consistent hash ring
      *         2) add the key index to the node (by calling the peer.add_data() from the network)
      */
     public void assignKeys(){
 
         generateKeys();
-        for(Map.Entry<String, Integer> entry: keyIndexes.entrySet())
+        indexNodes();
+        NodeInterface[] nodes = network.getTopology().values().toArray(new NodeInterface[0]);
+        PlacementStrategy strategy = (placement != null) ? placement : new SuccessorPlacement(consistentHash);
+        strategy.setNodes(nodes);
+        int assigned = 0;
+        KeyAssignmentEvent event = new KeyAssignmentEvent();
+        event.begin();
+        PrimitiveIterator.OfLong pairs = keys.stream().iterator();
+        while(pairs.hasNext())
         {
-//            String keyName =  entry.getKey();
-            int keyIndex =  entry.getValue();
-            String peerName = findPeer(keyIndex);
-//           System.out.println("key name: "+name +"\t key_index : "+key_index+"\t peer_name : "+peer_name);
-            protocol.getNetwork().getTopology().get(peerName).addData(keyIndex);
+            int keyIndex = KeyStream.indexOf(pairs.nextLong());
+            nodes[strategy.place(keyIndex)].addData(keyIndex);
+
+            // keys are reported to the flight recorder in batches
+            assigned++;
+            if(assigned % KEY_ASSIGNMENT_BATCH == 0 || assigned == keyCount){
+                if(event.shouldCommit()){
+                    event.keys = (assigned - 1) % KEY_ASSIGNMENT_BATCH + 1;
+                    event.firstKey = assigned - event.keys + 1;
+                    event.commit();
+                }
+                event = new KeyAssignmentEvent();
+                event.begin();
+            }
         }
     }
 
@@ -113,16 +231,22 @@ public class ChordProtocolSimulator {
      *     For each key:
      *         1) generate index using consistent hashing. The index is m-bit length.
      *         consistentHashing.hash("key name") is used to calculate the index
-     *         2) store the ("key name", "index") in the keyIndexes hash map
+     *         2) the ("key number", "index") pairs are streamed by keys.stream()
+     * The names and indexes are not stored, they are calculated again each time a key is used. The key names only go
+     * through the shared cache of digests if it caches keys, so the cache does not grow with the key count.
      */
     public  void generateKeys(){
+        boolean cacheKeys = hashCache == null || hashCache.cacheKeys;
+        this.keys = new KeyStream(keyCount, cacheKeys ? consistentHash : new ConsistentHashing(m));
+    }
 
-        for(int i=1;i<keyCount+1;i++)
-        {
-            String keyName =  "key "+i;
-            int keyIndex = consistentHash.hash(keyName);
-            this.keyIndexes.put(keyName, keyIndex);
-        }
+
+    /**
+     * @param keyNumber number of the key (1 ... keyCount)
+     * @return index of the key
+     */
+    public int keyIndex(int keyNumber){
+        return keys.index(keyNumber);
     }
 
 
@@ -138,33 +262,32 @@ public class ChordProtocolSimulator {
      */
     public String findPeer(int key_index){
 
-        List<Integer> sortedIndexes = new ArrayList<Integer>();
-        int peerIndex = -1;
-
-        // calculate the indexes of all the nodes using consistent hasing
-        for(Map.Entry<String, NodeInterface> node: this.network.getTopology().entrySet()) {
-            String nodeName = node.getValue().getName();
-            int nodeIndex = consistentHash.hash(nodeName);
-            sortedIndexes.add(nodeIndex);
+        if(sortedNodeIndexes == null){
+            indexNodes();
         }
-
-        // sort the node indexes
-        Collections.sort(sortedIndexes);
+        int[] sortedIndexes = sortedNodeIndexes;
+        int peerIndex = -1;
 
         // check if the key index is larger than the biggest node index
         // if it is larger then the key should be placed before the lowest node index (at the start of the ring)
-        if(key_index> sortedIndexes.get(sortedIndexes.size()-1)){
-            peerIndex = sortedIndexes.get(0);
+        if(key_index> sortedIndexes[sortedIndexes.length-1]){
+            peerIndex = sortedIndexes[0];
         }
         else{
-            // if the key index is not larger than the biggest node index, then choose the node that has index
-            // bigger than the key index. loop through the nodes in the ascending order of the node indexes
-            for(int i=0;i < sortedIndexes.size(); i++){
-                if(sortedIndexes.get(i) >= key_index){
-                    peerIndex = sortedIndexes.get(i);
-                    break;
+            // if the key index is not larger than the biggest node index, then choose the first node that has index
+            // bigger than or equal to the key index. binary search in the ascending order of the node indexes
+            int low = 0;
+            int high = sortedIndexes.length - 1;
+            while(low < high){
+                int middle = (low + high) >>> 1;
+                if(sortedIndexes[middle] >= key_index){
+                    high = middle;
+                }
+                else {
+                    low = middle + 1;
                 }
             }
+            peerIndex = sortedIndexes[low];
         }
 
         // if no node is found then return null. Note: If everything works well then this shouldn't happen.
@@ -178,33 +301,45 @@ public class ChordProtocolSimulator {
 
     /**
      * This method returns the peer name based on the peer index
-     * This method uses a hack that the network setup uses the names Peer 1, Peer 2,... etc. It would be nice if this is
-     * automatic. like fetching all the nodes from the network and compare the names with the given node (based on
-     * index). Maybe I can improve it later.
+     * The names are taken from the nodes of the network when the nodes are indexed, so it does not depend on the
+     * network using the names Node 1, Node 2,... etc.
      *
      * @param peerIndex index of the node
      * @return  name of the node
      */
     public String findPeerName(int peerIndex){
 
+        if(nodeNamesByIndex == null){
+            indexNodes();
+        }
+        return nodeNamesByIndex.get(peerIndex);
+    }
 
-        int peerCount = nodeCount;
-        for(int i=1; i<peerCount+1; i++){
-            String name = "Node "+i;
-            int index = consistentHash.hash(name);
-            if(peerIndex==index){
-                return name;
-            }
 
+    /**
+     * This method calculates the indexes of all the nodes using consistent hashing, sorts them and remembers the
+     * name of the node with each index. If two nodes get the same index, the node added first to the network keeps it.
+     */
+    private void indexNodes(){
+        int[] indexes = new int[this.network.getSize()];
+        HashMap<Integer, String> names = new HashMap<>();
+        int i = 0;
+        for(NodeInterface node: this.network.getTopology().values()){
+            String name = node.getName();
+            int index = consistentHash.hash(name);
+            indexes[i++] = index;
+            names.putIfAbsent(index, name);
         }
-        return null;
+        Arrays.sort(indexes);
+        this.sortedNodeIndexes = indexes;
+        this.nodeNamesByIndex = names;
     }
 
 
 
     /**
      *  This method prints the network. The network consists of set of nodes. It prints different information contained
-     *  in the node such as neighbors, routing table, data.
+     *  in the node such as neighbors, routing table, data. The network is written to the log as a topology dump.
      */
     public void printNetwork(){
 
@@ -212,7 +347,11 @@ public class ChordProtocolSimulator {
         NetworkInterface network = protocol.getNetwork();
 
         // prints the top0logy
-        network.printTopology();
+        Log.log(LogEvent.TOPOLOGY, "..............Printing network topology..............");
+        for(NodeInterface node : network.getTopology().values()){
+            Log.log(LogEvent.TOPOLOGY, node.toString());
+        }
+        Log.log(LogEvent.TOPOLOGY, "......................................................");
     }
 
 
@@ -228,23 +367,24 @@ public class ChordProtocolSimulator {
             head = node.getValue();
             break;
         }
-        System.out.println("........printing ring..............");
+        Log.log(LogEvent.TOPOLOGY, "........printing ring..............");
 
         if(head.getNeighbors().size()==0){
             return;
         }
 
-        System.out.print(head.getName());
+        StringBuilder ring = new StringBuilder(head.getName());
         NodeInterface next = head.getSuccessor();
         while(true){
-            System.out.print(" --- "+next.getName());
+            ring.append(" --- ").append(next.getName());
             next  = next.getSuccessor();
             if(next.getName().equals(head.getName())){
-                System.out.print(" --- "+next.getName()+"\n");
+                ring.append(" --- ").append(next.getName()).append("\n");
                 break;
             }
         }
-        System.out.println(".....................................");
+        Log.log(LogEvent.TOPOLOGY, ring.toString());
+        Log.log(LogEvent.TOPOLOGY, ".....................................");
     }
 
 
@@ -256,25 +396,31 @@ public class ChordProtocolSimulator {
      */
     public void testLookUp(){
 
-        for(Map.Entry<String, Integer> entry: keyIndexes.entrySet())
+        PrimitiveIterator.OfLong pairs = keys.stream().iterator();
+        while(pairs.hasNext())
         {
+            long pair = pairs.nextLong();
+            String keyName = KeyStream.name(KeyStream.numberOf(pair));
 
             // lookup the key index
-            LookUpResponse response = protocol.lookUp(entry.getValue());
+            LookUpResponse response = protocol.lookUp(KeyStream.indexOf(pair));
 
             if(response == null)
             {
                 return;
             }
 
-            System.out.println(response.toString());
+            if(Log.enabled(LogEvent.LOOKUP_RESULT))
+                Log.log(LogEvent.LOOKUP_RESULT, response.toString());
             // check whether the returned node index is correct or not
-            if(checkResponse(entry.getValue(),response.node_name)){
-                System.out.println("lookup successful for "+entry.getKey());
+            if(checkResponse(KeyStream.indexOf(pair),response.node_name)){
+                if(Log.enabled(LogEvent.LOOKUP_RESULT))
+                    Log.log(LogEvent.LOOKUP_RESULT, "lookup successful for "+keyName);
             }
             else
             {
-                System.out.println("lookup failed for "+entry.getKey());
+                if(Log.enabled(LogEvent.LOOKUP_FAILURE))
+                    Log.log(LogEvent.LOOKUP_FAILURE, "lookup failed for "+keyName);
                 break;
             }
         }
@@ -282,6 +428,46 @@ public class ChordProtocolSimulator {
     }
 
 
+    /**
+     * This method tests a range lookup. It performs the range lookup with the protocol and compares the keys with
+     * the keys found by scanning the data of every node in the network.
+     *
+     * @param from first index of the range
+     * @param to last index of the range
+     * @param limit maximum number of keys, 0 means no limit
+     * @return true if the range lookup returned the expected keys in the expected order
+     */
+    public boolean testRangeLookUp(int from, int to, int limit){
+        RangeLookUpResponse response = protocol.rangeLookUp(from, to, limit);
+        Log.log(LogEvent.SUMMARY, "range [" + from + ", " + to + "]" + (limit > 0 ? " limit " + limit : "") + ": "
+                + response.toString());
+
+        // expected keys: every key in the range, sorted by its clockwise distance from the start of the range
+        long ringSize = 1L << m;
+        long span = Math.floorMod((long) to - from, ringSize);
+        List<Long> expected = new ArrayList<>();
+        for(NodeInterface node : network.getTopology().values()){
+            for(Object data : (Set<Object>) node.getData()){
+                long distance = Math.floorMod((long) (Integer) data - from, ringSize);
+                if(distance <= span){
+                    expected.add((distance << 32) | (Integer) data);
+                }
+            }
+        }
+        Collections.sort(expected);
+        if(limit > 0 && expected.size() > limit){
+            expected = expected.subList(0, limit);
+        }
+        boolean correct = expected.size() == response.keys.size();
+        for(int i=0; correct && i<expected.size(); i++){
+            correct = expected.get(i).intValue() == response.keys.get(i);
+        }
+        Log.log(LogEvent.SUMMARY, correct ? "range lookup successful" : "range lookup failed, expected " + expected.size()
+                + " keys");
+        return correct;
+    }
+
+
     /**
      * This method compares whether the node actually stores the given key index or not
      *  It retrieves the data items stored at the particular node and compares whether the key index is stored or not
@@ -310,10 +496,57 @@ public class ChordProtocolSimulator {
 
     public void buildProtocol(){
         protocol.setNetwork(network);
+        long phaseStart = System.nanoTime();
+        if(dataFilterRate > 0){
+            // the filters are sized for the average number of keys of a node, and grow on the nodes with more keys
+            for(NodeInterface node : network.getTopology().values()){
+                if(!(node instanceof FilteredNode)){
+                    throw new IllegalStateException(node.getName() + " cannot keep a data filter");
+                }
+                ((FilteredNode) node).enableDataFilter(Math.max(1, keyCount / nodeCount), dataFilterRate);
+            }
+        }
+        if(buildThreads > 0){
+            buildInParallel();
+            return;
+        }
         assignKeys();
-        protocol.setKeys(keyIndexes);
+        long keysAssigned = System.nanoTime();
         protocol.buildOverlayNetwork();
+        long overlayBuilt = System.nanoTime();
         protocol.buildFingerTable();
+        long fingerTablesBuilt = System.nanoTime();
+
+        if(metrics != null){
+            metrics.setKeyCount(keyCount);
+            metrics.recordAssignKeys(keysAssigned - phaseStart);
+            metrics.recordBuildOverlay(overlayBuilt - keysAssigned);
+            metrics.recordBuildFingerTable(fingerTablesBuilt - overlayBuilt);
+        }
+    }
+
+    /**
+     * builds the protocol with a ParallelBuild on buildThreads threads, and reports the time of its stages
+     */
+    private void buildInParallel(){
+        if(placement != null && !(placement instanceof SuccessorPlacement)){
+            throw new IllegalArgumentException("the parallel build only places keys on their successors");
+        }
+        ParallelBuild build = new ParallelBuild(this, buildThreads);
+        try {
+            build.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("the build was interrupted", e);
+        }
+        build.report();
+
+        if(metrics != null){
+            metrics.setKeyCount(keyCount);
+            metrics.recordAssignKeys(build.hashNanos + build.sortNanos + build.assignNanos);
+            metrics.recordBuildOverlay(build.overlayNanos);
+            metrics.recordBuildFingerTable(build.fingerNanos);
+        }
     }
 
     /**
@@ -322,62 +555,297 @@ public class ChordProtocolSimulator {
      *     1) builds the chord protocol
      *     2) generate keys and assign it to nodes
      *     3) tests the look up operation (only if necessary)
-     *     4) logs output
+     *     4) looks up the keys requested by the workload and logs output
      */
     public void start(int nodeCount, int m) {
-        System.out.println("Starting Chord protocol simulation...");
+        Log.info("Starting Chord protocol simulation...");
     
         // Build protocol (overlay network and routing table)
-        System.out.println("Building protocol...");
+        Log.info("Building protocol...");
         buildProtocol();
-        System.out.println("Protocol built successfully.");
-    
-        // Print network structure
-        System.out.println("Printing ring...");
-        printRing();
-        System.out.println("Ring printed.");
+        Log.info("Protocol built successfully.");
     
-        System.out.println("Printing network...");
-        printNetwork();
-        System.out.println("Network printed.");
+        // Print network structure. Topology dumps are skipped for large networks unless they are enabled
+        if (Log.topologyEnabled(network.getSize())) {
+            Log.info("Printing ring...");
+            printRing();
+            Log.info("Ring printed.");
+        
+            Log.info("Printing network...");
+            printNetwork();
+            Log.info("Network printed.");
+        }
 
         testLookUp();
     
         // Lookup all keys and log results
-        System.out.println("Starting key lookups... !");
+        Log.info("Starting key lookups... !");
         int totalHops = 0;
         List<String> lookupResults = new ArrayList<>();
     
-        // iterates through each key and perfomr a lookup using chordProtocol.lookUp(keyIndex)
-        for (Map.Entry<String, Integer> key : keyIndexes.entrySet()) {
-            String keyName = key.getKey();
-            int keyIndex = key.getValue();
+        // iterates through the keys requested by the workload and perfomr a lookup using chordProtocol.lookUp(keyIndex)
+        Workload workload = Workload.create(workloadConfig);
+        while (workload.hasNext()) {
+            int keyNumber = workload.nextInt();
+            int keyIndex = keyIndex(keyNumber);
         
-            System.out.println("Looking up key: " + keyName + " with index: " + keyIndex);
+            if (Log.enabled(LogEvent.LOOKUP))
+                Log.log(LogEvent.LOOKUP, "Looking up key: key " + keyNumber + " with index: " + keyIndex);
             
             // Perform the lookup for the current key (response contains lookup path/route and responsible node)
             LookUpResponse response = protocol.lookUp(keyIndex);
         
-            System.out.println("Lookup completed for key: " + keyName + ", reached node: " + response.node_name);
+            if (Log.enabled(LogEvent.LOOKUP))
+                Log.log(LogEvent.LOOKUP, "Lookup completed for key: key " + keyNumber + ", reached node: " + response.node_name);
             int hopCount = response.peers_looked_up.size(); 
             totalHops += hopCount; // Increment total hops for average calculation
     
             // Use the response's toString() method to format and save the lookup result
             lookupResults.add(response.toString());
         }
+        workload.close();
     
         // Calculate average hop count
         double avgHopCount = !lookupResults.isEmpty() ? (double) totalHops / lookupResults.size() : 0;
-        System.out.println("Average hop count calculated: " + avgHopCount);
+        Log.info("Average hop count calculated: " + avgHopCount);
         
         // Print each lookup result
-        lookupResults.forEach(System.out::println);
-        System.out.println("average hop count = " + avgHopCount);
+        for (String result : lookupResults) {
+            if (Log.enabled(LogEvent.LOOKUP_RESULT))
+                Log.log(LogEvent.LOOKUP_RESULT, result);
+        }
+        if (Log.enabled(LogEvent.SUMMARY))
+            Log.log(LogEvent.SUMMARY, "average hop count = " + avgHopCount);
     
         // Save results to a file in the output directory
         outputToFile(lookupResults, avgHopCount, nodeCount, m);
     }
     
+    /**
+     * This method starts a churn simulation. The protocol is built as usual, then nodes join and leave the ring while
+     * the nodes run the chord maintenance protocol and keys are looked up (see ChurnSimulation). The report is
+     * logged and saved to output/churn_&lt;nodes&gt;_nodes_m&lt;m&gt;.txt
+     *
+     * @param churnConfig the churn config
+     * @return the statistics of the churn simulation
+     */
+    public ChurnReport startChurn(ChurnConfig churnConfig) {
+        Log.info("Starting Chord churn simulation...");
+        buildProtocol();
+
+        // the initial ring: node i of the arrays is the node with handle i
+        int size = network.getSize();
+        int[] nodeIds = new int[size];
+        int[][] nodeFingers = new int[size][];
+        for (int handle = 0; handle < size; handle++) {
+            NodeInterface node = network.getNodeByHandle(handle);
+            Fingers fingerTable = (Fingers) node.getRoutingTable();
+            nodeIds[handle] = node.getId();
+            nodeFingers[handle] = new int[fingerTable.size()];
+            for (int i = 0; i < fingerTable.size(); i++) {
+                nodeFingers[handle][i] = fingerTable.getSuccessor(i).getHandle();
+            }
+        }
+
+        // requested keys follow the workload distribution, uniform if the workload is not random
+        KeyDistribution keys = workloadConfig.createDistribution();
+        if (keys == null) {
+            keys = new UniformDistribution(keyCount);
+        }
+
+        ChurnSimulation simulation = new ChurnSimulation(churnConfig, m, nodeIds, nodeFingers, this.keys,
+                keys, consistentHash, size + 1);
+        ChurnReport report = simulation.run();
+
+        if (Log.enabled(LogEvent.SUMMARY))
+            Log.log(LogEvent.SUMMARY, report.toString());
+
+        String fileName = "output/churn_" + nodeCount + "_nodes_m" + m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(churnConfig);
+            writer.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return report;
+    }
+
+    /**
+     * This method measures the memory of the finger tables. The tables of every node are built as FingerTables and
+     * then as CompactFingerTables (by binary search, so large networks can be measured), the heap of each table is
+     * computed from the sizes of its object and arrays (Fingers.getAllocatedBytes(), with compressed references), and
+     * every compact table is checked against the full table of its node. The sizes are computed rather than measured
+     * from the heap around a garbage collection, since those differences are too noisy to give the size of a table.
+     * Only the node indexes are needed, so the keys are not assigned and the overlay is not linked, which also allows
+     * m = 32. The report is logged and written to
+     * output/fingers_&lt;nodes&gt;_nodes_m&lt;m&gt;.txt
+     * @return the report, as text
+     */
+    public String reportFingerMemory() {
+        Log.info("Measuring the finger tables...");
+        protocol.setNetwork(network);
+        ChordProtocol chord = (ChordProtocol) protocol;
+        for (NodeInterface node : network.getTopology().values()) {
+            node.setId(consistentHash.hash(node.getName()));
+        }
+        int size = network.getSize();
+
+        chord.buildFingerTablesBySearch(false);
+        Fingers[] fullTables = new Fingers[size];
+        long fullEstimate = 0;
+        for (int handle = 0; handle < size; handle++) {
+            fullTables[handle] = (Fingers) network.getNodeByHandle(handle).getRoutingTable();
+            fullEstimate += fullTables[handle].getAllocatedBytes();
+        }
+
+        chord.buildFingerTablesBySearch(true);
+        long compactEstimate = 0;
+        long distinct = 0;
+        int mismatches = 0;
+        for (int handle = 0; handle < size; handle++) {
+            Fingers compact = (Fingers) network.getNodeByHandle(handle).getRoutingTable();
+            compactEstimate += compact.getAllocatedBytes();
+            distinct += compact.getDistinctSuccessors();
+            for (int entry = 0; entry < m; entry++) {
+                if (compact.getSuccessor(entry) != fullTables[handle].getSuccessor(entry)) {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+        String report = String.format("finger tables of %d nodes, m = %d, %.1f distinct successors per node", size, m,
+                (double) distinct / size)
+                + String.format("\nfull tables: %.1f bytes per node, %.1f MB in total", (double) fullEstimate / size,
+                fullEstimate / 1e6)
+                + String.format("\ncompact tables: %.1f bytes per node, %.1f MB in total, %.1f times smaller",
+                (double) compactEstimate / size, compactEstimate / 1e6, (double) fullEstimate / compactEstimate)
+                + "\ncompact tables that differ from the full tables: " + mismatches;
+        for (String line : report.split("\n")) {
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/fingers_" + nodeCount + "_nodes_m" + m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return report;
+    }
+
+
+    /**
+     * This method reports the Bloom filters of the nodes: their size, how many of the probes made by lookups the
+     * filters answered without looking at the keys, and how many were false positives. The cost of a probe is measured
+     * with random keys on random nodes that do not store them and on the nodes that store them, probing the filters,
+     * the key sets, and the filters followed by the key sets as ChordProtocol.storesKey() does. The report is logged
+     * and written to output/bloom_&lt;nodes&gt;_nodes_m&lt;m&gt;.txt
+     * @return the report, as text
+     */
+    public String reportDataFilters() {
+        int nodes = 0;
+        long keys = 0;
+        long bytes = 0;
+        long hashes = 0;
+        long probes = 0;
+        long negatives = 0;
+        long falsePositives = 0;
+        for (NodeInterface node : network.getTopology().values()) {
+            BloomFilter filter = FilteredNode.filterOf(node);
+            if (filter == null) {
+                continue;
+            }
+            nodes++;
+            keys += ((Set<?>) node.getData()).size();
+            bytes += filter.getAllocatedBytes();
+            hashes += filter.getHashCount();
+            probes += filter.probes;
+            negatives += filter.negatives;
+            falsePositives += filter.falsePositives;
+        }
+        if (nodes == 0) {
+            return "";
+        }
+
+        // random probes, prepared before they are timed: keys probed on nodes that do not store them, as on the nodes
+        // a lookup passes, and keys probed on the nodes that store them, as on the last node of a lookup
+        int probeCount = 1000000;
+        Random random = new Random(0);
+        NodeInterface[] absentNodes = new NodeInterface[probeCount];
+        NodeInterface[] storedNodes = new NodeInterface[probeCount];
+        int[] absentKeys = new int[probeCount];
+        int[] storedKeys = new int[probeCount];
+        List<NodeInterface> nodeList = new ArrayList<>(network.getTopology().values());
+        for (int i = 0; i < probeCount; i++) {
+            storedKeys[i] = keyIndex(random.nextInt(keyCount) + 1);
+            storedNodes[i] = network.getNode(findPeer(storedKeys[i]));
+            do {
+                absentKeys[i] = keyIndex(random.nextInt(keyCount) + 1);
+                absentNodes[i] = nodeList.get(random.nextInt(nodeList.size()));
+            } while (((Set<?>) absentNodes[i].getData()).contains(absentKeys[i]) && nodeList.size() > 1);
+        }
+        int[] found = new int[5];
+        long[] nanos = new long[5];
+        Arrays.fill(nanos, Long.MAX_VALUE);
+        // each kind of probe runs several times, and the fastest run counts
+        for (int run = 0; run < 5; run++) {
+            for (int kind = 0; kind < 5; kind++) {
+                long start = System.nanoTime();
+                found[kind] = kind < 3 ? probe(kind, absentNodes, absentKeys) : probe(kind - 2, storedNodes, storedKeys);
+                nanos[kind] = Math.min(nanos[kind], System.nanoTime() - start);
+            }
+        }
+
+        long absentProbes = negatives + falsePositives;
+        String report = String.format("Bloom filters: target false positive rate %s, %d nodes, %d keys, %d bytes "
+                        + "(%.1f bits per key, %.1f hashes)", dataFilterRate, nodes, keys, bytes,
+                keys > 0 ? bytes * 8.0 / keys : 0, (double) hashes / nodes)
+                + String.format("\nlookup probes = %d, answered by the filters = %d (%.1f%%), false positives = %d "
+                        + "(observed false positive rate %.4f)", probes, negatives,
+                probes > 0 ? 100.0 * negatives / probes : 0, falsePositives,
+                absentProbes > 0 ? (double) falsePositives / absentProbes : 0)
+                + String.format("\nprobe cost of keys a node does not store: filter %.1f ns, keys %.1f ns, filter then "
+                        + "keys %.1f ns (%d probes, %d false positives)", (double) nanos[0] / probeCount,
+                (double) nanos[1] / probeCount, (double) nanos[2] / probeCount, probeCount, found[0])
+                + String.format("\nprobe cost of keys a node stores: keys %.1f ns, filter then keys %.1f ns (%d probes)",
+                (double) nanos[3] / probeCount, (double) nanos[4] / probeCount, probeCount);
+        for (String line : report.split("\n")) {
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/bloom_" + nodeCount + "_nodes_m" + m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return report;
+    }
+
+    /**
+     * probes nodes for keys: with their filters (kind 0), their key sets (kind 1) or both, as storesKey() does (kind 2)
+     * @return number of probes that answered that the key is stored
+     */
+    private static int probe(int kind, NodeInterface[] nodes, int[] keys) {
+        int found = 0;
+        for (int i = 0; i < keys.length; i++) {
+            NodeInterface node = nodes[i];
+            boolean stored;
+            if (kind == 0) {
+                stored = ((FilteredNode) node).getDataFilter().test(keys[i]);
+            } else if (kind == 1) {
+                stored = ((Set<?>) node.getData()).contains(keys[i]);
+            } else {
+                stored = ((FilteredNode) node).getDataFilter().test(keys[i]) && ((Set<?>) node.getData()).contains(keys[i]);
+            }
+            found += stored ? 1 : 0;
+        }
+        return found;
+    }
+
     private void outputToFile(List<String> lookupResults, double avgHopCount, int nodeCount, int m) {
         // Define the output file name based on node count and m value
         String fileName = "output/output_" + nodeCount + "_nodes_m" + m + ".txt";
@@ -0,0 +1,120 @@
+package protocol;
+
+import p2p.NodeInterface;
+
+/**
+ * This class is a finger table that only stores the entries where the successor changes. With n nodes in a ring of
+ * 2^m indexes, the first m - log2(n) fingers of a node usually point to its successor, so a table of m entries has
+ * about log2(n) distinct successors. The successors are stored once each, with the position of the first entry that
+ * points to them (the breakpoint), and the successor of an entry is found by a binary search over the breakpoints.
+ *
+ * The intervals are not stored: the interval of the ith entry starts at (n+2^i) mod 2^m, so the entry whose interval
+ * holds a key is given by the highest bit of the distance from the node to the key (see ChordProtocol.fingerEntry()).
+ */
+public class CompactFingerTable implements Fingers {
+
+    // index of the node in the ring, m and the size of the ring, to print the intervals
+    private final int nodeIndex;
+    private final byte m;
+    private final int ringSize;
+
+    // first entry that points to each distinct successor, in increasing order (the first breakpoint is 0)
+    public final byte[] breakpoints;
+
+    // distinct successors, successors[i] is the successor of the entries breakpoints[i] ... breakpoints[i+1]-1
+    public final NodeInterface[] successors;
+
+
+    /**
+     * @param nodeIndex index of the node in the ring
+     * @param m number of entries
+     * @param ringSize size of the ring
+     * @param breakpoints first entry of each distinct successor
+     * @param successors the distinct successors
+     */
+    public CompactFingerTable(int nodeIndex, int m, int ringSize, byte[] breakpoints, NodeInterface[] successors){
+        this.nodeIndex = nodeIndex;
+        this.m = (byte) m;
+        this.ringSize = ringSize;
+        this.breakpoints = breakpoints;
+        this.successors = successors;
+    }
+
+
+    /**
+     * creates the compact table of the successors of every entry
+     * @param successor successor of each entry (0 ... m-1)
+     */
+    public static CompactFingerTable of(int nodeIndex, int ringSize, NodeInterface[] successor){
+        int distinct = 0;
+        for(int entry = 0; entry < successor.length; entry++){
+            if(entry == 0 || successor[entry] != successor[entry - 1]){
+                distinct++;
+            }
+        }
+        byte[] breakpoints = new byte[distinct];
+        NodeInterface[] successors = new NodeInterface[distinct];
+        int next = 0;
+        for(int entry = 0; entry < successor.length; entry++){
+            if(entry == 0 || successor[entry] != successor[entry - 1]){
+                breakpoints[next] = (byte) entry;
+                successors[next++] = successor[entry];
+            }
+        }
+        return new CompactFingerTable(nodeIndex, successor.length, ringSize, breakpoints, successors);
+    }
+
+
+    public int size(){
+        return m;
+    }
+
+
+    public NodeInterface getSuccessor(int entry){
+        // the last breakpoint at or before the entry
+        int low = 0;
+        int high = breakpoints.length - 1;
+        while(low < high){
+            int middle = (low + high + 1) >>> 1;
+            if(breakpoints[middle] <= entry){
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return successors[low];
+    }
+
+
+    public int getDistinctSuccessors(){
+        return successors.length;
+    }
+
+
+    public long getAllocatedBytes(){
+        // object: header, 3 fields and 2 references; byte array; reference array
+        return align(12 + 4 + 1 + 4 + 4 + 4) + align(16 + breakpoints.length) + align(16 + 4L * successors.length);
+    }
+
+
+    static long align(long bytes){
+        return (bytes + 7) & ~7L;
+    }
+
+
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n\tFingerTable:\n");
+        for (int i = 1; i <= m; i++) {
+            int start = (int) (nodeIndex + Math.pow(2, (i-1))) % ringSize;
+            int end = (int) (nodeIndex + Math.pow(2, (i))) % ringSize;
+            end = (i == m) ? end : end-1;
+            sb.append("\t\tInterval: [").append(start)
+            .append(", ").append(end)
+            .append("), Successor: ").append(getSuccessor(i - 1).getName())
+            .append("\n");
+        }
+        return sb.toString();
+    }
+}
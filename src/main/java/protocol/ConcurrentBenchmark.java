@@ -0,0 +1,478 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import crypto.ConsistentHashing;
+import logging.Log;
+import p2p.ConcurrentNetwork;
+import p2p.ConcurrentNode;
+import p2p.NodeInterface;
+import workload.KeyStream;
+
+/**
+ * This class benchmarks lookups while the membership of the ring changes. A ring of ConcurrentNodes is built in a
+ * ConcurrentNetwork with CompactFingerTables, which are never changed after they are built. Then N reader threads
+ * look up random keys from random nodes, first alone and then while one churn thread makes nodes join and leave.
+ *
+ * The churn thread is the only writer. It keeps the ring in a sorted map of its own, and for a join:
+ *     1) builds the finger table of the new node and links it to its successor
+ *     2) adds the node to the network, and makes it the successor of its predecessor in one write
+ *     3) builds new finger tables for the nodes whose fingers should now point to the new node, and swaps them in
+ * A leave links the predecessor to the successor of the node, removes the node from the network and rebuilds the
+ * tables that pointed to it. The nodes whose fingers change are found from the ring: the ith finger of node n points
+ * to the new or departed node d if n+2^i is in (predecessor of d, d].
+ *
+ * A reader routes iteratively with what it reads from the nodes, without locks: the lookup ends when the key is between
+ * a node and its successor, otherwise it moves to the closest preceding finger that is still in the network (a finger
+ * to a departed node is skipped, like a timeout) or to the successor. The successors are always a ring of live
+ * nodes, so lookups that start at a live node find the owner the ring had at some point during the lookup.
+ *
+ * Options:
+ *     --readers &lt;count&gt;       reader threads (default number of processors)
+ *     --duration &lt;seconds&gt;    time of each phase (default 5)
+ *     --churn-rate &lt;ops/s&gt;    joins and leaves per second of the churn thread, 0 for as fast as possible (default 0)
+ *
+ * --bloom is rejected, as ConcurrentNodes do not keep data filters.
+ */
+public class ConcurrentBenchmark {
+
+    public int readers;
+    public double duration;
+    public double churnRate;
+
+    private ConcurrentNetwork network;
+    private int m;
+    private int ringSize;
+    private ConsistentHashing hash;
+    private int[] keyIndexes;
+
+    // the ring of the churn thread: nodes by (index << 32 | handle), so nodes with the same index stay in handle order
+    private final TreeMap<Long, NodeInterface> ring = new TreeMap<>();
+    private final List<NodeInterface> liveNodes = new ArrayList<>();
+    private int nextNodeNumber;
+
+    private volatile boolean running;
+
+
+    /**
+     * creates the concurrent benchmark from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the benchmark
+     */
+    public static ConcurrentBenchmark fromOptions(HashMap<String, String> options){
+        ConcurrentBenchmark benchmark = new ConcurrentBenchmark();
+        benchmark.readers = Integer.parseInt(options.getOrDefault("readers",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        benchmark.duration = Double.parseDouble(options.getOrDefault("duration", "5"));
+        benchmark.churnRate = Double.parseDouble(options.getOrDefault("churn-rate", "0"));
+        if(benchmark.readers < 1 || benchmark.duration <= 0 || benchmark.churnRate < 0){
+            throw new IllegalArgumentException("the benchmark needs readers, a positive duration and a churn rate >= 0");
+        }
+        if(options.containsKey("bloom")){
+            throw new IllegalArgumentException("--bloom cannot be used with --concurrent-benchmark, concurrent nodes do "
+                    + "not keep data filters");
+        }
+        return benchmark;
+    }
+
+
+    /**
+     * builds a concurrent ring with the nodes, m and keys of the simulator and runs the two phases
+     * @param simulator the simulator, which gives the size of the ring and the keys
+     * @return the report
+     */
+    public String run(ChordProtocolSimulator simulator) throws InterruptedException, IOException {
+        int nodeCount = simulator.nodeCount;
+        m = simulator.m;
+        Log.info("Building a concurrent ring of " + nodeCount + " nodes...");
+        network = ConcurrentNetwork.createNetwork("concurrent network", nodeCount);
+        ChordProtocol protocol = new ChordProtocol(m);
+        protocol.compactFingerTables = true;
+        protocol.setNetwork(network);
+        protocol.buildOverlayNetwork();
+        protocol.buildFingerTable();
+        ringSize = protocol.ringSize;
+        hash = protocol.ch;
+        for(NodeInterface node : network.getTopology().values()){
+            ring.put(ringKey(node), node);
+            liveNodes.add(node);
+        }
+        nextNodeNumber = nodeCount + 1;
+        keyIndexes = new KeyStream(simulator.keyCount, hash).indexes();
+
+        Log.info("Looking up keys on " + readers + " threads without churn...");
+        Phase quiet = runPhase(false);
+        Log.info("Looking up keys on " + readers + " threads with a churn thread...");
+        Phase churn = runPhase(true);
+        long wrong = checkOwners(10000);
+
+        String report = String.format("concurrent lookups: %d nodes, m = %d, %d readers, %.1f s per phase, churn %s",
+                        nodeCount, m, readers, duration,
+                        churnRate > 0 ? String.format("%.0f ops/s", churnRate) : "as fast as possible")
+                + "\nwithout churn: " + quiet
+                + "\nwith churn:    " + churn
+                + String.format("\nthroughput with churn: %.1f%% of the throughput without churn",
+                        100.0 * churn.lookupsPerSecond() / Math.max(quiet.lookupsPerSecond(), 1e-9))
+                + String.format("\nchurn: %d joins, %d leaves, %d finger tables swapped, %d nodes at the end",
+                        churn.joins, churn.leaves, churn.tablesSwapped, network.getSize())
+                + String.format("\nlookups of 10000 keys after the churn that missed the owner: %d", wrong);
+        for(String line : report.split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/concurrent_" + nodeCount + "_nodes_m" + m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(report);
+        }
+        return report;
+    }
+
+
+    /**
+     * runs the readers for the duration, with or without the churn thread
+     */
+    private Phase runPhase(boolean withChurn) throws InterruptedException {
+        Phase phase = new Phase();
+        running = true;
+        List<Reader> readerThreads = new ArrayList<>();
+        for(int r = 0; r < readers; r++){
+            Reader reader = new Reader(r);
+            readerThreads.add(reader);
+            reader.thread.start();
+        }
+        Thread churnThread = null;
+        Throwable[] churnFailure = new Throwable[1];
+        if(withChurn){
+            churnThread = new Thread(() -> {
+                try {
+                    churn(phase);
+                } catch (Throwable e) {
+                    churnFailure[0] = e;
+                }
+            }, "churn");
+            churnThread.start();
+        }
+
+        long start = System.nanoTime();
+        Thread.sleep((long) (duration * 1000));
+        running = false;
+        for(Reader reader : readerThreads){
+            reader.thread.join();
+            if(reader.failure != null){
+                throw new IllegalStateException("reader failed", reader.failure);
+            }
+            phase.add(reader);
+        }
+        if(churnThread != null){
+            churnThread.join();
+            if(churnFailure[0] != null){
+                throw new IllegalStateException("churn thread failed", churnFailure[0]);
+            }
+        }
+        phase.seconds = (System.nanoTime() - start) / 1e9;
+        return phase;
+    }
+
+
+    /**
+     * makes nodes join and leave in turns until the phase ends, so the size of the ring stays the same
+     */
+    private void churn(Phase phase){
+        Random random = new Random(0);
+        long interval = churnRate > 0 ? (long) (1e9 / churnRate) : 0;
+        long next = System.nanoTime();
+        boolean join = true;
+        while(running){
+            if(interval > 0){
+                next += interval;
+                long wait = next - System.nanoTime();
+                if(wait > 0){
+                    LockSupport.parkNanos(wait);
+                }
+                if(!running){
+                    break;
+                }
+            }
+            if(join){
+                phase.tablesSwapped += join();
+                phase.joins++;
+            }
+            else if(liveNodes.size() > 2){
+                phase.tablesSwapped += leave(liveNodes.get(random.nextInt(liveNodes.size())));
+                phase.leaves++;
+            }
+            join = !join;
+        }
+    }
+
+
+    /**
+     * a new node joins the ring
+     * @return number of finger tables swapped
+     */
+    private int join(){
+        String name;
+        do {
+            name = "Node " + nextNodeNumber++;
+        } while(network.getNode(name) != null);
+        ConcurrentNode node = new ConcurrentNode(name);
+        node.setId(hash.hash(name));
+
+        // the node gets the next handle, so it comes after the nodes with the same index. Its finger table is set
+        // before it is added, so a lookup never finds the node without one
+        long key = ((long) node.getId() << 32) | network.getHandleLimit();
+        NodeInterface successor = successorOf(key);
+        NodeInterface predecessor = predecessorOf(key);
+        node.addNeighbor(successor.getName(), successor);
+        ring.put(key, node);
+        node.setRoutingTable(buildFingerTable(node));
+
+        network.addNode(name, node);
+        liveNodes.add(node);
+        ((ConcurrentNode) predecessor).replaceSuccessor(node);
+        return 1 + refreshFingersTo(node, predecessor);
+    }
+
+
+    /**
+     * a node leaves the ring
+     * @return number of finger tables swapped
+     */
+    private int leave(NodeInterface node){
+        long key = ringKey(node);
+        NodeInterface predecessor = predecessorOf(key);
+        NodeInterface successor = successorOf(key + 1);
+        ((ConcurrentNode) predecessor).replaceSuccessor(successor);
+        network.removeNode(node.getName());
+        ring.remove(key);
+        int position = liveNodes.indexOf(node);
+        liveNodes.set(position, liveNodes.get(liveNodes.size() - 1));
+        liveNodes.remove(liveNodes.size() - 1);
+        return refreshFingersTo(node, predecessor);
+    }
+
+
+    /**
+     * builds new finger tables for the nodes whose ith finger starts in (index of the predecessor, index of the
+     * node], for every i: the fingers that point to a node that joined, or pointed to a node that left
+     * @return number of finger tables swapped
+     */
+    private int refreshFingersTo(NodeInterface node, NodeInterface predecessor){
+        Set<NodeInterface> changed = new HashSet<>();
+        for(int i = 0; i < m; i++){
+            long from = Math.floorMod((long) predecessor.getId() - (1L << i), (long) ringSize);
+            long to = Math.floorMod((long) node.getId() - (1L << i), (long) ringSize);
+            // nodes with an index in (from, to], which can wrap around 0
+            if(from < to){
+                changed.addAll(ring.subMap((from + 1) << 32, (to + 1) << 32).values());
+            }
+            else if(from > to){
+                changed.addAll(ring.tailMap((from + 1) << 32).values());
+                changed.addAll(ring.headMap((to + 1) << 32).values());
+            }
+        }
+        changed.remove(node);
+        for(NodeInterface other : changed){
+            other.setRoutingTable(buildFingerTable(other));
+        }
+        return changed.size();
+    }
+
+
+    /**
+     * @return a new finger table of a node from the ring
+     */
+    private CompactFingerTable buildFingerTable(NodeInterface node){
+        NodeInterface[] successor = new NodeInterface[m];
+        for(int i = 0; i < m; i++){
+            long start = (node.getId() + (1L << i)) % ringSize;
+            successor[i] = successorOf(start << 32);
+        }
+        return CompactFingerTable.of(node.getId(), ringSize, successor);
+    }
+
+
+    /**
+     * @return the first node of the ring at or after a ring key
+     */
+    private NodeInterface successorOf(long key){
+        Map.Entry<Long, NodeInterface> entry = ring.ceilingEntry(key);
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+
+    /**
+     * @return the last node of the ring before a ring key
+     */
+    private NodeInterface predecessorOf(long key){
+        Map.Entry<Long, NodeInterface> entry = ring.lowerEntry(key);
+        return (entry != null ? entry : ring.lastEntry()).getValue();
+    }
+
+
+    private static long ringKey(NodeInterface node){
+        return ((long) node.getId() << 32) | node.getHandle();
+    }
+
+
+    /**
+     * looks up random keys from random nodes after the churn, and counts the lookups that did not end at the owner
+     */
+    private long checkOwners(int lookups){
+        Random random = new Random(1);
+        long wrong = 0;
+        Counters counters = new Counters();
+        for(int i = 0; i < lookups; i++){
+            int keyIndex = keyIndexes[1 + random.nextInt(keyIndexes.length - 1)];
+            NodeInterface start = liveNodes.get(random.nextInt(liveNodes.size()));
+            if(lookUp(start, keyIndex, counters) != successorOf((long) keyIndex << 32)){
+                wrong++;
+            }
+        }
+        return wrong;
+    }
+
+
+    /**
+     * routes a lookup with what the nodes have at the moment, without locks
+     * @return the node that owns the key index, or null if the lookup took too many hops
+     */
+    private NodeInterface lookUp(NodeInterface start, int keyIndex, Counters counters){
+        NodeInterface currentNode = start;
+        for(int hop = 0; hop < 4 * m; hop++){
+            NodeInterface successor = currentNode.getSuccessor();
+            int currentIndex = currentNode.getId();
+            // a key index equal to the index of the node is a full round away
+            int keyDistance = (keyIndex == currentIndex) ? ringSize : ringDistance(currentIndex, keyIndex);
+            int successorDistance = ringDistance(currentIndex, successor.getId());
+            if(successor == currentNode || (keyDistance > 0 && keyDistance <= successorDistance)){
+                counters.hops += hop;
+                return successor;
+            }
+
+            // the closest preceding finger that is still in the network, from the entry of the key down
+            Fingers fingers = (Fingers) currentNode.getRoutingTable();
+            NodeInterface nextNode = successor;
+            int entry = Math.min(fingers.size() - 1, 31 - Integer.numberOfLeadingZeros(keyDistance));
+            for(; entry >= 0; entry--){
+                NodeInterface finger = fingers.getSuccessor(entry);
+                int distance = ringDistance(currentIndex, finger.getId());
+                if(distance <= successorDistance || distance >= keyDistance){
+                    continue;
+                }
+                if(!network.contains(finger)){
+                    counters.timeouts++;
+                    continue;
+                }
+                nextNode = finger;
+                break;
+            }
+            currentNode = nextNode;
+        }
+        counters.failures++;
+        return null;
+    }
+
+
+    private int ringDistance(int from, int to){
+        int distance = to - from;
+        return distance < 0 ? distance + ringSize : distance;
+    }
+
+
+    /**
+     * statistics of the lookups of a reader
+     */
+    private static class Counters {
+        long lookups;
+        long hops;
+        long timeouts;
+        long failures;
+        // lookups that ended at a node that had left the network when the lookup ended
+        long departedOwners;
+    }
+
+
+    /**
+     * a reader thread
+     */
+    private final class Reader implements Runnable {
+        final Thread thread;
+        final Counters counters = new Counters();
+        final LatencyHistogram latencies = new LatencyHistogram();
+        Throwable failure;
+
+        Reader(int index){
+            this.thread = new Thread(this, "reader-" + index);
+        }
+
+        public void run(){
+            try {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while(running){
+                    int keyIndex = keyIndexes[1 + random.nextInt(keyIndexes.length - 1)];
+                    NodeInterface start = network.getNodeByHandle(random.nextInt(network.getHandleLimit()));
+                    if(start == null){
+                        continue;
+                    }
+                    long sent = System.nanoTime();
+                    NodeInterface owner = lookUp(start, keyIndex, counters);
+                    latencies.record(System.nanoTime() - sent);
+                    counters.lookups++;
+                    if(owner != null && !network.contains(owner)){
+                        counters.departedOwners++;
+                    }
+                }
+            } catch (Throwable e) {
+                failure = e;
+            }
+        }
+    }
+
+
+    /**
+     * statistics of a phase
+     */
+    private static class Phase {
+        final Counters counters = new Counters();
+        final LatencyHistogram latencies = new LatencyHistogram();
+        double seconds;
+        long joins;
+        long leaves;
+        long tablesSwapped;
+
+        void add(Reader reader){
+            counters.lookups += reader.counters.lookups;
+            counters.hops += reader.counters.hops;
+            counters.timeouts += reader.counters.timeouts;
+            counters.failures += reader.counters.failures;
+            counters.departedOwners += reader.counters.departedOwners;
+            latencies.add(reader.latencies);
+        }
+
+        double lookupsPerSecond(){
+            return seconds > 0 ? counters.lookups / seconds : 0;
+        }
+
+        public String toString(){
+            long lookups = Math.max(counters.lookups, 1);
+            return String.format("%.0f lookups/s, %.2f hops, %.4f timeouts per lookup, %d failed, "
+                            + "%d ended at a departed node, latency ", lookupsPerSecond(),
+                    (double) counters.hops / lookups, (double) counters.timeouts / lookups, counters.failures,
+                    counters.departedOwners) + latencies;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package protocol;
+
+import java.util.Arrays;
+
+import p2p.NodeInterface;
+
+/**
+ * This class is the finger table (routing table) used by the chord protocol. It stores m entries, where the ith entry
+ * consists of the start of the interval, the end of the interval and the successor node of the interval.
+ *
+ * The entries are stored in primitive arrays, and the successor nodes are stored as direct references, so that the
+ * lookup can follow a finger without resolving the node by its name in the network.
+ */
+public class FingerTable implements Fingers {
+
+    // start of the interval of each entry, (n+2^(i-1)) mod 2^m
+    public int[] start;
+
+    // end of the interval of each entry
+    public int[] end;
+
+    // first node in the ring that is placed after the start of the interval
+    public NodeInterface[] successor;
+
+
+    public FingerTable(int m){
+        this.start = new int[m];
+        this.end = new int[m];
+        this.successor = new NodeInterface[m];
+    }
+
+
+    /**
+     * sets the entry with the given position
+     * @param entry position of the entry (0 ... m-1)
+     * @param start start of the interval
+     * @param end end of the interval
+     * @param successor successor node of the interval
+     */
+    public void setEntry(int entry, int start, int end, NodeInterface successor){
+        this.start[entry] = start;
+        this.end[entry] = end;
+        this.successor[entry] = successor;
+    }
+
+
+    /**
+     * @return number of entries in the finger table
+     */
+    public int size(){
+        return this.start.length;
+    }
+
+
+    public NodeInterface getSuccessor(int entry){
+        return this.successor[entry];
+    }
+
+
+    public int getDistinctSuccessors(){
+        return (int) Arrays.stream(this.successor).distinct().count();
+    }
+
+
+    public long getAllocatedBytes(){
+        // object: header and 3 references; two int arrays; reference array
+        return CompactFingerTable.align(12 + 3 * 4) + 2 * CompactFingerTable.align(16 + 4L * size())
+                + CompactFingerTable.align(16 + 4L * size());
+    }
+
+
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n\tFingerTable:\n");
+        for (int i = 0; i < size(); i++) {
+            sb.append("\t\tInterval: [").append(start[i])
+            .append(", ").append(end[i])
+            .append("), Successor: ").append(successor[i].getName())
+            .append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package protocol;
+
+import p2p.NodeInterface;
+
+/**
+ * The entries of a finger table as the chord protocol reads them. The ith entry (0 ... m-1) covers the interval
+ * [(n+2^i) mod 2^m, (n+2^(i+1)-1) mod 2^m] of the ring, and points to the first node at or after the start of the
+ * interval. FingerTable stores every entry, CompactFingerTable only the entries where the successor changes.
+ */
+public interface Fingers {
+
+    /**
+     * @return number of entries (m)
+     */
+    int size();
+
+    /**
+     * @param entry position of the entry (0 ... m-1)
+     * @return successor node of the entry
+     */
+    NodeInterface getSuccessor(int entry);
+
+    /**
+     * @return number of distinct successor nodes in the table
+     */
+    int getDistinctSuccessors();
+
+    /**
+     * @return estimated number of bytes of the table in the heap (compressed references, 8 byte alignment)
+     */
+    long getAllocatedBytes();
+}
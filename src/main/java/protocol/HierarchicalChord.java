@@ -0,0 +1,504 @@
+package protocol;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import logging.Log;
+import p2p.NetworkInterface;
+import p2p.NodeInterface;
+import workload.Workload;
+
+/**
+ * This class simulates a two-level hierarchical chord on top of a built ChordProtocol, and compares it with the flat
+ * ring. The nodes are split into groups by an attribute (eg:- their rack or region):
+ *     - every group has its own chord ring of its nodes (the intra-group ring), with finger tables that only point to
+ *       nodes of the group
+ *     - the first node of each group in the topology is its gateway. The gateways form the top-level ring, where each
+ *       group has the index of its name
+ *     - a key belongs to the group that follows its index on the top-level ring, and to the node that follows its
+ *       index on the ring of that group
+ *
+ * A lookup from a node of group A for a key of group T:
+ *     1) if T is A, the lookup is routed on the ring of A to the owner, and never leaves the group
+ *     2) otherwise the node sends it to the gateway of A, which finds T on the top-level ring (the gateways keep the
+ *        whole top-level ring, one entry per group) and forwards it to the gateway of T. From there it is routed on
+ *        the ring of T to the owner
+ * so a lookup crosses groups at most once. The flat ring routes the same keys from the same nodes with the finger
+ * tables of the protocol, where every hop can go to another group.
+ *
+ * The keys are placed by the hierarchy, so the share of the keys of a group follows the arc of its index on the
+ * top-level ring rather than the number of its nodes.
+ *
+ * Options:
+ *     --hierarchy &lt;attribute&gt;  attribute that groups the nodes:
+ *                               blocks[:g]   g groups of consecutive nodes, like racks filled in order (default, g = 8)
+ *                               modulo[:g]   node n is in group n mod g
+ *                               file:&lt;path&gt;  a file with a line '&lt;node name&gt; &lt;group&gt;' per node
+ */
+public class HierarchicalChord {
+
+    private static final int DEFAULT_GROUPS = 8;
+
+    public String attribute;
+
+    private ChordProtocol protocol;
+    private int m;
+    private int ringSize;
+
+    // group of each node by handle, the names of the groups and the handle of the gateway of each group
+    private int[] groupOf;
+    private String[] groupNames;
+    private int[] gateways;
+
+    // nodes of each group in ring order (by index, then by handle), their indexes, and the position of each node in
+    // the ring of its group
+    private int[][] members;
+    private int[][] memberIds;
+    private int[] position;
+
+    // finger table of each node in the ring of its group, as handles
+    private int[][] fingers;
+
+    // the top-level ring: groups in the order of their index
+    private int[] topIds;
+    private int[] topGroups;
+
+    // statistics of the last call to lookUpHierarchical() or lookUpFlat()
+    private int hops;
+    private int interGroupHops;
+
+
+    /**
+     * creates the hierarchical chord from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the hierarchical chord
+     */
+    public static HierarchicalChord fromOptions(HashMap<String, String> options){
+        HierarchicalChord hierarchy = new HierarchicalChord();
+        String attribute = options.getOrDefault("hierarchy", "true");
+        hierarchy.attribute = attribute.equals("true") ? "blocks" : attribute;
+        return hierarchy;
+    }
+
+
+    /**
+     * builds the groups and their rings over the protocol of the simulator, which must be built, then looks up the
+     * keys requested by the workload from random nodes in the hierarchy and in the flat ring
+     * @param simulator the simulator
+     * @return the report
+     */
+    public String run(ChordProtocolSimulator simulator) throws IOException {
+        protocol = (ChordProtocol) simulator.protocol;
+        m = simulator.m;
+        ringSize = protocol.ringSize;
+        NetworkInterface network = protocol.getNetwork();
+        int size = network.getSize();
+
+        Log.info("Grouping " + size + " nodes by " + attribute + "...");
+        groupNodes(network);
+        Log.info("Building " + groupNames.length + " group rings and the top-level ring...");
+        buildRings(network);
+
+        int[] hierarchicalLoad = new int[size];
+        int[] flatLoad = new int[size];
+        HopHistogram hierarchicalHops = new HopHistogram();
+        HopHistogram flatHops = new HopHistogram();
+        long hierarchicalInterGroup = 0;
+        long flatInterGroup = 0;
+        int hierarchicalMaxInterGroup = 0;
+        int flatMaxInterGroup = 0;
+        long hierarchicalCrossing = 0;
+        long hierarchicalCrossingMoreThanOnce = 0;
+        long flatCrossingMoreThanOnce = 0;
+        long wrongOwners = 0;
+
+        // the same keys are looked up from the same random nodes in both rings
+        Log.info("Looking up keys in the hierarchy and in the flat ring...");
+        Random random = new Random(simulator.workloadConfig.seed);
+        Workload workload = Workload.create(simulator.workloadConfig);
+        while (workload.hasNext()) {
+            int keyIndex = simulator.keyIndex(workload.nextInt());
+            NodeInterface start = network.getNodeByHandle(random.nextInt(size));
+
+            int owner = lookUpHierarchical(start.getHandle(), keyIndex, hierarchicalLoad);
+            if (owner != expectedOwner(keyIndex)) {
+                wrongOwners++;
+            }
+            hierarchicalHops.record(hops);
+            hierarchicalInterGroup += interGroupHops;
+            hierarchicalMaxInterGroup = Math.max(hierarchicalMaxInterGroup, interGroupHops);
+            if (interGroupHops > 0) {
+                hierarchicalCrossing++;
+            }
+            if (interGroupHops > 1) {
+                hierarchicalCrossingMoreThanOnce++;
+            }
+
+            lookUpFlat(start, keyIndex, flatLoad);
+            flatHops.record(hops);
+            flatInterGroup += interGroupHops;
+            flatMaxInterGroup = Math.max(flatMaxInterGroup, interGroupHops);
+            if (interGroupHops > 1) {
+                flatCrossingMoreThanOnce++;
+            }
+        }
+        workload.close();
+
+        long lookups = hierarchicalHops.getLookups();
+        int[] sizes = new int[members.length];
+        for (int group = 0; group < members.length; group++) {
+            sizes[group] = members[group].length;
+        }
+        String report = String.format("hierarchical chord: %d nodes, m = %d, %d groups by %s (%d to %d nodes), "
+                        + "%d lookups from random nodes",
+                        size, m, groupNames.length, attribute, min(sizes), max(sizes), lookups)
+                + String.format("\n%-34s %12s %12s", "", "flat", "hierarchical")
+                + String.format("\n%-34s %12.2f %12.2f", "average hops",
+                        flatHops.getAverage(), hierarchicalHops.getAverage())
+                + String.format("\n%-34s %12d %12d", "99th percentile hops",
+                        flatHops.getPercentile(99), hierarchicalHops.getPercentile(99))
+                + String.format("\n%-34s %12d %12d", "max hops", flatHops.getMax(), hierarchicalHops.getMax())
+                + String.format("\n%-34s %12.2f %12.2f", "average inter-group hops",
+                        average(flatInterGroup, lookups), average(hierarchicalInterGroup, lookups))
+                + String.format("\n%-34s %12d %12d", "max inter-group hops",
+                        flatMaxInterGroup, hierarchicalMaxInterGroup)
+                + String.format("\n%-34s %12d %12d", "lookups crossing more than once",
+                        flatCrossingMoreThanOnce, hierarchicalCrossingMoreThanOnce)
+                + String.format("\n%-34s %12d %12d", "max requests of a node", max(flatLoad), max(hierarchicalLoad))
+                + String.format("\n%-34s %12.1f %12.1f", "average requests of a node",
+                        average(sum(flatLoad), size), average(sum(hierarchicalLoad), size))
+                + String.format("\n%-34s %12.1f %12.1f", "average requests of a gateway",
+                        gatewayAverage(flatLoad), gatewayAverage(hierarchicalLoad))
+                + String.format("\n%-34s %11.1f%% %11.1f%%", "requests handled by gateways",
+                        gatewayShare(flatLoad), gatewayShare(hierarchicalLoad))
+                + String.format("\nlookups crossing groups in the hierarchy: %d, wrong owners: %d",
+                        hierarchicalCrossing, wrongOwners);
+        for (String line : report.split("\n")) {
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/hierarchy_" + simulator.nodeCount + "_nodes_m" + m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(report);
+        }
+        return report;
+    }
+
+
+    /**
+     * puts every node in a group by the attribute
+     */
+    private void groupNodes(NetworkInterface network) throws IOException {
+        int size = network.getSize();
+        groupOf = new int[size];
+        String[] spec = attribute.split(":", 2);
+        if (spec[0].equals("blocks") || spec[0].equals("modulo")) {
+            int groups = Math.min(size, spec.length > 1 ? Integer.parseInt(spec[1]) : DEFAULT_GROUPS);
+            if (groups <= 0) {
+                throw new IllegalArgumentException("the number of groups must be positive");
+            }
+            groupNames = new String[groups];
+            for (int group = 0; group < groups; group++) {
+                groupNames[group] = "group " + group;
+            }
+            for (int handle = 0; handle < size; handle++) {
+                groupOf[handle] = spec[0].equals("blocks") ? (int) ((long) handle * groups / size) : handle % groups;
+            }
+        }
+        else if (spec[0].equals("file") && spec.length > 1) {
+            groupNodesFromFile(network, spec[1]);
+        }
+        else {
+            throw new IllegalArgumentException("unknown hierarchy attribute: " + attribute);
+        }
+    }
+
+
+    /**
+     * reads the group of every node from a file with a line '&lt;node name&gt; &lt;group&gt;' per node. The group is the last
+     * word of the line, as node names contain a space. Empty lines and lines starting with # are skipped
+     */
+    private void groupNodesFromFile(NetworkInterface network, String path) throws IOException {
+        Map<String, String> groupByNode = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int split = line.lastIndexOf(' ');
+                if (split < 0) {
+                    throw new IllegalArgumentException("expected '<node name> <group>': " + line);
+                }
+                groupByNode.put(line.substring(0, split).trim(), line.substring(split + 1));
+            }
+        }
+
+        // groups are numbered in the order of their first node in the topology
+        Map<String, Integer> groupNumbers = new LinkedHashMap<>();
+        for (int handle = 0; handle < groupOf.length; handle++) {
+            String name = network.getNodeByHandle(handle).getName();
+            String group = groupByNode.get(name);
+            if (group == null) {
+                throw new IllegalArgumentException("no group for " + name + " in " + path);
+            }
+            Integer number = groupNumbers.get(group);
+            if (number == null) {
+                number = groupNumbers.size();
+                groupNumbers.put(group, number);
+            }
+            groupOf[handle] = number;
+        }
+        groupNames = groupNumbers.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+     * builds the ring and the finger tables of every group, the gateways and the top-level ring
+     */
+    private void buildRings(NetworkInterface network) {
+        int size = groupOf.length;
+        int groups = groupNames.length;
+
+        // nodes of each group in ring order. A node index is packed with its handle, so nodes with the same index
+        // stay in the order of the topology, as in the flat ring
+        List<List<Long>> order = new ArrayList<>();
+        for (int group = 0; group < groups; group++) {
+            order.add(new ArrayList<>());
+        }
+        int[] ids = new int[size];
+        gateways = new int[groups];
+        Arrays.fill(gateways, -1);
+        for (int handle = 0; handle < size; handle++) {
+            ids[handle] = network.getNodeByHandle(handle).getId();
+            order.get(groupOf[handle]).add(((long) ids[handle] << 32) | handle);
+            if (gateways[groupOf[handle]] < 0) {
+                gateways[groupOf[handle]] = handle;
+            }
+        }
+
+        members = new int[groups][];
+        memberIds = new int[groups][];
+        position = new int[size];
+        for (int group = 0; group < groups; group++) {
+            long[] sorted = order.get(group).stream().mapToLong(Long::longValue).sorted().toArray();
+            members[group] = new int[sorted.length];
+            memberIds[group] = new int[sorted.length];
+            for (int p = 0; p < sorted.length; p++) {
+                members[group][p] = (int) sorted[p];
+                memberIds[group][p] = (int) (sorted[p] >>> 32);
+                position[members[group][p]] = p;
+            }
+        }
+
+        // the ith finger of a node points to the first node of its group at or after (n+2^i) mod 2^m
+        fingers = new int[size][m];
+        for (int handle = 0; handle < size; handle++) {
+            int group = groupOf[handle];
+            for (int i = 0; i < m; i++) {
+                int start = (int) ((ids[handle] + (1L << i)) % ringSize);
+                fingers[handle][i] = members[group][successorPosition(memberIds[group], start)];
+            }
+        }
+
+        // the top-level ring, with the groups in the order of the index of their name
+        long[] top = new long[groups];
+        for (int group = 0; group < groups; group++) {
+            top[group] = ((long) protocol.ch.hash(groupNames[group]) << 32) | group;
+        }
+        Arrays.sort(top);
+        topIds = new int[groups];
+        topGroups = new int[groups];
+        for (int p = 0; p < groups; p++) {
+            topIds[p] = (int) (top[p] >>> 32);
+            topGroups[p] = (int) top[p];
+        }
+    }
+
+
+    /**
+     * @return position of the first index at or after an index in a sorted ring of indexes, 0 if there is none
+     */
+    private static int successorPosition(int[] ids, int index) {
+        int low = 0;
+        int high = ids.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] < index) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low == ids.length ? 0 : low;
+    }
+
+
+    /**
+     * @return the group that owns a key index on the top-level ring
+     */
+    private int targetGroup(int keyIndex) {
+        return topGroups[successorPosition(topIds, keyIndex)];
+    }
+
+
+    /**
+     * @return handle of the node that owns a key index in the hierarchy
+     */
+    private int expectedOwner(int keyIndex) {
+        int group = targetGroup(keyIndex);
+        return members[group][successorPosition(memberIds[group], keyIndex)];
+    }
+
+
+    /**
+     * looks up a key index in the hierarchy, and counts the hops and the inter-group hops in this.hops and
+     * this.interGroupHops
+     * @param start handle of the node the lookup starts from
+     * @param keyIndex index of the key
+     * @param load requests handled by each node, by handle. Every node of the path is counted once
+     * @return handle of the node the lookup ends at
+     */
+    private int lookUpHierarchical(int start, int keyIndex, int[] load) {
+        hops = 0;
+        interGroupHops = 0;
+        int current = start;
+        load[current]++;
+
+        // to the gateway of the own group, and from there to the gateway of the group of the key
+        int target = targetGroup(keyIndex);
+        if (groupOf[current] != target) {
+            int gateway = gateways[groupOf[current]];
+            if (current != gateway) {
+                current = gateway;
+                hops++;
+                load[current]++;
+            }
+            current = gateways[target];
+            hops++;
+            interGroupHops++;
+            load[current]++;
+        }
+
+        // on the ring of the group to the owner. A node owns the indexes after the node before it in the ring of the
+        // group, up to its own index
+        int[] ids = memberIds[target];
+        int ownerPosition = successorPosition(ids, keyIndex);
+        while (position[current] != ownerPosition) {
+            current = nextHopInGroup(current, keyIndex);
+            hops++;
+            load[current]++;
+        }
+        return current;
+    }
+
+
+    /**
+     * chooses the next node in the ring of the group of a node, which does not own the key index: the successor if
+     * the key index is between the node and its successor, otherwise the closest preceding finger (see
+     * ChordProtocol.nextHop())
+     */
+    private int nextHopInGroup(int handle, int keyIndex) {
+        int group = groupOf[handle];
+        int[] ids = memberIds[group];
+        int p = position[handle];
+        int successor = (p + 1) % ids.length;
+        int distance = protocol.ringDistance(ids[p], keyIndex);
+        if (distance > 0 && distance <= protocol.ringDistance(ids[p], ids[successor])) {
+            return members[group][successor];
+        }
+        int entry = (distance == 0) ? m - 1 : 31 - Integer.numberOfLeadingZeros(distance);
+        return fingers[handle][entry];
+    }
+
+
+    /**
+     * looks up a key index in the flat ring of the protocol, and counts the hops and the hops between nodes of
+     * different groups in this.hops and this.interGroupHops
+     * @param start the node the lookup starts from
+     * @param keyIndex index of the key
+     * @param load requests handled by each node, by handle. Every node of the path is counted once
+     */
+    private void lookUpFlat(NodeInterface start, int keyIndex, int[] load) {
+        hops = 0;
+        interGroupHops = 0;
+        NodeInterface current = start;
+        load[current.getHandle()]++;
+        while (!protocol.owns(current, keyIndex)) {
+            NodeInterface next = protocol.nextHop(current, keyIndex);
+            if (next.equals(current)) {
+                break;
+            }
+            hops++;
+            if (groupOf[next.getHandle()] != groupOf[current.getHandle()]) {
+                interGroupHops++;
+            }
+            current = next;
+            load[current.getHandle()]++;
+        }
+    }
+
+
+    /**
+     * @return average requests of the gateways
+     */
+    private double gatewayAverage(int[] load) {
+        long total = 0;
+        for (int gateway : gateways) {
+            total += load[gateway];
+        }
+        return average(total, gateways.length);
+    }
+
+
+    /**
+     * @return percentage of all requests handled by the gateways
+     */
+    private double gatewayShare(int[] load) {
+        long total = 0;
+        for (int gateway : gateways) {
+            total += load[gateway];
+        }
+        return 100.0 * average(total, sum(load));
+    }
+
+
+    private static double average(long total, long count) {
+        return count > 0 ? (double) total / count : 0;
+    }
+
+
+    private static long sum(int[] values) {
+        long sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+
+    private static int min(int[] values) {
+        return values.length > 0 ? Arrays.stream(values).min().getAsInt() : 0;
+    }
+
+
+    private static int max(int[] values) {
+        return values.length > 0 ? Arrays.stream(values).max().getAsInt() : 0;
+    }
+}
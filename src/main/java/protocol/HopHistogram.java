@@ -0,0 +1,104 @@
+package protocol;
+
+import java.util.Arrays;
+
+/**
+ * This class counts the number of lookups for each hop count, so that the average and percentiles of the hop counts
+ * can be calculated without storing the result of every lookup.
+ */
+public class HopHistogram {
+
+    // counts[h] is the number of lookups that took h hops
+    private long[] counts;
+
+    // total number of lookups and hops recorded
+    private long lookups;
+    private long hops;
+
+
+    public HopHistogram(){
+        this.counts = new long[32];
+    }
+
+
+    /**
+     * records a lookup
+     * @param hopCount number of hops of the lookup
+     */
+    public void record(int hopCount){
+        if(hopCount >= counts.length){
+            counts = Arrays.copyOf(counts, Math.max(hopCount + 1, counts.length * 2));
+        }
+        counts[hopCount]++;
+        lookups++;
+        hops += hopCount;
+    }
+
+
+    /**
+     * adds the counts of another histogram to this histogram
+     * @param other histogram to add
+     */
+    public void add(HopHistogram other){
+        for(int h = 0; h < other.counts.length; h++){
+            if(other.counts[h] > 0){
+                if(h >= counts.length){
+                    counts = Arrays.copyOf(counts, other.counts.length);
+                }
+                counts[h] += other.counts[h];
+            }
+        }
+        lookups += other.lookups;
+        hops += other.hops;
+    }
+
+
+    /**
+     * @return number of lookups recorded
+     */
+    public long getLookups(){
+        return lookups;
+    }
+
+
+    /**
+     * @return average hop count, 0 if no lookups are recorded
+     */
+    public double getAverage(){
+        return lookups > 0 ? (double) hops / lookups : 0;
+    }
+
+
+    /**
+     * returns the hop count at the given percentile
+     * @param percentile percentile from 0 to 100
+     * @return the smallest hop count h where at least percentile% of the lookups took h hops or fewer
+     */
+    public int getPercentile(double percentile){
+        if(lookups == 0){
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * lookups);
+        long seen = 0;
+        for(int h = 0; h < counts.length; h++){
+            seen += counts[h];
+            if(seen >= Math.max(rank, 1)){
+                return h;
+            }
+        }
+        return counts.length - 1;
+    }
+
+
+    /**
+     * @return the largest hop count recorded
+     */
+    public int getMax(){
+        for(int h = counts.length - 1; h >= 0; h--){
+            if(counts[h] > 0){
+                return h;
+            }
+        }
+        return 0;
+    }
+}
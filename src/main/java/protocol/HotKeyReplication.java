@@ -0,0 +1,328 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import logging.Log;
+import p2p.NetworkInterface;
+import p2p.NodeInterface;
+import workload.Workload;
+
+/**
+ * This class measures the load on the nodes when hot keys are copied to the nodes before their owners on the lookup
+ * paths, in the style of Beehive and the caches of CFS. Under a skewed workload the owner of a popular key receives
+ * every lookup of the key, however evenly the keys are spread over the nodes.
+ *
+ * Every node that answers a lookup counts the keys it answers with a bounded Space-Saving counter (see SpaceSaving),
+ * together with the nodes the lookups came from. At the end of every epoch of lookups, a node pushes a copy of the
+ * location of each key it answered at least --hot-threshold times the average lookups a node answers in an epoch to
+ * the nodes that sent it most of those lookups, which are the nodes before it on the common paths. A node that holds
+ * a copy answers the lookups of the key itself, and counts them, so a key that stays hot is copied further back along
+ * the paths. The counts are halved every epoch, and a copy expires when it has not been pushed again for --copy-ttl
+ * epochs, so the copies follow the demand.
+ *
+ * The keys requested by the workload are looked up from random nodes without and with the copies, and the requests
+ * every node handles (every node of a path, the start node included) are compared.
+ *
+ * Options:
+ *     --hot-keys [counters]      counters per node (default 16). Each node also keeps at most this many copies
+ *     --hot-fanout &lt;n&gt;          nodes a hot key is copied to, the senders kept per counter (default 4)
+ *     --hot-threshold &lt;x&gt;       lookups of a key in an epoch, relative to the average lookups a node answers in an
+ *                                epoch, above which the key is copied (default 4)
+ *     --epoch &lt;lookups&gt;         lookups per epoch (default 10 per node)
+ *     --copy-ttl &lt;epochs&gt;       epochs a copy lives after it was last pushed (default 2)
+ */
+public class HotKeyReplication {
+
+    public int counters;
+    public int fanout;
+    public double threshold;
+    public int epoch;
+    public int copyTtl;
+
+    private ChordProtocol protocol;
+    private NetworkInterface network;
+
+    // requests handled by each node in the current epoch and in total, without (0) and with (1) copies, and the sum of
+    // the highest load of a node in each epoch
+    private long[][] epochLoad;
+    private long[][] totalLoad;
+    private long[] epochPeaks;
+
+    // counters of the nodes, and the copies each node holds with the epoch they expire in, by handle
+    private SpaceSaving[] hotKeys;
+    private List<HashMap<Integer, Integer>> copies;
+    private int epochNumber;
+
+    private long answeredFromCopies;
+    private long pushed;
+    private long refreshed;
+    private long rejected;
+    private long expired;
+    private long alive;
+    private long mostAlive;
+
+
+    /**
+     * creates the hot key replication measurement from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the measurement
+     */
+    public static HotKeyReplication fromOptions(HashMap<String, String> options){
+        HotKeyReplication replication = new HotKeyReplication();
+        String counters = options.getOrDefault("hot-keys", "true");
+        replication.counters = Integer.parseInt(counters.equals("true") ? "16" : counters);
+        replication.fanout = Integer.parseInt(options.getOrDefault("hot-fanout", "4"));
+        replication.threshold = Double.parseDouble(options.getOrDefault("hot-threshold", "4"));
+        replication.epoch = Integer.parseInt(options.getOrDefault("epoch", "-1"));
+        replication.copyTtl = Integer.parseInt(options.getOrDefault("copy-ttl", "2"));
+        if(replication.counters < 1 || replication.fanout < 1 || replication.copyTtl < 1){
+            throw new IllegalArgumentException("the counters, the fanout and the copy ttl must be positive");
+        }
+        return replication;
+    }
+
+
+    /**
+     * looks up the keys requested by the workload from random nodes without and with copies of the hot keys, and
+     * reports the load on the nodes. The protocol of the simulator must be built
+     * @param simulator the simulator
+     * @return the report
+     */
+    public String run(ChordProtocolSimulator simulator) throws IOException {
+        protocol = (ChordProtocol) simulator.protocol;
+        network = protocol.getNetwork();
+        int size = network.getSize();
+        int epochLookups = epoch > 0 ? epoch : 10 * size;
+
+        epochLoad = new long[2][size];
+        totalLoad = new long[2][size];
+        epochPeaks = new long[2];
+        hotKeys = new SpaceSaving[size];
+        copies = new ArrayList<>(Collections.nCopies(size, null));
+        HopHistogram[] hops = {new HopHistogram(), new HopHistogram()};
+        HashMap<Integer, Integer> requests = new HashMap<>();
+
+        // the same keys are looked up from the same random nodes without and with copies
+        Log.info("Looking up keys without and with copies of hot keys...");
+        Random random = new Random(simulator.workloadConfig.seed);
+        Workload workload = Workload.create(simulator.workloadConfig);
+        int inEpoch = 0;
+        while(workload.hasNext()){
+            int keyIndex = simulator.keyIndex(workload.nextInt());
+            NodeInterface start = network.getNodeByHandle(random.nextInt(size));
+            requests.merge(keyIndex, 1, Integer::sum);
+
+            hops[0].record(lookUp(start, keyIndex, false));
+            hops[1].record(lookUp(start, keyIndex, true));
+            if(++inEpoch == epochLookups){
+                endEpoch(epochLookups);
+                inEpoch = 0;
+            }
+        }
+        workload.close();
+        if(inEpoch > 0){
+            endEpoch(inEpoch);
+        }
+
+        // the owner of the most requested key
+        int hottestKey = 0;
+        int hottestRequests = 0;
+        for(Map.Entry<Integer, Integer> entry : requests.entrySet()){
+            if(entry.getValue() > hottestRequests){
+                hottestKey = entry.getKey();
+                hottestRequests = entry.getValue();
+            }
+        }
+        int hottestOwner = ownerOf(hottestKey);
+
+        long counterBytes = new SpaceSaving(counters, fanout).getAllocatedBytes();
+        long lookups = hops[0].getLookups();
+        String[] labels = {"without", "with"};
+        StringBuilder header = new StringBuilder(String.format("%-40s", ""));
+        StringBuilder average = new StringBuilder(String.format("%-40s", "average hops"));
+        StringBuilder peak = new StringBuilder(String.format("%-40s", "peak node load (requests)"));
+        StringBuilder peakRatio = new StringBuilder(String.format("%-40s", "peak node load / average node load"));
+        StringBuilder peakEpoch = new StringBuilder(String.format("%-40s", "peak node load per epoch (average)"));
+        StringBuilder owner = new StringBuilder(String.format("%-40s", "load of the owner of the hottest key"));
+        for(int variant = 0; variant < 2; variant++){
+            long max = 0;
+            long total = 0;
+            for(long load : totalLoad[variant]){
+                max = Math.max(max, load);
+                total += load;
+            }
+            header.append(String.format(" %12s", labels[variant]));
+            average.append(String.format(" %12.2f", hops[variant].getAverage()));
+            peak.append(String.format(" %12d", max));
+            peakRatio.append(String.format(" %12.2f", max / Math.max((double) total / size, 1e-9)));
+            peakEpoch.append(String.format(" %12.1f", (double) epochPeaks[variant] / Math.max(epochNumber, 1)));
+            owner.append(String.format(" %12d", totalLoad[variant][hottestOwner]));
+        }
+
+        String report = String.format("hot keys: %d nodes, m = %d, %d lookups (%s) from random nodes, %d epochs of %d "
+                        + "lookups, %d counters per node, fanout %d, threshold %.1f, copy ttl %d epochs",
+                        size, simulator.m, lookups, simulator.workloadConfig.distribution, epochNumber, epochLookups,
+                        counters, fanout, threshold, copyTtl)
+                + "\n" + header + "\n" + average + "\n" + peak + "\n" + peakRatio + "\n" + peakEpoch + "\n" + owner
+                + String.format("\nhottest key: index %d, %d requests (%.1f%% of the lookups)", hottestKey,
+                        hottestRequests, lookups > 0 ? 100.0 * hottestRequests / lookups : 0)
+                + String.format("\nlookups answered from copies: %d (%.1f%%)", answeredFromCopies,
+                        lookups > 0 ? 100.0 * answeredFromCopies / lookups : 0)
+                + String.format("\ncopies: %d pushed, %d pushed again, %d rejected by full nodes, %d expired, %d alive "
+                        + "at the end, at most %d alive", pushed, refreshed, rejected, expired, alive, mostAlive)
+                + String.format("\nmemory per node: counters %d bytes, copies at most %d entries", counterBytes,
+                        counters);
+        for(String line : report.split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/hotkeys_" + simulator.nodeCount + "_nodes_m" + simulator.m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(report);
+        }
+        return report;
+    }
+
+
+    /**
+     * routes a lookup from a node to the owner of a key index, or with copies to the first node of the path that holds
+     * a copy of the key, and counts the requests the nodes of the path handle
+     * @param start the node the lookup starts from
+     * @param keyIndex index of the key
+     * @param withCopies true to answer from copies and count the answered keys
+     * @return number of hops
+     */
+    private int lookUp(NodeInterface start, int keyIndex, boolean withCopies){
+        int variant = withCopies ? 1 : 0;
+        NodeInterface currentNode = start;
+        int sender = -1;
+        int hops = 0;
+        while(true){
+            int handle = currentNode.getHandle();
+            epochLoad[variant][handle]++;
+            boolean owner = protocol.owns(currentNode, keyIndex);
+            boolean copy = !owner && withCopies && copies.get(handle) != null && copies.get(handle).containsKey(keyIndex);
+            if(owner || copy){
+                if(withCopies){
+                    if(hotKeys[handle] == null){
+                        hotKeys[handle] = new SpaceSaving(counters, fanout);
+                    }
+                    hotKeys[handle].offer(keyIndex, sender);
+                    answeredFromCopies += copy ? 1 : 0;
+                }
+                return hops;
+            }
+            NodeInterface nextNode = protocol.nextHop(currentNode, keyIndex);
+            if(nextNode.equals(currentNode)){
+                return hops;
+            }
+            sender = handle;
+            currentNode = nextNode;
+            hops++;
+        }
+    }
+
+
+    /**
+     * adds up the load of the epoch, pushes copies of the hot keys of every node to the nodes that sent their lookups,
+     * halves the counts, and removes the copies that expired
+     * @param lookups lookups in the epoch
+     */
+    private void endEpoch(int lookups){
+        int size = network.getSize();
+        for(int variant = 0; variant < 2; variant++){
+            long peak = 0;
+            for(int handle = 0; handle < size; handle++){
+                peak = Math.max(peak, epochLoad[variant][handle]);
+                totalLoad[variant][handle] += epochLoad[variant][handle];
+                epochLoad[variant][handle] = 0;
+            }
+            epochPeaks[variant] += peak;
+        }
+
+        double hotCount = Math.max(2, threshold * lookups / size);
+        for(int handle = 0; handle < size; handle++){
+            SpaceSaving counter = hotKeys[handle];
+            if(counter == null){
+                continue;
+            }
+            for(int slot = 0; slot < counter.size(); slot++){
+                if(counter.getGuaranteedCount(slot) < hotCount){
+                    continue;
+                }
+                for(int entry = 0; entry < counter.getSenderCapacity(); entry++){
+                    int sender = counter.getSender(slot, entry);
+                    if(sender >= 0){
+                        push(sender, counter.getKey(slot));
+                    }
+                }
+            }
+            counter.decay();
+        }
+
+        for(HashMap<Integer, Integer> nodeCopies : copies){
+            if(nodeCopies == null){
+                continue;
+            }
+            Iterator<Integer> expiries = nodeCopies.values().iterator();
+            while(expiries.hasNext()){
+                if(expiries.next() <= epochNumber){
+                    expiries.remove();
+                    expired++;
+                    alive--;
+                }
+            }
+        }
+        epochNumber++;
+    }
+
+
+    /**
+     * gives a node a copy of a key that lives for copyTtl epochs, or renews the copy it has
+     */
+    private void push(int handle, int keyIndex){
+        HashMap<Integer, Integer> nodeCopies = copies.get(handle);
+        if(nodeCopies == null){
+            nodeCopies = new HashMap<>();
+            copies.set(handle, nodeCopies);
+        }
+        if(nodeCopies.containsKey(keyIndex)){
+            refreshed++;
+        }
+        else if(nodeCopies.size() >= counters){
+            rejected++;
+            return;
+        }
+        else {
+            pushed++;
+            mostAlive = Math.max(mostAlive, ++alive);
+        }
+        nodeCopies.put(keyIndex, epochNumber + copyTtl);
+    }
+
+
+    /**
+     * @return handle of the owner of a key index
+     */
+    private int ownerOf(int keyIndex){
+        NodeInterface currentNode = network.getNodeByHandle(0);
+        while(!protocol.owns(currentNode, keyIndex)){
+            NodeInterface nextNode = protocol.nextHop(currentNode, keyIndex);
+            if(nextNode.equals(currentNode)){
+                break;
+            }
+            currentNode = nextNode;
+        }
+        return currentNode.getHandle();
+    }
+}
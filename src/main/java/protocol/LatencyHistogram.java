@@ -0,0 +1,150 @@
+package protocol;
+
+/**
+ * This class counts latencies in logarithmic buckets, so percentiles of millions of latencies can be calculated
+ * without storing them. Each power of two is split into 64 buckets, so a percentile is accurate to about 1.6%.
+ *
+ * A histogram is not thread safe. Threads record into their own histogram, and the histograms are added together
+ * when the measurement ends.
+ */
+public class LatencyHistogram {
+
+    // number of buckets per power of two is 2^SUB_BUCKET_BITS
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long max;
+
+
+    public LatencyHistogram(){
+        this.counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS];
+    }
+
+
+    /**
+     * records a latency
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        counts[bucket(nanos)]++;
+        count++;
+        sum += nanos;
+        if(nanos > max){
+            max = nanos;
+        }
+    }
+
+
+    /**
+     * records a latency measured by a client that waits for each request before sending the next one. If the latency
+     * is longer than the interval at which requests should have been sent, the requests that should have been sent
+     * while waiting are recorded too, with the latency they would have had (coordinated omission correction)
+     * @param nanos latency in nanoseconds
+     * @param expectedInterval interval between requests in nanoseconds, 0 to record only the latency
+     */
+    public void recordCorrected(long nanos, long expectedInterval){
+        record(nanos);
+        if(expectedInterval <= 0){
+            return;
+        }
+        for(long missed = nanos - expectedInterval; missed >= expectedInterval; missed -= expectedInterval){
+            record(missed);
+        }
+    }
+
+
+    /**
+     * adds the counts of another histogram to this histogram
+     * @param other histogram to add
+     */
+    public void add(LatencyHistogram other){
+        for(int i = 0; i < counts.length; i++){
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long getCount(){
+        return count;
+    }
+
+
+    /**
+     * @return average latency in nanoseconds
+     */
+    public double getMean(){
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+
+    /**
+     * @return largest latency in nanoseconds
+     */
+    public long getMax(){
+        return max;
+    }
+
+
+    /**
+     * returns the latency at the given percentile
+     * @param percentile percentile from 0 to 100
+     * @return the upper bound of the bucket that holds the percentile, in nanoseconds (at most the largest latency)
+     */
+    public long getPercentile(double percentile){
+        if(count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+
+    /**
+     * @return the percentiles 50, 90, 99, 99.9 and the maximum in microseconds, as text
+     */
+    public String toString(){
+        return String.format("p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                getPercentile(50) / 1000.0, getPercentile(90) / 1000.0, getPercentile(99) / 1000.0,
+                getPercentile(99.9) / 1000.0, max / 1000.0);
+    }
+
+
+    private static int bucket(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+
+    private static long upperBound(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
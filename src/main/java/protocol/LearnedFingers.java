@@ -0,0 +1,175 @@
+package protocol;
+
+/**
+ * This class is a bounded table of extra fingers that a node learns from lookup traffic, in the style of Accordion.
+ * When a lookup passes a node, the node learns the owner of the key: its handle, its index and the index of its
+ * predecessor, so the entry also tells which indexes the owner is responsible for. The table has a fixed budget of
+ * entries, allocated once, and when it is full a new entry replaces the least recently used entry (LRU) or the least
+ * used entry (LFU, ties broken by recency).
+ *
+ * The entries are kept in parallel arrays and searched linearly, as the budget is small.
+ */
+public class LearnedFingers {
+
+    private final boolean leastFrequentlyUsed;
+    private final int ringSize;
+
+    private final int[] handles;
+    private final int[] ids;
+    private final int[] predecessors;
+    private final long[] lastUsed;
+    private final int[] uses;
+    private int size;
+
+
+    /**
+     * @param budget number of entries
+     * @param leastFrequentlyUsed true to evict the least used entry, false to evict the least recently used entry
+     * @param ringSize size of the ring
+     */
+    public LearnedFingers(int budget, boolean leastFrequentlyUsed, int ringSize){
+        if(budget <= 0){
+            throw new IllegalArgumentException("the budget must be positive");
+        }
+        this.leastFrequentlyUsed = leastFrequentlyUsed;
+        this.ringSize = ringSize;
+        this.handles = new int[budget];
+        this.ids = new int[budget];
+        this.predecessors = new int[budget];
+        this.lastUsed = new long[budget];
+        this.uses = new int[budget];
+    }
+
+
+    /**
+     * @return the entry of a node that owns the key index, or -1 if none is known
+     */
+    public int owner(int keyIndex){
+        for(int slot = 0; slot < size; slot++){
+            if(predecessors[slot] == ids[slot]){
+                // the node is the only node of the ring
+                return slot;
+            }
+            int distance = ringDistance(predecessors[slot], keyIndex);
+            if(distance > 0 && distance <= ringDistance(predecessors[slot], ids[slot])){
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * @param nodeIndex index of the node that has the table
+     * @param keyIndex index of the key
+     * @return the entry closest before the key index (or at it) in the ring, going clockwise from the node, or -1 if
+     *         there is none
+     */
+    public int closestPreceding(int nodeIndex, int keyIndex){
+        int keyDistance = ringDistance(nodeIndex, keyIndex);
+        int closest = -1;
+        int closestDistance = 0;
+        for(int slot = 0; slot < size; slot++){
+            int distance = ringDistance(nodeIndex, ids[slot]);
+            if(distance > closestDistance && distance <= keyDistance){
+                closest = slot;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+
+    /**
+     * @return handle of the node of an entry
+     */
+    public int getHandle(int slot){
+        return handles[slot];
+    }
+
+
+    /**
+     * @return index of the node of an entry
+     */
+    public int getId(int slot){
+        return ids[slot];
+    }
+
+
+    /**
+     * records that a lookup was routed with an entry
+     * @param clock the time of the use (any increasing count)
+     */
+    public void use(int slot, long clock){
+        lastUsed[slot] = clock;
+        uses[slot]++;
+    }
+
+
+    /**
+     * learns a node, or uses its entry if the node is already known. When the table is full the node replaces the
+     * entry chosen by the eviction policy
+     * @param handle handle of the node
+     * @param id index of the node
+     * @param predecessor index of the predecessor of the node
+     * @param clock the time of the lookup (any increasing count)
+     */
+    public void learn(int handle, int id, int predecessor, long clock){
+        for(int slot = 0; slot < size; slot++){
+            if(handles[slot] == handle){
+                use(slot, clock);
+                return;
+            }
+        }
+        int slot = size < handles.length ? size++ : victim();
+        handles[slot] = handle;
+        ids[slot] = id;
+        predecessors[slot] = predecessor;
+        lastUsed[slot] = clock;
+        uses[slot] = 1;
+    }
+
+
+    /**
+     * @return the entry to evict: the least recently used, or with LFU the least used (the least recently used of
+     *         those)
+     */
+    private int victim(){
+        int victim = 0;
+        for(int slot = 1; slot < size; slot++){
+            boolean fewerUses = uses[slot] < uses[victim];
+            boolean sameUses = uses[slot] == uses[victim];
+            boolean older = lastUsed[slot] < lastUsed[victim];
+            if(leastFrequentlyUsed ? fewerUses || (sameUses && older) : older){
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+
+    /**
+     * @return number of learned entries
+     */
+    public int size(){
+        return size;
+    }
+
+
+    /**
+     * @return estimated number of bytes of the table in the heap, which does not depend on how many entries are
+     *         learned (compressed references, 8 byte alignment)
+     */
+    public long getAllocatedBytes(){
+        int budget = handles.length;
+        // object: header, 2 fields, 5 references and the size; 4 int arrays and a long array
+        return CompactFingerTable.align(12 + 1 + 4 + 5 * 4 + 4)
+                + 4 * CompactFingerTable.align(16 + 4L * budget) + CompactFingerTable.align(16 + 8L * budget);
+    }
+
+
+    private int ringDistance(int from, int to){
+        int distance = to - from;
+        return distance < 0 ? distance + ringSize : distance;
+    }
+}
@@ -4,12 +4,14 @@ import java.util.LinkedHashSet;
 
 /**
  * This class prints the the response of the lookup. This is class prints the names of the nodes whose finger table
- * has been checked, the destination node index, it's name and hop count.
+ * has been checked, the destination node index, it's name and hop count. The destination is the node that owns the
+ * key, key_stored tells if the key is stored there.
  */
 public class LookUpResponse {
     public LinkedHashSet<String> peers_looked_up;
     public int node_index;
     public String node_name;
+    public boolean key_stored;
 
     public LookUpResponse(LinkedHashSet<String> peers_looked_up, int node_index,String node_name){
         this.peers_looked_up = peers_looked_up;
@@ -18,14 +20,13 @@ public class LookUpResponse {
     }
 
     public String toString(){
-        String result = "";
-        result = result.concat("peers : ");
+        StringBuilder result = new StringBuilder("peers : ");
         for(String peer: peers_looked_up){
-            result = result.concat(peer+"\t");
+            result.append(peer).append('\t');
         }
-        result=result.concat("\t hop count : "+peers_looked_up.size());
-        result = result.concat("\t node index : "+node_index);
-        result = result.concat("\t node name : "+node_name);
-        return  result;
+        result.append("\t hop count : ").append(peers_looked_up.size());
+        result.append("\t node index : ").append(node_index);
+        result.append("\t node name : ").append(node_name);
+        return result.toString();
     }
 }
@@ -0,0 +1,16 @@
+package protocol;
+
+/**
+ * A lookup transport performs the lookups of the chord protocol somewhere else than in the heap of the simulator,
+ * eg:- by sending the requests over sockets to nodes that run as servers (see net.ChordClient). The lookup should
+ * visit the same nodes and return the same response as ChordProtocol.lookUp().
+ */
+public interface LookupTransport {
+
+    /**
+     * looks up a key
+     * @param keyIndex index of the key
+     * @return names of the nodes that have been searched and the node that contains the key
+     */
+    LookUpResponse lookUp(int keyIndex);
+}
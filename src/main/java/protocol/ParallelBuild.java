@@ -0,0 +1,264 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import crypto.ConsistentHashing;
+import logging.Log;
+import p2p.NetworkInterface;
+import p2p.NodeInterface;
+import workload.KeyStream;
+
+/**
+ * This class builds the chord protocol of a simulator in stages that run on several threads:
+ *     1) hash: the indexes of the nodes are calculated in parallel ranges, and the keys are streamed in parallel
+ *     2) sort: the nodes and the keys are sorted once by their index
+ *     3) assign keys: the sorted keys are merged with the sorted nodes in parallel ranges of the ring, so the keys of
+ *        each node are a range of the sorted keys, and they are added to the node in number order
+ *     4) overlay: the nodes are linked to their successors in parallel ranges of the ring
+ *     5) finger tables: the tables are built by binary search (see ChordProtocol.buildFingerTables()) in parallel
+ *        ranges of the ring
+ *
+ * Every range only writes the state of its own nodes or keys, and the keys are added to a node in the order of their
+ * numbers, so the result is the same as ChordProtocolSimulator.buildProtocol() on one thread for any number of
+ * threads: the same node indexes, successors, predecessors and finger tables, and the same keys in the same order.
+ */
+public class ParallelBuild {
+
+    // ranges per thread, so the threads that finish first take over the ranges of the others
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final ChordProtocolSimulator simulator;
+    private final ChordProtocol protocol;
+    public final int threads;
+
+    // duration of each stage in nanoseconds
+    public long hashNanos;
+    public long sortNanos;
+    public long assignNanos;
+    public long overlayNanos;
+    public long fingerNanos;
+    public long totalNanos;
+
+
+    /**
+     * @param simulator the simulator whose protocol is built
+     * @param threads number of threads
+     */
+    public ParallelBuild(ChordProtocolSimulator simulator, int threads){
+        if(threads <= 0){
+            throw new IllegalArgumentException("the number of threads must be positive");
+        }
+        this.simulator = simulator;
+        this.protocol = (ChordProtocol) simulator.protocol;
+        this.threads = threads;
+    }
+
+
+    /**
+     * builds the protocol. The network must already be set on the protocol, and the Bloom filters enabled on the
+     * nodes if they are used
+     */
+    public void run() throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            build(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    private void build(ForkJoinPool pool) throws InterruptedException {
+        NetworkInterface network = protocol.getNetwork();
+        int nodeCount = network.getSize();
+        int keyCount = simulator.keyCount;
+        long buildStart = System.nanoTime();
+
+        // 1) hash. The nodes are hashed by the protocol, and the keys are streamed from the keys of the simulator.
+        // A key index is packed with its key number, so keys with the same index stay in number order when sorted
+        Log.info("\tHashing " + nodeCount + " nodes and " + keyCount + " keys on " + threads + " threads...");
+        NodeInterface[] nodes = new NodeInterface[nodeCount];
+        ConsistentHashing nodeHash = protocol.ch;
+        forEachRange(pool, nodeCount, (from, to) -> {
+            for(int handle = from; handle < to; handle++){
+                nodes[handle] = network.getNodeByHandle(handle);
+                nodes[handle].setId(nodeHash.hash(nodes[handle].getName()));
+            }
+        });
+        simulator.generateKeys();
+        KeyStream keys = simulator.keys;
+        long[] keyOrder = pool.submit(() -> keys.stream().parallel()
+                .map(pair -> ((long) KeyStream.indexOf(pair) << 32) | KeyStream.numberOf(pair)).toArray()).join();
+        long hashed = System.nanoTime();
+
+        // 2) sort. An index is packed with the handle of its node, so nodes with the same index stay in the order of
+        // the topology (the handles are given in that order)
+        long[] nodeOrder = new long[nodeCount];
+        for(int handle = 0; handle < nodeCount; handle++){
+            nodeOrder[handle] = ((long) nodes[handle].getId() << 32) | handle;
+        }
+        invoke(pool, () -> {
+            Arrays.parallelSort(nodeOrder);
+            Arrays.parallelSort(keyOrder);
+            return null;
+        });
+        NodeInterface[] ring = new NodeInterface[nodeCount];
+        long[] ids = new long[nodeCount];
+        int[] sortedIds = new int[nodeCount];
+        for(int p = 0; p < nodeCount; p++){
+            ring[p] = nodes[(int) nodeOrder[p]];
+            sortedIds[p] = ring[p].getId();
+            ids[p] = Integer.toUnsignedLong(sortedIds[p]);
+        }
+        long sorted = System.nanoTime();
+
+        // 3) assign keys. Merging the sorted keys with the sorted nodes, the keys of a node are the range of keys after
+        // the index of the node before it, up to its own index (none if the node before has the same index). The
+        // first node also owns the keys after the last node. The keys of a node are added in number order
+        forEachRange(pool, nodeCount, (from, to) -> {
+            long[] nodeKeys = new long[16];
+            for(int p = from; p < to; p++){
+                int first = (p == 0) ? 0 : firstKeyAfter(keyOrder, ids[p - 1]);
+                int last = firstKeyAfter(keyOrder, ids[p]);
+                int wrapped = (p == 0) ? firstKeyAfter(keyOrder, ids[nodeCount - 1]) : keyCount;
+                int count = Math.max(0, last - first) + (keyCount - wrapped);
+                if(nodeKeys.length < count){
+                    nodeKeys = new long[Math.max(count, nodeKeys.length * 2)];
+                }
+                int n = 0;
+                for(int k = first; k < last; k++){
+                    nodeKeys[n++] = (keyOrder[k] << 32) | (keyOrder[k] >>> 32);
+                }
+                for(int k = wrapped; k < keyCount; k++){
+                    nodeKeys[n++] = (keyOrder[k] << 32) | (keyOrder[k] >>> 32);
+                }
+                Arrays.sort(nodeKeys, 0, n);
+                for(int k = 0; k < n; k++){
+                    ring[p].addData((int) nodeKeys[k]);
+                }
+            }
+        });
+        simulator.sortedNodeIndexes = sortedIds;
+        long assigned = System.nanoTime();
+
+        // 4) overlay
+        Log.info("\tBuilding the overlay network...");
+        protocol.predecessorIndexes = new int[network.getHandleLimit()];
+        forEachRange(pool, nodeCount, (from, to) -> protocol.linkRing(ring, from, to));
+        protocol.finishOverlayNetwork();
+        long linked = System.nanoTime();
+
+        // 5) finger tables
+        Log.info("\tBuilding the finger tables...");
+        boolean compact = protocol.compactFingerTables;
+        forEachRange(pool, nodeCount, (from, to) -> protocol.buildFingerTables(ring, ids, compact, from, to));
+        long fingersBuilt = System.nanoTime();
+
+
+        hashNanos = hashed - buildStart;
+        sortNanos = sorted - hashed;
+        assignNanos = assigned - sorted;
+        overlayNanos = linked - assigned;
+        fingerNanos = fingersBuilt - linked;
+        totalNanos = fingersBuilt - buildStart;
+    }
+
+
+    /**
+     * @return position of the first key in the sorted keys whose index is after an index
+     */
+    private static int firstKeyAfter(long[] keyOrder, long index){
+        return ChordProtocol.lowerBound(keyOrder, 0, keyOrder.length, (index + 1) << 32);
+    }
+
+
+    /**
+     * runs a task over the range 0 ... count-1, split in ranges that run on the threads of the pool
+     */
+    private void forEachRange(ForkJoinPool pool, int count, RangeTask task) throws InterruptedException {
+        if(count == 0){
+            return;
+        }
+        int ranges = Math.max(1, Math.min(count, threads * RANGES_PER_THREAD));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(int r = 0; r < ranges; r++){
+            int from = (int) ((long) count * r / ranges);
+            int to = (int) ((long) count * (r + 1) / ranges);
+            tasks.add(() -> {
+                task.run(from, to);
+                return null;
+            });
+        }
+        for(Future<Void> future : pool.invokeAll(tasks)){
+            get(future);
+        }
+    }
+
+
+    private static void invoke(ForkJoinPool pool, Callable<Void> task) throws InterruptedException {
+        get(pool.submit(task));
+    }
+
+
+    /**
+     * waits for a task, and throws the exception of the task if it failed
+     */
+    private static void get(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            if(e.getCause() instanceof Error){
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+
+    /**
+     * logs the duration of the stages and writes them to output/build_&lt;nodes&gt;_nodes_m&lt;m&gt;.txt
+     * @return the report
+     */
+    public String report(){
+        String report = String.format("parallel build of %d nodes and %d keys, m = %d, %d threads",
+                protocol.getNetwork().getSize(), simulator.keyCount, simulator.m, threads)
+                + String.format("\nhash nodes and keys: %.1f ms", hashNanos / 1e6)
+                + String.format("\nsort: %.1f ms", sortNanos / 1e6)
+                + String.format("\nassign keys: %.1f ms", assignNanos / 1e6)
+                + String.format("\noverlay network: %.1f ms", overlayNanos / 1e6)
+                + String.format("\nfinger tables: %.1f ms", fingerNanos / 1e6)
+                + String.format("\ntotal: %.1f ms", totalNanos / 1e6);
+        for(String line : report.split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/build_" + simulator.nodeCount + "_nodes_m" + simulator.m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(report);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return report;
+    }
+
+
+    /**
+     * the work of one range of nodes or keys
+     */
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+}
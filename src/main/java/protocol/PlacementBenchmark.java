@@ -0,0 +1,237 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Random;
+
+import logging.Log;
+import p2p.Node;
+import p2p.NodeInterface;
+import placement.PlacementStrategy;
+
+/**
+ * This class compares placement strategies (see placement.PlacementStrategy). For each strategy the keys of the
+ * simulator are assigned to the nodes with ChordProtocolSimulator.assignKeys() (timed, the best of ASSIGN_RUNS runs after
+ * a warmup run), and the following are measured:
+ *     - balance: the most and the fewest keys of a node against the average, and the coefficient of variation
+ *     - keys moved when a node is added ('Node n+1'), and when a random node is removed. When a node is removed the
+ *       last node takes its position, so the nodes stay in a dense array. The keys that have to move are the keys
+ *       of the new node after it is added, and the keys of the removed node
+ *     - placements per second, with the key indexes hashed beforehand, and the heap the strategy keeps
+ *
+ * Every strategy is warmed up before it is timed, so the strategies that run first are not measured while the JIT is
+ * still compiling the code they share with the others.
+ *
+ * Options:
+ *     --placement-benchmark [strategies]  comma separated strategies (default successor,rendezvous,jump)
+ */
+public class PlacementBenchmark {
+
+    // minimum time of the placement throughput warmup and measurement, in nanoseconds
+    private static final long MIN_WARMUP_NANOS = 200_000_000L;
+    private static final long MIN_MEASURE_NANOS = 500_000_000L;
+
+    // number of timed runs of assignKeys(), after one untimed run
+    private static final int ASSIGN_RUNS = 3;
+
+    public String[] strategies;
+
+    // keeps the results of the placement loop alive
+    private long sink;
+
+
+    /**
+     * creates the placement benchmark from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the placement benchmark
+     */
+    public static PlacementBenchmark fromOptions(HashMap<String, String> options){
+        PlacementBenchmark benchmark = new PlacementBenchmark();
+        String strategies = options.getOrDefault("placement-benchmark", "true");
+        benchmark.strategies = (strategies.equals("true") ? "successor,rendezvous,jump" : strategies).split(",");
+        return benchmark;
+    }
+
+
+    /**
+     * assigns the keys of the simulator with every strategy and reports the results. The keys are removed from the
+     * nodes after each strategy
+     * @param simulator the simulator
+     * @return the report
+     */
+    public String run(ChordProtocolSimulator simulator) throws IOException {
+        NodeInterface[] nodes = simulator.network.getTopology().values().toArray(new NodeInterface[0]);
+        simulator.generateKeys();
+        int[] keyIndexes = simulator.keys.indexes();
+        double averageKeys = (double) simulator.keyCount / nodes.length;
+
+        StringBuilder report = new StringBuilder(String.format("placement: %d nodes, %d keys (%.1f per node)",
+                nodes.length, simulator.keyCount, averageKeys));
+        report.append(String.format("\n%-11s %8s %8s %6s %17s %17s %14s %10s %10s", "strategy", "max/avg", "min/avg",
+                "cv", "moved on add", "moved on remove", "placements/s", "bytes", "assign ms"));
+        for(String name : strategies){
+            Log.info("Placing keys with " + name + " placement...");
+            PlacementStrategy strategy = PlacementStrategy.forName(name, simulator.m);
+
+            // assignKeys() stores the keys on the nodes with the strategy
+            simulator.placement = strategy;
+            double assignMillis = assignMillis(simulator, nodes);
+
+            // balance, by key. A node stores the index of a key once, so the keys with the same index are counted from
+            // the node of each key rather than from the data of the nodes
+            NodeInterface[] owners = owners(strategy, nodes, keyIndexes);
+            HashMap<NodeInterface, Integer> positions = new HashMap<>();
+            for(int position = 0; position < nodes.length; position++){
+                positions.put(nodes[position], position);
+            }
+            int[] counts = new int[nodes.length];
+            for(int number = 1; number < owners.length; number++){
+                counts[positions.get(owners[number])]++;
+            }
+            double variance = 0;
+            for(int count : counts){
+                variance += (count - averageKeys) * (count - averageKeys);
+            }
+            double cv = Math.sqrt(variance / nodes.length) / averageKeys;
+            int max = Arrays.stream(counts).max().getAsInt();
+            int min = Arrays.stream(counts).min().getAsInt();
+
+            // keys moved when a node joins and when a node leaves
+            NodeInterface[] joined = Arrays.copyOf(nodes, nodes.length + 1);
+            joined[nodes.length] = new Node("Node " + (nodes.length + 1));
+            NodeInterface[] afterJoin = owners(strategy, joined, keyIndexes);
+            long movedOnAdd = moved(owners, afterJoin);
+            long neededOnAdd = count(afterJoin, joined[nodes.length]);
+
+            NodeInterface[] left = Arrays.copyOf(nodes, nodes.length - 1);
+            int removed = new Random(simulator.workloadConfig.seed).nextInt(nodes.length);
+            if(removed < left.length){
+                left[removed] = nodes[nodes.length - 1];
+            }
+            long movedOnRemove = nodes.length > 1 ? moved(owners, owners(strategy, left, keyIndexes)) : 0;
+            long neededOnRemove = nodes.length > 1 ? count(owners, nodes[removed]) : 0;
+
+            // placement throughput
+            strategy.setNodes(nodes);
+            double placementsPerSecond = placementsPerSecond(strategy, keyIndexes);
+
+            report.append(String.format("\n%-11s %8.2f %8.2f %6.3f %17s %17s %14.0f %10d %10.1f", name,
+                    max / averageKeys, min / averageKeys, cv, movedOnAdd + " (" + neededOnAdd + ")",
+                    movedOnRemove + " (" + neededOnRemove + ")", placementsPerSecond, strategy.getAllocatedBytes(),
+                    assignMillis));
+        }
+        simulator.placement = null;
+        report.append("\nmoved keys in parentheses: the keys that have to move");
+
+        String result = report.toString();
+        for(String line : result.split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/placement_" + simulator.nodeCount + "_nodes_m" + simulator.m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(result);
+        }
+        return result;
+    }
+
+
+    /**
+     * assigns the keys with the placement of the simulator once untimed and ASSIGN_RUNS times timed, and removes the
+     * keys from the nodes after each run
+     * @return the fastest timed run in milliseconds
+     */
+    private static double assignMillis(ChordProtocolSimulator simulator, NodeInterface[] nodes){
+        double best = Double.MAX_VALUE;
+        for(int run = 0; run <= ASSIGN_RUNS; run++){
+            long assignStart = System.nanoTime();
+            simulator.assignKeys();
+            double millis = (System.nanoTime() - assignStart) / 1e6;
+            if(run > 0){
+                best = Math.min(best, millis);
+            }
+            for(NodeInterface node : nodes){
+                ((Collection<?>) node.getData()).clear();
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * @return the node of every key (position 0 is not used) when the keys are placed on the nodes
+     */
+    private static NodeInterface[] owners(PlacementStrategy strategy, NodeInterface[] nodes, int[] keyIndexes){
+        strategy.setNodes(nodes);
+        NodeInterface[] owners = new NodeInterface[keyIndexes.length];
+        for(int number = 1; number < keyIndexes.length; number++){
+            owners[number] = nodes[strategy.place(keyIndexes[number])];
+        }
+        return owners;
+    }
+
+
+    /**
+     * @return number of keys whose node differs
+     */
+    private static long moved(NodeInterface[] before, NodeInterface[] after){
+        long moved = 0;
+        for(int number = 1; number < before.length; number++){
+            if(before[number] != after[number]){
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+
+    /**
+     * @return number of keys on a node
+     */
+    private static long count(NodeInterface[] owners, NodeInterface node){
+        long count = 0;
+        for(int number = 1; number < owners.length; number++){
+            if(owners[number] == node){
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * @return keys placed per second, the best of repeated runs over all keys that take at least MIN_MEASURE_NANOS,
+     *     after runs that take at least MIN_WARMUP_NANOS
+     */
+    private double placementsPerSecond(PlacementStrategy strategy, int[] keyIndexes){
+        int keys = keyIndexes.length - 1;
+        if(keys == 0){
+            return 0;
+        }
+        long warmupStart = System.nanoTime();
+        do {
+            for(int number = 1; number <= keys; number++){
+                sink += strategy.place(keyIndexes[number]);
+            }
+        } while(System.nanoTime() - warmupStart < MIN_WARMUP_NANOS);
+
+        double best = 0;
+        long start = System.nanoTime();
+        do {
+            long runStart = System.nanoTime();
+            long placed = 0;
+            for(int number = 1; number <= keys; number++){
+                placed += strategy.place(keyIndexes[number]);
+            }
+            long nanos = System.nanoTime() - runStart;
+            sink += placed;
+            best = Math.max(best, keys / (Math.max(nanos, 1) / 1e9));
+        } while(System.nanoTime() - start < MIN_MEASURE_NANOS);
+        return best;
+    }
+}
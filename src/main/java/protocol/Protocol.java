@@ -59,4 +59,25 @@ public interface Protocol {
      * @return names of nodes that have been searched and the final node that contains the key
      */
     public LookUpResponse lookUp(int keyIndex);
+
+    /**
+     * This method performs a range lookup. It routes to the node responsible for the index from, and walks the
+     * successors until the node responsible for the index to, collecting the keys in the range in ring order.
+     * If from is larger than to, the range wraps around 0.
+     *
+     * @param from first index of the range
+     * @param to last index of the range
+     * @return names of the nodes that have been searched and touched, and the keys in the range
+     */
+    public RangeLookUpResponse rangeLookUp(int from, int to);
+
+    /**
+     * This method performs a range lookup that returns at most limit keys.
+     *
+     * @param from first index of the range
+     * @param to last index of the range
+     * @param limit maximum number of keys returned, 0 means no limit
+     * @return names of the nodes that have been searched and touched, and the keys in the range
+     */
+    public RangeLookUpResponse rangeLookUp(int from, int to, int limit);
 }
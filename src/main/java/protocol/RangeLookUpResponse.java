@@ -0,0 +1,50 @@
+package protocol;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * This class holds the response of a range lookup: the names of the nodes whose finger table was checked while routing
+ * to the owner of the start of the range, the names of the nodes whose keys were scanned while walking the successors,
+ * and the key indexes found in the range, in ring order starting from the start of the range.
+ */
+public class RangeLookUpResponse {
+    public LinkedHashSet<String> peers_looked_up;
+    public List<String> nodes_touched;
+    public List<Integer> keys;
+
+    // number of successors followed after reaching the owner of the start of the range
+    public int successor_hops;
+
+    // true if the walk stopped because the result limit was reached
+    public boolean limit_reached;
+
+    public RangeLookUpResponse(LinkedHashSet<String> peers_looked_up){
+        this.peers_looked_up = peers_looked_up;
+        this.nodes_touched = new ArrayList<>();
+        this.keys = new ArrayList<>();
+    }
+
+    /**
+     * @return the hops of the range lookup: the routing hops and the successors followed
+     */
+    public int getHopCount(){
+        return peers_looked_up.size() + successor_hops;
+    }
+
+    public String toString(){
+        StringBuilder result = new StringBuilder();
+        result.append("peers : ");
+        for(String peer: peers_looked_up){
+            result.append(peer).append("\t");
+        }
+        result.append("\t hop count : ").append(getHopCount());
+        result.append("\t nodes touched : ").append(nodes_touched.size());
+        result.append("\t keys : ").append(keys.size());
+        if(limit_reached){
+            result.append(" (limit reached)");
+        }
+        return result.toString();
+    }
+}
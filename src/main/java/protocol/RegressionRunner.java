@@ -0,0 +1,386 @@
+package protocol;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import logging.Log;
+import logging.LogLevel;
+import p2p.Network;
+import workload.Workload;
+import workload.WorkloadConfig;
+
+/**
+ * This class checks a build against the committed results. It runs two checks:
+ *     1) routing: every configuration with an output file in the baseline directory (output_&lt;nodes&gt;_nodes_m&lt;m&gt;.txt)
+ *        is simulated again, with the plain protocol and with each optional variant of the build and the lookups,
+ *        and every lookup must give the same path, hop count and owner as the committed file
+ *     2) performance: the build time, the lookup throughput and the bytes allocated by the build and per lookup are
+ *        measured (the best of several runs) and compared with a performance baseline file. A measurement that is
+ *        worse than the baseline by more than the threshold fails the check. If there is no baseline file yet, or
+ *        --update-baseline is given, the measurements are written to it instead
+ * The results are logged and written to output/regression.txt.
+ *
+ * The performance baseline depends on the machine, so it is not committed: record it on the commit before a change
+ * with --update-baseline, then run the check on the change.
+ *
+ * Options:
+ *     --baselines &lt;dir&gt;       directory of the committed output files (default output)
+ *     --perf-baseline &lt;file&gt;  performance baseline file (default output/perf_baseline.csv)
+ *     --threshold &lt;fraction&gt;  allowed regression of each measurement (default 0.2, 20%)
+ *     --runs &lt;count&gt;          builds and lookup runs per configuration, the best counts (default 5)
+ *     --min-time &lt;seconds&gt;    the builds, and the lookups of each run, are repeated for at least this long
+ *                            (default 0.5)
+ *     --update-baseline      writes the measurements to the baseline file instead of comparing them
+ */
+public class RegressionRunner {
+
+    public static final String CSV_HEADER = "nodes,m,build_ms,lookups_per_s,build_alloc_bytes,alloc_bytes_per_lookup";
+
+    // variants of the protocol whose lookups must give the committed results
+    public static final String[] VARIANTS = {"plain", "compact-fingers", "parallel-build", "bloom"};
+
+    private static final Pattern OUTPUT_FILE = Pattern.compile("output_(\\d+)_nodes_m(\\d+)\\.txt");
+
+    public File baselineDirectory;
+    public File perfBaseline;
+    public double threshold;
+    public int runs;
+    public double minTime;
+    public boolean updateBaseline;
+
+    private final List<String> report = new ArrayList<>();
+
+
+    /**
+     * creates a regression runner from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the regression runner
+     */
+    public static RegressionRunner fromOptions(HashMap<String, String> options){
+        RegressionRunner runner = new RegressionRunner();
+        runner.baselineDirectory = new File(options.getOrDefault("baselines", "output"));
+        runner.perfBaseline = new File(options.getOrDefault("perf-baseline", "output/perf_baseline.csv"));
+        runner.threshold = Double.parseDouble(options.getOrDefault("threshold", "0.2"));
+        runner.runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        runner.minTime = Double.parseDouble(options.getOrDefault("min-time", "0.5"));
+        runner.updateBaseline = options.containsKey("update-baseline");
+        if(runner.threshold < 0 || runner.runs <= 0){
+            throw new IllegalArgumentException("the threshold can not be negative and there must be at least one run");
+        }
+        return runner;
+    }
+
+
+    /**
+     * runs both checks on every configuration of the baseline directory
+     * @return true if the routing is the same as in the committed files and the performance has not regressed
+     */
+    public boolean run() throws IOException {
+        List<int[]> configurations = configurations();
+        if(configurations.isEmpty()){
+            throw new IllegalArgumentException("no output_<nodes>_nodes_m<m>.txt files in " + baselineDirectory);
+        }
+
+        // 1) routing
+        boolean passed = true;
+        for(int[] configuration : configurations){
+            List<String> expected = readLines(outputFile(configuration[0], configuration[1]));
+            for(String variant : VARIANTS){
+                passed &= checkRouting(configuration[0], configuration[1], variant, expected);
+            }
+        }
+
+        // 2) performance
+        HashMap<String, double[]> baseline = perfBaseline.exists() && !updateBaseline ? readBaseline() : null;
+        List<String> rows = new ArrayList<>();
+        rows.add(CSV_HEADER);
+        for(int[] configuration : configurations){
+            double[] measured = measure(configuration[0], configuration[1]);
+            String name = configuration[0] + "," + configuration[1];
+            rows.add(name + "," + format(measured));
+            if(baseline != null){
+                passed &= comparePerformance(configuration[0], configuration[1], measured, baseline.get(name));
+            }
+        }
+        if(baseline == null){
+            if(perfBaseline.getParentFile() != null){
+                perfBaseline.getParentFile().mkdirs();
+            }
+            try (PrintWriter writer = new PrintWriter(perfBaseline, "UTF-8")) {
+                for(String row : rows){
+                    writer.println(row);
+                }
+            }
+            add("performance baseline written to " + perfBaseline);
+        }
+
+        add(passed ? "regression check passed" : "regression check FAILED");
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File("output/regression.txt"), "UTF-8")) {
+            for(String line : report){
+                writer.println(line);
+            }
+        }
+        return passed;
+    }
+
+
+    /**
+     * @return node count and m of every committed output file, in increasing order
+     */
+    private List<int[]> configurations(){
+        List<int[]> configurations = new ArrayList<>();
+        String[] names = baselineDirectory.list();
+        if(names == null){
+            return configurations;
+        }
+        for(String name : names){
+            Matcher matcher = OUTPUT_FILE.matcher(name);
+            if(matcher.matches()){
+                configurations.add(new int[]{Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))});
+            }
+        }
+        configurations.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        return configurations;
+    }
+
+
+    private File outputFile(int nodeCount, int m){
+        return new File(baselineDirectory, "output_" + nodeCount + "_nodes_m" + m + ".txt");
+    }
+
+
+    /**
+     * creates and builds the simulator of a configuration, as a simulation from the command line with the default
+     * key count and workload. The build logs only warnings and errors, so its progress lines do not hide the report
+     */
+    private static ChordProtocolSimulator build(int nodeCount, int m, String variant){
+        Network network = Network.createNetwork("test network", nodeCount);
+        ChordProtocolSimulator simulator = ChordProtocolSimulator.getInstance(network, m,
+                Simulator.defaultKeyCount(nodeCount, m));
+        if(variant.equals("compact-fingers")){
+            ((ChordProtocol) simulator.protocol).compactFingerTables = true;
+        }
+        else if(variant.equals("parallel-build")){
+            simulator.buildThreads = Runtime.getRuntime().availableProcessors();
+        }
+        else if(variant.equals("bloom")){
+            simulator.enableDataFilters(0.01);
+        }
+        LogLevel level = Log.getLevel();
+        if(level.includes(LogLevel.INFO)){
+            Log.setLevel(LogLevel.WARN);
+        }
+        try {
+            simulator.buildProtocol();
+        } finally {
+            Log.setLevel(level);
+        }
+        return simulator;
+    }
+
+
+    /**
+     * looks up the keys of a configuration as a simulation does, and compares the results with the committed file
+     * @return true if every result is the same
+     */
+    private boolean checkRouting(int nodeCount, int m, String variant, List<String> expected){
+        ChordProtocolSimulator simulator = build(nodeCount, m, variant);
+        List<String> actual = new ArrayList<>();
+        long totalHops = 0;
+        try (Workload workload = Workload.create(simulator.workloadConfig)) {
+            while(workload.hasNext()){
+                LookUpResponse response = simulator.protocol.lookUp(simulator.keyIndex(workload.nextInt()));
+                totalHops += response.peers_looked_up.size();
+                actual.add(response.toString());
+            }
+        }
+        double average = !actual.isEmpty() ? (double) totalHops / actual.size() : 0;
+        actual.add("average hop count = " + average);
+
+        // the differences are counted by the part of the result that differs
+        int paths = 0;
+        int hopCounts = 0;
+        int owners = 0;
+        String firstDifference = null;
+        for(int i = 0; i < Math.max(expected.size(), actual.size()); i++){
+            String expectedLine = i < expected.size() ? expected.get(i) : "";
+            String actualLine = i < actual.size() ? actual.get(i) : "";
+            if(expectedLine.equals(actualLine)){
+                continue;
+            }
+            if(firstDifference == null){
+                firstDifference = "line " + (i + 1) + "\n\t\texpected: " + expectedLine + "\n\t\tactual:   " + actualLine;
+            }
+            paths += part(expectedLine, "peers : ", "\t hop count").equals(part(actualLine, "peers : ", "\t hop count"))
+                    ? 0 : 1;
+            hopCounts += part(expectedLine, "hop count : ", "\t").equals(part(actualLine, "hop count : ", "\t"))
+                    ? 0 : 1;
+            owners += part(expectedLine, "node index : ", null).equals(part(actualLine, "node index : ", null))
+                    ? 0 : 1;
+        }
+        String configuration = nodeCount + " nodes, m " + m + ", " + variant;
+        if(firstDifference == null){
+            add("routing " + configuration + ": " + (actual.size() - 1) + " lookups identical");
+            return true;
+        }
+        add("routing " + configuration + ": FAILED, " + paths + " paths, " + hopCounts + " hop counts and " + owners
+                + " owners differ, first difference at " + firstDifference);
+        return false;
+    }
+
+
+    /**
+     * @return the part of a result line between a start and an end marker (the end of the line if end is null)
+     */
+    private static String part(String line, String start, String end){
+        int from = line.indexOf(start);
+        if(from < 0){
+            return line;
+        }
+        from += start.length();
+        int to = end == null ? -1 : line.indexOf(end, from);
+        return to < 0 ? line.substring(from) : line.substring(from, to);
+    }
+
+
+    /**
+     * measures the build and the lookups of a configuration. The protocol is built again and again for at least the
+     * number of runs and the minimum time, and the fastest build counts. Then the lookups are measured in runs that
+     * each take at least the minimum time, and the fastest run counts
+     * @return the build time (ms), lookup throughput (lookups/s), build allocation (bytes) and allocation per lookup
+     *         (bytes)
+     */
+    private double[] measure(int nodeCount, int m){
+        double[] best = {Double.MAX_VALUE, 0, Double.MAX_VALUE, Double.MAX_VALUE};
+        ChordProtocolSimulator simulator = null;
+        long buildsEnd = System.nanoTime() + (long) (minTime * 1e9);
+        for(int run = 0; run < runs || System.nanoTime() < buildsEnd; run++){
+            long buildAllocStart = SweepRunner.allocatedBytes();
+            long buildStart = System.nanoTime();
+            simulator = build(nodeCount, m, "plain");
+            long buildTime = System.nanoTime() - buildStart;
+            long buildAlloc = SweepRunner.allocatedBytes() - buildAllocStart;
+            best[0] = Math.min(best[0], buildTime / 1e6);
+            best[2] = Math.min(best[2], buildAlloc);
+        }
+
+        // the keys of the workload are hashed before the lookups are measured
+        int[] keyIndexes = simulator.keys.indexes();
+        int[] requested = requestedKeys(simulator.workloadConfig);
+        for(int run = 0; run < runs && requested.length > 0; run++){
+            long lookups = 0;
+            long lookupAllocStart = SweepRunner.allocatedBytes();
+            long lookupStart = System.nanoTime();
+            long lookupEnd = lookupStart + (long) (minTime * 1e9);
+            long now;
+            do {
+                for(int keyNumber : requested){
+                    simulator.protocol.lookUp(keyIndexes[keyNumber]);
+                }
+                lookups += requested.length;
+                now = System.nanoTime();
+            } while(now < lookupEnd);
+            long lookupAlloc = SweepRunner.allocatedBytes() - lookupAllocStart;
+            best[1] = Math.max(best[1], lookups * 1e9 / Math.max(1, now - lookupStart));
+            best[3] = Math.min(best[3], (double) lookupAlloc / lookups);
+        }
+        add(String.format("performance %d nodes, m %d: build %.2f ms, %.0f lookups/s, build allocated %.0f bytes, "
+                + "%.1f bytes allocated per lookup", nodeCount, m, best[0], best[1], best[2], best[3]));
+        return best;
+    }
+
+
+    private static int[] requestedKeys(WorkloadConfig config){
+        List<Integer> keys = new ArrayList<>();
+        try (Workload workload = Workload.create(config)) {
+            while(workload.hasNext()){
+                keys.add(workload.nextInt());
+            }
+        }
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+
+    /**
+     * compares the measurements of a configuration with its baseline
+     * @return true if no measurement is worse than the baseline by more than the threshold
+     */
+    private boolean comparePerformance(int nodeCount, int m, double[] measured, double[] baseline){
+        String configuration = nodeCount + " nodes, m " + m;
+        if(baseline == null){
+            add("performance " + configuration + ": not in the baseline, not compared");
+            return true;
+        }
+        String[] names = {"build time", "lookup throughput", "build allocation", "allocation per lookup"};
+        boolean passed = true;
+        for(int i = 0; i < names.length; i++){
+            // throughput regresses when it falls, the other measurements when they grow. Values under 1 (builds under
+            // 1 ms) are compared with 1, so the timer noise of tiny values does not fail the check
+            double change = (i == 1) ? (baseline[i] - measured[i]) / baseline[i]
+                    : (measured[i] - baseline[i]) / Math.max(baseline[i], 1);
+            if(change > threshold){
+                passed = false;
+                add(String.format("performance %s: FAILED, %s is %.1f%% worse than the baseline (%.1f, baseline %.1f)",
+                        configuration, names[i], change * 100, measured[i], baseline[i]));
+            }
+        }
+        if(passed){
+            add("performance " + configuration + ": within " + Math.round(threshold * 100) + "% of the baseline");
+        }
+        return passed;
+    }
+
+
+    /**
+     * @return the baseline measurements by "nodes,m"
+     */
+    private HashMap<String, double[]> readBaseline() throws IOException {
+        HashMap<String, double[]> baseline = new HashMap<>();
+        List<String> lines = readLines(perfBaseline);
+        if(lines.isEmpty() || !lines.get(0).equals(CSV_HEADER)){
+            throw new IllegalArgumentException(perfBaseline + " is not a performance baseline: " + CSV_HEADER);
+        }
+        for(String line : lines.subList(1, lines.size())){
+            String[] values = line.split(",");
+            double[] measurements = new double[values.length - 2];
+            for(int i = 2; i < values.length; i++){
+                measurements[i - 2] = Double.parseDouble(values[i]);
+            }
+            baseline.put(values[0] + "," + values[1], measurements);
+        }
+        return baseline;
+    }
+
+
+    private static String format(double[] measurements){
+        return String.format(Locale.ROOT, "%.3f,%.0f,%.0f,%.1f", measurements[0], measurements[1], measurements[2], measurements[3]);
+    }
+
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while((line = reader.readLine()) != null){
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+
+    private void add(String line){
+        Log.info(line);
+        report.add(line);
+    }
+}
@@ -1,5 +1,16 @@
 package protocol;
+import java.util.HashMap;
+import java.util.List;
+
+import churn.ChurnConfig;
+import logging.Log;
+import net.ChordClient;
+import net.ChordServer;
+import net.NetworkLauncher;
 import p2p.Network;
+import tracing.ChordRecording;
+import tracing.LookupTracer;
+import workload.WorkloadConfig;
 
 
 /**
@@ -50,8 +61,52 @@ public class Simulator{
      *             For chord protocol, it takes two arguments.
      *             arg[0] - node count : number of nodes in the network
      *             arg[1] - 'm' value: The length of the indexes generated using consistent hashing
+     *             The following optional arguments describe the workload of the lookups:
+     *             --keys &lt;count&gt;          - number of keys (default depends on node count and m)
+     *             --requests &lt;count&gt;      - number of lookups (default one per key)
+     *             --distribution &lt;spec&gt;   - sequential (default), uniform, zipf[:s], hotset[:fraction:probability]
+     *                                      or trace:&lt;file&gt;
+     *             --seed &lt;seed&gt;          - seed of the workload (default 0)
+     *             --range &lt;from:to[:limit]&gt; - performs a range lookup after the simulation
+     *             --trace-sample &lt;n&gt;      - records the full hop path of every nth lookup
+     *             --jfr &lt;file&gt;            - records the chord flight recorder events to a file
+     *             --jfr-hops               - also records an event for every hop of every lookup
+     *             --jmx                    - registers the build and lookup metrics as a JMX MBean (ChordMetrics)
+     *             --jmx-wait               - like --jmx, and waits for enter after the simulation, so the metrics
+     *                                      can be inspected
+     *             --bloom [rate]           - keeps a Bloom filter over the keys of every node, with a target false
+     *                                      positive rate (default 0.01), and reports the filters after the simulation
+     *             --compact-fingers        - builds finger tables that only store the distinct successors
+     *             --parallel-build [n]     - builds the protocol in stages on n threads (default number of
+     *                                      processors) and reports the time of each stage. See ParallelBuild
+     *             --finger-memory          - measures the memory of full and compact finger tables instead of
+     *                                      simulating lookups (m can be 32)
+     *             --hierarchy [attribute]  - compares a two-level hierarchy of groups of nodes with the flat ring
+     *                                      instead of looking up every key once. See HierarchicalChord
+     *             --adaptive-fingers [n]   - compares lookups with n learned fingers per node (default 16) with the
+     *                                      static finger tables instead of looking up every key once. See
+     *                                      AdaptiveFingers
+     *             --hot-keys [n]           - compares the load on the nodes with and without copies of hot keys on
+     *                                      the lookup paths, with n counters per node (default 16), instead of
+     *                                      looking up every key once. See HotKeyReplication
+     *             --anti-entropy [n]       - replicates the keys on n nodes (default 3) and repairs the replicas with
+     *                                      Merkle trees after writes and crashes instead of looking up every key
+     *                                      once. See AntiEntropy
+     *             --net                    - serves the nodes on loopback ports and looks up the keys over sockets
+     *             --net-groups &lt;n&gt;        - number of servers of --net (default number of processors)
+     *             --benchmark              - measures lookup throughput and latency instead of looking up every key
+     *                                      once. The benchmark options are described in BenchmarkRunner
+     *             --concurrent-benchmark   - measures lookups on reader threads while a churn thread makes nodes join
+     *                                      and leave, on thread-safe nodes. See ConcurrentBenchmark
+     *             --placement-benchmark    - compares the successor, rendezvous and jump placement of the keys instead
+     *                                      of looking up every key once. See PlacementBenchmark
+     *             --store-benchmark        - measures put, get and delete of values instead of looking up every key
+     *                                      once. The options are described in StoreBenchmark
+     *             --churn                  - simulates nodes joining and leaving instead of looking up every key once.
+     *                                      The churn options are described in ChurnConfig.fromOptions()
+     *             The logging options are described in Log.configure()
      */
-    public void start(String[] args){
+    public void start(String[] args) throws java.io.IOException {
 
         // number of nodes in the network
         int nodeCount = Integer.parseInt(args[0]);
@@ -66,7 +121,154 @@ public class Simulator{
 
 
 
+        HashMap<String, String> options = parseOptions(args, 2);
+
         // assigns random number of keys to test
+        int keyCount = defaultKeyCount(nodeCount, m);
+        keyCount = Integer.parseInt(options.getOrDefault("keys", String.valueOf(keyCount)));
+
+        // describes which keys are looked up
+        WorkloadConfig workloadConfig = new WorkloadConfig(keyCount,
+                Integer.parseInt(options.getOrDefault("requests", "-1")),
+                options.getOrDefault("distribution", "sequential"),
+                Long.parseLong(options.getOrDefault("seed", "0")));
+
+        // creates the chord protocol simulator object
+        ChordProtocolSimulator chordProtocolSimulator = ChordProtocolSimulator.getInstance(myNetwork, m, keyCount);
+        chordProtocolSimulator.setWorkload(workloadConfig);
+        if(options.containsKey("trace-sample")){
+            ((ChordProtocol) chordProtocolSimulator.protocol).setTracer(
+                    new LookupTracer(Integer.parseInt(options.get("trace-sample"))));
+        }
+        boolean jmx = options.containsKey("jmx") || options.containsKey("jmx-wait");
+        if(jmx){
+            chordProtocolSimulator.enableMetrics(nodeCount + " nodes, m " + m);
+        }
+        if(options.containsKey("compact-fingers")){
+            ((ChordProtocol) chordProtocolSimulator.protocol).compactFingerTables = true;
+        }
+        if(options.containsKey("parallel-build")){
+            String threads = options.get("parallel-build");
+            chordProtocolSimulator.buildThreads = threads.equals("true")
+                    ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+        }
+        if(options.containsKey("bloom")){
+            String rate = options.get("bloom");
+            chordProtocolSimulator.enableDataFilters(rate.equals("true") ? 0.01 : Double.parseDouble(rate));
+        }
+        ChordRecording recording = options.containsKey("jfr")
+                ? new ChordRecording(options.get("jfr"), options.containsKey("jfr-hops")) : null;
+
+        // the lookups are sent over sockets to servers in this JVM
+        List<ChordServer> servers = null;
+        if(options.containsKey("net")){
+            ChordProtocol protocol = (ChordProtocol) chordProtocolSimulator.protocol;
+            int groups = Integer.parseInt(options.getOrDefault("net-groups",
+                    String.valueOf(Math.min(nodeCount, Runtime.getRuntime().availableProcessors()))));
+            servers = NetworkLauncher.startServers(protocol, groups, 1, 0, 0);
+            protocol.transport = new ChordClient(protocol, NetworkLauncher.ports(servers));
+        }
+
+        // stars the chord protocol
+        if(options.containsKey("churn")){
+            chordProtocolSimulator.startChurn(ChurnConfig.fromOptions(options));
+        }
+        else if(options.containsKey("finger-memory")){
+            chordProtocolSimulator.reportFingerMemory();
+        }
+        else if(options.containsKey("hierarchy")){
+            HierarchicalChord hierarchy = HierarchicalChord.fromOptions(options);
+            Log.info("Building protocol...");
+            chordProtocolSimulator.buildProtocol();
+            hierarchy.run(chordProtocolSimulator);
+        }
+        else if(options.containsKey("adaptive-fingers")){
+            AdaptiveFingers adaptive = AdaptiveFingers.fromOptions(options);
+            Log.info("Building protocol...");
+            chordProtocolSimulator.buildProtocol();
+            adaptive.run(chordProtocolSimulator);
+        }
+        else if(options.containsKey("hot-keys")){
+            HotKeyReplication replication = HotKeyReplication.fromOptions(options);
+            Log.info("Building protocol...");
+            chordProtocolSimulator.buildProtocol();
+            replication.run(chordProtocolSimulator);
+        }
+        else if(options.containsKey("anti-entropy")){
+            AntiEntropy antiEntropy = AntiEntropy.fromOptions(options);
+            Log.info("Building protocol...");
+            chordProtocolSimulator.buildProtocol();
+            antiEntropy.run(chordProtocolSimulator);
+        }
+        else if(options.containsKey("concurrent-benchmark")){
+            try {
+                ConcurrentBenchmark.fromOptions(options).run(chordProtocolSimulator);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        else if(options.containsKey("placement-benchmark")){
+            PlacementBenchmark.fromOptions(options).run(chordProtocolSimulator);
+        }
+        else if(options.containsKey("store-benchmark")){
+            StoreBenchmark benchmark = StoreBenchmark.fromOptions(options);
+            Log.info("Building protocol...");
+            chordProtocolSimulator.buildProtocol();
+            benchmark.run(chordProtocolSimulator);
+        }
+        else if(options.containsKey("benchmark")){
+            BenchmarkRunner benchmark = BenchmarkRunner.fromOptions(options);
+            Log.info("Building protocol...");
+            chordProtocolSimulator.buildProtocol();
+            try {
+                benchmark.run(chordProtocolSimulator);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        else {
+            chordProtocolSimulator.start(nodeCount, m);
+        }
+
+        if(options.containsKey("range")){
+            String[] range = options.get("range").split(":");
+            chordProtocolSimulator.testRangeLookUp(Integer.parseInt(range[0]), Integer.parseInt(range[1]),
+                    range.length > 2 ? Integer.parseInt(range[2]) : 0);
+        }
+
+        if(options.containsKey("bloom")){
+            chordProtocolSimulator.reportDataFilters();
+        }
+
+        if(servers != null){
+            ((ChordClient) ((ChordProtocol) chordProtocolSimulator.protocol).transport).close();
+            for(ChordServer server : servers){
+                server.close();
+            }
+        }
+
+        if(recording != null){
+            recording.stop();
+            Log.info("Flight recording written to " + options.get("jfr"));
+        }
+
+        if(options.containsKey("jmx-wait")){
+            Log.info("Metrics are registered as JMX MBean protocol:type=ChordMetrics. Press enter to exit.");
+            System.in.read();
+        }
+        if(jmx){
+            chordProtocolSimulator.metrics.unregister();
+        }
+    }
+
+    /**
+     * This method returns the number of keys used when the key count is not given
+     *
+     * @param nodeCount number of nodes in the network
+     * @param m length of the indexes generated using consistent hashing
+     * @return nodeCount/2 if it is smaller than m, otherwise nodeCount*3
+     */
+    public static int defaultKeyCount(int nodeCount, int m){
         int keyCount=0;
         if((nodeCount/2)<m)
         {
@@ -76,23 +278,71 @@ public class Simulator{
         {
             keyCount = nodeCount*3;
         }
+        return keyCount;
+    }
 
-        // creates the chord protocol simulator object
-        ChordProtocolSimulator chordProtocolSimulator = ChordProtocolSimulator.getInstance(myNetwork, m, keyCount);
-
-        // stars the chord protocol
-        chordProtocolSimulator.start(nodeCount, m);
+    /**
+     * This method parses the optional command line arguments. Each option is given as '--name value'.
+     *
+     * @param args command line arguments
+     * @param first position of the first optional argument
+     * @return the options (name without '--', value)
+     */
+    public static HashMap<String, String> parseOptions(String[] args, int first){
+        HashMap<String, String> options = new HashMap<>();
+        for(int i=first; i<args.length; i++){
+            if(!args[i].startsWith("--")){
+                throw new IllegalArgumentException("unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if(i+1 < args.length && !args[i+1].startsWith("--")){
+                options.put(name, args[++i]);
+            }
+            else {
+                // options without a value are flags
+                options.put(name, "true");
+            }
+        }
+        return options;
     }
 
     /**
      * This is the starting point of the simulator.
      * The start() method in the protocol simulator is invoked to start the simulation.
      *
+     * If the first argument is --sweep, a parameter sweep is run instead of a single simulation (see SweepRunner).
+     * If the first argument is --regression, the routing and the performance are checked against the committed
+     * results (see RegressionRunner), and the exit status is 1 if the check fails.
+     *
      * @param args - args used by the protocols
      */
-    public static void main(String[] args){
-        Simulator simulator = new Simulator();
-        simulator.start(args);
+    public static void main(String[] args) throws Exception {
+        boolean passed = true;
+        try {
+            if(args.length > 0 && args[0].equals("--regression")){
+                // checks the routing and the performance against the baselines, see RegressionRunner
+                HashMap<String, String> options = parseOptions(args, 1);
+                Log.configure(options);
+                passed = RegressionRunner.fromOptions(options).run();
+                return;
+            }
+            if(args.length > 0 && args[0].equals("--sweep")){
+                // runs many configurations, see SweepRunner for the options
+                HashMap<String, String> options = parseOptions(args, 1);
+                Log.configure(options);
+                SweepRunner.fromOptions(options).run();
+                return;
+            }
+            Log.configure(parseOptions(args, 2));
+            Simulator simulator = new Simulator();
+            simulator.start(args);
+        } finally {
+            // writes the log lines that are still buffered
+            Log.close();
+            if(!passed){
+                System.exit(1);
+            }
+        }
     }
 
 }
@@ -0,0 +1,180 @@
+package protocol;
+
+import java.util.Arrays;
+
+/**
+ * This class counts the most requested keys of a node with the Space-Saving algorithm (Metwally et al.). It keeps a
+ * fixed number of counters; a key that is not counted takes the counter with the smallest count, and starts from
+ * that count plus one. The count of a key is then never too low, and at most its error too high, so count - error is
+ * a lower bound of the requests of the key. Every key requested more than requests / capacity times has a counter.
+ *
+ * Each counter also keeps the nodes the requests for its key came from, in a small table of senders where a new
+ * sender replaces the sender with the fewest requests. decay() halves the counts, so keys that are no longer
+ * requested lose their counters.
+ *
+ * The counters are kept in parallel arrays and searched linearly, as the capacity is small.
+ */
+public class SpaceSaving {
+
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final int[][] senders;
+    private final long[][] senderCounts;
+    private int size;
+
+
+    /**
+     * @param capacity number of counters
+     * @param senderCapacity number of senders kept per counter
+     */
+    public SpaceSaving(int capacity, int senderCapacity){
+        if(capacity <= 0 || senderCapacity <= 0){
+            throw new IllegalArgumentException("the capacity must be positive");
+        }
+        this.keys = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.senders = new int[capacity][senderCapacity];
+        this.senderCounts = new long[capacity][senderCapacity];
+    }
+
+
+    /**
+     * counts a request for a key
+     * @param key the key
+     * @param sender handle of the node the request came from, or -1 if it did not come from another node
+     */
+    public void offer(int key, int sender){
+        int slot = find(key);
+        if(slot < 0){
+            if(size < keys.length){
+                slot = size++;
+                counts[slot] = 0;
+                errors[slot] = 0;
+            }
+            else {
+                slot = 0;
+                for(int i = 1; i < size; i++){
+                    if(counts[i] < counts[slot]){
+                        slot = i;
+                    }
+                }
+                errors[slot] = counts[slot];
+            }
+            keys[slot] = key;
+            Arrays.fill(senderCounts[slot], 0);
+        }
+        counts[slot]++;
+        if(sender >= 0){
+            offerSender(slot, sender);
+        }
+    }
+
+
+    /**
+     * halves the counts and the errors, and removes the counters that reach 0
+     */
+    public void decay(){
+        for(int i = 0; i < size; i++){
+            counts[i] >>= 1;
+            errors[i] >>= 1;
+            for(int s = 0; s < senderCounts[i].length; s++){
+                senderCounts[i][s] >>= 1;
+            }
+            if(counts[i] == 0){
+                moveLast(i--);
+            }
+        }
+    }
+
+
+    /**
+     * @return the counter of a key, or -1 if the key is not counted
+     */
+    public int find(int key){
+        for(int i = 0; i < size; i++){
+            if(keys[i] == key){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public int size(){
+        return size;
+    }
+
+
+    public int getKey(int slot){
+        return keys[slot];
+    }
+
+
+    /**
+     * @return the requests of the key of a counter that are certain: the count minus the error
+     */
+    public long getGuaranteedCount(int slot){
+        return counts[slot] - errors[slot];
+    }
+
+
+    /**
+     * @return number of senders kept per counter
+     */
+    public int getSenderCapacity(){
+        return senders[0].length;
+    }
+
+
+    /**
+     * @return handle of a sender of a counter, or -1 if the entry is empty
+     */
+    public int getSender(int slot, int entry){
+        return senderCounts[slot][entry] > 0 ? senders[slot][entry] : -1;
+    }
+
+
+    /**
+     * @return approximate heap size of the counters in bytes
+     */
+    public long getAllocatedBytes(){
+        int senderCapacity = senders[0].length;
+        long table = 16 + 4L * senderCapacity + 16 + 8L * senderCapacity;
+        return 16 + 4L * keys.length + 2 * (16 + 8L * keys.length) + 2 * (16 + 4L * keys.length)
+                + keys.length * table + 32;
+    }
+
+
+    private void offerSender(int slot, int sender){
+        int[] slotSenders = senders[slot];
+        long[] slotCounts = senderCounts[slot];
+        int smallest = 0;
+        for(int s = 0; s < slotSenders.length; s++){
+            if(slotCounts[s] > 0 && slotSenders[s] == sender){
+                slotCounts[s]++;
+                return;
+            }
+            if(slotCounts[s] < slotCounts[smallest]){
+                smallest = s;
+            }
+        }
+        slotSenders[smallest] = sender;
+        slotCounts[smallest] = 1;
+    }
+
+
+    private void moveLast(int slot){
+        size--;
+        keys[slot] = keys[size];
+        counts[slot] = counts[size];
+        errors[slot] = errors[size];
+        int[] senderSwap = senders[slot];
+        senders[slot] = senders[size];
+        senders[size] = senderSwap;
+        long[] countSwap = senderCounts[slot];
+        senderCounts[slot] = senderCounts[size];
+        senderCounts[size] = countSwap;
+    }
+}
@@ -0,0 +1,268 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import logging.Log;
+import store.LogStorage;
+import store.SlabValueStore;
+import store.ValueStore;
+
+/**
+ * This class measures the value stores of the nodes: for each value size, values are stored, read, read in batches,
+ * overwritten in batches and deleted through the chord protocol, and the throughput of each operation and the memory
+ * used per stored byte are reported.
+ *
+ * With the log store the storage is also closed and opened again after the values are stored, as after a restart, and
+ * the values are read from the recovered store. After the values are overwritten the log is compacted. The recovery and
+ * the compaction are timed.
+ *
+ * Options:
+ *     --value-sizes &lt;list&gt;   value sizes in bytes (default 16,1024,65536)
+ *     --values &lt;count&gt;       values per size (default 200000, at most 256 MB of values)
+ *     --batch &lt;count&gt;        keys per batch of the batched operations (default 100)
+ *     --store &lt;type&gt;         heap (default), offheap or log
+ *     --store-dir &lt;dir&gt;      directory of the log store (default chord-store in the temporary directory)
+ */
+public class StoreBenchmark {
+
+    public List<Integer> valueSizes;
+    public int values;
+    public int batchSize;
+    public String storeType;
+    public File storeDirectory;
+
+    // storage of the log store, for the value size that is measured
+    private LogStorage logStorage;
+
+
+    /**
+     * creates a store benchmark from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the store benchmark
+     */
+    public static StoreBenchmark fromOptions(HashMap<String, String> options){
+        StoreBenchmark benchmark = new StoreBenchmark();
+        benchmark.valueSizes = SweepRunner.parseValues(options.getOrDefault("value-sizes", "16,1024,65536"));
+        benchmark.values = Integer.parseInt(options.getOrDefault("values", "200000"));
+        benchmark.batchSize = Integer.parseInt(options.getOrDefault("batch", "100"));
+        benchmark.storeType = options.getOrDefault("store", "heap");
+        benchmark.storeDirectory = new File(options.getOrDefault("store-dir",
+                new File(System.getProperty("java.io.tmpdir"), "chord-store").getPath()));
+        return benchmark;
+    }
+
+
+    /**
+     * sets the value stores of the protocol to the configured type
+     * @param protocol the protocol
+     */
+    public void configureStores(ChordProtocol protocol){
+        switch (storeType) {
+            case "heap":
+                protocol.setStoreFactory(node -> new SlabValueStore(false));
+                break;
+            case "offheap":
+                protocol.setStoreFactory(node -> new SlabValueStore(true));
+                break;
+            case "log":
+                break;
+            default:
+                throw new IllegalArgumentException("unknown store type: " + storeType);
+        }
+    }
+
+
+    /**
+     * runs the benchmark on a built protocol, logs the results and writes them to
+     * output/store_benchmark_&lt;nodes&gt;_nodes_m&lt;m&gt;.txt
+     * @param simulator the simulator, with the protocol built
+     * @return the results, as text
+     */
+    public String run(ChordProtocolSimulator simulator) throws IOException {
+        ChordProtocol protocol = (ChordProtocol) simulator.protocol;
+        configureStores(protocol);
+        StringBuilder result = new StringBuilder();
+        result.append("nodes = ").append(simulator.nodeCount).append(", m = ").append(simulator.m)
+                .append(", store = ").append(storeType).append(", batch = ").append(batchSize);
+
+        for(int size : valueSizes){
+            int count = (int) Math.max(1, Math.min(values, (256L << 20) / Math.max(size, 1)));
+            result.append("\n").append(run(protocol, size, count));
+        }
+        for(String line : result.toString().split("\n")){
+            Log.info("\t" + line);
+        }
+
+        String fileName = "output/store_benchmark_" + simulator.nodeCount + "_nodes_m" + simulator.m + ".txt";
+        new File("output").mkdirs();
+        try (PrintWriter writer = new PrintWriter(new File(fileName), "UTF-8")) {
+            writer.println(result);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result.toString();
+    }
+
+
+    /**
+     * measures one value size
+     * @return the results, as one line
+     */
+    private String run(ChordProtocol protocol, int size, int count) throws IOException {
+        closeStores(protocol);
+        String logResults = "";
+        if(storeType.equals("log")){
+            // start from an empty log
+            openLog(protocol, size);
+            logStorage.destroy();
+            openLog(protocol, size);
+        }
+        String[] keys = new String[count];
+        for(int i = 0; i < count; i++){
+            keys[i] = "value " + size + " " + i;
+        }
+        // every value has the same random content, except for its number in the first bytes
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < count; i++){
+            protocol.put(keys[i], value(content, i));
+        }
+        double putRate = rate(count, start);
+
+        long valueBytes = 0;
+        long allocatedBytes = 0;
+        for(ValueStore store : protocol.stores){
+            if(store != null){
+                valueBytes += store.getValueBytes();
+                allocatedBytes += store.getAllocatedBytes();
+            }
+        }
+
+        if(logStorage != null){
+            openLog(protocol, size);
+            logResults += String.format(", restart recovered %d records in %.0f ms", logStorage.getRecoveredRecords(),
+                    logStorage.getRecoveryNanos() / 1e6);
+        }
+
+        start = System.nanoTime();
+        for(int i = 0; i < count; i++){
+            check(protocol.get(keys[i]), i, size);
+        }
+        double getRate = rate(count, start);
+
+        start = System.nanoTime();
+        for(int first = 0; first < count; first += batchSize){
+            String[] batch = batch(keys, first);
+            byte[][] batchValues = protocol.getAll(batch);
+            for(int i = 0; i < batch.length; i++){
+                check(batchValues[i], first + i, size);
+            }
+        }
+        double batchGetRate = rate(count, start);
+
+        start = System.nanoTime();
+        for(int first = 0; first < count; first += batchSize){
+            String[] batch = batch(keys, first);
+            byte[][] batchValues = new byte[batch.length][];
+            for(int i = 0; i < batch.length; i++){
+                batchValues[i] = value(content, first + i);
+            }
+            protocol.putAll(batch, batchValues);
+        }
+        double batchPutRate = rate(count, start);
+
+        if(logStorage != null){
+            start = System.nanoTime();
+            long reclaimed = logStorage.compact(0.5);
+            logResults += String.format(", compaction reclaimed %.1f MB in %.0f ms", reclaimed / 1e6,
+                    (System.nanoTime() - start) / 1e6);
+        }
+
+        start = System.nanoTime();
+        int deleted = 0;
+        for(int first = 0; first < count; first += batchSize){
+            deleted += protocol.deleteAll(batch(keys, first));
+        }
+        double deleteRate = rate(count, start);
+        if(deleted != count){
+            throw new IllegalStateException(deleted + " of " + count + " values were deleted");
+        }
+        closeStores(protocol);
+        if(logStorage != null){
+            logStorage.destroy();
+            logStorage = null;
+        }
+
+        return String.format("value size %d B, %d values: put %.0f/s, get %.0f/s, batched get %.0f/s, "
+                        + "batched put %.0f/s, batched delete %.0f/s, %.3f allocated bytes per stored byte "
+                        + "(%.1f bytes per value)",
+                size, count, putRate, getRate, batchGetRate, batchPutRate, deleteRate,
+                valueBytes > 0 ? (double) allocatedBytes / valueBytes : 0,
+                (double) (allocatedBytes - valueBytes) / count) + logResults;
+    }
+
+
+    /**
+     * opens the log store of a value size, after closing it if it is open, and makes the nodes use it
+     */
+    private void openLog(ChordProtocol protocol, int size) throws IOException {
+        if(logStorage != null){
+            logStorage.close();
+        }
+        logStorage = new LogStorage(new File(storeDirectory, "values_" + size), LogStorage.DEFAULT_SEGMENT_SIZE);
+        protocol.setStoreFactory(logStorage);
+        protocol.stores = null;
+    }
+
+
+    private String[] batch(String[] keys, int first){
+        String[] batch = new String[Math.min(batchSize, keys.length - first)];
+        System.arraycopy(keys, first, batch, 0, batch.length);
+        return batch;
+    }
+
+
+    private static byte[] value(byte[] content, int number){
+        byte[] value = content.clone();
+        for(int b = 0; b < 4 && b < value.length; b++){
+            value[b] = (byte) (number >>> (24 - 8 * b));
+        }
+        return value;
+    }
+
+
+    private static void check(byte[] value, int number, int size){
+        if(value == null || value.length != size){
+            throw new IllegalStateException("value " + number + " was not found");
+        }
+        for(int b = 0; b < 4 && b < size; b++){
+            if(value[b] != (byte) (number >>> (24 - 8 * b))){
+                throw new IllegalStateException("value " + number + " has the wrong content");
+            }
+        }
+    }
+
+
+    private static double rate(int operations, long start){
+        return operations * 1e9 / Math.max(1, System.nanoTime() - start);
+    }
+
+
+    private static void closeStores(ChordProtocol protocol){
+        if(protocol.stores != null){
+            for(ValueStore store : protocol.stores){
+                if(store != null){
+                    store.close();
+                }
+            }
+            protocol.stores = null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package protocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import crypto.HashCache;
+import logging.Log;
+import p2p.Network;
+import workload.Workload;
+import workload.WorkloadConfig;
+
+/**
+ * This class runs a parameter sweep: the chord protocol is simulated for every combination of node count, m, key
+ * count and seed. The configurations run concurrently on a bounded thread pool in one JVM, and share one cache of
+ * node digests (and key digests with --cache-keys). The results are written to a single CSV file, one row per configuration.
+ *
+ * Options (lists are comma separated, ranges are given as start:end:step, eg:- 100:1000:100):
+ *     --nodes &lt;list&gt;         node counts
+ *     --m &lt;list&gt;             m values
+ *     --keys &lt;list&gt;          key counts (default: the same key count as a single simulation)
+ *     --seeds &lt;list&gt;         seeds of the workload (default 0)
+ *     --requests &lt;count&gt;     lookups per configuration (default one per key)
+ *     --distribution &lt;spec&gt;  distribution of the requested keys (default sequential)
+ *     --threads &lt;count&gt;      size of the thread pool (default number of processors)
+ *     --out &lt;file&gt;           the CSV file (default output/sweep.csv)
+ *     --jmx                  registers the metrics of each running configuration as a JMX MBean
+ *     --cache-keys           also caches the digests of the key names. The cache then grows with the key count
+ */
+public class SweepRunner {
+
+    public static final String CSV_HEADER = "nodes,m,keys,requests,distribution,seed,build_ms,lookup_ms,"
+            + "lookups_per_s,avg_hops,p50_hops,p90_hops,p99_hops,max_hops,failed_lookups,build_alloc_bytes,"
+            + "lookup_alloc_bytes";
+
+    public List<Integer> nodeCounts;
+    public List<Integer> ms;
+    // null means the key count is derived from the node count and m, as in a single simulation
+    public List<Integer> keyCounts;
+    public List<Integer> seeds;
+    public int requests;
+    public String distribution;
+    public int threads;
+    public String outputFile;
+    // true if the metrics of running configurations are registered as JMX MBeans
+    public boolean jmx;
+
+    // digests of node names (and key names if they are cached), shared by all configurations
+    public HashCache hashCache;
+
+
+    public SweepRunner(){
+        this.hashCache = new HashCache(false);
+    }
+
+
+    /**
+     * creates a sweep runner from the command line options
+     * @param options options parsed by Simulator.parseOptions()
+     * @return the sweep runner
+     */
+    public static SweepRunner fromOptions(HashMap<String, String> options){
+        if(!options.containsKey("nodes") || !options.containsKey("m")){
+            throw new IllegalArgumentException("a sweep needs --nodes and --m");
+        }
+        SweepRunner runner = new SweepRunner();
+        runner.nodeCounts = parseValues(options.get("nodes"));
+        runner.ms = parseValues(options.get("m"));
+        runner.keyCounts = options.containsKey("keys") ? parseValues(options.get("keys")) : null;
+        runner.seeds = parseValues(options.getOrDefault("seeds", "0"));
+        runner.requests = Integer.parseInt(options.getOrDefault("requests", "-1"));
+        runner.distribution = options.getOrDefault("distribution", "sequential");
+        runner.threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        runner.outputFile = options.getOrDefault("out", "output/sweep.csv");
+        runner.jmx = options.containsKey("jmx");
+        runner.hashCache = new HashCache(options.containsKey("cache-keys"));
+        return runner;
+    }
+
+
+    /**
+     * parses a list of values. Each element of the comma separated list is a value or a range start:end:step
+     * (end is included, step defaults to 1)
+     * @param spec the list
+     * @return the values
+     */
+    public static List<Integer> parseValues(String spec){
+        List<Integer> values = new ArrayList<>();
+        for(String part : spec.split(",")){
+            String[] range = part.trim().split(":");
+            if(range.length == 1){
+                values.add(Integer.parseInt(range[0]));
+                continue;
+            }
+            int start = Integer.parseInt(range[0]);
+            int end = Integer.parseInt(range[1]);
+            int step = range.length > 2 ? Integer.parseInt(range[2]) : 1;
+            if(step <= 0){
+                throw new IllegalArgumentException("the step of a range must be positive: " + part);
+            }
+            for(int value = start; value <= end; value += step){
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+
+    /**
+     * runs all the configurations of the sweep and writes the results to the CSV file
+     */
+    public void run() throws InterruptedException, ExecutionException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> rows = new ArrayList<>();
+        for(int nodeCount : nodeCounts){
+            for(int m : ms){
+                List<Integer> keys = keyCounts;
+                if(keys == null){
+                    keys = new ArrayList<>();
+                    keys.add(Simulator.defaultKeyCount(nodeCount, m));
+                }
+                for(int keyCount : keys){
+                    for(int seed : seeds){
+                        rows.add(executor.submit(() -> runConfiguration(nodeCount, m, keyCount, seed)));
+                    }
+                }
+            }
+        }
+        Log.info("Running " + rows.size() + " configurations on " + threads + " threads...");
+
+        File file = new File(outputFile);
+        if(file.getParentFile() != null && !file.getParentFile().exists()){
+            file.getParentFile().mkdirs();
+        }
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println(CSV_HEADER);
+            // rows are written in the order of the configurations, whichever finishes first
+            for(Future<String> row : rows){
+                writer.println(row.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Log.info("Sweep results written to " + outputFile + " (hash cache: " + hashCache.size()
+                + " names, " + hashCache.getHits() + " hits, " + hashCache.getMisses() + " misses)");
+    }
+
+
+    /**
+     * builds the protocol for one configuration, looks up the keys of the workload and measures the build time,
+     * the lookup throughput, the hop counts and the bytes allocated by the thread in each phase. The lookups are
+     * measured after a pass over the workload that warms up the code and checks the responses
+     * @return the CSV row of the configuration
+     */
+    public String runConfiguration(int nodeCount, int m, int keyCount, long seed){
+        long buildAllocStart = allocatedBytes();
+        long buildStart = System.nanoTime();
+
+        Network network = Network.createNetwork("sweep network", nodeCount);
+        ChordProtocolSimulator simulator = ChordProtocolSimulator.getInstance(network, m, keyCount);
+        simulator.setHashCache(hashCache);
+        WorkloadConfig workloadConfig = new WorkloadConfig(keyCount, requests, distribution, seed);
+        simulator.setWorkload(workloadConfig);
+        if(jmx){
+            simulator.enableMetrics("sweep: " + nodeCount + " nodes, m " + m + ", " + keyCount + " keys, seed " + seed);
+        }
+        simulator.buildProtocol();
+
+        long buildTime = System.nanoTime() - buildStart;
+        long buildAlloc = allocatedBytes() - buildAllocStart;
+
+        // look up the keys of the workload twice. The first pass warms up the lookup code and checks the responses,
+        // and the second pass is measured. The keys are hashed before the lookups are measured
+        int[] keyIndexes = simulator.keys.indexes();
+        long failed = 0;
+        try (Workload workload = Workload.create(workloadConfig)) {
+            while(workload.hasNext()){
+                int keyIndex = keyIndexes[workload.nextInt()];
+                if(!simulator.checkResponse(keyIndex, simulator.protocol.lookUp(keyIndex).node_name)){
+                    failed++;
+                }
+            }
+        }
+        HopHistogram hops = new HopHistogram();
+        long lookupAllocStart = allocatedBytes();
+        long lookupStart = System.nanoTime();
+        try (Workload workload = Workload.create(workloadConfig)) {
+            while(workload.hasNext()){
+                int keyIndex = keyIndexes[workload.nextInt()];
+                hops.record(simulator.protocol.lookUp(keyIndex).peers_looked_up.size());
+            }
+        }
+        long lookupTime = System.nanoTime() - lookupStart;
+        long lookupAlloc = allocatedBytes() - lookupAllocStart;
+        if(simulator.metrics != null){
+            simulator.metrics.unregister();
+        }
+
+        double lookupsPerSecond = lookupTime > 0 ? hops.getLookups() * 1e9 / lookupTime : 0;
+        Log.info("\tnodes " + nodeCount + " m " + m + " keys " + keyCount + " seed " + seed
+                + " built in " + buildTime / 1000000 + " ms, " + (long) lookupsPerSecond + " lookups/s");
+
+        return nodeCount + "," + m + "," + keyCount + "," + hops.getLookups() + "," + distribution + "," + seed
+                + "," + buildTime / 1000000 + "," + lookupTime / 1000000
+                + "," + String.format("%.0f", lookupsPerSecond) + "," + String.format("%.3f", hops.getAverage())
+                + "," + hops.getPercentile(50) + "," + hops.getPercentile(90) + "," + hops.getPercentile(99)
+                + "," + hops.getMax() + "," + failed + "," + buildAlloc + "," + lookupAlloc;
+    }
+
+
+    /**
+     * @return the number of bytes allocated by the current thread, or 0 if the JVM does not measure it
+     */
+    public static long allocatedBytes(){
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(bean instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()){
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return 0;
+    }
+}
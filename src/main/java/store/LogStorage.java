@@ -0,0 +1,535 @@
+package store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import p2p.NodeInterface;
+
+/**
+ * This class keeps the values of the nodes on disk, in an append-only log of memory-mapped segment files. Each node
+ * has a LogValueStore with an index in memory from the key to the position of its last record in the log, so a value
+ * is read with one access to the mapped segment.
+ *
+ * A record is: checksum (CRC32 of the rest of the record), value length (-1 for a deleted key), node handle, key, value.
+ * The log grows in the last segment; when it is full a new segment is started, and the full segment is sealed: it is
+ * forced to disk and a hint file is written next to it, with the node, key, offset and length of every record.
+ *
+ * Recovery, when the storage is opened, rebuilds the indexes of the nodes from the segments in order: from the hint
+ * file of a sealed segment, without reading the values, or by reading the records of a segment without a valid hint
+ * file (the last segment after a crash) until the first record whose checksum does not match. Appends always go to a
+ * new segment after a restart.
+ *
+ * Compaction copies the records that are still in use from the sealed segments that are mostly garbage (overwritten
+ * or deleted values) to the end of the log, and deletes those segments.
+ *
+ * Records are durable after flush(), close() or when their segment is sealed. A crash of the JVM loses nothing that
+ * has been written to the mapped segments, as the operating system writes them back.
+ */
+public class LogStorage implements ValueStoreFactory, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    // checksum, value length, node handle and key
+    static final int HEADER = 20;
+    static final int TOMBSTONE = -1;
+    static final long MISSING = -1;
+    // node handle, key, offset and value length of a record
+    private static final int HINT_ENTRY = 20;
+
+    public final File directory;
+    public final int segmentSize;
+
+    // segments by id, null when deleted by compaction
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private LogValueStore[] stores = new LogValueStore[0];
+    private final CRC32 crc = new CRC32();
+
+    private long recoveryNanos;
+    private long recoveredRecords;
+
+
+    /**
+     * opens the log in a directory and recovers the indexes of the nodes from it
+     * @param directory directory of the segment files, created if it does not exist
+     * @param segmentSize size of a segment in bytes
+     */
+    public LogStorage(File directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("cannot create the directory " + directory);
+        }
+        recover();
+        active = createSegment(segments.size(), segmentSize);
+    }
+
+
+    /**
+     * @param node the node
+     * @return the value store of the node, with the values recovered from the log
+     */
+    public LogValueStore create(NodeInterface node){
+        return store(node.getHandle());
+    }
+
+
+    /**
+     * @param handle handle of a node
+     * @return the value store of the node
+     */
+    public LogValueStore store(int handle){
+        if(handle >= stores.length){
+            stores = Arrays.copyOf(stores, Math.max(handle + 1, stores.length * 2));
+        }
+        if(stores[handle] == null){
+            stores[handle] = new LogValueStore(this, handle);
+        }
+        return stores[handle];
+    }
+
+
+    /**
+     * appends a record to the log and points the index of the node to it
+     * @param value the value, or null to delete the key
+     * @return the previous position of the key, or MISSING
+     */
+    long write(LogValueStore store, long key, byte[] value){
+        long position = append(store.node, key, value);
+        if(value == null){
+            long previous = store.index.remove(key, MISSING);
+            release(store, previous);
+            return previous;
+        }
+        long previous = store.index.put(key, position, MISSING);
+        release(store, previous);
+        claim(store, position, value.length);
+        return previous;
+    }
+
+
+    /**
+     * @param position position of a record
+     * @return the value of the record
+     */
+    byte[] read(long position){
+        ByteBuffer buffer = segments.get(segmentOf(position)).buffer;
+        int offset = offsetOf(position);
+        byte[] value = new byte[buffer.getInt(offset + 4)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + HEADER);
+        view.get(value);
+        return value;
+    }
+
+
+    /**
+     * @param position position of a record
+     * @return the length of the value of the record
+     */
+    int length(long position){
+        return segments.get(segmentOf(position)).buffer.getInt(offsetOf(position) + 4);
+    }
+
+
+    private void claim(LogValueStore store, long position, int length){
+        segments.get(segmentOf(position)).liveBytes += HEADER + length;
+        store.valueBytes += length;
+    }
+
+
+    private void release(LogValueStore store, long position){
+        if(position != MISSING){
+            int length = length(position);
+            segments.get(segmentOf(position)).liveBytes -= HEADER + length;
+            store.valueBytes -= length;
+        }
+    }
+
+
+    private long append(int node, long key, byte[] value){
+        int length = value == null ? TOMBSTONE : value.length;
+        int size = HEADER + Math.max(0, length);
+        try {
+            if(active.end + size > active.buffer.capacity()){
+                seal(active);
+                active = createSegment(segments.size(), Math.max(segmentSize, size));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer buffer = active.buffer;
+        int offset = active.end;
+        buffer.putInt(offset + 4, length);
+        buffer.putInt(offset + 8, node);
+        buffer.putLong(offset + 12, key);
+        if(value != null){
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + HEADER);
+            view.put(value);
+        }
+        buffer.putInt(offset, checksum(buffer, offset + 4, offset + size));
+        active.end += size;
+        active.records++;
+        return position(active.id, offset);
+    }
+
+
+    /**
+     * @return CRC32 of the bytes from (inclusive) to (exclusive) of a buffer
+     */
+    private int checksum(ByteBuffer buffer, int from, int to){
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+
+    /**
+     * forces the records appended so far to disk
+     */
+    public void flush(){
+        active.buffer.force();
+    }
+
+
+    /**
+     * compacts the sealed segments where at least a fraction of the bytes are garbage: the values that are still in
+     * the index are appended again, and so are deleted keys as long as an older segment might hold a value for them.
+     * Then the segments are deleted
+     * @param minGarbage fraction of garbage that makes a segment worth compacting, between 0 and 1
+     * @return number of bytes reclaimed
+     */
+    public long compact(double minGarbage) throws IOException {
+        long reclaimed = 0;
+        int lastSealed = active.id;
+        for(int id = 0; id < lastSealed; id++){
+            Segment segment = segments.get(id);
+            if(segment == null || segment.liveBytes > (1 - minGarbage) * segment.end){
+                continue;
+            }
+            boolean oldest = true;
+            for(int older = 0; older < id && oldest; older++){
+                oldest = segments.get(older) == null;
+            }
+            long copied = 0;
+            ByteBuffer buffer = segment.buffer;
+            for(int offset = 0; offset < segment.end; ){
+                int length = buffer.getInt(offset + 4);
+                int node = buffer.getInt(offset + 8);
+                long key = buffer.getLong(offset + 12);
+                LogValueStore store = store(node);
+                if(length != TOMBSTONE && store.index.get(key, MISSING) == position(id, offset)){
+                    write(store, key, read(position(id, offset)));
+                    copied += HEADER + length;
+                }
+                else if(length == TOMBSTONE && !oldest && !store.index.containsKey(key)){
+                    append(node, key, null);
+                    copied += HEADER;
+                }
+                offset += HEADER + Math.max(0, length);
+            }
+            // the copies must be on disk before the segment is deleted
+            flush();
+            deleteSegment(segment);
+            reclaimed += segment.end - copied;
+        }
+        return reclaimed;
+    }
+
+
+    /**
+     * forces the log to disk, writes the hint file of the last segment and closes the segment files. The value stores
+     * of the nodes can not be used afterwards
+     */
+    public void close() throws IOException {
+        if(active == null){
+            return;
+        }
+        seal(active);
+        active = null;
+        for(Segment segment : segments){
+            if(segment != null){
+                segment.channel.close();
+            }
+        }
+    }
+
+
+    /**
+     * closes the log and deletes its files
+     */
+    public void destroy() throws IOException {
+        close();
+        for(Segment segment : segments){
+            if(segment != null){
+                Files.deleteIfExists(segment.file.toPath());
+                Files.deleteIfExists(hintFile(segment.id).toPath());
+            }
+        }
+        segments.clear();
+    }
+
+
+    /**
+     * @return nanoseconds it took to recover the indexes when the log was opened
+     */
+    public long getRecoveryNanos(){
+        return recoveryNanos;
+    }
+
+
+    /**
+     * @return number of records read by the recovery
+     */
+    public long getRecoveredRecords(){
+        return recoveredRecords;
+    }
+
+
+    /**
+     * @return number of segments
+     */
+    public int getSegmentCount(){
+        int count = 0;
+        for(Segment segment : segments){
+            count += segment != null ? 1 : 0;
+        }
+        return count;
+    }
+
+
+    /**
+     * @return number of bytes written to the segments, including garbage
+     */
+    public long getLogBytes(){
+        long bytes = 0;
+        for(Segment segment : segments){
+            bytes += segment != null ? segment.end : 0;
+        }
+        return bytes;
+    }
+
+
+    /**
+     * @return number of bytes of the records that are in use
+     */
+    public long getLiveBytes(){
+        long bytes = 0;
+        for(Segment segment : segments){
+            bytes += segment != null ? segment.liveBytes : 0;
+        }
+        return bytes;
+    }
+
+
+    /**
+     * opens the segments in the directory in order and replays their records into the indexes
+     */
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        int[] ids = new int[files == null ? 0 : files.length];
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = Integer.parseInt(files[i].getName().substring(0, files[i].getName().length() - 4));
+        }
+        Arrays.sort(ids);
+        for(int id : ids){
+            while(segments.size() < id){
+                segments.add(null);
+            }
+            File file = segmentFile(id);
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            Segment segment = new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()));
+            segments.add(segment);
+            if(!replayHint(segment)){
+                replay(segment);
+                writeHint(segment);
+            }
+        }
+        recoveryNanos = System.nanoTime() - start;
+    }
+
+
+    /**
+     * replays the records of a segment up to the first record that is cut off or has a wrong checksum
+     */
+    private void replay(Segment segment){
+        ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while(offset + HEADER <= buffer.capacity()){
+            int length = buffer.getInt(offset + 4);
+            int size = HEADER + Math.max(0, length);
+            if(length < TOMBSTONE || size > buffer.capacity() - offset
+                    || buffer.getInt(offset) != checksum(buffer, offset + 4, offset + size)){
+                break;
+            }
+            apply(buffer.getInt(offset + 8), buffer.getLong(offset + 12), position(segment.id, offset), length);
+            segment.records++;
+            offset += size;
+        }
+        segment.end = offset;
+    }
+
+
+    /**
+     * replays the records of a segment from its hint file
+     * @return false if the segment has no valid hint file
+     */
+    private boolean replayHint(Segment segment) throws IOException {
+        File file = hintFile(segment.id);
+        if(!file.isFile()){
+            return false;
+        }
+        ByteBuffer hint = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        int entries = (hint.capacity() - 8) / HINT_ENTRY;
+        if(hint.capacity() < 8 || hint.capacity() != entries * HINT_ENTRY + 8
+                || hint.getInt(hint.capacity() - 4) != checksum(hint, 0, hint.capacity() - 4)){
+            return false;
+        }
+        for(int i = 0; i < entries; i++){
+            int entry = i * HINT_ENTRY;
+            apply(hint.getInt(entry), hint.getLong(entry + 4), position(segment.id, hint.getInt(entry + 12)),
+                    hint.getInt(entry + 16));
+        }
+        segment.records = entries;
+        segment.end = hint.getInt(hint.capacity() - 8);
+        return true;
+    }
+
+
+    private void apply(int node, long key, long position, int length){
+        LogValueStore store = store(node);
+        long previous = length == TOMBSTONE ? store.index.remove(key, MISSING) : store.index.put(key, position, MISSING);
+        release(store, previous);
+        if(length != TOMBSTONE){
+            claim(store, position, length);
+        }
+        recoveredRecords++;
+    }
+
+
+    /**
+     * forces a segment to disk and writes its hint file
+     */
+    private void seal(Segment segment) throws IOException {
+        if(!segment.buffer.isReadOnly()){
+            segment.buffer.force();
+        }
+        writeHint(segment);
+    }
+
+
+    private void writeHint(Segment segment) throws IOException {
+        ByteBuffer hint = ByteBuffer.allocate(segment.records * HINT_ENTRY + 8);
+        ByteBuffer buffer = segment.buffer;
+        for(int offset = 0; offset < segment.end; ){
+            int length = buffer.getInt(offset + 4);
+            hint.putInt(buffer.getInt(offset + 8));
+            hint.putLong(buffer.getLong(offset + 12));
+            hint.putInt(offset);
+            hint.putInt(length);
+            offset += HEADER + Math.max(0, length);
+        }
+        hint.putInt(segment.end);
+        hint.putInt(checksum(hint, 0, hint.capacity() - 4));
+        hint.flip();
+
+        // the hint file is replaced atomically, so a crash leaves either no hint file or a complete one
+        File temporary = new File(directory, hintFile(segment.id).getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(hint.hasRemaining()){
+                channel.write(hint);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), hintFile(segment.id).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private Segment createSegment(int id, int size) throws IOException {
+        File file = segmentFile(id);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        segments.add(segment);
+        return segment;
+    }
+
+
+    private void deleteSegment(Segment segment) throws IOException {
+        segments.set(segment.id, null);
+        segment.channel.close();
+        Files.deleteIfExists(hintFile(segment.id).toPath());
+        Files.deleteIfExists(segment.file.toPath());
+    }
+
+
+    private File segmentFile(int id){
+        return new File(directory, String.format("%010d.log", id));
+    }
+
+
+    private File hintFile(int id){
+        return new File(directory, String.format("%010d.hint", id));
+    }
+
+
+    private static long position(int segment, int offset){
+        return ((long) segment << 32) | offset;
+    }
+
+
+    private static int segmentOf(long position){
+        return (int) (position >>> 32);
+    }
+
+
+    private static int offsetOf(long position){
+        return (int) position;
+    }
+
+
+    /**
+     * a segment file of the log
+     */
+    private static final class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        // length of the records in the segment
+        int end;
+        int records;
+        // bytes of the records that are in an index
+        long liveBytes;
+
+        Segment(int id, File file, FileChannel channel, MappedByteBuffer buffer){
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package store;
+
+/**
+ * The value store of one node in a LogStorage. The values are records in the log of the storage, and the store keeps
+ * the index from each key to the position of its record.
+ */
+public class LogValueStore implements ValueStore {
+
+    final LogStorage storage;
+    // handle of the node
+    final int node;
+    final LongLongMap index = new LongLongMap();
+    long valueBytes;
+
+
+    LogValueStore(LogStorage storage, int node){
+        this.storage = storage;
+        this.node = node;
+    }
+
+
+    public boolean put(long key, byte[] value){
+        return storage.write(this, key, value) != LogStorage.MISSING;
+    }
+
+
+    public byte[] get(long key){
+        long position = index.get(key, LogStorage.MISSING);
+        return position == LogStorage.MISSING ? null : storage.read(position);
+    }
+
+
+    public boolean contains(long key){
+        return index.containsKey(key);
+    }
+
+
+    public boolean delete(long key){
+        return index.containsKey(key) && storage.write(this, key, null) != LogStorage.MISSING;
+    }
+
+
+    public int size(){
+        return index.size();
+    }
+
+
+    public long getValueBytes(){
+        return valueBytes;
+    }
+
+
+    /**
+     * @return number of bytes of the index and of the records of the values in the log
+     */
+    public long getAllocatedBytes(){
+        return index.getAllocatedBytes() + valueBytes + (long) LogStorage.HEADER * index.size();
+    }
+
+
+    /**
+     * does nothing: the log and the indexes belong to the storage, and are released by LogStorage.close()
+     */
+    public void close(){
+    }
+}
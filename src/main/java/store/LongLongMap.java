@@ -0,0 +1,178 @@
+package store;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to long values, stored in two primitive arrays (open addressing with linear probing). It
+ * takes about 20 bytes per entry, where a HashMap&lt;Long, Long&gt; takes about 80.
+ */
+public class LongLongMap {
+
+    private static final double LOAD_FACTOR = 0.6;
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+
+    public LongLongMap(){
+        this(16);
+    }
+
+
+    /**
+     * @param expectedSize number of entries the map holds without growing
+     */
+    public LongLongMap(int expectedSize){
+        int capacity = Integer.highestOneBit((int) Math.max(16, expectedSize / LOAD_FACTOR) * 2 - 1);
+        allocate(capacity);
+    }
+
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+
+    private int slot(long key){
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+
+    /**
+     * @param key the key
+     * @param missing returned if the key is not in the map
+     * @return the value of the key, or missing
+     */
+    public long get(long key, long missing){
+        for(int slot = slot(key); used[slot]; slot = (slot + 1) & mask){
+            if(keys[slot] == key){
+                return values[slot];
+            }
+        }
+        return missing;
+    }
+
+
+    public boolean containsKey(long key){
+        for(int slot = slot(key); used[slot]; slot = (slot + 1) & mask){
+            if(keys[slot] == key){
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @param key the key
+     * @param value the value
+     * @param missing returned if the key was not in the map
+     * @return the previous value of the key, or missing
+     */
+    public long put(long key, long value, long missing){
+        int slot = slot(key);
+        for(; used[slot]; slot = (slot + 1) & mask){
+            if(keys[slot] == key){
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        if(++size > keys.length * LOAD_FACTOR){
+            grow();
+        }
+        return missing;
+    }
+
+
+    /**
+     * @param key the key
+     * @param missing returned if the key was not in the map
+     * @return the value of the removed key, or missing
+     */
+    public long remove(long key, long missing){
+        int slot = slot(key);
+        for(; used[slot]; slot = (slot + 1) & mask){
+            if(keys[slot] == key){
+                long previous = values[slot];
+                // shift the following entries back, so no entry is behind a free slot
+                int free = slot;
+                for(int next = (free + 1) & mask; used[next]; next = (next + 1) & mask){
+                    int home = slot(keys[next]);
+                    if(((next - home) & mask) >= ((next - free) & mask)){
+                        keys[free] = keys[next];
+                        values[free] = values[next];
+                        free = next;
+                    }
+                }
+                used[free] = false;
+                size--;
+                return previous;
+            }
+        }
+        return missing;
+    }
+
+
+    private void grow(){
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(keys.length * 2);
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldUsed[i]){
+                put(oldKeys[i], oldValues[i], 0);
+            }
+        }
+    }
+
+
+    /**
+     * calls the visitor with every entry of the map
+     */
+    public void forEach(Visitor visitor){
+        for(int i = 0; i < keys.length; i++){
+            if(used[i]){
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+
+    public void clear(){
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+
+    public int size(){
+        return size;
+    }
+
+
+    /**
+     * @return number of bytes used by the arrays of the map
+     */
+    public long getAllocatedBytes(){
+        return keys.length * 17L;
+    }
+
+
+    /**
+     * receives the entries of a map
+     */
+    public interface Visitor {
+        void visit(long key, long value);
+    }
+}
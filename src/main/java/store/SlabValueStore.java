@@ -0,0 +1,255 @@
+package store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This value store keeps the values in slabs: pages that are split into chunks of one size class. The size classes are
+ * powers of two from 16 bytes to 1 MB, and a value is stored in the smallest chunk that holds the value and its 4 byte
+ * length. A value that does not fit in a page gets a buffer of its own. The first page of a size class is small, and
+ * each new page is twice as large as the previous one (up to 1 MB), so a node that stores few values allocates little.
+ *
+ * The values are not Java objects, so a store of millions of small values costs the garbage collector nothing, and the
+ * pages can be allocated outside the heap (direct buffers). Chunks of deleted values are reused by the next value of
+ * the same size class. The index maps the key to the location of the value:
+ * (size class &lt;&lt; 40) | (page &lt;&lt; 20) | chunk in the page.
+ */
+public class SlabValueStore implements ValueStore {
+
+    public static final int PAGE_SIZE = 1 << 20;
+
+    // size of the first page of a size class
+    private static final int FIRST_PAGE_SIZE = 1024;
+
+    // size of the smallest chunk is 2^MIN_CHUNK_BITS
+    private static final int MIN_CHUNK_BITS = 4;
+    private static final int CLASS_COUNT = 20 - MIN_CHUNK_BITS + 1;
+    // size class of the values that have a buffer of their own
+    private static final int LARGE = CLASS_COUNT;
+
+    private static final int HEADER = 4;
+    private static final long MISSING = -1;
+
+    // true if the pages are direct buffers
+    public boolean offHeap;
+
+    private final LongLongMap index = new LongLongMap();
+
+    // pages of each size class, the number of chunks handed out in the last page of each class and the chunks that
+    // are free again
+    private final List<List<ByteBuffer>> pages = new ArrayList<>();
+    private final int[] chunksUsed = new int[CLASS_COUNT];
+    private final long[][] freeChunks = new long[CLASS_COUNT + 1][];
+    private final int[] freeCount = new int[CLASS_COUNT + 1];
+
+    // buffers of the large values, by chunk number (null when free)
+    private final List<ByteBuffer> largeValues = new ArrayList<>();
+
+    private long valueBytes;
+    private long allocatedBytes;
+
+
+    public SlabValueStore(boolean offHeap){
+        this.offHeap = offHeap;
+        for(int c = 0; c <= CLASS_COUNT; c++){
+            if(c < CLASS_COUNT){
+                pages.add(new ArrayList<>());
+            }
+            freeChunks[c] = new long[16];
+        }
+    }
+
+
+    public boolean put(long key, byte[] value){
+        int sizeClass = sizeClass(value.length);
+        long location = index.get(key, MISSING);
+        boolean replaced = location != MISSING;
+        if(replaced){
+            valueBytes -= length(location);
+            if(classOf(location) != sizeClass || sizeClass == LARGE){
+                free(location);
+                location = allocate(sizeClass, value.length);
+            }
+        }
+        else {
+            location = allocate(sizeClass, value.length);
+        }
+        write(location, value);
+        index.put(key, location, MISSING);
+        valueBytes += value.length;
+        return replaced;
+    }
+
+
+    public byte[] get(long key){
+        long location = index.get(key, MISSING);
+        if(location == MISSING){
+            return null;
+        }
+        ByteBuffer buffer = buffer(location);
+        int offset = offset(location);
+        byte[] value = new byte[buffer.getInt(offset)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + HEADER);
+        view.get(value);
+        return value;
+    }
+
+
+    public boolean contains(long key){
+        return index.containsKey(key);
+    }
+
+
+    public boolean delete(long key){
+        long location = index.remove(key, MISSING);
+        if(location == MISSING){
+            return false;
+        }
+        valueBytes -= length(location);
+        free(location);
+        return true;
+    }
+
+
+    public int size(){
+        return index.size();
+    }
+
+
+    public long getValueBytes(){
+        return valueBytes;
+    }
+
+
+    public long getAllocatedBytes(){
+        long free = 0;
+        for(long[] chunks : freeChunks){
+            free += chunks.length * 8L;
+        }
+        return allocatedBytes + index.getAllocatedBytes() + free;
+    }
+
+
+    public void close(){
+        for(List<ByteBuffer> classPages : pages){
+            classPages.clear();
+        }
+        largeValues.clear();
+        index.clear();
+        Arrays.fill(chunksUsed, 0);
+        Arrays.fill(freeCount, 0);
+        valueBytes = 0;
+        allocatedBytes = 0;
+    }
+
+
+    /**
+     * @return the size class of a value, LARGE if it does not fit in a page
+     */
+    private static int sizeClass(int length){
+        int size = length + HEADER;
+        if(size > PAGE_SIZE){
+            return LARGE;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return Math.max(0, bits - MIN_CHUNK_BITS);
+    }
+
+
+    private static int classOf(long location){
+        return (int) (location >>> 40);
+    }
+
+
+    private static int pageOf(long location){
+        return (int) (location >>> 20) & ((1 << 20) - 1);
+    }
+
+
+    private static int chunkOf(long location){
+        return (int) location & ((1 << 20) - 1);
+    }
+
+
+    private static long location(int sizeClass, int page, int chunk){
+        return ((long) sizeClass << 40) | ((long) page << 20) | chunk;
+    }
+
+
+    private long allocate(int sizeClass, int length){
+        if(freeCount[sizeClass] > 0){
+            long location = freeChunks[sizeClass][--freeCount[sizeClass]];
+            if(sizeClass == LARGE){
+                ByteBuffer buffer = newBuffer(length + HEADER);
+                largeValues.set(pageOf(location), buffer);
+                allocatedBytes += buffer.capacity();
+            }
+            return location;
+        }
+        if(sizeClass == LARGE){
+            ByteBuffer buffer = newBuffer(length + HEADER);
+            largeValues.add(buffer);
+            allocatedBytes += buffer.capacity();
+            return location(LARGE, largeValues.size() - 1, 0);
+        }
+        List<ByteBuffer> classPages = pages.get(sizeClass);
+        int chunkBits = sizeClass + MIN_CHUNK_BITS;
+        if(classPages.isEmpty() || chunksUsed[sizeClass] == classPages.get(classPages.size() - 1).capacity() >>> chunkBits){
+            int pageSize = classPages.isEmpty() ? Math.max(FIRST_PAGE_SIZE, 1 << chunkBits)
+                    : Math.min(PAGE_SIZE, classPages.get(classPages.size() - 1).capacity() * 2);
+            classPages.add(newBuffer(pageSize));
+            allocatedBytes += pageSize;
+            chunksUsed[sizeClass] = 0;
+        }
+        return location(sizeClass, classPages.size() - 1, chunksUsed[sizeClass]++);
+    }
+
+
+    private void free(long location){
+        int sizeClass = classOf(location);
+        if(sizeClass == LARGE){
+            int page = pageOf(location);
+            allocatedBytes -= largeValues.get(page).capacity();
+            largeValues.set(page, null);
+        }
+        if(freeCount[sizeClass] == freeChunks[sizeClass].length){
+            freeChunks[sizeClass] = Arrays.copyOf(freeChunks[sizeClass], freeCount[sizeClass] * 2);
+        }
+        freeChunks[sizeClass][freeCount[sizeClass]++] = location;
+    }
+
+
+    private ByteBuffer newBuffer(int capacity){
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+
+    private ByteBuffer buffer(long location){
+        int sizeClass = classOf(location);
+        return sizeClass == LARGE ? largeValues.get(pageOf(location)) : pages.get(sizeClass).get(pageOf(location));
+    }
+
+
+    private int offset(long location){
+        int sizeClass = classOf(location);
+        return sizeClass == LARGE ? 0 : chunkOf(location) << (sizeClass + MIN_CHUNK_BITS);
+    }
+
+
+    private int length(long location){
+        return buffer(location).getInt(offset(location));
+    }
+
+
+    private void write(long location, byte[] value){
+        ByteBuffer buffer = buffer(location);
+        int offset = offset(location);
+        buffer.putInt(offset, value.length);
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + HEADER);
+        view.put(value);
+    }
+}
@@ -0,0 +1,57 @@
+package store;
+
+/**
+ * A value store keeps the values of the keys a node is responsible for. Keys are the 64 bit digests of the key names
+ * (see ConsistentHashing.digest64()), so the store does not keep the names.
+ *
+ * A store is used by one thread at a time.
+ */
+public interface ValueStore {
+
+    /**
+     * stores a value, replacing the previous value of the key
+     * @param key digest of the key
+     * @param value the value
+     * @return true if the key had a value before
+     */
+    boolean put(long key, byte[] value);
+
+    /**
+     * @param key digest of the key
+     * @return the value of the key, or null if the key has no value
+     */
+    byte[] get(long key);
+
+    /**
+     * @param key digest of the key
+     * @return true if the key has a value
+     */
+    boolean contains(long key);
+
+    /**
+     * removes the value of a key
+     * @param key digest of the key
+     * @return true if the key had a value
+     */
+    boolean delete(long key);
+
+    /**
+     * @return number of keys with a value
+     */
+    int size();
+
+    /**
+     * @return number of bytes in the stored values
+     */
+    long getValueBytes();
+
+    /**
+     * @return number of bytes the store has allocated for the values and its index
+     */
+    long getAllocatedBytes();
+
+    /**
+     * releases the resources of the store
+     */
+    void close();
+}
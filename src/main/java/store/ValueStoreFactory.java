@@ -0,0 +1,15 @@
+package store;
+
+import p2p.NodeInterface;
+
+/**
+ * A value store factory creates the value store of a node, the first time a value is stored on the node.
+ */
+public interface ValueStoreFactory {
+
+    /**
+     * @param node the node
+     * @return the value store of the node
+     */
+    ValueStore create(NodeInterface node);
+}
@@ -0,0 +1,45 @@
+package tracing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import jdk.jfr.Recording;
+
+/**
+ * This class starts a flight recording of the chord events from inside the simulator, as an alternative to starting
+ * the JVM with -XX:StartFlightRecording. The recording is written to a file when it is stopped.
+ */
+public class ChordRecording {
+
+    private final Recording recording;
+    private final Path file;
+
+    /**
+     * starts a recording of the chord events
+     * @param file the file the recording is written to
+     * @param hops true to record an event for every hop of every lookup
+     */
+    public ChordRecording(String file, boolean hops){
+        this.file = Paths.get(file);
+        this.recording = new Recording();
+        this.recording.setName("chord");
+        this.recording.enable(LookupEvent.class);
+        this.recording.enable(LookupPathEvent.class);
+        this.recording.enable(FingerTableBuildEvent.class);
+        this.recording.enable(KeyAssignmentEvent.class);
+        if(hops){
+            this.recording.enable(LookupHopEvent.class);
+        }
+        this.recording.start();
+    }
+
+    /**
+     * stops the recording and writes it to the file
+     */
+    public void stop() throws IOException {
+        recording.stop();
+        recording.dump(file);
+        recording.close();
+    }
+}
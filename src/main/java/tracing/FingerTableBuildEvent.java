@@ -0,0 +1,28 @@
+package tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of building the finger table of one node.
+ */
+@Name("chord.FingerTableBuild")
+@Label("Finger Table Build")
+@Category({"Chord", "Build"})
+@Description("The finger table of a node was built")
+public class FingerTableBuildEvent extends jdk.jfr.Event {
+
+    @Label("Node Id")
+    public int nodeId;
+
+    @Label("Node Handle")
+    public int nodeHandle;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Distinct Successors")
+    public int distinctSuccessors;
+}
@@ -0,0 +1,23 @@
+package tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of assigning a batch of keys to the nodes that are responsible for them.
+ */
+@Name("chord.KeyAssignment")
+@Label("Key Assignment")
+@Category({"Chord", "Build"})
+@Description("A batch of keys was assigned to their nodes")
+public class KeyAssignmentEvent extends jdk.jfr.Event {
+
+    @Label("First Key")
+    @Description("Number of the first key in the batch")
+    public int firstKey;
+
+    @Label("Keys")
+    public int keys;
+}
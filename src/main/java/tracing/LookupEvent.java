@@ -0,0 +1,29 @@
+package tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a lookup. The event starts when the lookup begins and ends when the lookup has reached the
+ * node that holds the key, so its duration is the duration of the lookup.
+ */
+@Name("chord.Lookup")
+@Label("Lookup")
+@Category({"Chord", "Lookup"})
+@Description("A lookup from the start node to the node that holds the key")
+public class LookupEvent extends jdk.jfr.Event {
+
+    @Label("Key Index")
+    public int keyIndex;
+
+    @Label("Start Node Id")
+    public int startNodeId;
+
+    @Label("Owner Node Id")
+    public int ownerNodeId;
+
+    @Label("Hops")
+    public int hops;
+}
@@ -0,0 +1,34 @@
+package tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of one hop of a lookup: the lookup moved from one node to another using a finger table entry,
+ * or to the successor of the node.
+ */
+@Name("chord.LookupHop")
+@Label("Lookup Hop")
+@Category({"Chord", "Lookup"})
+@Description("A lookup moved from one node to the successor of one of its finger table entries, or to its successor")
+public class LookupHopEvent extends jdk.jfr.Event {
+
+    @Label("Key Index")
+    public int keyIndex;
+
+    @Label("Hop")
+    @Description("Number of the hop in the lookup, starting at 1")
+    public int hop;
+
+    @Label("From Node Id")
+    public int fromNodeId;
+
+    @Label("To Node Id")
+    public int toNodeId;
+
+    @Label("Finger")
+    @Description("The finger table entry that was used (1 ... m), or 0 for a hop to the successor")
+    public int finger;
+}
@@ -0,0 +1,27 @@
+package tracing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event with the full path of a sampled lookup. Only lookups chosen by the LookupTracer record this
+ * event.
+ */
+@Name("chord.LookupPath")
+@Label("Lookup Path")
+@Category({"Chord", "Lookup"})
+@Description("The full hop path of a sampled lookup")
+public class LookupPathEvent extends jdk.jfr.Event {
+
+    @Label("Key Index")
+    public int keyIndex;
+
+    @Label("Hops")
+    public int hops;
+
+    @Label("Path")
+    @Description("Node ids of the path, with the finger used for each hop, eg:- 333 -f9-> 601 -s-> 666 (s is the successor)")
+    public String path;
+}
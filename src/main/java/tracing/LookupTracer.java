@@ -0,0 +1,109 @@
+package tracing;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logging.Log;
+import logging.LogEvent;
+
+/**
+ * This class chooses which lookups are traced. With a sampling rate of n, every nth lookup records its full hop path,
+ * which is committed as a LookupPathEvent and written to the log. A sampling rate of 0 turns tracing off, which costs
+ * one field read per lookup.
+ */
+public class LookupTracer {
+
+    // trace every sampleRate-th lookup, 0 means tracing is off
+    public final int sampleRate;
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    public LookupTracer(int sampleRate){
+        if(sampleRate < 0){
+            throw new IllegalArgumentException("sampling rate must not be negative");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * called at the start of every lookup
+     * @param keyIndex index of the key that is looked up
+     * @param startNodeId id of the node the lookup starts from
+     * @return the path to record the hops in if the lookup is traced, otherwise null
+     */
+    public Path sample(int keyIndex, int startNodeId){
+        if(sampleRate == 0 || lookups.getAndIncrement() % sampleRate != 0){
+            return null;
+        }
+        return new Path(keyIndex, startNodeId);
+    }
+
+
+    /**
+     * The hop path of a traced lookup
+     */
+    public static class Path {
+
+        public final int keyIndex;
+
+        // ids of the nodes on the path, starting with the start node
+        public int[] nodeIds;
+
+        // finger used for each hop (1 ... m), or 0 for a hop to the successor
+        public int[] fingers;
+
+        public int hops;
+
+        Path(int keyIndex, int startNodeId){
+            this.keyIndex = keyIndex;
+            this.nodeIds = new int[8];
+            this.fingers = new int[8];
+            this.nodeIds[0] = startNodeId;
+        }
+
+        /**
+         * records a hop of the lookup
+         * @param finger the finger table entry used (1 ... m), or 0 if the lookup moved to the successor
+         * @param toNodeId the id of the node the lookup moved to
+         */
+        public void addHop(int finger, int toNodeId){
+            if(hops + 1 >= nodeIds.length){
+                nodeIds = Arrays.copyOf(nodeIds, nodeIds.length * 2);
+                fingers = Arrays.copyOf(fingers, fingers.length * 2);
+            }
+            fingers[hops] = finger;
+            hops++;
+            nodeIds[hops] = toNodeId;
+        }
+
+        /**
+         * commits the path as a flight recorder event and writes it to the log
+         */
+        public void finish(){
+            String text = toString();
+            LookupPathEvent event = new LookupPathEvent();
+            if(event.isEnabled()){
+                event.keyIndex = keyIndex;
+                event.hops = hops;
+                event.path = text;
+                event.commit();
+            }
+            if(Log.enabled(LogEvent.LOOKUP_TRACE))
+                Log.log(LogEvent.LOOKUP_TRACE, "trace key " + keyIndex + " (" + hops + " hops): " + text);
+        }
+
+        public String toString(){
+            StringBuilder sb = new StringBuilder().append(nodeIds[0]);
+            for(int i = 0; i < hops; i++){
+                if(fingers[i] == 0){
+                    sb.append(" -s-> ");
+                }
+                else {
+                    sb.append(" -f").append(fingers[i]).append("-> ");
+                }
+                sb.append(nodeIds[i + 1]);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * A small hot set of keys receives a fixed share of the requests, the remaining requests go uniformly to the other
+ * keys. For example hotFraction 0.1 and hotProbability 0.9 sends 90% of the requests to 10% of the keys.
+ * The hot set is the keys with the lowest numbers.
+ */
+public class HotSetDistribution implements KeyDistribution {
+
+    // number of keys in the population
+    public int keyCount;
+
+    // number of keys in the hot set
+    public int hotCount;
+
+    // fraction of the keys that are hot
+    public double hotFraction;
+
+    // probability that a request goes to the hot set
+    public double hotProbability;
+
+    public HotSetDistribution(int keyCount, double hotFraction, double hotProbability){
+        if(hotFraction <= 0 || hotFraction > 1 || hotProbability < 0 || hotProbability > 1){
+            throw new IllegalArgumentException("hot set fraction must be in (0, 1] and probability in [0, 1]");
+        }
+        this.keyCount = keyCount;
+        this.hotFraction = hotFraction;
+        this.hotProbability = hotProbability;
+        this.hotCount = Math.max(1, (int) Math.round(keyCount * hotFraction));
+    }
+
+    public int sample(Random random){
+        if(hotCount >= keyCount || random.nextDouble() < hotProbability){
+            return random.nextInt(hotCount) + 1;
+        }
+        return hotCount + random.nextInt(keyCount - hotCount) + 1;
+    }
+
+    public String toString(){
+        return "hotset(" + hotFraction + ", " + hotProbability + ")";
+    }
+}
@@ -0,0 +1,18 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * A key distribution decides which key a request asks for. Keys are identified by their number 1 ... keyCount, where
+ * the key with number i has the name "key i" (the naming used by the simulator when it generates keys).
+ */
+public interface KeyDistribution {
+
+    /**
+     * draws the next key number
+     * @param random the random generator of the workload. All randomness should come from it, so that a workload
+     *               is reproducible from its seed
+     * @return key number from 1 to keyCount
+     */
+    int sample(Random random);
+}
@@ -0,0 +1,82 @@
+package workload;
+
+import java.util.stream.LongStream;
+
+import crypto.ConsistentHashing;
+
+/**
+ * The keys of a simulation: key i (1 ... keyCount) has the name "key i" and the index given by consistent hashing of
+ * its name. The keys are not stored. The name and the index of a key are calculated from its number when they are
+ * needed, and stream() produces the (number, index) pairs of all keys lazily, so the heap used for the keys does not
+ * depend on how many keys there are. The stream is splittable, so the pairs can be calculated in parallel.
+ */
+public class KeyStream {
+
+    public final int keyCount;
+    private final ConsistentHashing hash;
+
+
+    /**
+     * @param keyCount number of keys
+     * @param hash hash function of the key names
+     */
+    public KeyStream(int keyCount, ConsistentHashing hash){
+        this.keyCount = keyCount;
+        this.hash = hash;
+    }
+
+
+    /**
+     * @return name of a key
+     */
+    public static String name(int keyNumber){
+        return "key " + keyNumber;
+    }
+
+
+    /**
+     * @return index of a key, hashed from its name
+     */
+    public int index(int keyNumber){
+        return hash.hash(name(keyNumber));
+    }
+
+
+    /**
+     * @return the (number, index) pairs of the keys 1 ... keyCount in number order, see pair()
+     */
+    public LongStream stream(){
+        return LongStream.rangeClosed(1, keyCount).map(number -> pair((int) number, index((int) number)));
+    }
+
+
+    /**
+     * @return the index of every key by number (position 0 is not used). This keeps 4 bytes per key, and is meant for
+     *         measurements that should not include the hashing of the keys
+     */
+    public int[] indexes(){
+        int[] indexes = new int[keyCount + 1];
+        for(int number = 1; number <= keyCount; number++){
+            indexes[number] = index(number);
+        }
+        return indexes;
+    }
+
+
+    /**
+     * @return a key number and index packed in a long, the number in the upper 32 bits
+     */
+    public static long pair(int keyNumber, int index){
+        return ((long) keyNumber << 32) | (index & 0xffffffffL);
+    }
+
+
+    public static int numberOf(long pair){
+        return (int) (pair >>> 32);
+    }
+
+
+    public static int indexOf(long pair){
+        return (int) pair;
+    }
+}
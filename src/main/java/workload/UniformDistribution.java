@@ -0,0 +1,24 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * Every key in the population is requested with the same probability.
+ */
+public class UniformDistribution implements KeyDistribution {
+
+    // number of keys in the population
+    public int keyCount;
+
+    public UniformDistribution(int keyCount){
+        this.keyCount = keyCount;
+    }
+
+    public int sample(Random random){
+        return random.nextInt(keyCount) + 1;
+    }
+
+    public String toString(){
+        return "uniform";
+    }
+}
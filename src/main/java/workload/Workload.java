@@ -0,0 +1,144 @@
+package workload;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+/**
+ * A workload is a stream of requested key numbers. The requests are produced one at a time as the simulator consumes
+ * them, so the number of requests is not limited by memory. Key number i stands for the key named "key i".
+ *
+ * Use Workload.create(config) to create the workload described by a WorkloadConfig.
+ */
+public class Workload implements PrimitiveIterator.OfInt, Closeable {
+
+    // the config this workload was created from
+    public WorkloadConfig config;
+
+    // distribution of random workloads (null for sequential and trace workloads)
+    private KeyDistribution distribution;
+
+    // reader of trace workloads (null for the other workloads)
+    private BufferedReader trace;
+
+    private Random random;
+
+    // number of requests produced so far
+    private long produced;
+
+    // the next key of a trace, read ahead to implement hasNext(). 0 if it has not been read yet, -1 at the end
+    private int nextTraceKey;
+
+
+    private Workload(WorkloadConfig config){
+        this.config = config;
+        this.random = new Random(config.seed);
+    }
+
+
+    /**
+     * creates the workload described by the config
+     * @param config workload config
+     * @return the workload
+     */
+    public static Workload create(WorkloadConfig config){
+        Workload workload = new Workload(config);
+        if(config.isTrace()){
+            String file = config.distribution.substring("trace:".length());
+            try {
+                workload.trace = new BufferedReader(new FileReader(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException("could not open trace " + file, e);
+            }
+        }
+        else {
+            workload.distribution = config.createDistribution();
+        }
+        return workload;
+    }
+
+
+    public boolean hasNext(){
+        int requestCount = config.getRequestCount();
+        if(requestCount >= 0 && produced >= requestCount){
+            return false;
+        }
+        if(trace != null){
+            if(nextTraceKey == 0){
+                nextTraceKey = readTraceKey();
+            }
+            return nextTraceKey > 0;
+        }
+        return true;
+    }
+
+
+    public int nextInt(){
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        produced++;
+        if(trace != null){
+            int key = nextTraceKey;
+            nextTraceKey = 0;
+            return key;
+        }
+        if(distribution == null){
+            // sequential: key 1, key 2, ..., key K, key 1, ...
+            return (int) ((produced - 1) % config.keyCount) + 1;
+        }
+        return distribution.sample(random);
+    }
+
+
+    /**
+     * reads the next key number from the trace. Each line holds a key name ("key 17") or a key number ("17").
+     * Empty lines and lines starting with '#' are skipped.
+     * @return the key number, or -1 at the end of the trace
+     */
+    private int readTraceKey(){
+        try {
+            String line;
+            while((line = trace.readLine()) != null){
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")){
+                    continue;
+                }
+                String number = line.startsWith("key ") ? line.substring(4).trim() : line;
+                int key = Integer.parseInt(number);
+                if(key < 1 || key > config.keyCount){
+                    throw new IllegalArgumentException("trace key " + line + " is outside of the key population 1.."
+                            + config.keyCount);
+                }
+                return key;
+            }
+            return -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * @return number of requests produced so far
+     */
+    public long getProduced(){
+        return produced;
+    }
+
+
+    public void close(){
+        if(trace != null){
+            try {
+                trace.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package workload;
+
+/**
+ * This class describes a workload: how many keys exist, how many requests are made and how the requested keys are
+ * distributed. The distribution is given as a specification string:
+ *
+ *     sequential                 - each key once in order (key 1, key 2, ...), repeated if there are more requests
+ *     uniform                    - every key with the same probability
+ *     zipf[:exponent]            - zipf distributed popularity, default exponent 1.0
+ *     hotset[:fraction:probability] - a hot set of keys gets most requests, default 0.1 of the keys get 0.9 of the requests
+ *     trace:&lt;file&gt;               - replay the keys listed in a trace file, one key per line ("key 17" or "17")
+ */
+public class WorkloadConfig {
+
+    // number of keys in the key population
+    public int keyCount;
+
+    // number of lookup requests. -1 means one request per key (or the whole trace when replaying a trace)
+    public int requestCount;
+
+    // specification of the distribution of the requested keys
+    public String distribution;
+
+    // seed of the random generator, so the same config always produces the same requests
+    public long seed;
+
+
+    public WorkloadConfig(int keyCount, int requestCount, String distribution, long seed){
+        this.keyCount = keyCount;
+        this.requestCount = requestCount;
+        this.distribution = distribution;
+        this.seed = seed;
+    }
+
+
+    /**
+     * @return the default workload of the simulator: every key is looked up exactly once, in order
+     */
+    public static WorkloadConfig sequential(int keyCount){
+        return new WorkloadConfig(keyCount, -1, "sequential", 0);
+    }
+
+
+    /**
+     * @return the number of requests the workload makes, or -1 if it is given by the length of a trace
+     */
+    public int getRequestCount(){
+        if(requestCount >= 0){
+            return requestCount;
+        }
+        return isTrace() ? -1 : keyCount;
+    }
+
+
+    /**
+     * @return true if the workload replays a trace file
+     */
+    public boolean isTrace(){
+        return distribution.startsWith("trace:");
+    }
+
+
+    /**
+     * creates the key distribution from the specification
+     * @return the key distribution, or null for the sequential and trace workloads which are not random
+     */
+    public KeyDistribution createDistribution(){
+        String[] parts = distribution.split(":");
+        switch (parts[0]) {
+            case "sequential":
+            case "trace":
+                return null;
+            case "uniform":
+                return new UniformDistribution(keyCount);
+            case "zipf":
+                return new ZipfDistribution(keyCount, parts.length > 1 ? Double.parseDouble(parts[1]) : 1.0);
+            case "hotset":
+                return new HotSetDistribution(keyCount,
+                        parts.length > 1 ? Double.parseDouble(parts[1]) : 0.1,
+                        parts.length > 2 ? Double.parseDouble(parts[2]) : 0.9);
+            default:
+                throw new IllegalArgumentException("unknown key distribution: " + distribution);
+        }
+    }
+
+
+    public String toString(){
+        return "keys=" + keyCount + " requests=" + (getRequestCount() < 0 ? "trace" : getRequestCount())
+                + " distribution=" + distribution + " seed=" + seed;
+    }
+}
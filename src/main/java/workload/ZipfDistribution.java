@@ -0,0 +1,93 @@
+package workload;
+
+import java.util.Random;
+
+/**
+ * Zipf distributed key popularity: the key with rank k is requested with probability proportional to 1/k^s.
+ * Key number k has rank k, so "key 1" is the most popular key. Since key indexes are hashed, popularity is not
+ * correlated with the position of the key in the ring.
+ *
+ * Samples are drawn with the rejection-inversion method (Hormann and Derflinger), which needs constant memory and
+ * constant expected time, so the population can be much larger than what a table of probabilities would allow.
+ */
+public class ZipfDistribution implements KeyDistribution {
+
+    // number of keys in the population
+    public int keyCount;
+
+    // the exponent of the distribution
+    public double exponent;
+
+    private final double hIntegralX1;
+    private final double hIntegralNumberOfElements;
+    private final double s;
+
+    public ZipfDistribution(int keyCount, double exponent){
+        if(exponent <= 0){
+            throw new IllegalArgumentException("zipf exponent must be larger than 0");
+        }
+        this.keyCount = keyCount;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralNumberOfElements = hIntegral(keyCount + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    public int sample(Random random){
+        while(true){
+            double u = hIntegralNumberOfElements + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if(k < 1){
+                k = 1;
+            }
+            else if(k > keyCount){
+                k = keyCount;
+            }
+            // accept k if it is close enough to x, or if u is below the area that belongs to k
+            if(k - x <= s || u >= hIntegral(k + 0.5) - h(k)){
+                return k;
+            }
+        }
+    }
+
+    // H(x) = ((x)^(1-exponent) - 1) / (1 - exponent), the integral of h
+    private double hIntegral(double x){
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    // h(x) = 1 / x^exponent
+    private double h(double x){
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x){
+        double t = x * (1 - exponent);
+        if(t < -1){
+            // limit value to the range [-1, +inf), as t < -1 is only caused by rounding errors
+            t = -1;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1+x)/x, with a taylor series near 0
+    private static double helper1(double x){
+        if(Math.abs(x) > 1e-8){
+            return Math.log1p(x) / x;
+        }
+        return 1 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    // (exp(x)-1)/x, with a taylor series near 0
+    private static double helper2(double x){
+        if(Math.abs(x) > 1e-8){
+            return Math.expm1(x) / x;
+        }
+        return 1 + x * 0.5 * (1 + x * (1.0 / 3.0) * (1 + 0.25 * x));
+    }
+
+    public String toString(){
+        return "zipf(" + exponent + ")";
+    }
+}